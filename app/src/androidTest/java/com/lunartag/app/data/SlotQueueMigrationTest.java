@@ -0,0 +1,102 @@
+package com.lunartag.app.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * The one-time move of the old "timestamp_list" preference into the slot table.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SlotQueueMigrationTest {
+
+    // As written by the versions before the slot table
+    private static final String PREFS_SCHEDULE = "LunarTagSchedule";
+    private static final String KEY_TIMESTAMP_LIST = "timestamp_list";
+
+    private Context context;
+    private SharedPreferences prefs;
+    private AppDatabase database;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        prefs = context.getSharedPreferences(PREFS_SCHEDULE, Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        prefs.edit().clear().commit();
+    }
+
+    @Test
+    public void oldListMovesIntoTheTable() {
+        prefs.edit().putString(KEY_TIMESTAMP_LIST, "[1700000300000,1700000100000,1700000200000,1700000100000]")
+                .commit();
+
+        SlotQueue queue = new SlotQueue(context, database);
+        // Reserving waits for the migration
+        assertEquals(Long.valueOf(1700000100000L), queue.reserveNext());
+
+        assertFalse(prefs.contains(KEY_TIMESTAMP_LIST));
+        assertEquals(Arrays.asList(1700000100000L, 1700000200000L, 1700000300000L),
+                database.timestampSlotDao().getAllSlotTimes());
+    }
+
+    @Test
+    public void interruptedMigrationIsRedoneWithoutDuplicates() {
+        String json = "[1700000100000,1700000200000]";
+        // The app died after copying the list but before removing the preference
+        database.timestampSlotDao().replaceAllSlots(Arrays.asList(1700000100000L, 1700000200000L));
+        prefs.edit().putString(KEY_TIMESTAMP_LIST, json).commit();
+
+        SlotQueue queue = new SlotQueue(context, database);
+        assertEquals(Long.valueOf(1700000100000L), queue.reserveNext());
+
+        assertFalse(prefs.contains(KEY_TIMESTAMP_LIST));
+        assertEquals(Arrays.asList(1700000200000L), database.timestampSlotDao().getAllSlotTimes());
+    }
+
+    @Test
+    public void unreadableListIsDroppedAndTableKept() {
+        database.timestampSlotDao().replaceAllSlots(Arrays.asList(1700000500000L));
+        prefs.edit().putString(KEY_TIMESTAMP_LIST, "[1700000100000,\"not a time\"").commit();
+
+        SlotQueue queue = new SlotQueue(context, database);
+        assertEquals(Long.valueOf(1700000500000L), queue.reserveNext());
+        assertNull(queue.reserveNext());
+        assertFalse(prefs.contains(KEY_TIMESTAMP_LIST));
+    }
+
+    @Test
+    public void noPreferenceLeavesTheTableAlone() throws InterruptedException {
+        database.timestampSlotDao().replaceAllSlots(Arrays.asList(1700000200000L, 1700000100000L));
+
+        SlotQueue queue = new SlotQueue(context, database);
+        assertEquals(Long.valueOf(1700000100000L), queue.reserveNext());
+        // The in-memory head is refreshed in the background after each reservation
+        for (int i = 0; i < 100 && queue.getRemainingCount() != 1; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, queue.getRemainingCount());
+        assertArrayEquals(new long[] {1700000200000L}, queue.getUpcomingSlots());
+    }
+}
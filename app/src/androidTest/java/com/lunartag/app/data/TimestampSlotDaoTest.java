@@ -0,0 +1,129 @@
+package com.lunartag.app.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Slot reservation under concurrent captures, on an in-memory database and on a file
+ * database in the WAL mode the app runs with.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TimestampSlotDaoTest {
+
+    private static final int SLOTS = 500;
+    private static final int EXTRA_CALLS = 100; // Callers that find the queue empty
+    private static final int THREADS = 16;
+    private static final String FILE_DATABASE = "slot-test.db";
+
+    private Context context;
+    private AppDatabase database;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @After
+    public void tearDown() {
+        if (database != null) database.close();
+        context.deleteDatabase(FILE_DATABASE);
+    }
+
+    @Test
+    public void parallelReservationsNeverShareASlot() throws Exception {
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        assertEachSlotReservedOnce(database.timestampSlotDao());
+    }
+
+    @Test
+    public void parallelReservationsNeverShareASlotWithWal() throws Exception {
+        context.deleteDatabase(FILE_DATABASE);
+        database = Room.databaseBuilder(context, AppDatabase.class, FILE_DATABASE)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+        assertEachSlotReservedOnce(database.timestampSlotDao());
+    }
+
+    @Test
+    public void slotsComeOutInTimeOrderWithDuplicatesKept() {
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        TimestampSlotDao dao = database.timestampSlotDao();
+        dao.replaceAllSlots(Arrays.asList(3000L, 1000L, 2000L, 1000L));
+
+        assertEquals(Arrays.asList(1000L, 1000L, 2000L), dao.getFirstSlotTimes(3));
+        assertEquals(Long.valueOf(1000), dao.reserveNextSlot());
+        assertEquals(1, dao.deleteOneSlot(1000));
+        assertEquals(0, dao.deleteOneSlot(1000));
+        assertEquals(Long.valueOf(2000), dao.reserveNextSlot());
+        assertEquals(Long.valueOf(3000), dao.reserveNextSlot());
+        assertNull(dao.reserveNextSlot());
+    }
+
+    /**
+     * Fills the queue with distinct times, then lets {@link #THREADS} threads reserve
+     * more slots than there are, all starting at once.
+     */
+    private static void assertEachSlotReservedOnce(TimestampSlotDao dao) throws Exception {
+        List<Long> slotTimes = new ArrayList<>(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            slotTimes.add(1_700_000_000_000L + i * 60_000L);
+        }
+        Collections.shuffle(slotTimes);
+        dao.replaceAllSlots(slotTimes);
+        assertEquals(SLOTS, dao.getSlotCount());
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        Callable<Long> reserve = () -> {
+            start.await();
+            return dao.reserveNextSlot();
+        };
+        for (int i = 0; i < SLOTS + EXTRA_CALLS; i++) {
+            results.add(pool.submit(reserve));
+        }
+        start.countDown();
+
+        Set<Long> reserved = new HashSet<>();
+        int empty = 0;
+        for (Future<Long> result : results) {
+            Long slot = result.get(30, TimeUnit.SECONDS);
+            if (slot == null) {
+                empty++;
+            } else {
+                assertTrue("slot " + slot + " reserved twice", reserved.add(slot));
+            }
+        }
+        pool.shutdown();
+
+        assertEquals(new HashSet<>(slotTimes), reserved);
+        assertEquals(EXTRA_CALLS, empty);
+        assertEquals(0, dao.getSlotCount());
+    }
+}
@@ -0,0 +1,165 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.location.Location;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.lunartag.app.watermark.WatermarkRenderer;
+import com.lunartag.app.watermark.WatermarkTemplate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Stamps the same frame and lines through {@link WatermarkUtils#addWatermark} and through
+ * {@link WatermarkUtils#addWatermarkOverlayToNv21}, with the real templates, text rendering
+ * and band geometry, and diffs the two with {@link PixelDiff}.
+ *
+ * The addWatermark path is run as the ARGB capture mode runs it: the whole NV21 frame to an
+ * ARGB Bitmap, the block drawn on, and the Bitmap back to YCbCr with the encoder's BT.601
+ * equations ({@link YuvConverter#argbToNv21}). The band path ({@link WatermarkUtils#addWatermarkToNv21})
+ * is diffed too, so a drift in either NV21 mode shows up against the same reference.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WatermarkOverlayTest {
+
+    private static final String TAG = "WatermarkOverlayTest";
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final long CAPTURE_TIME = 1710494813589L;
+
+    private Context context;
+    private Bitmap map;
+    private CharSequence[] lines;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        map = Bitmap.createBitmap(128, 128, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < 128; y++) {
+            for (int x = 0; x < 128; x++) {
+                map.setPixel(x, y, 0xFF000000 | (x * 2) << 16 | (y * 2) << 8 | ((x / 16 + y / 16) % 2) * 0xC0);
+            }
+        }
+        Location location = new Location("test");
+        location.setLatitude(12.9715987);
+        location.setLongitude(77.5945627);
+        lines = WatermarkRenderer.getInstance(context).buildLines("LunarTag Surveys Pvt. Ltd.",
+                "MG Road, Shanthala Nagar, Ashok Nagar, Bengaluru, Karnataka 560001, India", location, CAPTURE_TIME);
+    }
+
+    @After
+    public void tearDown() {
+        map.recycle();
+    }
+
+    @Test
+    public void overlayMatchesAddWatermarkAtEveryRotation() {
+        for (String template : new String[] {WatermarkTemplate.DEFAULT_ID, "compact"}) {
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                String name = template + " at " + rotation;
+                byte[] frame = naturalFrame();
+                byte[] reference = addWatermark(frame, template, rotation);
+
+                byte[] overlay = frame.clone();
+                WatermarkUtils.addWatermarkOverlayToNv21(context, template, overlay, WIDTH, HEIGHT, map, lines,
+                        rotation);
+                byte[] band = frame.clone();
+                WatermarkUtils.addWatermarkToNv21(context, template, band, WIDTH, HEIGHT, map, lines, rotation);
+
+                PixelDiff overlayDiff = PixelDiff.compareNv21(reference, overlay, WIDTH, HEIGHT);
+                PixelDiff bandDiff = PixelDiff.compareNv21(reference, band, WIDTH, HEIGHT);
+                Log.i(TAG, name + ": overlay vs addWatermark " + overlayDiff + "; band vs addWatermark " + bandDiff);
+
+                // Text edges blend per pixel in ARGB but per 2x2 block in premultiplied VU,
+                // and Bitmaps store premultiplied 8-bit colour; the first device run measured
+                // max 8 (Y) / 11 (VU) for that. Larger differences mean misplaced or missing pixels.
+                assertTrue(name + ": " + overlayDiff, overlayDiff.getLumaPsnr() > 45);
+                assertTrue(name + ": " + overlayDiff, overlayDiff.getMeanLuma() < 0.5);
+                assertTrue(name + ": " + overlayDiff, overlayDiff.getMeanChroma() < 0.5);
+                assertTrue(name + ": " + overlayDiff, overlayDiff.getMaxLuma() <= 12);
+                assertTrue(name + ": " + overlayDiff, overlayDiff.getMaxChroma() <= 16);
+                assertTrue(name + ": " + bandDiff, bandDiff.getLumaPsnr() > 45);
+            }
+        }
+    }
+
+    @Test
+    public void overlayOnlyTouchesTheBand() {
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            byte[] frame = naturalFrame();
+            byte[] overlay = frame.clone();
+            WatermarkUtils.addWatermarkOverlayToNv21(context, WatermarkTemplate.DEFAULT_ID, overlay, WIDTH, HEIGHT,
+                    map, lines, rotation);
+            Rect band = WatermarkUtils.computeBandRect(context, WatermarkTemplate.DEFAULT_ID, WIDTH, HEIGHT, map,
+                    lines, rotation);
+            // The overlay is widened to even coordinates for the shared chroma
+            band.set(band.left & ~1, band.top & ~1, (band.right + 1) & ~1, (band.bottom + 1) & ~1);
+            assertTrue("band at " + rotation, band.width() > 0 && band.height() > 0);
+
+            int changed = 0;
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int i = y * WIDTH + x;
+                    if (!band.contains(x, y)) {
+                        assertEquals("luma at " + x + "," + y + ", rotation " + rotation, frame[i], overlay[i]);
+                    } else if (frame[i] != overlay[i]) {
+                        changed++;
+                    }
+                }
+            }
+            assertTrue("rotation " + rotation + ": block drawn", changed > band.width() * band.height() / 2);
+        }
+    }
+
+    /**
+     * The ARGB capture mode: the full frame as a Bitmap, stamped, and back to YCbCr.
+     */
+    private byte[] addWatermark(byte[] nv21, String template, int rotation) {
+        int[] argb = new int[WIDTH * HEIGHT];
+        YuvConverter.nv21ToArgb(nv21, WIDTH, HEIGHT, 0, HEIGHT, argb);
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        try {
+            bitmap.setPixels(argb, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+            WatermarkUtils.addWatermark(context, template, bitmap, map, lines, rotation);
+            bitmap.getPixels(argb, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        } finally {
+            bitmap.recycle();
+        }
+        byte[] out = new byte[YuvConverter.nv21Size(WIDTH, HEIGHT)];
+        YuvConverter.argbToNv21(argb, WIDTH, HEIGHT, out, WIDTH, HEIGHT, 0, 0);
+        return out;
+    }
+
+    /**
+     * Smooth gradients with mild texture, like a photo; chroma varies slowly.
+     */
+    private static byte[] naturalFrame() {
+        byte[] nv21 = new byte[YuvConverter.nv21Size(WIDTH, HEIGHT)];
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int texture = ((col * 7 + row * 13) % 9) - 4;
+                nv21[row * WIDTH + col] = (byte) Math.max(0, Math.min(255,
+                        40 + 160 * col / WIDTH + 30 * row / HEIGHT + texture));
+            }
+        }
+        int chroma = WIDTH * HEIGHT;
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                nv21[chroma + row * WIDTH + 2 * col] = (byte) (110 + 40 * row / (HEIGHT / 2));     // V
+                nv21[chroma + row * WIDTH + 2 * col + 1] = (byte) (150 - 40 * col / (WIDTH / 2)); // U
+            }
+        }
+        return nv21;
+    }
+}
@@ -4,6 +4,10 @@ import android.app.Application;
 
 // Import the core FirebaseApp class
 import com.google.firebase.FirebaseApp;
+import com.lunartag.app.capture.CaptureJournal;
+import com.lunartag.app.config.SettingsStore;
+import com.lunartag.app.diagnostics.LogFileSink;
+import com.lunartag.app.utils.PhotoThumbnails;
 
 /**
  * The custom Application class for Lunar Tag.
@@ -18,5 +22,17 @@ public class LunarTagApplication extends Application {
         // Manually initialize Firebase. This MUST be the first Firebase call.
         // This allows Remote Config to function correctly.
         FirebaseApp.initializeApp(this);
+
+        // Start reading the settings now, so the first screen rarely has to wait for them
+        SettingsStore.getInstance(this);
+
+        // Start copying the live log to files if the user turned it on
+        LogFileSink.getInstance(this).applySetting();
+
+        // Finish photos that were still being processed when the process last died
+        CaptureJournal.getInstance(this).recoverAsync();
+
+        // Make list thumbnails for photos taken before they existed (once; a no-op after that)
+        PhotoThumbnails.backfillAsync(this);
     }
 }
\ No newline at end of file
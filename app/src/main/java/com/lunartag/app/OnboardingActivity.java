@@ -1,13 +1,12 @@
 package com.lunartag.app;
 
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.View;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.lunartag.app.config.SettingsStore;
 import com.lunartag.app.databinding.ActivityOnboardingBinding;
 
 /**
@@ -17,9 +16,6 @@ import com.lunartag.app.databinding.ActivityOnboardingBinding;
  */
 public class OnboardingActivity extends AppCompatActivity {
 
-    private static final String PREFS_NAME = "LunarTagPrefs";
-    private static final String KEY_ONBOARDING_COMPLETE = "onboarding_complete";
-
     private ActivityOnboardingBinding binding;
 
     @Override
@@ -27,8 +23,7 @@ public class OnboardingActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
 
         // Check if onboarding has already been completed on a previous launch.
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        boolean hasCompleted = prefs.getBoolean(KEY_ONBOARDING_COMPLETE, false);
+        boolean hasCompleted = SettingsStore.getInstance(this).get().isOnboardingComplete();
 
         if (hasCompleted) {
             // If completed, skip this screen and go directly to the main app.
@@ -44,10 +39,8 @@ public class OnboardingActivity extends AppCompatActivity {
         binding.buttonContinue.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                // When the user continues, save this choice to SharedPreferences.
-                SharedPreferences.Editor editor = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
-                editor.putBoolean(KEY_ONBOARDING_COMPLETE, true);
-                editor.apply();
+                // When the user continues, save this choice in the settings.
+                SettingsStore.getInstance(OnboardingActivity.this).update(settings -> settings.setOnboardingComplete(true));
 
                 // Then, proceed to the main app.
                 navigateToMainActivity();
@@ -0,0 +1,96 @@
+package com.lunartag.app.capture;
+
+import android.graphics.Bitmap;
+import android.location.Location;
+
+import com.lunartag.app.diagnostics.CaptureMetrics;
+import com.lunartag.app.geocode.GeocodeCache;
+import com.lunartag.app.map.MapThumbnailRenderer;
+import com.lunartag.app.utils.JpegStamper;
+import com.lunartag.app.utils.WatermarkUtils;
+import com.lunartag.app.watermark.WatermarkRenderer;
+
+/**
+ * Stage 2: Looks up the address and draws the watermark block onto the photo.
+ * A kept camera JPEG is stamped in place, which also produces the encoded bytes.
+ * NV21 frames get the block either redrawn on an ARGB band or blended in as a YUV overlay.
+ */
+class AnnotateStage implements CaptureStage {
+
+    private static final String ADDRESS_PENDING = "Address pending";
+
+    @Override
+    public String getName() {
+        return "annotate";
+    }
+
+    @Override
+    public void process(CaptureJob job, CapturePipeline pipeline) throws Exception {
+        Location location = job.getLocation();
+        CaptureMetrics metrics = CaptureMetrics.getInstance();
+        long start = System.nanoTime();
+        String address = getAddress(pipeline, job, location);
+        metrics.record(CaptureMetrics.GEOCODE, start);
+
+        start = System.nanoTime();
+        applyWatermark(job, pipeline, location, address);
+        metrics.record(CaptureMetrics.WATERMARK, start);
+    }
+
+    private void applyWatermark(CaptureJob job, CapturePipeline pipeline, Location location, String address)
+            throws Exception {
+        // Lines are built into reusable buffers owned by this worker thread
+        String template = job.getWatermarkTemplate();
+        CharSequence[] watermarkLines = WatermarkRenderer.getInstance(pipeline.getContext())
+                .buildLines(job.getCompanyName(), address, location, job.getAssignedTime());
+
+        // Pre-rendered on location updates; null (no map) if it is not ready for this fix
+        Bitmap mapBitmap = MapThumbnailRenderer.getInstance(pipeline.getContext()).getThumbnail(location);
+
+        pipeline.log("System: Applying Watermark...");
+        if (job.getSourceJpeg() != null) {
+            // JPEG splice: only the intervals under the block are decoded and re-encoded
+            byte[] stamped = JpegStamper.stamp(pipeline.getContext(), template, job.getSourceJpeg(), mapBitmap,
+                    watermarkLines, job.getRotationDegrees());
+            if (stamped != null) {
+                pipeline.log("System: Watermark spliced into camera JPEG.");
+                job.setSourceJpeg(null, 0, 0);
+                job.setEncodedBytes(stamped);
+                return;
+            }
+            pipeline.log("System: Camera JPEG cannot be spliced, decoding it fully.");
+            ConvertStage.decodeSourceJpeg(job, pipeline);
+        }
+        if (job.getNv21() != null && job.isYuvOverlay()) {
+            // YUV overlay: the block is blended into the planes, the frame is never ARGB
+            WatermarkUtils.addWatermarkOverlayToNv21(pipeline.getContext(), template, job.getNv21(),
+                    job.getFrameWidth(), job.getFrameHeight(), mapBitmap, watermarkLines, job.getRotationDegrees());
+            return;
+        }
+        if (job.getNv21() != null) {
+            // Band compositing: only the rows under the block are converted and redrawn
+            WatermarkUtils.addWatermarkToNv21(pipeline.getContext(), template, job.getNv21(),
+                    job.getFrameWidth(), job.getFrameHeight(), mapBitmap, watermarkLines, job.getRotationDegrees());
+            return;
+        }
+        WatermarkUtils.addWatermark(pipeline.getContext(), template, job.getBitmap(), mapBitmap, watermarkLines,
+                job.getRotationDegrees());
+    }
+
+    /**
+     * Looks the address up in the geocode cache, which never blocks the capture.
+     * On a miss the photo gets a placeholder and its record is filled in later.
+     */
+    private String getAddress(CapturePipeline pipeline, CaptureJob job, Location location) {
+        if (location == null) return "Location Unknown";
+        GeocodeCache cache = GeocodeCache.getInstance(pipeline.getContext());
+        String address = cache.lookup(location);
+        job.setAddressGeohash(cache.geohashOf(location));
+        job.setAddress(address);
+        if (address == null) {
+            pipeline.log("System: Address not cached yet, stamping placeholder.");
+            return ADDRESS_PENDING;
+        }
+        return address;
+    }
+}
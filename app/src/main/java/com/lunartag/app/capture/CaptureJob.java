@@ -0,0 +1,318 @@
+package com.lunartag.app.capture;
+
+import android.graphics.Bitmap;
+import android.location.Location;
+
+import androidx.camera.core.ImageProxy;
+
+import com.lunartag.app.encode.EncoderProfile;
+import com.lunartag.app.encode.OutputFormat;
+import com.lunartag.app.watermark.WatermarkTemplate;
+
+/**
+ * Holds everything that belongs to one shutter press while it travels through the
+ * {@link CapturePipeline}. Each stage reads what the previous stage produced and
+ * releases what it no longer needs, so a finished job holds no pixel data.
+ */
+public class CaptureJob {
+
+    private final long realTime; // System time when the sensor frame arrived
+    private final long arrivalNanos = System.nanoTime(); // Monotonic, for the capture metrics
+    private long queuedNanos; // When the job last entered a stage queue
+    private long assignedTime; // Real time, or the next admin slot in custom timestamp mode
+    private final boolean recovered; // Rebuilt from the CaptureJournal after a restart
+    private boolean journaled; // The camera frame is safe in the CaptureJournal
+
+    // --- Sensor output (released by the convert stage) ---
+    private ImageProxy imageProxy;
+
+    // --- Capture context (filled on the shutter thread, it is cheap) ---
+    private Location location;
+    private String companyName;
+    private String address; // Resolved address, or null if it was not cached at capture time
+    private String addressGeohash; // Geocode cache cell of the location
+    private boolean exifOrientation; // Keep sensor orientation and record the rotation in EXIF
+    private boolean bandCompositing; // Keep the frame as NV21 and only draw on the watermark band
+    private boolean yuvOverlay; // With band compositing: blend a YUV overlay instead of redrawing the band
+    private boolean jpegSplice; // Stamp the camera JPEG by re-encoding only the watermark intervals
+    private String watermarkTemplate = WatermarkTemplate.DEFAULT_ID; // Id of the watermark layout
+    private String encoderProfile = EncoderProfile.DEFAULT_ID; // Format, quality and size of the saved file
+
+    // --- Stage products ---
+    private Bitmap bitmap; // Produced by convert, consumed by encode
+    private byte[] nv21; // Band compositing only: replaces the bitmap
+    private byte[] sourceJpeg; // JPEG splice only: the camera's JPEG, kept until annotate
+    private int frameWidth; // Size of the nv21 frame or source JPEG, in sensor orientation
+    private int frameHeight;
+    private int rotationDegrees; // Rotation still to be applied by the viewer (EXIF mode only)
+    private byte[] encodedBytes; // Produced by encode, consumed by persist
+    private OutputFormat encodedFormat = OutputFormat.JPEG; // Produced by encode
+    private byte[] thumbnailBytes; // Upright list thumbnail, produced by encode, consumed by persist
+    private String filePath; // Produced by persist
+    private long photoId = -1; // Produced by persist
+
+    public CaptureJob(ImageProxy imageProxy, long realTime) {
+        this.imageProxy = imageProxy;
+        this.realTime = realTime;
+        this.assignedTime = realTime;
+        this.recovered = false;
+    }
+
+    /**
+     * A job rebuilt from the {@link CaptureJournal} after the process died. It starts
+     * with the journaled camera JPEG instead of a sensor frame.
+     */
+    CaptureJob(long realTime, byte[] journaledJpeg, int frameWidth, int frameHeight, int sensorRotation) {
+        this.realTime = realTime;
+        this.assignedTime = realTime;
+        this.recovered = true;
+        this.journaled = true;
+        setSourceJpeg(journaledJpeg, frameWidth, frameHeight);
+        this.rotationDegrees = sensorRotation;
+    }
+
+    /**
+     * The base name used for every file written for this job.
+     */
+    public String getFileName() {
+        return "LunarTag_" + realTime;
+    }
+
+    // --- Getters and Setters ---
+
+    public long getRealTime() {
+        return realTime;
+    }
+
+    public long getAssignedTime() {
+        return assignedTime;
+    }
+
+    public void setAssignedTime(long assignedTime) {
+        this.assignedTime = assignedTime;
+    }
+
+    public ImageProxy getImageProxy() {
+        return imageProxy;
+    }
+
+    public void setImageProxy(ImageProxy imageProxy) {
+        this.imageProxy = imageProxy;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public void setCompanyName(String companyName) {
+        this.companyName = companyName;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public String getAddressGeohash() {
+        return addressGeohash;
+    }
+
+    public void setAddressGeohash(String addressGeohash) {
+        this.addressGeohash = addressGeohash;
+    }
+
+    public boolean isExifOrientation() {
+        return exifOrientation;
+    }
+
+    public void setExifOrientation(boolean exifOrientation) {
+        this.exifOrientation = exifOrientation;
+    }
+
+    public boolean isBandCompositing() {
+        return bandCompositing;
+    }
+
+    public void setBandCompositing(boolean bandCompositing) {
+        this.bandCompositing = bandCompositing;
+    }
+
+    public boolean isYuvOverlay() {
+        return yuvOverlay;
+    }
+
+    public void setYuvOverlay(boolean yuvOverlay) {
+        this.yuvOverlay = yuvOverlay;
+    }
+
+    public boolean isJpegSplice() {
+        return jpegSplice;
+    }
+
+    public void setJpegSplice(boolean jpegSplice) {
+        this.jpegSplice = jpegSplice;
+    }
+
+    public String getWatermarkTemplate() {
+        return watermarkTemplate;
+    }
+
+    public void setWatermarkTemplate(String watermarkTemplate) {
+        this.watermarkTemplate = watermarkTemplate;
+    }
+
+    public String getEncoderProfile() {
+        return encoderProfile;
+    }
+
+    public void setEncoderProfile(String encoderProfile) {
+        this.encoderProfile = encoderProfile;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public void setRotationDegrees(int rotationDegrees) {
+        this.rotationDegrees = rotationDegrees;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public void setBitmap(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public byte[] getNv21() {
+        return nv21;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    /**
+     * Stores an NV21 frame together with its size (sensor orientation).
+     */
+    public void setNv21(byte[] nv21, int frameWidth, int frameHeight) {
+        this.nv21 = nv21;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+    }
+
+    public byte[] getSourceJpeg() {
+        return sourceJpeg;
+    }
+
+    /**
+     * Stores the camera JPEG together with its size (sensor orientation).
+     */
+    public void setSourceJpeg(byte[] sourceJpeg, int frameWidth, int frameHeight) {
+        this.sourceJpeg = sourceJpeg;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+    }
+
+    public byte[] getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    public void setEncodedBytes(byte[] encodedBytes) {
+        this.encodedBytes = encodedBytes;
+    }
+
+    public OutputFormat getEncodedFormat() {
+        return encodedFormat;
+    }
+
+    public void setEncodedFormat(OutputFormat encodedFormat) {
+        this.encodedFormat = encodedFormat;
+    }
+
+    public byte[] getThumbnailBytes() {
+        return thumbnailBytes;
+    }
+
+    public void setThumbnailBytes(byte[] thumbnailBytes) {
+        this.thumbnailBytes = thumbnailBytes;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    long getQueuedNanos() {
+        return queuedNanos;
+    }
+
+    void setQueuedNanos(long queuedNanos) {
+        this.queuedNanos = queuedNanos;
+    }
+
+    boolean isJournaled() {
+        return journaled;
+    }
+
+    void setJournaled(boolean journaled) {
+        this.journaled = journaled;
+    }
+
+    /**
+     * Whether this job was rebuilt from the journal rather than taken from the sensor.
+     */
+    public boolean isRecovered() {
+        return recovered;
+    }
+
+    public long getPhotoId() {
+        return photoId;
+    }
+
+    public void setPhotoId(long photoId) {
+        this.photoId = photoId;
+    }
+
+    /**
+     * Frees every buffer still attached to the job. Safe to call more than once.
+     * Called when the job completes or fails so nothing leaks from the pipeline.
+     */
+    void releaseBuffers() {
+        if (imageProxy != null) {
+            imageProxy.close();
+            imageProxy = null;
+        }
+        if (bitmap != null) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+        nv21 = null;
+        sourceJpeg = null;
+        encodedBytes = null;
+        thumbnailBytes = null;
+    }
+}
@@ -0,0 +1,360 @@
+package com.lunartag.app.capture;
+
+import android.content.Context;
+import android.location.Location;
+import android.util.Log;
+
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.diagnostics.LunarLog;
+import com.lunartag.app.model.Photo;
+import com.lunartag.app.utils.Scheduler;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Write-ahead journal for the capture pipeline: no photo is lost if the process dies
+ * between the shutter and the database.
+ *
+ * {@link CapturePipeline#submit}, on the capture callback thread, writes the camera JPEG and
+ * a JSON sidecar with everything the job knew at the shutter (settings, location, assigned
+ * time) and syncs both to disk before the job is queued. The entry is removed when the job has finished every stage. The sidecar is
+ * written last, so a frame without one is an interrupted write and is dropped.
+ *
+ * On the next start {@link #recoverAsync()} feeds whatever is left back into the pipeline.
+ * Entries that already reached the database only get their send alarm armed again: the
+ * marker in the sidecar says so, or, if the process died between the insert and the marker,
+ * the photo's row is found by its capture time. The alarm is keyed by the photo id, so arming
+ * it again replaces the old one. An entry
+ * that still fails after {@link #MAX_ATTEMPTS} starts is moved to a "failed" folder, where it
+ * is kept but no longer retried. Only the newest {@link #MAX_FAILED} are kept there.
+ */
+public class CaptureJournal {
+
+    private static final String TAG = "CaptureJournal";
+
+    private static final String DIRECTORY = "capture_journal";
+    private static final String FAILED_DIRECTORY = "failed";
+    private static final String FRAME_SUFFIX = ".jpg";
+    private static final String SIDECAR_SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_FAILED = 20; // Photos kept in the failed folder, each up to a few MB
+
+    // --- Sidecar keys ---
+    private static final String KEY_REAL_TIME = "real_time";
+    private static final String KEY_ASSIGNED_TIME = "assigned_time";
+    private static final String KEY_COMPANY_NAME = "company_name";
+    private static final String KEY_EXIF_ORIENTATION = "exif_orientation";
+    private static final String KEY_BAND_COMPOSITING = "band_compositing";
+    private static final String KEY_YUV_OVERLAY = "yuv_overlay";
+    private static final String KEY_JPEG_SPLICE = "jpeg_splice";
+    private static final String KEY_WATERMARK_TEMPLATE = "watermark_template";
+    private static final String KEY_ENCODER_PROFILE = "encoder_profile";
+    private static final String KEY_FRAME_WIDTH = "frame_width";
+    private static final String KEY_FRAME_HEIGHT = "frame_height";
+    private static final String KEY_SENSOR_ROTATION = "sensor_rotation";
+    private static final String KEY_LOCATION = "location";
+    private static final String KEY_ATTEMPTS = "attempts";
+    private static final String KEY_PHOTO_ID = "photo_id"; // Set once the photo is in the database
+    private static final String KEY_FILE_PATH = "file_path";
+
+    private static volatile CaptureJournal INSTANCE;
+
+    public static CaptureJournal getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (CaptureJournal.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new CaptureJournal(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final Context context;
+    private final File directory;
+    // Entries from before this moment belong to an earlier process
+    private final long createdMillis = System.currentTimeMillis();
+
+    private CaptureJournal(Context context) {
+        this.context = context;
+        this.directory = new File(context.getFilesDir(), DIRECTORY);
+    }
+
+    /**
+     * Removes finished jobs from the journal. Failed jobs stay for the next start.
+     */
+    final CapturePipeline.Listener pipelineListener = new CapturePipeline.Listener() {
+        @Override
+        public void onCapacityChanged(boolean full) {
+        }
+
+        @Override
+        public void onJobCompleted(CaptureJob job) {
+            if (job.isJournaled()) remove(job.getFileName());
+        }
+
+        @Override
+        public void onJobFailed(CaptureJob job, String stageName, Exception error) {
+            if (job.isJournaled()) {
+                LunarLog.w(TAG, "Photo " + job.getFileName() + " kept in the journal, retried on next start.");
+            }
+        }
+    };
+
+    /**
+     * Writes the camera JPEG and the job's sidecar and syncs both to disk.
+     */
+    void append(CaptureJob job, byte[] jpeg, int frameWidth, int frameHeight, int sensorRotation)
+            throws IOException, JSONException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        String name = job.getFileName();
+        JSONObject sidecar = new JSONObject()
+                .put(KEY_REAL_TIME, job.getRealTime())
+                .put(KEY_ASSIGNED_TIME, job.getAssignedTime())
+                .put(KEY_COMPANY_NAME, job.getCompanyName())
+                .put(KEY_EXIF_ORIENTATION, job.isExifOrientation())
+                .put(KEY_BAND_COMPOSITING, job.isBandCompositing())
+                .put(KEY_YUV_OVERLAY, job.isYuvOverlay())
+                .put(KEY_JPEG_SPLICE, job.isJpegSplice())
+                .put(KEY_WATERMARK_TEMPLATE, job.getWatermarkTemplate())
+                .put(KEY_ENCODER_PROFILE, job.getEncoderProfile())
+                .put(KEY_FRAME_WIDTH, frameWidth)
+                .put(KEY_FRAME_HEIGHT, frameHeight)
+                .put(KEY_SENSOR_ROTATION, sensorRotation)
+                .put(KEY_ATTEMPTS, 0);
+        Location location = job.getLocation();
+        if (location != null) {
+            sidecar.put(KEY_LOCATION, new JSONObject()
+                    .put("provider", location.getProvider())
+                    .put("lat", location.getLatitude())
+                    .put("lon", location.getLongitude())
+                    .put("accuracy", (double) location.getAccuracy())
+                    .put("time", location.getTime()));
+        }
+
+        writeDurably(new File(directory, name + FRAME_SUFFIX), jpeg);
+        writeDurably(new File(directory, name + SIDECAR_SUFFIX), sidecar.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Records that the photo is saved and in the database, so a restart only re-arms its alarm.
+     */
+    void markPersisted(CaptureJob job) {
+        File sidecarFile = new File(directory, job.getFileName() + SIDECAR_SUFFIX);
+        try {
+            JSONObject sidecar = readSidecar(sidecarFile);
+            sidecar.put(KEY_PHOTO_ID, job.getPhotoId()).put(KEY_FILE_PATH, job.getFilePath());
+            writeDurably(sidecarFile, sidecar.toString().getBytes(StandardCharsets.UTF_8));
+            // The frame is no longer needed
+            deleteQuietly(new File(directory, job.getFileName() + FRAME_SUFFIX));
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Could not mark " + job.getFileName() + " as saved: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finishes the photos an earlier process left in the journal, on a background thread.
+     */
+    public void recoverAsync() {
+        Thread thread = new Thread(this::recover, "LunarTag-Journal");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    // --- Recovery (background thread) ---
+
+    private void recover() {
+        pruneFailed();
+        File[] files = directory.listFiles();
+        if (files == null || files.length == 0) return;
+        Arrays.sort(files); // Oldest photo first: names carry the capture time
+
+        List<File> sidecars = new ArrayList<>();
+        for (File file : files) {
+            String fileName = file.getName();
+            if (fileName.endsWith(TEMP_SUFFIX)) {
+                deleteQuietly(file); // Interrupted write
+            } else if (captureTime(fileName) >= createdMillis) {
+                continue; // A photo of this process, still in the pipeline
+            } else if (fileName.endsWith(SIDECAR_SUFFIX)) {
+                sidecars.add(file);
+            } else if (fileName.endsWith(FRAME_SUFFIX)
+                    && !new File(directory, baseName(fileName) + SIDECAR_SUFFIX).exists()) {
+                deleteQuietly(file); // The process died before the sidecar was written
+            }
+        }
+        if (sidecars.isEmpty()) return;
+
+        LunarLog.i(TAG, "Recovering " + sidecars.size() + " photo(s) interrupted by a restart...");
+        CapturePipeline pipeline = CapturePipeline.getInstance(context);
+        for (File sidecarFile : sidecars) {
+            String name = baseName(sidecarFile.getName());
+            try {
+                JSONObject sidecar = readSidecar(sidecarFile);
+                int attempts = sidecar.optInt(KEY_ATTEMPTS) + 1;
+                if (attempts > MAX_ATTEMPTS) {
+                    moveToFailed(name);
+                    continue;
+                }
+                // Counted before the retry, so a photo that crashes the process cannot loop forever
+                sidecar.put(KEY_ATTEMPTS, attempts);
+                writeDurably(sidecarFile, sidecar.toString().getBytes(StandardCharsets.UTF_8));
+
+                if (sidecar.has(KEY_PHOTO_ID)) {
+                    rearmAlarm(name, sidecar.getLong(KEY_PHOTO_ID), sidecar.getString(KEY_FILE_PATH),
+                            sidecar.getLong(KEY_ASSIGNED_TIME));
+                    continue;
+                }
+                Photo saved = AppDatabase.getDatabase(context).photoDao()
+                        .getPhotoByCaptureTime(sidecar.getLong(KEY_REAL_TIME));
+                if (saved != null) {
+                    rearmAlarm(name, saved.getId(), saved.getFilePath(), saved.getAssignedTimestamp());
+                    continue;
+                }
+                File frame = new File(directory, name + FRAME_SUFFIX);
+                CaptureJob job = rebuildJob(sidecar, readFully(frame));
+                pipeline.submitRecovered(job);
+            } catch (IOException | JSONException | RuntimeException e) {
+                Log.e(TAG, "Could not recover " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private CaptureJob rebuildJob(JSONObject sidecar, byte[] jpeg) throws JSONException {
+        CaptureJob job = new CaptureJob(sidecar.getLong(KEY_REAL_TIME), jpeg,
+                sidecar.getInt(KEY_FRAME_WIDTH), sidecar.getInt(KEY_FRAME_HEIGHT), sidecar.getInt(KEY_SENSOR_ROTATION));
+        job.setAssignedTime(sidecar.getLong(KEY_ASSIGNED_TIME));
+        job.setCompanyName(sidecar.optString(KEY_COMPANY_NAME, null));
+        job.setExifOrientation(sidecar.getBoolean(KEY_EXIF_ORIENTATION));
+        job.setBandCompositing(sidecar.getBoolean(KEY_BAND_COMPOSITING));
+        job.setYuvOverlay(sidecar.getBoolean(KEY_YUV_OVERLAY));
+        job.setJpegSplice(sidecar.getBoolean(KEY_JPEG_SPLICE));
+        job.setWatermarkTemplate(sidecar.getString(KEY_WATERMARK_TEMPLATE));
+        job.setEncoderProfile(sidecar.getString(KEY_ENCODER_PROFILE));
+        JSONObject loc = sidecar.optJSONObject(KEY_LOCATION);
+        if (loc != null) {
+            Location location = new Location(loc.optString("provider", "journal"));
+            location.setLatitude(loc.getDouble("lat"));
+            location.setLongitude(loc.getDouble("lon"));
+            location.setAccuracy((float) loc.getDouble("accuracy"));
+            location.setTime(loc.getLong("time"));
+            job.setLocation(location);
+        }
+        return job;
+    }
+
+    private void rearmAlarm(String name, long photoId, String filePath, long assignedTime) {
+        Scheduler.schedulePhotoSend(context, photoId, filePath, assignedTime);
+        remove(name);
+    }
+
+    private void moveToFailed(String name) {
+        File failed = new File(directory, FAILED_DIRECTORY);
+        if (!failed.isDirectory() && !failed.mkdirs()) return;
+        for (String suffix : new String[]{FRAME_SUFFIX, SIDECAR_SUFFIX}) {
+            File file = new File(directory, name + suffix);
+            if (file.exists() && !file.renameTo(new File(failed, file.getName()))) {
+                Log.e(TAG, "Could not move " + file.getName() + " out of the journal.");
+            }
+        }
+        LunarLog.e(TAG, "Photo " + name + " failed " + MAX_ATTEMPTS + " times; kept in " + failed);
+        pruneFailed();
+    }
+
+    /**
+     * Deletes the oldest photos in the failed folder beyond {@link #MAX_FAILED}.
+     */
+    private void pruneFailed() {
+        File[] files = new File(directory, FAILED_DIRECTORY).listFiles();
+        if (files == null) return;
+        Arrays.sort(files); // Oldest photo first
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            String name = baseName(file.getName());
+            if (names.isEmpty() || !names.get(names.size() - 1).equals(name)) names.add(name);
+        }
+        int excess = names.size() - MAX_FAILED;
+        if (excess <= 0) return;
+        for (File file : files) {
+            if (names.indexOf(baseName(file.getName())) < excess) deleteQuietly(file);
+        }
+        LunarLog.w(TAG, "Deleted the " + excess + " oldest failed photo(s) from " + FAILED_DIRECTORY + ".");
+    }
+
+    // --- Files ---
+
+    private void remove(String name) {
+        deleteQuietly(new File(directory, name + FRAME_SUFFIX));
+        deleteQuietly(new File(directory, name + SIDECAR_SUFFIX));
+    }
+
+    /**
+     * Writes to a temporary file, syncs it and renames it into place, so a reader never sees
+     * half a file.
+     */
+    private static void writeDurably(File target, byte[] bytes) throws IOException {
+        File temp = new File(target.getPath() + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(target)) {
+            deleteQuietly(temp);
+            throw new IOException("Cannot rename " + temp + " to " + target.getName());
+        }
+    }
+
+    private static JSONObject readSidecar(File file) throws IOException, JSONException {
+        return new JSONObject(new String(readFully(file), StandardCharsets.UTF_8));
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, bytes.length - offset);
+                if (read < 0) throw new IOException("Unexpected end of " + file.getName());
+                offset += read;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * The capture time in a journal file name ("LunarTag_&lt;time&gt;.jpg"), or 0 if it has none.
+     */
+    private static long captureTime(String fileName) {
+        String name = baseName(fileName);
+        try {
+            return Long.parseLong(name.substring(name.lastIndexOf('_') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String baseName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? fileName : fileName.substring(0, dot);
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+}
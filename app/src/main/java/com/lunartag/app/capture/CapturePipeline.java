@@ -0,0 +1,352 @@
+package com.lunartag.app.capture;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import com.lunartag.app.diagnostics.CaptureMetrics;
+import com.lunartag.app.diagnostics.LunarLog;
+import com.lunartag.app.utils.ImageUtils;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The staged capture engine.
+ * A shutter press only has to hand its frame to the first stage; the work then flows
+ * convert -> annotate -> encode -> persist -> schedule through bounded queues, with
+ * each stage running on its own worker threads. While photo N is being written to disk,
+ * photo N+1 can already be watermarked and photo N+2 converted.
+ *
+ * Back-pressure: the number of jobs in flight is capped. The UI reserves a slot before
+ * asking the sensor for a frame ({@link #tryReserve()}) and is told through
+ * {@link Listener#onCapacityChanged(boolean)} when the buffer is full or free again.
+ *
+ * Every stage, the wait between stages and the whole trip are timed into
+ * {@link CaptureMetrics}.
+ *
+ * The pipeline is process-scoped (like {@link com.lunartag.app.data.AppDatabase}) so that
+ * leaving the camera tab does not cancel photos that are still being saved.
+ *
+ * UPDATED: Every frame is written to the {@link CaptureJournal} before it is queued, so photos
+ * in flight also survive the process being killed; they are finished on the next start.
+ * The journal write happens in {@link #submit} on the capture callback thread: a frame
+ * waiting for the first stage is already safe.
+ */
+public class CapturePipeline {
+
+    private static final String TAG = "CapturePipeline";
+
+    // Maximum number of photos between the shutter and the end of the last stage.
+    // Each job can hold a full-resolution bitmap, so keep this small on low-RAM devices.
+    public static final int DEFAULT_MAX_IN_FLIGHT = 3;
+
+    /**
+     * Receives pipeline events. All callbacks arrive on pipeline worker threads;
+     * UI code must post to the main thread itself.
+     */
+    public interface Listener {
+        void onCapacityChanged(boolean full);
+        void onJobCompleted(CaptureJob job);
+        void onJobFailed(CaptureJob job, String stageName, Exception error);
+    }
+
+    private static volatile CapturePipeline INSTANCE;
+
+    /**
+     * Returns the shared pipeline, creating it with the default stages on first use.
+     */
+    public static CapturePipeline getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (CapturePipeline.class) {
+                if (INSTANCE == null) {
+                    CapturePipeline pipeline = new CapturePipeline(context, DEFAULT_MAX_IN_FLIGHT);
+                    // Stage, worker threads, input queue capacity
+                    pipeline.addStage(new ConvertStage(), 1, DEFAULT_MAX_IN_FLIGHT)
+                            .addStage(new AnnotateStage(), 1, 2)
+                            .addStage(new EncodeStage(), 2, 2)
+                            .addStage(new PersistStage(), 1, 2)
+                            .addStage(new ScheduleStage(), 1, 2);
+                    pipeline.addListener(CaptureJournal.getInstance(context).pipelineListener);
+                    pipeline.start();
+                    INSTANCE = pipeline;
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final Context appContext;
+    private final int maxInFlight;
+    private final Semaphore admission;
+    private final AtomicBoolean reportedFull = new AtomicBoolean(false);
+    private final List<StageRunner> runners = new ArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Runs the CameraX capture callbacks. Owned here (not by the Fragment) so a callback
+    // that arrives after the camera view is destroyed still reaches the pipeline.
+    private final ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+
+    private boolean started = false;
+
+    public CapturePipeline(Context context, int maxInFlight) {
+        this.appContext = context.getApplicationContext();
+        this.maxInFlight = maxInFlight;
+        this.admission = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Appends a stage. Must be called before {@link #start()}.
+     * @param stage The stage implementation.
+     * @param workers Number of threads working this stage in parallel.
+     * @param queueCapacity How many jobs may wait in front of this stage.
+     */
+    public CapturePipeline addStage(CaptureStage stage, int workers, int queueCapacity) {
+        if (started) {
+            throw new IllegalStateException("Cannot add stages to a running pipeline.");
+        }
+        // The first queue must be able to hold every admitted job, so submit() never blocks.
+        int capacity = runners.isEmpty() ? Math.max(queueCapacity, maxInFlight) : queueCapacity;
+        StageRunner runner = new StageRunner(stage, Math.max(1, workers), Math.max(1, capacity));
+        if (!runners.isEmpty()) {
+            runners.get(runners.size() - 1).next = runner;
+        }
+        runners.add(runner);
+        return this;
+    }
+
+    /**
+     * Starts the worker threads of every stage.
+     */
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        for (StageRunner runner : runners) {
+            runner.startWorkers();
+        }
+        Log.d(TAG, "Capture pipeline started with " + runners.size() + " stages.");
+    }
+
+    /**
+     * Default for band compositing: on for devices the system flags as low-RAM.
+     */
+    public static boolean isLowMemoryDevice(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager != null && activityManager.isLowRamDevice();
+    }
+
+    public Context getContext() {
+        return appContext;
+    }
+
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    public void addListener(Listener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Claims room for one more photo. Call this BEFORE asking the camera for a frame.
+     * @return false if the buffer is full and the shutter should wait.
+     */
+    public boolean tryReserve() {
+        boolean reserved = admission.tryAcquire();
+        updateCapacity();
+        return reserved;
+    }
+
+    /**
+     * Gives back a reservation that will not be used (e.g. the sensor capture failed).
+     */
+    public void cancelReservation() {
+        admission.release();
+        updateCapacity();
+    }
+
+    /**
+     * Hands a captured frame to the first stage. The caller must hold a reservation.
+     * A camera JPEG is first copied out of the frame (the only copy; the stages work from it),
+     * the frame goes back to CameraX and the copy is synced to the journal. Blocks for that
+     * write, but never on the queue: the first queue is sized for every admitted job.
+     */
+    public void submit(CaptureJob job) {
+        if (job.getImageProxy() != null) {
+            journal(job);
+        }
+        job.setQueuedNanos(System.nanoTime());
+        if (!started || runners.isEmpty() || !runners.get(0).queue.offer(job)) {
+            failJob(job, "submit", new IllegalStateException("Capture pipeline is not accepting jobs."));
+        }
+    }
+
+    /**
+     * Hands a job rebuilt from the journal to the pipeline, waiting for room first.
+     * Blocks, so call it from a background thread.
+     */
+    public void submitRecovered(CaptureJob job) {
+        admission.acquireUninterruptibly();
+        updateCapacity();
+        submit(job);
+    }
+
+    /**
+     * Moves the camera JPEG from the sensor frame onto the job and writes it to the journal.
+     * A frame that is not a JPEG (a YUV capture) stays on the job and is not journaled.
+     */
+    private void journal(CaptureJob job) {
+        ImageProxy imageProxy = job.getImageProxy();
+        long start = System.nanoTime();
+        byte[] jpeg = ImageUtils.imageProxyToJpegBytes(imageProxy);
+        if (jpeg == null) {
+            log("WARNING: Frame is not a JPEG, not journaled.");
+            return;
+        }
+        int width = imageProxy.getWidth();
+        int height = imageProxy.getHeight();
+        int rotation = imageProxy.getImageInfo().getRotationDegrees();
+        imageProxy.close(); // The camera can deliver the next shot
+        job.setImageProxy(null);
+        job.setSourceJpeg(jpeg, width, height);
+        job.setRotationDegrees(rotation);
+        try {
+            CaptureJournal.getInstance(appContext).append(job, jpeg, width, height, rotation);
+            job.setJournaled(true);
+        } catch (IOException | JSONException e) {
+            // Storage full or unavailable: still process the photo, just without the safety net
+            log("WARNING: Capture journal write failed: " + e.getMessage());
+        }
+        CaptureMetrics.getInstance().record(CaptureMetrics.STAGE_JOURNAL, start);
+    }
+
+    public boolean isFull() {
+        return admission.availablePermits() == 0;
+    }
+
+    /**
+     * Number of photos currently between the shutter and the end of the pipeline.
+     */
+    public int getJobsInFlight() {
+        return maxInFlight - admission.availablePermits();
+    }
+
+    /**
+     * Progress message for the live log (shown on the camera screen's console).
+     */
+    public void log(String message) {
+        LunarLog.d(TAG, message);
+    }
+
+    private void completeJob(CaptureJob job) {
+        CaptureMetrics.getInstance().record(CaptureMetrics.TOTAL, job.getArrivalNanos());
+        job.releaseBuffers();
+        admission.release();
+        for (Listener listener : listeners) {
+            listener.onJobCompleted(job);
+        }
+        updateCapacity();
+    }
+
+    private void failJob(CaptureJob job, String stageName, Exception error) {
+        Log.e(TAG, "Capture job failed in stage '" + stageName + "'", error);
+        LunarLog.e(TAG, "CRITICAL ERROR in '" + stageName + "': " + error.getMessage());
+        job.releaseBuffers();
+        admission.release();
+        for (Listener listener : listeners) {
+            listener.onJobFailed(job, stageName, error);
+        }
+        updateCapacity();
+    }
+
+    private void updateCapacity() {
+        boolean full = isFull();
+        if (reportedFull.getAndSet(full) != full) {
+            for (Listener listener : listeners) {
+                listener.onCapacityChanged(full);
+            }
+        }
+    }
+
+    /**
+     * One stage, its input queue and its worker threads.
+     */
+    private class StageRunner {
+        final CaptureStage stage;
+        final int workers;
+        final BlockingQueue<CaptureJob> queue;
+        StageRunner next;
+
+        StageRunner(CaptureStage stage, int workers, int capacity) {
+            this.stage = stage;
+            this.workers = workers;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void startWorkers() {
+            for (int i = 0; i < workers; i++) {
+                Thread thread = new Thread(this::workLoop, "LunarTag-" + stage.getName() + "-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        private void workLoop() {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            while (true) {
+                CaptureJob job;
+                try {
+                    job = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                CaptureMetrics metrics = CaptureMetrics.getInstance();
+                metrics.record(CaptureMetrics.QUEUE_WAIT, job.getQueuedNanos());
+                long start = System.nanoTime();
+                try {
+                    stage.process(job, CapturePipeline.this);
+                    metrics.record(stage.getName(), start);
+                } catch (Exception e) {
+                    failJob(job, stage.getName(), e);
+                    continue;
+                } catch (OutOfMemoryError e) {
+                    failJob(job, stage.getName(), new Exception("Out of memory", e));
+                    continue;
+                }
+
+                if (next == null) {
+                    completeJob(job);
+                    continue;
+                }
+                try {
+                    // Blocks while the next stage is saturated, which pushes back on this one.
+                    job.setQueuedNanos(System.nanoTime());
+                    next.queue.put(job);
+                } catch (InterruptedException e) {
+                    failJob(job, stage.getName(), e);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.lunartag.app.capture;
+
+/**
+ * One step of the {@link CapturePipeline}.
+ * A stage receives a job, does its part of the work and returns. Throwing an
+ * exception marks the job as failed and it is not handed to the next stage.
+ */
+public interface CaptureStage {
+
+    /**
+     * A short name used in logs and error reports (e.g. "encode").
+     */
+    String getName();
+
+    /**
+     * Performs this stage's work on the job. Runs on one of the stage's worker threads.
+     * @param job The job to work on.
+     * @param pipeline The pipeline running the stage (gives access to the Context and the log).
+     */
+    void process(CaptureJob job, CapturePipeline pipeline) throws Exception;
+}
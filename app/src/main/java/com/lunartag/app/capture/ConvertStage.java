@@ -0,0 +1,146 @@
+package com.lunartag.app.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+
+import androidx.camera.core.ImageProxy;
+
+import com.lunartag.app.diagnostics.CaptureMetrics;
+import com.lunartag.app.utils.ImageUtils;
+
+/**
+ * Stage 1: Turns the sensor frame into a Bitmap and gives the frame back to CameraX
+ * as early as possible, so the camera can deliver the next shot.
+ * In EXIF orientation mode the pixels stay in sensor orientation and only the rotation
+ * is remembered, so no second full-resolution bitmap is ever allocated.
+ * In band compositing mode the frame is kept as NV21 and no full ARGB bitmap exists at all.
+ * In JPEG splice mode a camera JPEG is not decoded here at all: the annotate stage
+ * stamps it in place and only decodes it (see {@link #decodeSourceJpeg}) if that fails.
+ * UPDATED: Jobs recovered from the {@link CaptureJournal} carry the journaled camera JPEG
+ * instead of a sensor frame; it is converted the same way the live frame would have been.
+ * UPDATED: Live camera JPEGs arrive the same way: {@link CapturePipeline#submit} copies them
+ * out of the frame once for the journal and closes the frame, so only YUV captures still
+ * come with a sensor frame here.
+ */
+class ConvertStage implements CaptureStage {
+
+    @Override
+    public String getName() {
+        return "convert";
+    }
+
+    @Override
+    public void process(CaptureJob job, CapturePipeline pipeline) throws Exception {
+        if (job.getSourceJpeg() != null) {
+            convertSourceJpeg(job, pipeline);
+            return;
+        }
+
+        ImageProxy imageProxy = job.getImageProxy();
+        if (imageProxy == null) {
+            throw new IllegalStateException("Job has no sensor frame.");
+        }
+
+        if (job.isBandCompositing()) {
+            convertToNv21(job, imageProxy, pipeline);
+            return;
+        }
+
+        pipeline.log("System: Converting YUV to Bitmap...");
+        Bitmap bitmap;
+        try {
+            boolean rotatePixels = !job.isExifOrientation();
+            long start = System.nanoTime();
+            bitmap = ImageUtils.imageProxyToBitmap(imageProxy, rotatePixels);
+            CaptureMetrics.getInstance().record(CaptureMetrics.TO_BITMAP, start);
+            if (!rotatePixels) {
+                job.setRotationDegrees(imageProxy.getImageInfo().getRotationDegrees());
+            }
+        } finally {
+            // Release the camera buffer immediately, whatever happened.
+            imageProxy.close();
+            job.setImageProxy(null);
+        }
+
+        if (bitmap == null) {
+            throw new IllegalStateException("Failed to convert image to bitmap.");
+        }
+        job.setBitmap(bitmap);
+    }
+
+    private void convertToNv21(CaptureJob job, ImageProxy imageProxy, CapturePipeline pipeline) {
+        pipeline.log("System: Extracting NV21 frame (low-memory mode)...");
+        byte[] nv21;
+        int width = imageProxy.getWidth();
+        int height = imageProxy.getHeight();
+        try {
+            nv21 = ImageUtils.imageProxyToNv21(imageProxy);
+            // The band path never rotates pixels; the rotation always goes to EXIF
+            job.setRotationDegrees(imageProxy.getImageInfo().getRotationDegrees());
+        } finally {
+            imageProxy.close();
+            job.setImageProxy(null);
+        }
+
+        if (nv21 == null) {
+            throw new IllegalStateException("Failed to convert image to NV21.");
+        }
+        job.setNv21(nv21, width, height);
+    }
+
+    /**
+     * The camera JPEG arrives with the sensor rotation already set on the job.
+     */
+    private void convertSourceJpeg(CaptureJob job, CapturePipeline pipeline) {
+        int rotation = job.getRotationDegrees();
+        // Splicing cannot rotate pixels, so it needs the rotation to go to EXIF
+        boolean rotationInExif = job.isExifOrientation() || job.isBandCompositing() || rotation == 0;
+        if (job.isJpegSplice() && rotationInExif) {
+            pipeline.log("System: Keeping camera JPEG for in-place stamping...");
+            return;
+        }
+        long start = System.nanoTime();
+        decodeSourceJpeg(job, pipeline);
+        CaptureMetrics.getInstance().record(CaptureMetrics.TO_BITMAP, start);
+        Bitmap bitmap = job.getBitmap();
+        if (!rotationInExif && bitmap != null) {
+            Matrix matrix = new Matrix();
+            matrix.postRotate(rotation);
+            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+            if (rotated != bitmap) bitmap.recycle();
+            job.setBitmap(rotated);
+            job.setRotationDegrees(0);
+        }
+    }
+
+    /**
+     * Fallback for JPEG splice mode when the camera file cannot be spliced: decodes the kept
+     * JPEG the way this stage would have (NV21 in band mode, otherwise a Bitmap). The
+     * rotation stays in EXIF either way.
+     */
+    static void decodeSourceJpeg(CaptureJob job, CapturePipeline pipeline) {
+        byte[] jpeg = job.getSourceJpeg();
+        int width = job.getFrameWidth();
+        int height = job.getFrameHeight();
+        job.setSourceJpeg(null, 0, 0);
+        if (jpeg == null) {
+            throw new IllegalStateException("Job has no camera JPEG.");
+        }
+
+        if (job.isBandCompositing()) {
+            pipeline.log("System: Extracting NV21 frame (low-memory mode)...");
+            byte[] nv21 = ImageUtils.jpegToNv21(jpeg, width, height);
+            if (nv21 == null) {
+                throw new IllegalStateException("Failed to convert image to NV21.");
+            }
+            job.setNv21(nv21, width, height);
+        } else {
+            pipeline.log("System: Decoding JPEG to Bitmap...");
+            Bitmap bitmap = ImageUtils.jpegToBitmap(jpeg);
+            if (bitmap == null) {
+                throw new IllegalStateException("Failed to convert image to bitmap.");
+            }
+            job.setBitmap(bitmap);
+        }
+    }
+}
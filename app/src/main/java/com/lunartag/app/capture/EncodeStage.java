@@ -0,0 +1,136 @@
+package com.lunartag.app.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.location.Location;
+import android.os.Build;
+import android.util.Log;
+
+import com.lunartag.app.encode.EncoderProfile;
+import com.lunartag.app.encode.ImageEncoders;
+import com.lunartag.app.encode.OutputFormat;
+import com.lunartag.app.utils.ExifWriter;
+import com.lunartag.app.utils.PhotoThumbnails;
+
+import java.io.ByteArrayOutputStream;
+import java.util.TimeZone;
+
+/**
+ * Stage 3: Compresses the watermarked photo in memory, as the job's {@link EncoderProfile} says.
+ * The full-resolution bitmap is freed as soon as the bytes exist.
+ * JPEG output gets its EXIF block here, in memory (see {@link #withMetadata}), so the file is
+ * written once with its metadata.
+ * NV21 frames (band compositing mode) are encoded by YuvImage without ever becoming a Bitmap.
+ * Spliced camera JPEGs arrive already encoded and only get their EXIF block and thumbnails here.
+ * UPDATED: Format, quality and size come from the encoder profile. The NV21 and splice modes
+ * exist to avoid a full bitmap, so they stay JPEG at full size (NV21 takes the profile's quality).
+ * UPDATED: The EXIF block now carries GPS, capture time and the audit payload, not only the
+ * orientation. A camera JPEG's own EXIF block is replaced by it; the camera's shooting
+ * settings (exposure, ISO, lens...) are carried over into the new block.
+ * UPDATED: Also makes the photo's thumbnails from the frame in memory: the upright list
+ * thumbnail (saved by the persist stage) and the small one embedded in the EXIF block.
+ */
+class EncodeStage implements CaptureStage {
+
+    private static final String TAG = "EncodeStage";
+
+    @Override
+    public String getName() {
+        return "encode";
+    }
+
+    @Override
+    public void process(CaptureJob job, CapturePipeline pipeline) throws Exception {
+        EncoderProfile profile = EncoderProfile.forId(job.getEncoderProfile());
+        if (job.getNv21() != null) {
+            encodeNv21(job, profile);
+            return;
+        }
+
+        Bitmap bitmap = job.getBitmap();
+        if (bitmap == null && job.getEncodedBytes() != null) {
+            // Already encoded by the JPEG splice in the annotate stage
+            byte[] exifThumbnail = makeThumbnails(job, PhotoThumbnails.decodeSmall(job.getEncodedBytes()));
+            job.setEncodedBytes(withMetadata(job, job.getEncodedBytes(), exifThumbnail));
+            job.setEncodedFormat(OutputFormat.JPEG);
+            return;
+        }
+        if (bitmap == null) {
+            throw new IllegalStateException("Nothing to encode.");
+        }
+
+        // Before encoding, while the rotation still describes the bitmap's pixels
+        byte[] exifThumbnail = makeThumbnails(job, PhotoThumbnails.scaleDown(bitmap));
+        ImageEncoders.Encoded encoded =
+                ImageEncoders.encode(pipeline.getContext(), profile, bitmap, job.getRotationDegrees());
+        if (encoded.isRotationApplied()) {
+            job.setRotationDegrees(0);
+        }
+        job.setEncodedFormat(encoded.getFormat());
+        // WebP and HEIF are saved without EXIF; their rotation is already in the pixels
+        job.setEncodedBytes(encoded.getFormat() == OutputFormat.JPEG
+                ? withMetadata(job, encoded.getBytes(), exifThumbnail) : encoded.getBytes());
+
+        bitmap.recycle();
+        job.setBitmap(null);
+    }
+
+    private void encodeNv21(CaptureJob job, EncoderProfile profile) {
+        int width = job.getFrameWidth();
+        int height = job.getFrameHeight();
+        YuvImage yuvImage = new YuvImage(job.getNv21(), ImageFormat.NV21, width, height, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(width * height / 2);
+        if (!yuvImage.compressToJpeg(new Rect(0, 0, width, height), profile.getQuality(), out)) {
+            throw new IllegalStateException("JPEG encoder rejected the NV21 frame.");
+        }
+        job.setNv21(null, 0, 0);
+        job.setEncodedFormat(OutputFormat.JPEG);
+        byte[] jpegBytes = out.toByteArray();
+        byte[] exifThumbnail = makeThumbnails(job, PhotoThumbnails.decodeSmall(jpegBytes));
+        job.setEncodedBytes(withMetadata(job, jpegBytes, exifThumbnail));
+    }
+
+    /**
+     * Adds the EXIF block: orientation, real capture time, GPS from the capture's location and
+     * the real and assigned timestamps as JSON in ImageDescription (same payload as
+     * {@link com.lunartag.app.utils.ExifUtils}).
+     */
+    private byte[] withMetadata(CaptureJob job, byte[] jpegBytes, byte[] exifThumbnail) {
+        ExifWriter.Metadata metadata = new ExifWriter.Metadata()
+                .setOrientation(ExifWriter.orientationForRotation(job.getRotationDegrees()))
+                .setCaptureTime(job.getRealTime(), TimeZone.getDefault())
+                .setDescription("{\"assignedTimestamp\":" + job.getAssignedTime()
+                        + ",\"captureTimestampReal\":" + job.getRealTime() + "}")
+                .setCamera(Build.MANUFACTURER, Build.MODEL)
+                .setThumbnail(exifThumbnail);
+        Location location = job.getLocation();
+        if (location != null) {
+            metadata.setLocation(location.getLatitude(), location.getLongitude(),
+                    location.hasAccuracy() ? location.getAccuracy() : 0, location.getTime());
+            if (location.hasAltitude()) {
+                metadata.setAltitude(location.getAltitude());
+            }
+        }
+        return ExifWriter.withMetadata(jpegBytes, metadata);
+    }
+
+    /**
+     * Stores the upright list thumbnail on the job and returns the EXIF one. A thumbnail that
+     * cannot be made is left out; it never costs the photo.
+     * @param small The frame scaled down, in the same orientation as the photo's pixels (recycled here).
+     */
+    private byte[] makeThumbnails(CaptureJob job, Bitmap small) {
+        if (small == null) return null;
+        try {
+            job.setThumbnailBytes(PhotoThumbnails.encodeUpright(small, job.getRotationDegrees()));
+            return PhotoThumbnails.encodeForExif(small);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Thumbnail not made: " + e.getMessage());
+            return null;
+        } finally {
+            small.recycle();
+        }
+    }
+}
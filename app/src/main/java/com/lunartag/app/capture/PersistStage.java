@@ -0,0 +1,221 @@
+package com.lunartag.app.capture;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.location.Location;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Environment;
+import android.provider.MediaStore;
+
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.diagnostics.CaptureMetrics;
+import com.lunartag.app.encode.OutputFormat;
+import com.lunartag.app.geocode.GeocodeCache;
+import com.lunartag.app.model.Photo;
+import com.lunartag.app.utils.PhotoThumbnails;
+import com.lunartag.app.utils.StorageUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stage 4: Writes the encoded photo to its destination and records it in the database.
+ * UPDATED: In internal storage mode both copies (app folder and public gallery) are written
+ * straight from the encoded bytes in memory, instead of writing the app copy and then reading
+ * it back to copy it into the gallery. The gallery item stays pending (hidden from other apps)
+ * until it is complete, and is removed again if the write fails.
+ * UPDATED: Saves the list thumbnail made by the encode stage and records it on the photo.
+ * UPDATED: A job recovered from the {@link CaptureJournal} may have written its copies before
+ * the process died (the journal only learns of the photo once it is in the database, and
+ * recovery skips photos that are). Its gallery and custom folder copies replace any of the
+ * same name instead of adding a second one; the app folder copy is overwritten anyway.
+ */
+class PersistStage implements CaptureStage {
+
+    private static final String GALLERY_PATH = Environment.DIRECTORY_PICTURES + File.separator + "LunarTag";
+
+    @Override
+    public String getName() {
+        return "persist";
+    }
+
+    @Override
+    public void process(CaptureJob job, CapturePipeline pipeline) throws Exception {
+        Context context = pipeline.getContext();
+        byte[] imageBytes = job.getEncodedBytes();
+        OutputFormat format = job.getEncodedFormat();
+        if (imageBytes == null) {
+            throw new IllegalStateException("Nothing to save.");
+        }
+
+        String absolutePath;
+        pipeline.log("System: Saving File...");
+        CaptureMetrics metrics = CaptureMetrics.getInstance();
+        long start = System.nanoTime();
+
+        // 1. Check if user selected a custom folder
+        if (StorageUtils.hasCustomFolder(context)) {
+            pipeline.log("Storage: Using User-Selected Folder (SD/External).");
+            absolutePath = StorageUtils.saveImageToCustomFolder(context, imageBytes, job.getFileName(),
+                    format.getMimeType(), format.getExtension(), job.isRecovered());
+        }
+        // 2. Fallback to Default Internal
+        else {
+            pipeline.log("Storage: Using Default Internal Storage.");
+            absolutePath = saveImageToInternalStorage(context, pipeline, imageBytes, job.getFileName(), format);
+            // If Internal, we also export to Gallery for visibility, from the same bytes
+            if (absolutePath != null) {
+                pipeline.log("Storage: Exporting copy to Public Gallery...");
+                exportToPublicGallery(context, pipeline, imageBytes, job.getFileName(), format, job.isRecovered());
+            }
+        }
+        job.setEncodedBytes(null);
+        metrics.record(CaptureMetrics.STORAGE_WRITE, start);
+
+        if (absolutePath == null) {
+            throw new IOException("File Write Failed! Check permissions.");
+        }
+        pipeline.log("SUCCESS: File Written. (" + absolutePath + ")");
+        job.setFilePath(absolutePath);
+
+        // Always in the app's own files, whichever storage the photo went to
+        String thumbnailPath = job.getThumbnailBytes() != null
+                ? PhotoThumbnails.save(context, job.getFileName(), job.getThumbnailBytes()) : null;
+        job.setThumbnailBytes(null);
+
+        start = System.nanoTime();
+        job.setPhotoId(savePhotoToDatabase(context, job, thumbnailPath));
+        metrics.record(CaptureMetrics.INSERT_PHOTO, start);
+        if (job.isJournaled()) {
+            // From here a restart only has to re-arm the alarm
+            CaptureJournal.getInstance(context).markPersisted(job);
+        }
+        pipeline.log("System: Database Updated.");
+        if (job.getAddress() == null && job.getAddressGeohash() != null) {
+            // The address may have been resolved while this photo was being processed
+            GeocodeCache.getInstance(context).fillPendingPhotos(job.getAddressGeohash());
+        }
+    }
+
+    private String saveImageToInternalStorage(Context context, CapturePipeline pipeline, byte[] imageBytes, String filename,
+                                              OutputFormat format) {
+        File directory = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        if (directory == null) {
+            pipeline.log("ERROR: External Files Dir is null!");
+            return null;
+        }
+        File file = new File(directory, filename + "." + format.getExtension());
+        long start = System.nanoTime();
+        try (OutputStream fos = new FileOutputStream(file)) {
+            fos.write(imageBytes);
+            CaptureMetrics.getInstance().record(CaptureMetrics.WRITE_APP_FOLDER, start);
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            pipeline.log("ERROR Saving IO: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds the photo to the public gallery (Pictures/LunarTag) in a single write.
+     * The app's own copy stays the one the database points to.
+     * @param replaceExisting Remove earlier entries of the same name first, finished or pending.
+     */
+    private void exportToPublicGallery(Context context, CapturePipeline pipeline, byte[] imageBytes, String filename,
+                                       OutputFormat format, boolean replaceExisting) {
+        ContentResolver resolver = context.getContentResolver();
+        String displayName = filename + "." + format.getExtension();
+        if (replaceExisting) {
+            deleteGalleryEntries(resolver, pipeline, displayName);
+        }
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, format.getMimeType());
+        contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, GALLERY_PATH);
+        // Hidden from the gallery and other apps until the bytes are complete
+        contentValues.put(MediaStore.MediaColumns.IS_PENDING, 1);
+
+        Uri imageUri = null;
+        long start = System.nanoTime();
+        try {
+            imageUri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, contentValues);
+            if (imageUri == null) {
+                pipeline.log("Export ERROR: Gallery entry could not be created.");
+                return;
+            }
+            try (OutputStream out = resolver.openOutputStream(imageUri)) {
+                if (out == null) throw new IOException("No output stream for " + imageUri);
+                out.write(imageBytes);
+            }
+            ContentValues done = new ContentValues();
+            done.put(MediaStore.MediaColumns.IS_PENDING, 0);
+            resolver.update(imageUri, done, null, null);
+            CaptureMetrics.getInstance().record(CaptureMetrics.WRITE_GALLERY, start);
+            pipeline.log("Export: Copy Success.");
+        } catch (Exception e) {
+            pipeline.log("Export EXCEPTION: " + e.getMessage());
+            if (imageUri != null) {
+                // Don't leave a half-written, invisible item behind
+                try {
+                    resolver.delete(imageUri, null, null);
+                } catch (Exception ignored) {
+                    // The system removes stale pending items by itself
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes this app's gallery entries with the given name, including pending ones that an
+     * interrupted write left behind.
+     */
+    private void deleteGalleryEntries(ContentResolver resolver, CapturePipeline pipeline, String displayName) {
+        String selection = MediaStore.MediaColumns.DISPLAY_NAME + " = ? AND "
+                + MediaStore.MediaColumns.RELATIVE_PATH + " = ?";
+        // The provider stores the relative path with a trailing separator
+        String[] selectionArgs = {displayName, GALLERY_PATH + File.separator};
+        try {
+            int deleted;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                Bundle extras = new Bundle();
+                extras.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+                extras.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+                extras.putInt(MediaStore.QUERY_ARG_MATCH_PENDING, MediaStore.MATCH_INCLUDE);
+                deleted = resolver.delete(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, extras);
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                deleted = resolver.delete(MediaStore.setIncludePending(MediaStore.Images.Media.EXTERNAL_CONTENT_URI),
+                        selection, selectionArgs);
+            } else {
+                return; // No relative paths before Android 10
+            }
+            if (deleted > 0) pipeline.log("Export: Replacing " + deleted + " earlier gallery copy.");
+        } catch (RuntimeException e) {
+            // At worst the gallery shows the photo twice
+            pipeline.log("Export WARNING: Earlier gallery copy not checked: " + e.getMessage());
+        }
+    }
+
+    private long savePhotoToDatabase(Context context, CaptureJob job, String thumbnailPath) {
+        Photo photo = new Photo();
+        photo.setFilePath(job.getFilePath());
+        photo.setThumbnailPath(thumbnailPath);
+        photo.setCaptureTimestampReal(job.getRealTime());
+        photo.setAssignedTimestamp(job.getAssignedTime());
+        photo.setCreatedAt(System.currentTimeMillis());
+        photo.setStatus("PENDING");
+        Location loc = job.getLocation();
+        if (loc != null) {
+            photo.setLat(loc.getLatitude());
+            photo.setLon(loc.getLongitude());
+            photo.setAccuracyMeters(loc.getAccuracy());
+        }
+        photo.setAddressHuman(job.getAddress());
+        photo.setAddressGeohash(job.getAddressGeohash());
+        return AppDatabase.getDatabase(context).photoDao().insertPhoto(photo);
+    }
+}
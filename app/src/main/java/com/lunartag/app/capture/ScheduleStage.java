@@ -0,0 +1,28 @@
+package com.lunartag.app.capture;
+
+import com.lunartag.app.diagnostics.CaptureMetrics;
+import com.lunartag.app.utils.Scheduler;
+
+/**
+ * Stage 5: Arms the exact alarm that will offer the photo for sending at its assigned time.
+ */
+class ScheduleStage implements CaptureStage {
+
+    @Override
+    public String getName() {
+        return "schedule";
+    }
+
+    @Override
+    public void process(CaptureJob job, CapturePipeline pipeline) throws Exception {
+        pipeline.log("System: Scheduling Alarm for Photo ID: " + job.getPhotoId());
+        long start = System.nanoTime();
+        Scheduler.schedulePhotoSend(
+                pipeline.getContext(),
+                job.getPhotoId(),
+                job.getFilePath(),
+                job.getAssignedTime()
+        );
+        CaptureMetrics.getInstance().record(CaptureMetrics.SCHEDULE_SEND, start);
+    }
+}
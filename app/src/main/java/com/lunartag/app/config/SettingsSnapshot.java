@@ -0,0 +1,332 @@
+package com.lunartag.app.config;
+
+/**
+ * Every setting of the app at one moment, as read from the {@link SettingsStore}.
+ *
+ * Immutable, so it can be handed to any thread and read without locks. A change is made
+ * by copying it into a {@link Builder} through {@link SettingsStore#update}.
+ */
+public final class SettingsSnapshot {
+
+    public static final String DEFAULT_SHIFT_TIME = "00:00 AM";
+    public static final String DEFAULT_STAMP_COMPANY = "My Company"; // Stamped while no company is set
+    public static final String DEFAULT_WATERMARK_TEMPLATE = "default"; // WatermarkTemplate.DEFAULT_ID
+    public static final int DEFAULT_GEOHASH_PRECISION = 7; // About 150 m x 150 m
+    public static final String DEFAULT_ENCODER_PROFILE = "archive"; // EncoderProfile.DEFAULT_ID
+
+    // --- Settings screen ---
+    private final String companyName; // Null until the user sets one
+    private final String shiftStart;
+    private final String shiftEnd;
+    private final String whatsappGroup;
+    private final boolean exifOrientation;
+    private final Boolean bandCompositing; // Null: depends on the device
+    private final boolean mapInStamp;
+    private final boolean yuvOverlay;
+    private final boolean jpegSplice;
+    private final String watermarkTemplate;
+    private final String encoderProfile;
+    private final int geohashPrecision;
+    private final boolean logToFile;
+
+    // --- Remote feature toggles ---
+    private final boolean customTimestampEnabled;
+
+    // --- Auto-send bridge to the accessibility service ---
+    private final String targetGroupName;
+    private final boolean sendJobPending;
+
+    // --- Shift, storage and first launch ---
+    private final boolean shiftActive;
+    private final long lastShiftActionTime;
+    private final String customFolderUri;
+    private final boolean onboardingComplete;
+
+    private SettingsSnapshot(Builder builder) {
+        companyName = builder.companyName;
+        shiftStart = builder.shiftStart;
+        shiftEnd = builder.shiftEnd;
+        whatsappGroup = builder.whatsappGroup;
+        exifOrientation = builder.exifOrientation;
+        bandCompositing = builder.bandCompositing;
+        mapInStamp = builder.mapInStamp;
+        yuvOverlay = builder.yuvOverlay;
+        jpegSplice = builder.jpegSplice;
+        watermarkTemplate = builder.watermarkTemplate;
+        encoderProfile = builder.encoderProfile;
+        geohashPrecision = builder.geohashPrecision;
+        logToFile = builder.logToFile;
+        customTimestampEnabled = builder.customTimestampEnabled;
+        targetGroupName = builder.targetGroupName;
+        sendJobPending = builder.sendJobPending;
+        shiftActive = builder.shiftActive;
+        lastShiftActionTime = builder.lastShiftActionTime;
+        customFolderUri = builder.customFolderUri;
+        onboardingComplete = builder.onboardingComplete;
+    }
+
+    /**
+     * A snapshot with every setting at its default.
+     */
+    public static SettingsSnapshot defaults() {
+        return new Builder().build();
+    }
+
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    // --- Getters ---
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    /**
+     * The company name to stamp on photos, with a placeholder while none is set.
+     */
+    public String getStampCompanyName() {
+        return companyName != null ? companyName : DEFAULT_STAMP_COMPANY;
+    }
+
+    public String getShiftStart() {
+        return shiftStart;
+    }
+
+    public String getShiftEnd() {
+        return shiftEnd;
+    }
+
+    public String getWhatsappGroup() {
+        return whatsappGroup;
+    }
+
+    public boolean isExifOrientation() {
+        return exifOrientation;
+    }
+
+    /**
+     * @param deviceDefault Used while the user has not chosen (on for low-memory devices).
+     */
+    public boolean isBandCompositing(boolean deviceDefault) {
+        return bandCompositing != null ? bandCompositing : deviceDefault;
+    }
+
+    public Boolean getBandCompositing() {
+        return bandCompositing;
+    }
+
+    public boolean isMapInStamp() {
+        return mapInStamp;
+    }
+
+    public boolean isYuvOverlay() {
+        return yuvOverlay;
+    }
+
+    public boolean isJpegSplice() {
+        return jpegSplice;
+    }
+
+    public String getWatermarkTemplate() {
+        return watermarkTemplate;
+    }
+
+    public String getEncoderProfile() {
+        return encoderProfile;
+    }
+
+    public int getGeohashPrecision() {
+        return geohashPrecision;
+    }
+
+    public boolean isLogToFile() {
+        return logToFile;
+    }
+
+    public boolean isCustomTimestampEnabled() {
+        return customTimestampEnabled;
+    }
+
+    public String getTargetGroupName() {
+        return targetGroupName;
+    }
+
+    public boolean isSendJobPending() {
+        return sendJobPending;
+    }
+
+    public boolean isShiftActive() {
+        return shiftActive;
+    }
+
+    public long getLastShiftActionTime() {
+        return lastShiftActionTime;
+    }
+
+    public String getCustomFolderUri() {
+        return customFolderUri;
+    }
+
+    public boolean isOnboardingComplete() {
+        return onboardingComplete;
+    }
+
+    /**
+     * A mutable copy of a snapshot. Setters return the builder so changes can be chained.
+     */
+    public static final class Builder {
+        private String companyName;
+        private String shiftStart = DEFAULT_SHIFT_TIME;
+        private String shiftEnd = DEFAULT_SHIFT_TIME;
+        private String whatsappGroup = "";
+        private boolean exifOrientation = true;
+        private Boolean bandCompositing;
+        private boolean mapInStamp = false; // Opt-in: fetches tiles from the OSM server
+        private boolean yuvOverlay = false;
+        private boolean jpegSplice = true;
+        private String watermarkTemplate = DEFAULT_WATERMARK_TEMPLATE;
+        private String encoderProfile = DEFAULT_ENCODER_PROFILE;
+        private int geohashPrecision = DEFAULT_GEOHASH_PRECISION;
+        private boolean logToFile = false;
+        private boolean customTimestampEnabled = false;
+        private String targetGroupName;
+        private boolean sendJobPending = false;
+        private boolean shiftActive = false;
+        private long lastShiftActionTime = 0;
+        private String customFolderUri;
+        private boolean onboardingComplete = false;
+
+        public Builder() {}
+
+        private Builder(SettingsSnapshot snapshot) {
+            companyName = snapshot.companyName;
+            shiftStart = snapshot.shiftStart;
+            shiftEnd = snapshot.shiftEnd;
+            whatsappGroup = snapshot.whatsappGroup;
+            exifOrientation = snapshot.exifOrientation;
+            bandCompositing = snapshot.bandCompositing;
+            mapInStamp = snapshot.mapInStamp;
+            yuvOverlay = snapshot.yuvOverlay;
+            jpegSplice = snapshot.jpegSplice;
+            watermarkTemplate = snapshot.watermarkTemplate;
+            encoderProfile = snapshot.encoderProfile;
+            geohashPrecision = snapshot.geohashPrecision;
+            logToFile = snapshot.logToFile;
+            customTimestampEnabled = snapshot.customTimestampEnabled;
+            targetGroupName = snapshot.targetGroupName;
+            sendJobPending = snapshot.sendJobPending;
+            shiftActive = snapshot.shiftActive;
+            lastShiftActionTime = snapshot.lastShiftActionTime;
+            customFolderUri = snapshot.customFolderUri;
+            onboardingComplete = snapshot.onboardingComplete;
+        }
+
+        public Builder setCompanyName(String companyName) {
+            this.companyName = companyName;
+            return this;
+        }
+
+        public Builder setShiftStart(String shiftStart) {
+            this.shiftStart = shiftStart != null ? shiftStart : DEFAULT_SHIFT_TIME;
+            return this;
+        }
+
+        public Builder setShiftEnd(String shiftEnd) {
+            this.shiftEnd = shiftEnd != null ? shiftEnd : DEFAULT_SHIFT_TIME;
+            return this;
+        }
+
+        public Builder setWhatsappGroup(String whatsappGroup) {
+            this.whatsappGroup = whatsappGroup != null ? whatsappGroup : "";
+            return this;
+        }
+
+        public Builder setExifOrientation(boolean exifOrientation) {
+            this.exifOrientation = exifOrientation;
+            return this;
+        }
+
+        /**
+         * @param bandCompositing Null to follow the device default.
+         */
+        public Builder setBandCompositing(Boolean bandCompositing) {
+            this.bandCompositing = bandCompositing;
+            return this;
+        }
+
+        public Builder setMapInStamp(boolean mapInStamp) {
+            this.mapInStamp = mapInStamp;
+            return this;
+        }
+
+        public Builder setYuvOverlay(boolean yuvOverlay) {
+            this.yuvOverlay = yuvOverlay;
+            return this;
+        }
+
+        public Builder setJpegSplice(boolean jpegSplice) {
+            this.jpegSplice = jpegSplice;
+            return this;
+        }
+
+        public Builder setWatermarkTemplate(String watermarkTemplate) {
+            this.watermarkTemplate = watermarkTemplate != null ? watermarkTemplate : DEFAULT_WATERMARK_TEMPLATE;
+            return this;
+        }
+
+        public Builder setEncoderProfile(String encoderProfile) {
+            this.encoderProfile = encoderProfile != null ? encoderProfile : DEFAULT_ENCODER_PROFILE;
+            return this;
+        }
+
+        public Builder setGeohashPrecision(int geohashPrecision) {
+            this.geohashPrecision = geohashPrecision;
+            return this;
+        }
+
+        public Builder setLogToFile(boolean logToFile) {
+            this.logToFile = logToFile;
+            return this;
+        }
+
+        public Builder setCustomTimestampEnabled(boolean customTimestampEnabled) {
+            this.customTimestampEnabled = customTimestampEnabled;
+            return this;
+        }
+
+        public Builder setTargetGroupName(String targetGroupName) {
+            this.targetGroupName = targetGroupName;
+            return this;
+        }
+
+        public Builder setSendJobPending(boolean sendJobPending) {
+            this.sendJobPending = sendJobPending;
+            return this;
+        }
+
+        public Builder setShiftActive(boolean shiftActive) {
+            this.shiftActive = shiftActive;
+            return this;
+        }
+
+        public Builder setLastShiftActionTime(long lastShiftActionTime) {
+            this.lastShiftActionTime = lastShiftActionTime;
+            return this;
+        }
+
+        public Builder setCustomFolderUri(String customFolderUri) {
+            this.customFolderUri = customFolderUri;
+            return this;
+        }
+
+        public Builder setOnboardingComplete(boolean onboardingComplete) {
+            this.onboardingComplete = onboardingComplete;
+            return this;
+        }
+
+        public SettingsSnapshot build() {
+            return new SettingsSnapshot(this);
+        }
+    }
+}
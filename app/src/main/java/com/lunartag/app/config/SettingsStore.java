@@ -0,0 +1,270 @@
+package com.lunartag.app.config;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The one place the app's settings are read from and written to.
+ *
+ * The settings are loaded once, on a background thread started with the process, into an
+ * immutable {@link SettingsSnapshot}. {@link #get()} only reads a volatile field, so hot
+ * paths (every capture, every accessibility event) never touch SharedPreferences.
+ * {@link #update} publishes a new snapshot at once and writes it to disk in the background;
+ * a burst of changes costs one write.
+ *
+ * Everything lives in the "LunarTagConfig" file. On first use the six older preference files
+ * (settings, feature toggles, accessibility bridge, shift, storage and onboarding) are moved
+ * into it. The schedule file is not one of them: its slots moved to the database (SlotQueue).
+ */
+public class SettingsStore {
+
+    private static final String TAG = "SettingsStore";
+
+    private static final String PREFS_CONFIG = "LunarTagConfig";
+    private static final String KEY_CONFIG_VERSION = "config_version";
+    private static final int CONFIG_VERSION = 1;
+
+    // Where the settings lived before, moved on first use
+    private static final String PREFS_SETTINGS = "LunarTagSettings";
+    private static final String PREFS_TOGGLES = "LunarTagFeatureToggles";
+    private static final String PREFS_ACCESSIBILITY = "LunarTagAccessPrefs";
+    private static final String PREFS_SHIFT = "LunarTagShiftPrefs";
+    private static final String PREFS_STORAGE = "LunarTagStoragePrefs";
+    private static final String PREFS_ONBOARDING = "LunarTagPrefs";
+
+    // Keys, the same in the old files and in the new one
+    private static final String KEY_COMPANY_NAME = "company_name";
+    private static final String KEY_SHIFT_START = "shift_start";
+    private static final String KEY_SHIFT_END = "shift_end";
+    private static final String KEY_WHATSAPP_GROUP = "whatsapp_group";
+    private static final String KEY_EXIF_ORIENTATION = "exif_orientation";
+    private static final String KEY_BAND_COMPOSITING = "band_compositing";
+    private static final String KEY_MAP_IN_STAMP = "map_in_stamp";
+    private static final String KEY_YUV_OVERLAY = "yuv_overlay";
+    private static final String KEY_JPEG_SPLICE = "jpeg_splice";
+    private static final String KEY_WATERMARK_TEMPLATE = "watermark_template";
+    private static final String KEY_GEOHASH_PRECISION = "geohash_precision";
+    private static final String KEY_ENCODER_PROFILE = "encoder_profile";
+    private static final String KEY_LOG_TO_FILE = "log_to_file";
+    private static final String KEY_CUSTOM_TIMESTAMP_ENABLED = "customTimestampEnabled";
+    private static final String KEY_TARGET_GROUP = "target_group_name";
+    private static final String KEY_JOB_PENDING = "job_is_pending";
+    private static final String KEY_IS_SHIFT_ACTIVE = "is_shift_active";
+    private static final String KEY_LAST_ACTION_TIME = "last_action_time";
+    private static final String KEY_CUSTOM_FOLDER_URI = "custom_folder_tree_uri";
+    private static final String KEY_ONBOARDING_COMPLETE = "onboarding_complete";
+
+    /**
+     * Told about every change, on the main thread, in the order the changes were made.
+     */
+    public interface Listener {
+        void onSettingsChanged(SettingsSnapshot previous, SettingsSnapshot current);
+    }
+
+    /**
+     * A change to the settings, applied to a copy of the current snapshot.
+     */
+    public interface Change {
+        void apply(SettingsSnapshot.Builder settings);
+    }
+
+    private static volatile SettingsStore INSTANCE;
+
+    public static SettingsStore getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (SettingsStore.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SettingsStore(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "LunarTag-Config"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final AtomicBoolean persistQueued = new AtomicBoolean(false);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile SettingsSnapshot current; // Null until loaded
+
+    private SettingsStore(Context context) {
+        this.context = context;
+        executor.execute(() -> {
+            try {
+                current = load();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Settings could not be read, using defaults: " + e.getMessage());
+                current = SettingsSnapshot.defaults();
+            } finally {
+                loaded.countDown();
+            }
+        });
+    }
+
+    /**
+     * The current settings, from any thread and without locks.
+     * Only the very first call of the process may wait for the settings to be read.
+     */
+    public SettingsSnapshot get() {
+        SettingsSnapshot snapshot = current;
+        if (snapshot != null) return snapshot;
+        awaitLoaded();
+        return current;
+    }
+
+    /**
+     * Applies a change and publishes the new snapshot at once, from any thread.
+     * The file is written in the background.
+     */
+    public void update(Change change) {
+        awaitLoaded();
+        synchronized (this) {
+            final SettingsSnapshot previous = current;
+            SettingsSnapshot.Builder builder = previous.toBuilder();
+            change.apply(builder);
+            final SettingsSnapshot next = builder.build();
+            current = next;
+            // Posted while holding the lock, so listeners see changes in order
+            mainHandler.post(() -> {
+                for (Listener listener : listeners) {
+                    listener.onSettingsChanged(previous, next);
+                }
+            });
+        }
+        schedulePersist();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // --- Background thread ---
+
+    private void schedulePersist() {
+        if (persistQueued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                persistQueued.set(false); // A change after this point queues another write
+                SharedPreferences.Editor editor = prefs(PREFS_CONFIG).edit();
+                write(editor, current);
+                if (!editor.commit()) {
+                    Log.e(TAG, "Settings could not be saved.");
+                }
+            });
+        }
+    }
+
+    private SettingsSnapshot load() {
+        SharedPreferences config = prefs(PREFS_CONFIG);
+        if (config.getInt(KEY_CONFIG_VERSION, 0) >= CONFIG_VERSION) {
+            return read(config, config, config, config, config, config);
+        }
+
+        // --- One-time move from the old files ---
+        SharedPreferences[] legacy = {
+                prefs(PREFS_SETTINGS), prefs(PREFS_TOGGLES), prefs(PREFS_ACCESSIBILITY),
+                prefs(PREFS_SHIFT), prefs(PREFS_STORAGE), prefs(PREFS_ONBOARDING)};
+        SettingsSnapshot snapshot = read(legacy[0], legacy[1], legacy[2], legacy[3], legacy[4], legacy[5]);
+        SharedPreferences.Editor editor = config.edit();
+        write(editor, snapshot);
+        editor.putInt(KEY_CONFIG_VERSION, CONFIG_VERSION);
+        if (editor.commit()) {
+            // Only once the new file is on disk; until then the move is simply repeated
+            for (SharedPreferences old : legacy) {
+                old.edit().clear().commit();
+            }
+            Log.d(TAG, "Settings moved into " + PREFS_CONFIG + ".");
+        }
+        return snapshot;
+    }
+
+    private static SettingsSnapshot read(SharedPreferences settings, SharedPreferences toggles,
+                                         SharedPreferences access, SharedPreferences shift,
+                                         SharedPreferences storage, SharedPreferences onboarding) {
+        SettingsSnapshot.Builder builder = new SettingsSnapshot.Builder()
+                .setCompanyName(settings.getString(KEY_COMPANY_NAME, null))
+                .setShiftStart(settings.getString(KEY_SHIFT_START, SettingsSnapshot.DEFAULT_SHIFT_TIME))
+                .setShiftEnd(settings.getString(KEY_SHIFT_END, SettingsSnapshot.DEFAULT_SHIFT_TIME))
+                .setWhatsappGroup(settings.getString(KEY_WHATSAPP_GROUP, ""))
+                .setExifOrientation(settings.getBoolean(KEY_EXIF_ORIENTATION, true))
+                .setMapInStamp(settings.getBoolean(KEY_MAP_IN_STAMP, false))
+                .setYuvOverlay(settings.getBoolean(KEY_YUV_OVERLAY, false))
+                .setJpegSplice(settings.getBoolean(KEY_JPEG_SPLICE, true))
+                .setWatermarkTemplate(settings.getString(KEY_WATERMARK_TEMPLATE, SettingsSnapshot.DEFAULT_WATERMARK_TEMPLATE))
+                .setGeohashPrecision(settings.getInt(KEY_GEOHASH_PRECISION, SettingsSnapshot.DEFAULT_GEOHASH_PRECISION))
+                .setEncoderProfile(settings.getString(KEY_ENCODER_PROFILE, SettingsSnapshot.DEFAULT_ENCODER_PROFILE))
+                .setLogToFile(settings.getBoolean(KEY_LOG_TO_FILE, false))
+                .setCustomTimestampEnabled(toggles.getBoolean(KEY_CUSTOM_TIMESTAMP_ENABLED, false))
+                .setTargetGroupName(access.getString(KEY_TARGET_GROUP, null))
+                .setSendJobPending(access.getBoolean(KEY_JOB_PENDING, false))
+                .setShiftActive(shift.getBoolean(KEY_IS_SHIFT_ACTIVE, false))
+                .setLastShiftActionTime(shift.getLong(KEY_LAST_ACTION_TIME, 0))
+                .setCustomFolderUri(storage.getString(KEY_CUSTOM_FOLDER_URI, null))
+                .setOnboardingComplete(onboarding.getBoolean(KEY_ONBOARDING_COMPLETE, false));
+        if (settings.contains(KEY_BAND_COMPOSITING)) {
+            builder.setBandCompositing(settings.getBoolean(KEY_BAND_COMPOSITING, false));
+        }
+        return builder.build();
+    }
+
+    private static void write(SharedPreferences.Editor editor, SettingsSnapshot snapshot) {
+        // A null string removes its key, so "not set" survives a round trip
+        editor.putString(KEY_COMPANY_NAME, snapshot.getCompanyName())
+                .putString(KEY_SHIFT_START, snapshot.getShiftStart())
+                .putString(KEY_SHIFT_END, snapshot.getShiftEnd())
+                .putString(KEY_WHATSAPP_GROUP, snapshot.getWhatsappGroup())
+                .putBoolean(KEY_EXIF_ORIENTATION, snapshot.isExifOrientation())
+                .putBoolean(KEY_MAP_IN_STAMP, snapshot.isMapInStamp())
+                .putBoolean(KEY_YUV_OVERLAY, snapshot.isYuvOverlay())
+                .putBoolean(KEY_JPEG_SPLICE, snapshot.isJpegSplice())
+                .putString(KEY_WATERMARK_TEMPLATE, snapshot.getWatermarkTemplate())
+                .putInt(KEY_GEOHASH_PRECISION, snapshot.getGeohashPrecision())
+                .putString(KEY_ENCODER_PROFILE, snapshot.getEncoderProfile())
+                .putBoolean(KEY_LOG_TO_FILE, snapshot.isLogToFile())
+                .putBoolean(KEY_CUSTOM_TIMESTAMP_ENABLED, snapshot.isCustomTimestampEnabled())
+                .putString(KEY_TARGET_GROUP, snapshot.getTargetGroupName())
+                .putBoolean(KEY_JOB_PENDING, snapshot.isSendJobPending())
+                .putBoolean(KEY_IS_SHIFT_ACTIVE, snapshot.isShiftActive())
+                .putLong(KEY_LAST_ACTION_TIME, snapshot.getLastShiftActionTime())
+                .putString(KEY_CUSTOM_FOLDER_URI, snapshot.getCustomFolderUri())
+                .putBoolean(KEY_ONBOARDING_COMPLETE, snapshot.isOnboardingComplete());
+        if (snapshot.getBandCompositing() != null) {
+            editor.putBoolean(KEY_BAND_COMPOSITING, snapshot.getBandCompositing());
+        } else {
+            editor.remove(KEY_BAND_COMPOSITING);
+        }
+    }
+
+    private SharedPreferences prefs(String name) {
+        return context.getSharedPreferences(name, Context.MODE_PRIVATE);
+    }
+
+    private void awaitLoaded() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                loaded.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true; // The settings are needed either way; keep waiting
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
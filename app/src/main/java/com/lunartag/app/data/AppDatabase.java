@@ -5,30 +5,69 @@ import android.content.Context;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.lunartag.app.model.AuditLog;
+import com.lunartag.app.model.GeocodeEntry;
 import com.lunartag.app.model.Photo;
+import com.lunartag.app.model.TimestampSlot;
 
 /**
  * The main database class for the application.
  * This class defines the database configuration and serves as the main access point
  * to the persisted data. It follows a singleton pattern to prevent having multiple
  * instances of the database opened at the same time.
+ * UPDATED: Version 2 adds the reverse-geocode cache and the photo's address geohash.
+ * UPDATED: Version 3 adds the timestamp slot queue (moved out of SharedPreferences).
+ * UPDATED: Version 4 adds the photo's thumbnail path.
  */
-@Database(entities = {Photo.class, AuditLog.class}, version = 1, exportSchema = false)
+@Database(entities = {Photo.class, AuditLog.class, GeocodeEntry.class, TimestampSlot.class}, version = 4,
+        exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract PhotoDao photoDao();
     public abstract AuditLogDao auditLogDao();
+    public abstract GeocodeDao geocodeDao();
+    public abstract TimestampSlotDao timestampSlotDao();
 
     private static volatile AppDatabase INSTANCE;
 
+    // Keeps existing photos when the geocode cache is introduced
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE photos ADD COLUMN addressGeohash TEXT");
+            database.execSQL("CREATE TABLE IF NOT EXISTS geocode_cache ("
+                    + "geohash TEXT NOT NULL, address TEXT, resolvedAt INTEGER NOT NULL, PRIMARY KEY(geohash))");
+        }
+    };
+
+    // The slots themselves are copied over from the old preference by SlotQueue
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS timestamp_slots ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, slotTime INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_timestamp_slots_slotTime ON timestamp_slots (slotTime)");
+        }
+    };
+
+    // Older photos get their thumbnails from PhotoThumbnails.backfillAsync()
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE photos ADD COLUMN thumbnailPath TEXT");
+        }
+    };
+
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                                     AppDatabase.class, "lunartag_database")
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4)
                             // NOTE: In a production app, you would need a proper migration strategy
                             // instead of destructive migration.
                             .fallbackToDestructiveMigration()
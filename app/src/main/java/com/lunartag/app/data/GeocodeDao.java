@@ -0,0 +1,38 @@
+package com.lunartag.app.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.lunartag.app.model.GeocodeEntry;
+
+/**
+ * Data Access Object (DAO) for the GeocodeEntry entity.
+ * This interface defines the database interactions for the 'geocode_cache' table.
+ */
+@Dao
+public interface GeocodeDao {
+
+    /**
+     * Stores a resolved address, replacing any older result for the same cell.
+     * @param entry The cache entry to store.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertEntry(GeocodeEntry entry);
+
+    /**
+     * Retrieves the cached address for one geohash cell.
+     * @param geohash The geohash of the cell.
+     * @return The entry, or null if the cell has not been resolved yet.
+     */
+    @Query("SELECT * FROM geocode_cache WHERE geohash = :geohash")
+    GeocodeEntry getEntry(String geohash);
+
+    /**
+     * Removes entries resolved before the given time.
+     * @param cutoff Time in milliseconds.
+     */
+    @Query("DELETE FROM geocode_cache WHERE resolvedAt < :cutoff")
+    void deleteOlderThan(long cutoff);
+}
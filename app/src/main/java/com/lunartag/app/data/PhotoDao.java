@@ -13,6 +13,7 @@ import java.util.List;
  * Data Access Object (DAO) for the Photo entity.
  * This interface defines the database interactions for the 'photos' table.
  * UPDATED: Added delete capability for multi-select.
+ * UPDATED: Added the thumbnail backfill queries.
  */
 @Dao
 public interface PhotoDao {
@@ -40,6 +41,15 @@ public interface PhotoDao {
     @Query("SELECT * FROM photos WHERE id = :id")
     Photo getPhotoById(long id);
 
+    /**
+     * Finds the photo taken at the given moment, which also names its files.
+     * Used by journal recovery to tell whether a photo already reached the database.
+     * @param captureTimestampReal The real capture time in milliseconds.
+     * @return The Photo object, or null if there is none.
+     */
+    @Query("SELECT * FROM photos WHERE captureTimestampReal = :captureTimestampReal LIMIT 1")
+    Photo getPhotoByCaptureTime(long captureTimestampReal);
+
     /**
      * Retrieves all photos from the database, ordered by the most recent capture time first.
      * @return A list of all Photo objects.
@@ -69,4 +79,24 @@ public interface PhotoDao {
      */
     @Query("DELETE FROM photos WHERE id IN (:ids)")
     void deletePhotos(List<Long> ids);
-}
\ No newline at end of file
+
+    /**
+     * Photos that have no thumbnail yet, oldest first, for the one-time backfill.
+     * @param afterId Only photos with a larger ID (to page through without repeating).
+     * @param limit The maximum number of photos to retrieve.
+     */
+    @Query("SELECT * FROM photos WHERE thumbnailPath IS NULL AND id > :afterId ORDER BY id LIMIT :limit")
+    List<Photo> getPhotosWithoutThumbnail(long afterId, int limit);
+
+    @Query("UPDATE photos SET thumbnailPath = :thumbnailPath WHERE id = :id")
+    void setThumbnailPath(long id, String thumbnailPath);
+
+    /**
+     * Fills in the address of photos taken before their location was resolved.
+     * @param geohash The geohash cell that has just been resolved.
+     * @param address The address of that cell.
+     * @return The number of photos updated.
+     */
+    @Query("UPDATE photos SET addressHuman = :address WHERE addressGeohash = :geohash AND addressHuman IS NULL")
+    int fillPendingAddress(String geohash, String address);
+}
@@ -0,0 +1,214 @@
+package com.lunartag.app.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.lunartag.app.model.TimestampSlot;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The preset timestamps of custom timestamp mode, backed by the 'timestamp_slots' table.
+ *
+ * {@link #reserveNext()} takes the earliest slot in one database transaction, so quick
+ * captures never share a slot. The number of slots left and the next few slot times are
+ * kept in memory and refreshed after every change, so the camera's slot counter and the
+ * location policy read them without touching the database.
+ *
+ * On first use the old "timestamp_list" JSON preference is moved into the table.
+ */
+public class SlotQueue {
+
+    private static final String TAG = "SlotQueue";
+
+    // Where the schedule lived before version 3 of the database
+    private static final String PREFS_SCHEDULE = "LunarTagSchedule";
+    private static final String KEY_TIMESTAMP_LIST = "timestamp_list";
+
+    private static final int HEAD_SIZE = 8; // Upcoming slots kept in memory
+
+    /**
+     * Told when the queue changed. Called on a background thread.
+     */
+    public interface Listener {
+        void onSlotsChanged(int remaining);
+    }
+
+    /**
+     * Receives a result computed on the background thread.
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static volatile SlotQueue INSTANCE;
+
+    public static SlotQueue getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (SlotQueue.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SlotQueue(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final Context context;
+    private final AppDatabase database;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "LunarTag-Slots"));
+    private final CountDownLatch migrated = new CountDownLatch(1);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile int remaining = -1; // Unknown until loaded
+    private volatile long[] head = new long[0];
+
+    private SlotQueue(Context context) {
+        this(context, AppDatabase.getDatabase(context));
+    }
+
+    /**
+     * Tests use this with an in-memory database; the app goes through {@link #getInstance}.
+     */
+    SlotQueue(Context context, AppDatabase database) {
+        this.context = context;
+        this.database = database;
+        executor.execute(() -> {
+            try {
+                migrateFromPreferences();
+            } finally {
+                migrated.countDown();
+            }
+            refresh();
+        });
+    }
+
+    /**
+     * Takes the earliest slot. Blocks on the database; never call on the main thread.
+     * @return The slot time, or null if no slot is left.
+     */
+    public Long reserveNext() {
+        awaitMigration();
+        Long slot = dao().reserveNextSlot();
+        executor.execute(this::refresh);
+        return slot;
+    }
+
+    /**
+     * Slots left, from memory.
+     * @return The count, or -1 while the queue is still loading.
+     */
+    public int getRemainingCount() {
+        return remaining;
+    }
+
+    /**
+     * The earliest few slot times, in order, from memory.
+     */
+    public long[] getUpcomingSlots() {
+        return head.clone();
+    }
+
+    public void addListener(Listener listener) {
+        if (!listeners.contains(listener)) listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // --- Editing (runs in the background, in order) ---
+
+    public void loadAll(Callback<List<Long>> callback) {
+        executor.execute(() -> callback.onResult(dao().getAllSlotTimes()));
+    }
+
+    public void add(long slotTime) {
+        executor.execute(() -> {
+            dao().insertSlots(Collections.singletonList(new TimestampSlot(slotTime)));
+            refresh();
+        });
+    }
+
+    public void remove(long slotTime) {
+        executor.execute(() -> {
+            dao().deleteOneSlot(slotTime);
+            refresh();
+        });
+    }
+
+    public void replaceAll(List<Long> slotTimes) {
+        List<Long> copy = new ArrayList<>(slotTimes);
+        executor.execute(() -> {
+            dao().replaceAllSlots(copy);
+            refresh();
+        });
+    }
+
+    private TimestampSlotDao dao() {
+        return database.timestampSlotDao();
+    }
+
+    private void awaitMigration() {
+        try {
+            migrated.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Background thread. Both queries are answered from the slotTime index.
+     */
+    private void refresh() {
+        TimestampSlotDao dao = dao();
+        List<Long> first = dao.getFirstSlotTimes(HEAD_SIZE);
+        long[] times = new long[first.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = first.get(i);
+        }
+        head = times;
+        int count = dao.getSlotCount();
+        remaining = count;
+        for (Listener listener : listeners) {
+            listener.onSlotsChanged(count);
+        }
+    }
+
+    /**
+     * Moves the JSON list into the table, then removes the preference. If the app dies in
+     * between, the next start replaces the table with the same list again, so nothing is
+     * lost or duplicated.
+     */
+    private void migrateFromPreferences() {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_SCHEDULE, Context.MODE_PRIVATE);
+        String json = prefs.getString(KEY_TIMESTAMP_LIST, null);
+        if (json == null) return;
+
+        List<Long> slotTimes = new ArrayList<>();
+        try {
+            JSONArray jsonArray = new JSONArray(json);
+            for (int i = 0; i < jsonArray.length(); i++) {
+                slotTimes.add(jsonArray.getLong(i));
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Old schedule unreadable, dropping it: " + e.getMessage());
+            slotTimes.clear();
+        }
+        if (!slotTimes.isEmpty()) {
+            dao().replaceAllSlots(slotTimes);
+        }
+        prefs.edit().remove(KEY_TIMESTAMP_LIST).commit();
+        Log.d(TAG, "Moved " + slotTimes.size() + " slots from preferences into the database.");
+    }
+}
@@ -0,0 +1,93 @@
+package com.lunartag.app.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import com.lunartag.app.model.TimestampSlot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Access Object (DAO) for the TimestampSlot entity.
+ * This class defines the database interactions for the 'timestamp_slots' table.
+ * It is an abstract class (not an interface like the other DAOs) because reserving a
+ * slot is a read and a delete that must run in one transaction.
+ */
+@Dao
+public abstract class TimestampSlotDao {
+
+    /**
+     * Adds slots to the queue.
+     * @param slots The slots to insert.
+     */
+    @Insert
+    public abstract void insertSlots(List<TimestampSlot> slots);
+
+    /**
+     * Retrieves the earliest slot times, in order.
+     * @param limit Maximum number of slots returned.
+     */
+    @Query("SELECT slotTime FROM timestamp_slots ORDER BY slotTime, id LIMIT :limit")
+    public abstract List<Long> getFirstSlotTimes(int limit);
+
+    /**
+     * Retrieves every slot time, in order.
+     */
+    @Query("SELECT slotTime FROM timestamp_slots ORDER BY slotTime, id")
+    public abstract List<Long> getAllSlotTimes();
+
+    /**
+     * Counts the slots left.
+     */
+    @Query("SELECT COUNT(*) FROM timestamp_slots")
+    public abstract int getSlotCount();
+
+    /**
+     * Removes one slot with the given time (there may be duplicates).
+     * @return The number of rows deleted (0 or 1).
+     */
+    @Query("DELETE FROM timestamp_slots WHERE id = (SELECT id FROM timestamp_slots WHERE slotTime = :slotTime LIMIT 1)")
+    public abstract int deleteOneSlot(long slotTime);
+
+    /**
+     * Removes every slot.
+     */
+    @Query("DELETE FROM timestamp_slots")
+    public abstract void deleteAllSlots();
+
+    @Query("SELECT * FROM timestamp_slots ORDER BY slotTime, id LIMIT 1")
+    protected abstract TimestampSlot getFirstSlot();
+
+    @Query("DELETE FROM timestamp_slots WHERE id = :id")
+    protected abstract int deleteSlot(long id);
+
+    /**
+     * Takes the earliest slot out of the queue. Two captures can never get the same slot:
+     * the read and the delete run in one write transaction.
+     * @return The slot time, or null if the queue is empty.
+     */
+    @Transaction
+    public Long reserveNextSlot() {
+        TimestampSlot slot = getFirstSlot();
+        if (slot == null) return null;
+        deleteSlot(slot.getId());
+        return slot.getSlotTime();
+    }
+
+    /**
+     * Replaces the whole queue in one transaction.
+     * @param slotTimes The new slot times, in any order.
+     */
+    @Transaction
+    public void replaceAllSlots(List<Long> slotTimes) {
+        deleteAllSlots();
+        List<TimestampSlot> slots = new ArrayList<>(slotTimes.size());
+        for (Long time : slotTimes) {
+            slots.add(new TimestampSlot(time));
+        }
+        insertSlots(slots);
+    }
+}
@@ -0,0 +1,136 @@
+package com.lunartag.app.diagnostics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms for the capture path, one per timer.
+ *
+ * Call sites take {@link System#nanoTime()} (monotonic, unaffected by clock changes)
+ * before the work and pass it to {@link #record} after it. The report is shown on the
+ * diagnostics screen and can be exported, so a "slow on this phone" report can be
+ * traced to a stage. Values live in memory only and start over with the process.
+ */
+public final class CaptureMetrics {
+
+    // --- Timers, in the order the capture path runs them ---
+    public static final String SHUTTER = "shutter";           // takePicture() until the frame arrives
+    public static final String STAGE_JOURNAL = "journal";     // Frame and sidecar synced to disk
+    public static final String TO_BITMAP = "imageProxyToBitmap";
+    public static final String STAGE_CONVERT = "convert";
+    public static final String GEOCODE = "geocode";           // Address cache lookup
+    public static final String WATERMARK = "watermark";       // Building and drawing the block
+    public static final String STAGE_ANNOTATE = "annotate";
+    public static final String STAGE_ENCODE = "encode";
+    public static final String STORAGE_WRITE = "storage write";
+    public static final String WRITE_APP_FOLDER = "write app folder";   // One timer per storage backend
+    public static final String WRITE_GALLERY = "write gallery";
+    public static final String WRITE_CUSTOM_FOLDER = "write custom folder";
+    public static final String INSERT_PHOTO = "insertPhoto";
+    public static final String STAGE_PERSIST = "persist";
+    public static final String SCHEDULE_SEND = "schedulePhotoSend";
+    public static final String STAGE_SCHEDULE = "schedule";
+    public static final String QUEUE_WAIT = "queue wait";     // Time jobs spent waiting between stages
+    public static final String TOTAL = "total";               // Frame arrival until the job is done
+
+    private static final List<String> ORDER = Arrays.asList(SHUTTER, STAGE_JOURNAL, TO_BITMAP, STAGE_CONVERT,
+            GEOCODE, WATERMARK, STAGE_ANNOTATE, STAGE_ENCODE, STORAGE_WRITE, WRITE_APP_FOLDER, WRITE_GALLERY,
+            WRITE_CUSTOM_FOLDER, INSERT_PHOTO, STAGE_PERSIST, SCHEDULE_SEND, STAGE_SCHEDULE, QUEUE_WAIT, TOTAL);
+
+    private static volatile CaptureMetrics INSTANCE;
+
+    public static CaptureMetrics getInstance() {
+        if (INSTANCE == null) {
+            synchronized (CaptureMetrics.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new CaptureMetrics();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private volatile long sinceMillis = System.currentTimeMillis();
+
+    CaptureMetrics() {
+    }
+
+    /**
+     * Records the time since {@code startNanos}.
+     * @param startNanos A {@link System#nanoTime()} taken when the work began.
+     */
+    public void record(String timer, long startNanos) {
+        recordNanos(timer, System.nanoTime() - startNanos);
+    }
+
+    public void recordNanos(String timer, long nanos) {
+        LatencyHistogram histogram = histograms.get(timer);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(timer, name -> new LatencyHistogram());
+        }
+        histogram.recordNanos(nanos);
+    }
+
+    /**
+     * @return The histogram for a timer, or null if it never recorded anything.
+     */
+    public LatencyHistogram get(String timer) {
+        return histograms.get(timer);
+    }
+
+    /**
+     * Timers that have recorded something, known ones in capture order first.
+     */
+    public List<String> getTimers() {
+        List<String> timers = new ArrayList<>();
+        for (String timer : ORDER) {
+            if (histograms.containsKey(timer)) timers.add(timer);
+        }
+        List<String> others = new ArrayList<>();
+        for (String timer : histograms.keySet()) {
+            if (!ORDER.contains(timer)) others.add(timer);
+        }
+        Collections.sort(others);
+        timers.addAll(others);
+        return timers;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        sinceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * When the values were last reset (or the process started).
+     */
+    public long getSinceMillis() {
+        return sinceMillis;
+    }
+
+    /**
+     * A fixed-width table of every timer, in milliseconds.
+     */
+    public String formatReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-18s %6s %8s %8s %8s %8s %8s%n",
+                "timer (ms)", "n", "mean", "p50", "p95", "p99", "max"));
+        for (String timer : getTimers()) {
+            LatencyHistogram h = histograms.get(timer);
+            report.append(String.format(Locale.US, "%-18s %6d %8s %8s %8s %8s %8s%n",
+                    timer, h.getCount(), millis(h.getMeanMicros()), millis(h.getPercentileMicros(50)),
+                    millis(h.getPercentileMicros(95)), millis(h.getPercentileMicros(99)), millis(h.getMaxMicros())));
+        }
+        return report.toString();
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.US, "%.1f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,86 @@
+package com.lunartag.app.diagnostics;
+
+import android.view.Choreographer;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shows the tail of {@link LunarLog} in a TextView.
+ *
+ * New entries only set a flag and ask for the next frame; on that frame everything
+ * logged since is read in one batch and the view is updated once, so a burst of
+ * messages costs one layout. The view keeps at most {@link #MAX_LINES} lines, so it
+ * does not grow over a long shift.
+ *
+ * Attach and detach on the main thread.
+ */
+public final class LogConsole {
+
+    private static final int MAX_LINES = 100;
+
+    private final TextView view;
+    private final String header;
+    private final ArrayDeque<String> lines = new ArrayDeque<>(MAX_LINES);
+    private final StringBuilder text = new StringBuilder();
+    private final AtomicBoolean frameRequested = new AtomicBoolean(false);
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private long cursor;
+    private boolean attached = false;
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> flush();
+    private final Runnable wake = () -> {
+        // Any thread: the first entry after a flush schedules the next one
+        if (frameRequested.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(frameCallback);
+        }
+    };
+
+    /**
+     * @param view The console view.
+     * @param header First line, always shown.
+     * @param backlog How many earlier entries to show on attach.
+     */
+    public LogConsole(TextView view, String header, int backlog) {
+        this.view = view;
+        this.header = header;
+        this.cursor = Math.max(0, LunarLog.getRing().getEndSequence() - backlog);
+    }
+
+    public void attach() {
+        if (attached) return;
+        attached = true;
+        LunarLog.addWakeListener(wake);
+        wake.run(); // Show the backlog
+    }
+
+    public void detach() {
+        attached = false;
+        LunarLog.removeWakeListener(wake);
+        choreographer.removeFrameCallback(frameCallback);
+        frameRequested.set(false);
+    }
+
+    private void flush() {
+        // Cleared before reading, so an entry logged during the read asks for another frame
+        frameRequested.set(false);
+        if (!attached) return;
+        cursor = LunarLog.getRing().read(cursor, entry -> {
+            if (lines.size() == MAX_LINES) lines.removeFirst();
+            lines.addLast(LunarLog.levelLetter(entry.level) + " " + entry.message);
+        });
+
+        text.setLength(0);
+        text.append(header);
+        for (String line : lines) {
+            text.append('\n').append(line);
+        }
+        view.setText(text);
+        if (view.getParent() instanceof ScrollView) {
+            ScrollView parent = (ScrollView) view.getParent();
+            parent.post(() -> parent.scrollTo(0, view.getHeight())); // After the new text is laid out
+        }
+    }
+}
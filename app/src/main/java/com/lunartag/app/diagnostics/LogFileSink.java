@@ -0,0 +1,176 @@
+package com.lunartag.app.diagnostics;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.lunartag.app.config.SettingsStore;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Optionally copies {@link LunarLog} to rolling files in files/logs, so a whole shift can
+ * be inspected afterwards: lunartag.log, then lunartag.1.log and lunartag.2.log.
+ *
+ * The ring is read in batches on a background thread every few seconds (sooner when it
+ * is half full), so logging never waits for the disk.
+ */
+public class LogFileSink {
+
+    private static final String TAG = "LogFileSink";
+
+    public static final String LOG_DIRECTORY = "logs";
+    private static final String FILE_NAME = "lunartag";
+    private static final long MAX_FILE_BYTES = 512 * 1024;
+    private static final int KEPT_FILES = 3; // The current one and two older ones
+    private static final long FLUSH_INTERVAL_MS = 2_000;
+
+    private static volatile LogFileSink INSTANCE;
+
+    public static LogFileSink getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (LogFileSink.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new LogFileSink(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final Context context;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "LunarTag-LogFile");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    private final Runnable wake = this::onLogged;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+
+    private volatile long cursor;
+    private ScheduledFuture<?> periodicFlush; // Guarded by "this"
+
+    private LogFileSink(Context context) {
+        this.context = context;
+        // Follow the switch in the settings from now on
+        SettingsStore.getInstance(context).addListener((previous, current) -> {
+            if (previous.isLogToFile() != current.isLogToFile()) applySetting();
+        });
+    }
+
+    /**
+     * Starts or stops the sink according to the setting. Call at startup; later changes
+     * of the setting are applied by themselves.
+     */
+    public synchronized void applySetting() {
+        boolean enabled = SettingsStore.getInstance(context).get().isLogToFile();
+        if (enabled && periodicFlush == null) {
+            LogRing ring = LunarLog.getRing();
+            cursor = Math.max(0, ring.getEndSequence() - ring.getCapacity()); // Keep what is still in the ring
+            periodicFlush = executor.scheduleWithFixedDelay(this::flush, 0, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            LunarLog.addWakeListener(wake);
+        } else if (!enabled && periodicFlush != null) {
+            LunarLog.removeWakeListener(wake);
+            periodicFlush.cancel(false);
+            periodicFlush = null;
+            executor.execute(this::flush); // Write out what was logged until now
+        }
+    }
+
+    /**
+     * The log files, newest first (only those that exist).
+     */
+    public File[] getFiles() {
+        File directory = new File(context.getFilesDir(), LOG_DIRECTORY);
+        int count = 0;
+        File[] files = new File[KEPT_FILES];
+        for (int i = 0; i < KEPT_FILES; i++) {
+            File file = fileAt(directory, i);
+            if (file.exists()) files[count++] = file;
+        }
+        File[] existing = new File[count];
+        System.arraycopy(files, 0, existing, 0, count);
+        return existing;
+    }
+
+    /**
+     * Any thread, after every entry: flush early if the ring is about to lap the cursor.
+     */
+    private void onLogged() {
+        LogRing ring = LunarLog.getRing();
+        if (ring.getEndSequence() - cursor > ring.getCapacity() / 2 && flushQueued.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    /**
+     * Background thread only.
+     */
+    private void flush() {
+        flushQueued.set(false);
+        LogRing ring = LunarLog.getRing();
+        if (ring.getEndSequence() == cursor) return;
+
+        File directory = new File(context.getFilesDir(), LOG_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create " + directory);
+            return;
+        }
+        File file = fileAt(directory, 0);
+        if (file.length() > MAX_FILE_BYTES) {
+            rotate(directory);
+        }
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), StandardCharsets.UTF_8))) {
+            Date date = new Date();
+            StringBuilder line = new StringBuilder(128);
+            long[] lost = {0};
+            cursor = ring.read(cursor, entry -> {
+                date.setTime(entry.timeMillis);
+                line.setLength(0);
+                line.append(timeFormat.format(date)).append(' ')
+                        .append(LunarLog.levelLetter(entry.level)).append(' ')
+                        .append(entry.tag).append(": ").append(entry.message).append('\n');
+                try {
+                    writer.write(line.toString());
+                } catch (IOException e) {
+                    lost[0]++;
+                }
+            });
+            if (lost[0] > 0) {
+                Log.w(TAG, lost[0] + " log lines could not be written.");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Log file write failed: " + e.getMessage());
+        }
+    }
+
+    private static void rotate(File directory) {
+        fileAt(directory, KEPT_FILES - 1).delete();
+        for (int i = KEPT_FILES - 2; i >= 0; i--) {
+            File from = fileAt(directory, i);
+            if (from.exists() && !from.renameTo(fileAt(directory, i + 1))) {
+                Log.w(TAG, "Cannot rotate " + from);
+            }
+        }
+    }
+
+    private static File fileAt(File directory, int index) {
+        return new File(directory, index == 0 ? FILE_NAME + ".log" : FILE_NAME + "." + index + ".log");
+    }
+}
@@ -0,0 +1,94 @@
+package com.lunartag.app.diagnostics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size ring of log entries that any number of threads can write without locks.
+ *
+ * Each writer claims a sequence number and stores an immutable entry in its slot; once
+ * the ring is full the oldest entries are overwritten. Readers keep their own cursor
+ * (the next sequence they want) and {@link #read} from it: entries that were overwritten
+ * in the meantime are skipped, and the read stops at a slot whose writer has claimed it
+ * but not stored it yet.
+ *
+ * No Android classes are used here, so it can be checked on a plain JVM.
+ */
+public final class LogRing {
+
+    /**
+     * One log line. Immutable, so readers never see it half-written.
+     */
+    public static final class Entry {
+        public final long sequence;
+        public final long timeMillis;
+        public final int level;
+        public final String tag;
+        public final String message;
+
+        Entry(long sequence, long timeMillis, int level, String tag, String message) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Receives entries from {@link #read}, oldest first.
+     */
+    public interface Reader {
+        void onEntry(Entry entry);
+    }
+
+    private final int mask;
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * @param capacity Number of entries kept; rounded up to a power of two (at least 2).
+     */
+    public LogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        slots = new AtomicReferenceArray<>(size);
+    }
+
+    public void append(long timeMillis, int level, String tag, String message) {
+        long sequence = nextSequence.getAndIncrement();
+        slots.set((int) (sequence & mask), new Entry(sequence, timeMillis, level, tag, message));
+    }
+
+    /**
+     * The sequence the next entry will get; a reader starting here sees only new entries.
+     */
+    public long getEndSequence() {
+        return nextSequence.get();
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Hands every available entry from {@code fromSequence} on to the reader.
+     * @return The cursor for the next read.
+     */
+    public long read(long fromSequence, Reader reader) {
+        long end = nextSequence.get();
+        long sequence = Math.max(fromSequence, end - getCapacity());
+        while (sequence < end) {
+            Entry entry = slots.get((int) (sequence & mask));
+            if (entry == null || entry.sequence < sequence) {
+                break; // Claimed but not stored yet; picked up by the next read
+            }
+            if (entry.sequence == sequence) {
+                reader.onEntry(entry);
+            }
+            // A newer entry means this one was overwritten while we read
+            sequence++;
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,95 @@
+package com.lunartag.app.diagnostics;
+
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The app's live log: replaces the unbounded on-screen console and the step-by-step
+ * Toasts from the background services.
+ *
+ * Messages go into a fixed-size {@link LogRing} (and to Logcat). Nothing else happens
+ * on the calling thread: the camera console ({@link LogConsole}) and the optional file
+ * sink ({@link LogFileSink}) read the ring in batches on their own schedule.
+ * Messages below the minimum level return after one comparison; for messages that are
+ * expensive to build, check {@link #isLoggable} first.
+ */
+public final class LunarLog {
+
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+
+    private static final int CAPACITY = 512;
+
+    private static final LogRing RING = new LogRing(CAPACITY);
+    private static final CopyOnWriteArrayList<Runnable> WAKE_LISTENERS = new CopyOnWriteArrayList<>();
+    private static volatile int minLevel = DEBUG;
+
+    private LunarLog() {
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= minLevel;
+    }
+
+    public static void setMinLevel(int level) {
+        minLevel = level;
+    }
+
+    public static void v(String tag, String message) {
+        if (VERBOSE >= minLevel) log(VERBOSE, tag, message);
+    }
+
+    public static void d(String tag, String message) {
+        if (DEBUG >= minLevel) log(DEBUG, tag, message);
+    }
+
+    public static void i(String tag, String message) {
+        if (INFO >= minLevel) log(INFO, tag, message);
+    }
+
+    public static void w(String tag, String message) {
+        if (WARN >= minLevel) log(WARN, tag, message);
+    }
+
+    public static void e(String tag, String message) {
+        if (ERROR >= minLevel) log(ERROR, tag, message);
+    }
+
+    public static LogRing getRing() {
+        return RING;
+    }
+
+    /**
+     * Called (on the logging thread) after each new entry. Must be cheap and non-blocking;
+     * readers use it to schedule a batched read.
+     */
+    public static void addWakeListener(Runnable listener) {
+        WAKE_LISTENERS.addIfAbsent(listener);
+    }
+
+    public static void removeWakeListener(Runnable listener) {
+        WAKE_LISTENERS.remove(listener);
+    }
+
+    private static void log(int level, String tag, String message) {
+        RING.append(System.currentTimeMillis(), level, tag, message);
+        Log.println(level, tag, message);
+        for (Runnable listener : WAKE_LISTENERS) {
+            listener.run();
+        }
+    }
+
+    static char levelLetter(int level) {
+        switch (level) {
+            case VERBOSE: return 'V';
+            case DEBUG: return 'D';
+            case INFO: return 'I';
+            case WARN: return 'W';
+            default: return 'E';
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.lunartag.app.encode;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * JPEG and WebP through the platform's {@link Bitmap#compress}.
+ */
+class BitmapCompressEncoder implements ImageEncoder {
+
+    private final OutputFormat format;
+
+    BitmapCompressEncoder(OutputFormat format) {
+        if (format == OutputFormat.HEIF) {
+            throw new IllegalArgumentException("Bitmap.compress cannot write HEIF.");
+        }
+        this.format = format;
+    }
+
+    @Override
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(Bitmap bitmap, int quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bitmap.getWidth() * bitmap.getHeight() / 2);
+        if (!bitmap.compress(compressFormat(), quality, out)) {
+            throw new IOException(format + " encoder rejected the bitmap.");
+        }
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("deprecation")
+    private Bitmap.CompressFormat compressFormat() {
+        if (format == OutputFormat.JPEG) {
+            return Bitmap.CompressFormat.JPEG;
+        }
+        // Before API 30 the only WebP option is lossy at quality < 100
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+    }
+}
@@ -0,0 +1,134 @@
+package com.lunartag.app.encode;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.model.Photo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures every {@link EncoderProfile} on this device: encode time and file size.
+ *
+ * The sample frames are the most recent photos (they already carry a watermark, like real
+ * captures do). Without any, a synthetic 12 MP frame with texture stands in. Frames are
+ * decoded one at a time so at most one full-size bitmap is held at once.
+ * Slow (seconds per profile): run it on a background thread.
+ */
+public final class EncoderBenchmark {
+
+    private static final int SYNTHETIC_WIDTH = 4000;
+    private static final int SYNTHETIC_HEIGHT = 3000;
+
+    private EncoderBenchmark() {}
+
+    /**
+     * Runs the benchmark and returns a text report.
+     * @param maxFrames Recent photos to use as samples
+     * @param runs Encodes per profile and frame (the first one is also timed)
+     */
+    public static String run(Context context, int maxFrames, int runs) {
+        List<File> files = recentPhotoFiles(context, maxFrames);
+        EncoderProfile[] profiles = EncoderProfile.getProfiles();
+        long[][] millis = new long[profiles.length][];
+        long[] totalBytes = new long[profiles.length];
+        OutputFormat[] written = new OutputFormat[profiles.length];
+        int[][] sizes = new int[profiles.length][];
+        int frames = 0;
+        StringBuilder errors = new StringBuilder();
+
+        int sampleCount = Math.max(1, files.size());
+        for (int i = 0; i < profiles.length; i++) {
+            millis[i] = new long[sampleCount * runs];
+        }
+        for (int f = 0; f < sampleCount; f++) {
+            Bitmap frame = files.isEmpty() ? syntheticFrame() : BitmapFactory.decodeFile(files.get(f).getAbsolutePath());
+            if (frame == null) continue;
+            try {
+                for (int p = 0; p < profiles.length; p++) {
+                    for (int r = 0; r < runs; r++) {
+                        long start = System.nanoTime();
+                        ImageEncoders.Encoded encoded = ImageEncoders.encode(context, profiles[p], frame, 0);
+                        millis[p][frames * runs + r] = (System.nanoTime() - start) / 1_000_000;
+                        if (r == 0) {
+                            totalBytes[p] += encoded.getBytes().length;
+                            written[p] = encoded.getFormat();
+                            sizes[p] = new int[]{encoded.getWidth(), encoded.getHeight()};
+                        }
+                    }
+                }
+                frames++;
+            } catch (IOException e) {
+                errors.append("Encoding failed: ").append(e.getMessage()).append('\n');
+            } finally {
+                frame.recycle();
+            }
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(files.isEmpty()
+                ? "Sample: 1 synthetic " + SYNTHETIC_WIDTH + "x" + SYNTHETIC_HEIGHT + " frame"
+                : "Sample: " + frames + " recent photo(s)");
+        report.append(", ").append(runs).append(" run(s) each\n\n");
+        report.append(String.format(Locale.US, "%-10s %-5s %-11s %7s %7s %8s%n",
+                "profile", "fmt", "size", "p50 ms", "max ms", "avg KB"));
+        for (int p = 0; p < profiles.length && frames > 0; p++) {
+            long[] times = Arrays.copyOf(millis[p], frames * runs);
+            Arrays.sort(times);
+            String format = written[p] == null ? "-" : written[p].name()
+                    + (written[p] != profiles[p].getFormat() ? "*" : "");
+            String size = sizes[p] == null ? "-" : sizes[p][0] + "x" + sizes[p][1];
+            report.append(String.format(Locale.US, "%-10s %-5s %-11s %7d %7d %8d%n",
+                    profiles[p].getId(), format, size, times[times.length / 2], times[times.length - 1],
+                    totalBytes[p] / frames / 1024));
+        }
+        report.append("\n* = format not available here, saved as JPEG\n");
+        report.append(errors);
+        return report.toString();
+    }
+
+    private static List<File> recentPhotoFiles(Context context, int maxFrames) {
+        List<File> files = new ArrayList<>();
+        // Photos in a custom (SAF) folder have content URIs; only plain files are sampled
+        for (Photo photo : AppDatabase.getDatabase(context).photoDao().getRecentPhotos(maxFrames * 4)) {
+            String path = photo.getFilePath();
+            if (path == null || path.startsWith("content://")) continue;
+            File file = new File(path);
+            if (file.isFile()) files.add(file);
+            if (files.size() == maxFrames) break;
+        }
+        return files;
+    }
+
+    /**
+     * Gradients with fine noise: compresses about like a real photo, unlike a flat colour.
+     */
+    private static Bitmap syntheticFrame() {
+        Bitmap bitmap = Bitmap.createBitmap(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, Bitmap.Config.ARGB_8888);
+        int[] row = new int[SYNTHETIC_WIDTH];
+        long seed = 0x5DEECE66DL;
+        for (int y = 0; y < SYNTHETIC_HEIGHT; y++) {
+            for (int x = 0; x < SYNTHETIC_WIDTH; x++) {
+                seed = seed * 6364136223846793005L + 1442695040888963407L;
+                int noise = (int) (seed >>> 59) - 16; // -16..15
+                int r = clamp(x * 255 / SYNTHETIC_WIDTH + noise);
+                int g = clamp(y * 255 / SYNTHETIC_HEIGHT + noise);
+                int b = clamp(((x / 64 + y / 64) % 2) * 96 + 64 + noise);
+                row[x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+            bitmap.setPixels(row, 0, SYNTHETIC_WIDTH, 0, y, SYNTHETIC_WIDTH, 1);
+        }
+        return bitmap;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
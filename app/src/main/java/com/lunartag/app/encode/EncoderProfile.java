@@ -0,0 +1,95 @@
+package com.lunartag.app.encode;
+
+/**
+ * A named way of saving photos: format, quality and the largest size kept.
+ *
+ * The profile is chosen in the settings; the {@link EncoderBenchmark} on the diagnostics
+ * screen measures encode time and file size of every profile on the device.
+ */
+public final class EncoderProfile {
+
+    public static final EncoderProfile ARCHIVE =
+            new EncoderProfile("archive", OutputFormat.JPEG, 100, 0); // What every save path wrote before profiles
+    public static final EncoderProfile BALANCED =
+            new EncoderProfile("balanced", OutputFormat.HEIF, 85, 0);
+    public static final EncoderProfile COMPACT =
+            new EncoderProfile("compact", OutputFormat.WEBP, 80, 2560);
+    public static final EncoderProfile SHARE =
+            new EncoderProfile("share", OutputFormat.JPEG, 80, 1600); // WhatsApp downsizes to about this anyway
+
+    public static final String DEFAULT_ID = "archive";
+
+    // Same order as the "encoder_profile_labels" array in the resources
+    private static final EncoderProfile[] PROFILES = {ARCHIVE, BALANCED, COMPACT, SHARE};
+
+    private final String id;
+    private final OutputFormat format;
+    private final int quality; // 0 to 100
+    private final int maxLongEdge; // Pixels along the longer side, 0 to keep the full size
+
+    private EncoderProfile(String id, OutputFormat format, int quality, int maxLongEdge) {
+        this.id = id;
+        this.format = format;
+        this.quality = quality;
+        this.maxLongEdge = maxLongEdge;
+    }
+
+    /**
+     * @return The profile with this id, or {@link #ARCHIVE} if there is none.
+     */
+    public static EncoderProfile forId(String id) {
+        for (EncoderProfile profile : PROFILES) {
+            if (profile.id.equals(id)) return profile;
+        }
+        return ARCHIVE;
+    }
+
+    public static EncoderProfile[] getProfiles() {
+        return PROFILES.clone();
+    }
+
+    public static String[] getProfileIds() {
+        String[] ids = new String[PROFILES.length];
+        for (int i = 0; i < PROFILES.length; i++) {
+            ids[i] = PROFILES[i].id;
+        }
+        return ids;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public int getMaxLongEdge() {
+        return maxLongEdge;
+    }
+
+    /**
+     * The size a photo of the given size is saved at: scaled down, keeping the aspect ratio,
+     * until the longer side fits. Never scaled up.
+     * @return {width, height}
+     */
+    public int[] targetSize(int width, int height) {
+        int longEdge = Math.max(width, height);
+        if (maxLongEdge <= 0 || longEdge <= maxLongEdge) {
+            return new int[]{width, height};
+        }
+        double scale = (double) maxLongEdge / longEdge;
+        return new int[]{
+                Math.max(1, (int) Math.round(width * scale)),
+                Math.max(1, (int) Math.round(height * scale))};
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + format + " q" + quality + (maxLongEdge > 0 ? ", max " + maxLongEdge + " px" : "") + ")";
+    }
+}
@@ -0,0 +1,93 @@
+package com.lunartag.app.encode;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import androidx.heifwriter.HeifWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * HEIF through the hardware HEVC encoder ({@link HeifWriter}, Android 9 and later).
+ * HeifWriter only writes to files, so each photo goes through a temporary file in the cache.
+ */
+class HeifEncoder implements ImageEncoder {
+
+    private static final String TEMP_DIRECTORY = "heif";
+    private static final long ENCODE_TIMEOUT_MS = 10_000;
+    private static final String MIME_HEIC = "image/vnd.android.heic"; // MediaFormat constant is API 28+
+
+    private static volatile Boolean available; // Probed once per process
+
+    private final Context context;
+
+    HeifEncoder(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public OutputFormat getFormat() {
+        return OutputFormat.HEIF;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        Boolean result = available;
+        if (result == null) {
+            result = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && hasHevcEncoder();
+            available = result;
+        }
+        return result;
+    }
+
+    @Override
+    public byte[] encode(Bitmap bitmap, int quality) throws IOException {
+        if (!isAvailable()) {
+            throw new IOException("No HEVC encoder on this device.");
+        }
+        File directory = new File(context.getCacheDir(), TEMP_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = File.createTempFile("encode", ".heic", directory);
+        try {
+            try (HeifWriter writer = new HeifWriter.Builder(file.getAbsolutePath(),
+                    bitmap.getWidth(), bitmap.getHeight(), HeifWriter.INPUT_MODE_BITMAP)
+                    .setQuality(quality)
+                    .setMaxImages(1)
+                    .build()) {
+                writer.start();
+                writer.addBitmap(bitmap);
+                writer.stop(ENCODE_TIMEOUT_MS);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                // stop() reports encoder failures and timeouts as plain exceptions
+                throw new IOException("HEIF encoding failed: " + e.getMessage(), e);
+            }
+            return Files.readAllBytes(file.toPath());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static boolean hasHevcEncoder() {
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (!info.isEncoder()) continue;
+            for (String type : info.getSupportedTypes()) {
+                if (type.equalsIgnoreCase(MIME_HEIC)
+                        || type.equalsIgnoreCase(MediaFormat.MIMETYPE_VIDEO_HEVC)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
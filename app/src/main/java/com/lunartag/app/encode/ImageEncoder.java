@@ -0,0 +1,24 @@
+package com.lunartag.app.encode;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+
+/**
+ * Turns a finished (watermarked) bitmap into the bytes of one image file.
+ */
+public interface ImageEncoder {
+
+    OutputFormat getFormat();
+
+    /**
+     * Whether this device can encode the format at all (HEIF needs a hardware HEVC encoder).
+     */
+    boolean isAvailable();
+
+    /**
+     * Encodes the whole bitmap. The bitmap is not modified or recycled.
+     * @param quality 0 to 100
+     */
+    byte[] encode(Bitmap bitmap, int quality) throws IOException;
+}
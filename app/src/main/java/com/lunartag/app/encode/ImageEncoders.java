@@ -0,0 +1,128 @@
+package com.lunartag.app.encode;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Encodes a photo with an {@link EncoderProfile}: scales it down if the profile asks for it,
+ * picks the encoder for the profile's format, and falls back to JPEG at the same quality
+ * when that format is not available on the device or fails.
+ */
+public final class ImageEncoders {
+
+    private static final String TAG = "ImageEncoders";
+
+    /**
+     * The bytes of one encoded photo and how they came to be.
+     */
+    public static final class Encoded {
+        private final byte[] bytes;
+        private final OutputFormat format;
+        private final int width;
+        private final int height;
+        private final boolean rotationApplied;
+
+        Encoded(byte[] bytes, OutputFormat format, int width, int height, boolean rotationApplied) {
+            this.bytes = bytes;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.rotationApplied = rotationApplied;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * The format actually written, which differs from the profile's after a fallback.
+         */
+        public OutputFormat getFormat() {
+            return format;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Whether the pending rotation was applied to the pixels; if not, it still has to be
+         * recorded in the JPEG's EXIF.
+         */
+        public boolean isRotationApplied() {
+            return rotationApplied;
+        }
+    }
+
+    private ImageEncoders() {}
+
+    /**
+     * The encoder for a format, or null if this build has none.
+     */
+    public static ImageEncoder forFormat(Context context, OutputFormat format) {
+        switch (format) {
+            case JPEG:
+            case WEBP:
+                return new BitmapCompressEncoder(format);
+            case HEIF:
+                return new HeifEncoder(context);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Encodes the bitmap as the profile says. The bitmap itself is left alone.
+     * @param rotationDegrees Clockwise rotation still to be applied for viewing. JPEG output keeps
+     *                        the pixels as they are (the caller records it in EXIF); the other
+     *                        formats get the rotation applied to the pixels.
+     */
+    public static Encoded encode(Context context, EncoderProfile profile, Bitmap bitmap, int rotationDegrees)
+            throws IOException {
+        ImageEncoder encoder = forFormat(context, profile.getFormat());
+        if (encoder == null || !encoder.isAvailable()) {
+            encoder = new BitmapCompressEncoder(OutputFormat.JPEG);
+        }
+        boolean rotate = rotationDegrees != 0 && encoder.getFormat() != OutputFormat.JPEG;
+
+        Bitmap source = prepare(profile, bitmap, rotate ? rotationDegrees : 0);
+        try {
+            byte[] bytes;
+            try {
+                bytes = encoder.encode(source, profile.getQuality());
+            } catch (IOException | RuntimeException e) {
+                if (encoder.getFormat() == OutputFormat.JPEG) throw e;
+                Log.w(TAG, encoder.getFormat() + " failed, saving as JPEG: " + e.getMessage());
+                encoder = new BitmapCompressEncoder(OutputFormat.JPEG);
+                bytes = encoder.encode(source, profile.getQuality());
+            }
+            return new Encoded(bytes, encoder.getFormat(), source.getWidth(), source.getHeight(), rotate);
+        } finally {
+            if (source != bitmap) source.recycle();
+        }
+    }
+
+    /**
+     * Scales and rotates in one pass, or returns the bitmap itself if neither is needed.
+     */
+    private static Bitmap prepare(EncoderProfile profile, Bitmap bitmap, int rotationDegrees) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] target = profile.targetSize(width, height);
+        if (rotationDegrees == 0 && target[0] == width && target[1] == height) {
+            return bitmap;
+        }
+        Matrix matrix = new Matrix();
+        matrix.setScale((float) target[0] / width, (float) target[1] / height);
+        matrix.postRotate(rotationDegrees);
+        return Bitmap.createBitmap(bitmap, 0, 0, width, height, matrix, true);
+    }
+}
@@ -0,0 +1,47 @@
+package com.lunartag.app.encode;
+
+import java.util.Locale;
+
+/**
+ * The file formats a photo can be saved in.
+ */
+public enum OutputFormat {
+
+    JPEG("jpg", "image/jpeg"),
+    WEBP("webp", "image/webp"),
+    HEIF("heic", "image/heic");
+
+    private final String extension;
+    private final String mimeType;
+
+    OutputFormat(String extension, String mimeType) {
+        this.extension = extension;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * The file name extension, without the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * The format of a saved photo, from its file name or content URI.
+     * @return The matching format, or JPEG for anything else (photos saved before formats existed).
+     */
+    public static OutputFormat forFileName(String name) {
+        if (name != null) {
+            String lower = name.toLowerCase(Locale.US);
+            for (OutputFormat format : values()) {
+                if (lower.endsWith("." + format.extension)) return format;
+            }
+            if (lower.endsWith(".heif")) return HEIF;
+        }
+        return JPEG;
+    }
+}
@@ -1,7 +1,6 @@
 package com.lunartag.app.firebase;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -11,6 +10,7 @@ import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 import com.google.firebase.remoteconfig.FirebaseRemoteConfig;
 import com.google.firebase.remoteconfig.FirebaseRemoteConfigSettings;
+import com.lunartag.app.config.SettingsStore;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -26,14 +26,10 @@ public class RemoteConfigManager {
     // The key defined in the Firebase Console
     private static final String REMOTE_KEY_ADMIN_ENABLED = "admin_ui_enabled";
 
-    // The local SharedPreferences mapping (Legacy keys to maintain compatibility with existing UI)
-    private static final String PREFS_NAME = "LunarTagFeatureToggles";
-    private static final String KEY_CUSTOM_TIMESTAMP_ENABLED = "customTimestampEnabled";
-
     /**
      * Initializes Remote Config, sets defaults, and fetches the latest values.
      *
-     * @param context The application context used for saving SharedPreferences.
+     * @param context The application context used for saving the setting.
      */
     public static void fetchRemoteConfig(final Context context) {
         // 1. Get the Remote Config instance
@@ -70,7 +66,7 @@ public class RemoteConfigManager {
                             boolean isAdminEnabled = mFirebaseRemoteConfig.getBoolean(REMOTE_KEY_ADMIN_ENABLED);
                             Log.d(TAG, "Remote Config 'admin_ui_enabled' value is: " + isAdminEnabled);
 
-                            // Save this value to the local SharedPreferences.
+                            // Save this value in the local settings.
                             // This ensures the SettingsFragment and AdminConsoleFragment work exactly as before.
                             updateLocalPreferences(context, isAdminEnabled);
 
@@ -84,17 +80,13 @@ public class RemoteConfigManager {
     }
 
     /**
-     * Writes the boolean value to the specific SharedPreferences file
-     * that the rest of the app (SettingsFragment) is listening to.
+     * Writes the boolean value to the {@link SettingsStore}, which tells
+     * the rest of the app (SettingsFragment, CameraFragment) about the change.
      */
     private static void updateLocalPreferences(Context context, boolean isEnabled) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        
-        // We map the new Remote Config key to the old existing key
-        editor.putBoolean(KEY_CUSTOM_TIMESTAMP_ENABLED, isEnabled);
-        editor.apply();
-        
-        Log.d(TAG, "Updated local preference 'customTimestampEnabled' to: " + isEnabled);
+        // We map the new Remote Config key to the old existing setting
+        SettingsStore.getInstance(context).update(settings -> settings.setCustomTimestampEnabled(isEnabled));
+
+        Log.d(TAG, "Updated local setting 'customTimestampEnabled' to: " + isEnabled);
     }
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+package com.lunartag.app.geocode;
+
+import android.content.Context;
+import android.location.Location;
+import android.util.Log;
+
+import com.lunartag.app.config.SettingsStore;
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.model.GeocodeEntry;
+import com.lunartag.app.utils.Geohash;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reverse-geocoded addresses, keyed by the geohash of the location.
+ *
+ * Lookups at shutter time only read memory and never block. Resolving happens ahead of
+ * time: every new fix from the LocationProvider is prefetched on a background thread,
+ * first from the Room table, then through the platform Geocoder and, if that has no
+ * answer (no network), an offline region pack.
+ * Offline answers are provisional: they are used at once but not stored in Room, and the
+ * cell is looked up again (after the retry delay) until the platform Geocoder answers.
+ * Photos taken before their cell was resolved are stored without an address and are
+ * filled in as soon as it arrives.
+ *
+ * All background work runs on one thread, so a photo saved while its cell is being
+ * resolved cannot miss the fill-in.
+ */
+public class GeocodeCache {
+
+    private static final String TAG = "GeocodeCache";
+
+    private static final int MAX_MEMORY_ENTRIES = 64;
+    private static final long RETRY_DELAY_MS = 30_000; // After a failed lookup (e.g. no network)
+    private static final long MAX_ENTRY_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+
+    // Offline region packs (*.ltrg) are looked for here, inside the app's files directory
+    public static final String PACK_DIRECTORY = "geocode";
+
+    private static volatile GeocodeCache INSTANCE;
+
+    public static GeocodeCache getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (GeocodeCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new GeocodeCache(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "LunarTag-Geocode");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // Guarded by "this"
+    private final Map<String, String> memory = new LinkedHashMap<String, String>(MAX_MEMORY_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if (size() > MAX_MEMORY_ENTRIES) {
+                provisional.remove(eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Set<String> provisional = new HashSet<>(); // Cells in memory with a non-persistent answer
+    private final Set<String> inFlight = new HashSet<>();
+    private final Map<String, Long> lastFailure = new HashMap<>();
+
+    private List<ReverseGeocoder> geocoders; // Background thread only
+
+    private GeocodeCache(Context context) {
+        this.context = context;
+        executor.execute(() -> AppDatabase.getDatabase(context).geocodeDao()
+                .deleteOlderThan(System.currentTimeMillis() - MAX_ENTRY_AGE_MS));
+    }
+
+    /**
+     * The cache key for a location, at the configured precision.
+     */
+    public String geohashOf(Location location) {
+        int precision = SettingsStore.getInstance(context).get().getGeohashPrecision();
+        return Geohash.encode(location.getLatitude(), location.getLongitude(), precision);
+    }
+
+    /**
+     * Returns the address of the location's cell if it is in memory, without blocking.
+     * On a miss the cell is prefetched so a later lookup (or the photo record) gets it.
+     * @return The address, or null if it is not known yet.
+     */
+    public String lookup(Location location) {
+        if (location == null) return null;
+        String geohash = geohashOf(location);
+        synchronized (this) {
+            String address = memory.get(geohash);
+            if (address != null) return address;
+        }
+        prefetch(geohash, location.getLatitude(), location.getLongitude());
+        return null;
+    }
+
+    /**
+     * Resolves the location's cell in the background unless it is already known (from a
+     * persistent source). Called for every new fix.
+     */
+    public void prefetch(Location location) {
+        if (location == null) return;
+        prefetch(geohashOf(location), location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Fills in the address of photos saved without one, if their cell is known by now.
+     * Runs after any lookup already queued for the same cell.
+     */
+    public void fillPendingPhotos(String geohash) {
+        if (geohash == null) return;
+        executor.execute(() -> {
+            String address;
+            synchronized (this) {
+                address = memory.get(geohash);
+            }
+            if (address != null) {
+                AppDatabase.getDatabase(context).photoDao().fillPendingAddress(geohash, address);
+            }
+        });
+    }
+
+    private void prefetch(String geohash, double latitude, double longitude) {
+        synchronized (this) {
+            if (inFlight.contains(geohash)) return;
+            if (memory.containsKey(geohash) && !provisional.contains(geohash)) return;
+            Long failedAt = lastFailure.get(geohash);
+            if (failedAt != null && System.currentTimeMillis() - failedAt < RETRY_DELAY_MS) return;
+            inFlight.add(geohash);
+        }
+        executor.execute(() -> {
+            Resolved resolved = null;
+            try {
+                resolved = resolve(geohash, latitude, longitude);
+            } finally {
+                synchronized (this) {
+                    inFlight.remove(geohash);
+                    if (resolved != null) {
+                        memory.put(geohash, resolved.address);
+                    }
+                    if (resolved != null && resolved.persistent) {
+                        provisional.remove(geohash);
+                        lastFailure.remove(geohash);
+                    } else {
+                        // No answer, or only an offline one: ask the platform again later
+                        if (resolved != null) provisional.add(geohash);
+                        lastFailure.put(geohash, System.currentTimeMillis());
+                    }
+                }
+            }
+            String address = resolved != null ? resolved.address : null;
+            if (address != null) {
+                int filled = AppDatabase.getDatabase(context).photoDao().fillPendingAddress(geohash, address);
+                if (filled > 0) {
+                    Log.d(TAG, "Filled in the address of " + filled + " photo(s) in cell " + geohash);
+                }
+            }
+        });
+    }
+
+    /**
+     * An address and whether it came from a source worth keeping (Room or the platform).
+     */
+    private static final class Resolved {
+        final String address;
+        final boolean persistent;
+
+        Resolved(String address, boolean persistent) {
+            this.address = address;
+            this.persistent = persistent;
+        }
+    }
+
+    /**
+     * Runs on the background thread: Room first, then each geocoder in turn.
+     * @return The first answer, or null if no source had one.
+     */
+    private Resolved resolve(String geohash, double latitude, double longitude) {
+        AppDatabase database = AppDatabase.getDatabase(context);
+        GeocodeEntry cached = database.geocodeDao().getEntry(geohash);
+        if (cached != null && cached.getAddress() != null) {
+            return new Resolved(cached.getAddress(), true);
+        }
+
+        for (ReverseGeocoder geocoder : getGeocoders()) {
+            String address;
+            try {
+                address = geocoder.reverseGeocode(latitude, longitude);
+            } catch (IOException e) {
+                Log.w(TAG, "Reverse geocoding failed for cell " + geohash + ": " + e.getMessage());
+                continue;
+            }
+            if (address == null) continue;
+
+            if (geocoder.isPersistent()) {
+                GeocodeEntry entry = new GeocodeEntry();
+                entry.setGeohash(geohash);
+                entry.setAddress(address);
+                entry.setResolvedAt(System.currentTimeMillis());
+                database.geocodeDao().insertEntry(entry);
+            }
+            return new Resolved(address, geocoder.isPersistent());
+        }
+        return null;
+    }
+
+    /**
+     * The platform geocoder, then the offline region pack if one is installed.
+     * Only used on the background thread.
+     */
+    private List<ReverseGeocoder> getGeocoders() {
+        if (geocoders == null) {
+            geocoders = new ArrayList<>();
+            geocoders.add(new PlatformReverseGeocoder(context));
+            OfflineReverseGeocoder offline =
+                    OfflineReverseGeocoder.openFirst(new File(context.getFilesDir(), PACK_DIRECTORY));
+            if (offline != null) {
+                Log.d(TAG, "Offline region pack loaded with " + offline.size() + " places.");
+                geocoders.add(offline);
+            }
+        }
+        return geocoders;
+    }
+}
@@ -0,0 +1,147 @@
+package com.lunartag.app.geocode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reverse geocoding without network, from a memory-mapped region pack (see {@link RegionPack}).
+ * A query walks the implicit k-d tree for the nearest named point within a radius.
+ * Nothing is loaded onto the heap; the OS pages in the parts of the file a query touches.
+ *
+ * Distances use an equirectangular approximation around the query point, which is
+ * accurate at address scale. Packs are not expected to cross the antimeridian.
+ *
+ * No Android classes are used here, so lookups can be checked on a plain JVM.
+ */
+public class OfflineReverseGeocoder implements ReverseGeocoder {
+
+    public static final double DEFAULT_MAX_DISTANCE_METERS = 2000;
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private final MappedByteBuffer buffer;
+    private final IntBuffer points;
+    private final int count;
+    private final int namesStart;
+    private final double maxDistanceMeters;
+
+    /**
+     * Maps a pack file.
+     * @throws IOException If the file cannot be read or is not a region pack.
+     */
+    public OfflineReverseGeocoder(File packFile, double maxDistanceMeters) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(packFile, "r");
+             FileChannel channel = file.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < RegionPack.HEADER_BYTES
+                || buffer.getInt(0) != RegionPack.MAGIC || buffer.getInt(4) != RegionPack.VERSION) {
+            throw new IOException("Not a region pack: " + packFile);
+        }
+        count = buffer.getInt(8);
+        namesStart = RegionPack.HEADER_BYTES + count * RegionPack.BYTES_PER_POINT;
+        if (count < 0 || namesStart > buffer.capacity()) {
+            throw new IOException("Truncated region pack: " + packFile);
+        }
+        ByteBuffer pointBytes = buffer.duplicate();
+        pointBytes.position(RegionPack.HEADER_BYTES);
+        pointBytes.limit(namesStart);
+        points = pointBytes.slice().asIntBuffer();
+        this.maxDistanceMeters = maxDistanceMeters;
+    }
+
+    /**
+     * Opens the first region pack found in a directory.
+     * @return The geocoder, or null if the directory holds no readable pack.
+     */
+    public static OfflineReverseGeocoder openFirst(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".ltrg"));
+        if (files == null) return null;
+        for (File file : files) {
+            try {
+                return new OfflineReverseGeocoder(file, DEFAULT_MAX_DISTANCE_METERS);
+            } catch (IOException e) {
+                // Try the next one
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String reverseGeocode(double latitude, double longitude) {
+        int index = nearest(latitude, longitude);
+        return index >= 0 ? readName(points.get(index * RegionPack.INTS_PER_POINT + 2)) : null;
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false; // Centroids only; a platform address for the same cell is better
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Index of the nearest point within the maximum distance, or -1.
+     */
+    int nearest(double latitude, double longitude) {
+        Search search = new Search();
+        search.latitude = latitude * RegionPack.MICRODEGREES;
+        search.longitude = longitude * RegionPack.MICRODEGREES;
+        search.lonScale = Math.cos(Math.toRadians(latitude));
+        double radius = maxDistanceMeters / METERS_PER_DEGREE * RegionPack.MICRODEGREES;
+        search.bestDistance = radius * radius;
+        search.bestIndex = -1;
+        search(search, 0, count, 0);
+        return search.bestIndex;
+    }
+
+    /**
+     * Query state, in microdegrees with longitude scaled to the query's latitude.
+     */
+    private static final class Search {
+        double latitude, longitude, lonScale;
+        double bestDistance;
+        int bestIndex;
+    }
+
+    private void search(Search s, int from, int to, int depth) {
+        if (from >= to) return;
+        int mid = (from + to) >>> 1;
+        int base = mid * RegionPack.INTS_PER_POINT;
+        double dLat = points.get(base) - s.latitude;
+        double dLon = (points.get(base + 1) - s.longitude) * s.lonScale;
+        double distance = dLat * dLat + dLon * dLon;
+        if (distance < s.bestDistance) {
+            s.bestDistance = distance;
+            s.bestIndex = mid;
+        }
+
+        // The query's side first; the other side only if the split plane is within the best distance
+        double split = (depth & 1) == 0 ? dLat : dLon;
+        if (split >= 0) {
+            search(s, from, mid, depth + 1);
+            if (split * split < s.bestDistance) search(s, mid + 1, to, depth + 1);
+        } else {
+            search(s, mid + 1, to, depth + 1);
+            if (split * split < s.bestDistance) search(s, from, mid, depth + 1);
+        }
+    }
+
+    private String readName(int offset) {
+        int position = namesStart + offset;
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        ByteBuffer name = buffer.duplicate();
+        name.position(position + 2);
+        name.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,39 @@
+package com.lunartag.app.geocode;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Geocoder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The platform {@link Geocoder}. Needs a network connection on most devices.
+ */
+public class PlatformReverseGeocoder implements ReverseGeocoder {
+
+    private final Context context;
+
+    public PlatformReverseGeocoder(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public String reverseGeocode(double latitude, double longitude) throws IOException {
+        if (!Geocoder.isPresent()) return null;
+        Geocoder geocoder = new Geocoder(context, Locale.getDefault());
+        try {
+            List<Address> addresses = geocoder.getFromLocation(latitude, longitude, 1);
+            if (addresses == null || addresses.isEmpty()) return null;
+            return addresses.get(0).getAddressLine(0);
+        } catch (IllegalArgumentException e) {
+            return null; // Coordinates out of range
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+}
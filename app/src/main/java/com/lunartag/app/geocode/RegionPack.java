@@ -0,0 +1,34 @@
+package com.lunartag.app.geocode;
+
+/**
+ * Layout of an offline region pack (".ltrg"), shared by {@link RegionPackBuilder} and
+ * {@link OfflineReverseGeocoder}. All values are big-endian.
+ *
+ * <pre>
+ *   int  magic ("LTRG")
+ *   int  version
+ *   int  point count N
+ *   int  reserved (0)
+ *   N x { int latitude * 1e6, int longitude * 1e6, int name offset }
+ *   names: { unsigned short UTF-8 length, UTF-8 bytes }...
+ * </pre>
+ *
+ * The points are stored as an implicit k-d tree: the point in the middle of any range is
+ * that subtree's root, splitting the rest of the range into the left and right halves.
+ * The root level splits on latitude, the next on longitude, and so on. No child pointers
+ * are needed, so a point costs 12 bytes and the file can be searched straight from a
+ * memory mapping.
+ *
+ * No Android classes are used here, so packs can be built and checked on a plain JVM.
+ */
+final class RegionPack {
+
+    static final int MAGIC = 0x4C545247; // "LTRG"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int INTS_PER_POINT = 3;
+    static final int BYTES_PER_POINT = INTS_PER_POINT * 4;
+    static final double MICRODEGREES = 1e6;
+
+    private RegionPack() {}
+}
@@ -0,0 +1,136 @@
+package com.lunartag.app.geocode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds an offline region pack (see {@link RegionPack}) from place and street centroids.
+ * Repeated names are stored once.
+ *
+ * No Android classes are used here, so packs can be built on a plain JVM.
+ */
+public final class RegionPackBuilder {
+
+    private int[] latitudes = new int[1024];
+    private int[] longitudes = new int[1024];
+    private int[] nameOffsets = new int[1024];
+    private int count = 0;
+
+    private final ByteArrayOutputStream names = new ByteArrayOutputStream();
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+
+    /**
+     * Adds one named point.
+     * @param name The address line returned for locations nearest to this point.
+     */
+    public RegionPackBuilder add(double latitude, double longitude, String name) {
+        if (count == latitudes.length) {
+            int capacity = count * 2;
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        }
+        latitudes[count] = (int) Math.round(latitude * RegionPack.MICRODEGREES);
+        longitudes[count] = (int) Math.round(longitude * RegionPack.MICRODEGREES);
+        nameOffsets[count] = internName(name);
+        count++;
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Arranges the points into the k-d tree order and writes the pack.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        arrange(order, 0, count, 0);
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(RegionPack.MAGIC);
+        data.writeInt(RegionPack.VERSION);
+        data.writeInt(count);
+        data.writeInt(0);
+        for (int index : order) {
+            data.writeInt(latitudes[index]);
+            data.writeInt(longitudes[index]);
+            data.writeInt(nameOffsets[index]);
+        }
+        names.writeTo(data);
+        data.flush();
+    }
+
+    private int internName(String name) {
+        Integer offset = nameIndex.get(name);
+        if (offset != null) return offset;
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, 0xFFFF);
+        offset = names.size();
+        names.write(length >> 8);
+        names.write(length & 0xFF);
+        names.write(bytes, 0, length);
+        nameIndex.put(name, offset);
+        return offset;
+    }
+
+    /**
+     * Puts the median of [from, to) on the current axis in the middle, then recurses.
+     */
+    private void arrange(int[] order, int from, int to, int depth) {
+        while (to - from > 1) {
+            int mid = (from + to) >>> 1;
+            int[] keys = (depth & 1) == 0 ? latitudes : longitudes;
+            select(order, from, to - 1, mid, keys);
+            arrange(order, from, mid, depth + 1);
+            from = mid + 1; // Right half, iteratively
+            depth++;
+        }
+    }
+
+    /**
+     * Quickselect: reorders order[left..right] so order[k] holds the k-th smallest key.
+     */
+    private static void select(int[] order, int left, int right, int k, int[] keys) {
+        while (right > left) {
+            // Median of three as pivot
+            int middle = (left + right) >>> 1;
+            if (keys[order[middle]] < keys[order[left]]) swap(order, middle, left);
+            if (keys[order[right]] < keys[order[left]]) swap(order, right, left);
+            if (keys[order[right]] < keys[order[middle]]) swap(order, right, middle);
+            int pivot = keys[order[middle]];
+
+            int i = left, j = right;
+            while (i <= j) {
+                while (keys[order[i]] < pivot) i++;
+                while (keys[order[j]] > pivot) j--;
+                if (i <= j) {
+                    swap(order, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(int[] array, int a, int b) {
+        int tmp = array[a];
+        array[a] = array[b];
+        array[b] = tmp;
+    }
+}
@@ -0,0 +1,22 @@
+package com.lunartag.app.geocode;
+
+import java.io.IOException;
+
+/**
+ * Turns a coordinate into a human-readable address line.
+ * Implementations may block; {@link GeocodeCache} only calls them on its background thread.
+ */
+public interface ReverseGeocoder {
+
+    /**
+     * @return The address line, or null if this geocoder has nothing for the location.
+     * @throws IOException If the lookup could not be done (e.g. no network); the caller may retry later.
+     */
+    String reverseGeocode(double latitude, double longitude) throws IOException;
+
+    /**
+     * Whether results are exact enough to be stored in the persistent cache.
+     * Approximate answers are only kept in memory, so a better source can replace them later.
+     */
+    boolean isPersistent();
+}
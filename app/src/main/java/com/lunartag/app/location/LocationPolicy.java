@@ -0,0 +1,222 @@
+package com.lunartag.app.location;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Decides how hard the GPS has to work, from what the user is doing.
+ *
+ * The inputs are recent fixes (movement and accuracy), the time of the last capture,
+ * user activity on the camera screen, and the upcoming admin slots. The result is a
+ * {@link Decision}: a priority and an update interval.
+ * - A capture is likely (a slot is close, the user just shot or touched the screen):
+ *   high accuracy, fast updates.
+ * - Moving, or no sharp fix in the last minutes: high accuracy at the normal rate.
+ * - Stationary and idle: balanced power, backing off further the longer it lasts.
+ *
+ * The slowest interval stays shorter than the "slot is close" window, so a fix always
+ * arrives in time to tighten the policy before a slot.
+ *
+ * No Android classes are used here. Time comes from an injectable {@link Clock}, so the
+ * policy can be replayed against recorded location traces on a plain JVM.
+ */
+public class LocationPolicy {
+
+    public enum Priority {
+        HIGH_ACCURACY,
+        BALANCED_POWER
+    }
+
+    /**
+     * What the location request should look like right now.
+     */
+    public static final class Decision {
+        private final Priority priority;
+        private final long intervalMillis;
+        private final long minIntervalMillis;
+        private final String reason;
+
+        Decision(Priority priority, long intervalMillis, long minIntervalMillis, String reason) {
+            this.priority = priority;
+            this.intervalMillis = intervalMillis;
+            this.minIntervalMillis = minIntervalMillis;
+            this.reason = reason;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public long getMinIntervalMillis() {
+            return minIntervalMillis;
+        }
+
+        /**
+         * Short explanation for logs.
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * Whether switching from this decision to the other one needs a new location request.
+         */
+        public boolean sameRequest(Decision other) {
+            return other != null && priority == other.priority && intervalMillis == other.intervalMillis
+                    && minIntervalMillis == other.minIntervalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return priority + " every " + intervalMillis + " ms (" + reason + ")";
+        }
+    }
+
+    /**
+     * Source of the current time in milliseconds.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+
+        Clock SYSTEM = System::currentTimeMillis;
+    }
+
+    // --- Tuning ---
+    static final long CAPTURE_WINDOW_MS = 2 * 60_000; // Slot or recent capture/activity counts as "about to shoot"
+    static final long MOVEMENT_WINDOW_MS = 60_000; // Counts as moving this long after the last displacement
+    static final long IDLE_LONG_MS = 15 * 60_000;
+    static final float MOVING_METERS = 25; // Displacement within the movement window
+    static final float POOR_ACCURACY_METERS = 30;
+    private static final long FIX_HISTORY_MS = 5 * 60_000;
+
+    static final Decision IMMINENT = new Decision(Priority.HIGH_ACCURACY, 2_000, 1_000, "capture likely");
+    static final Decision ACTIVE = new Decision(Priority.HIGH_ACCURACY, 5_000, 2_000, "moving or poor fix");
+    static final Decision IDLE = new Decision(Priority.BALANCED_POWER, 30_000, 10_000, "stationary");
+    static final Decision IDLE_LONG = new Decision(Priority.BALANCED_POWER, 60_000, 30_000, "stationary, long idle");
+
+    /**
+     * One recorded fix.
+     */
+    private static final class Fix {
+        final double latitude, longitude;
+        final float accuracy;
+        final long time;
+
+        Fix(double latitude, double longitude, float accuracy, long time) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+            this.time = time;
+        }
+    }
+
+    private final Clock clock;
+    private final ArrayDeque<Fix> fixes = new ArrayDeque<>();
+    private long lastCaptureTime = Long.MIN_VALUE / 2;
+    private long lastActivityTime;
+    private long lastMovementTime = Long.MIN_VALUE / 2;
+    private long[] upcomingSlots = new long[0]; // Sorted
+
+    public LocationPolicy(Clock clock) {
+        this.clock = clock;
+        this.lastActivityTime = clock.currentTimeMillis(); // Opening the camera counts as activity
+    }
+
+    public synchronized void onFix(double latitude, double longitude, float accuracyMeters) {
+        long now = clock.currentTimeMillis();
+        Fix fix = new Fix(latitude, longitude, accuracyMeters, now);
+        fixes.addLast(fix);
+        if (hasMoved(fix)) {
+            lastMovementTime = now;
+        }
+        while (!fixes.isEmpty() && now - fixes.peekFirst().time > FIX_HISTORY_MS) {
+            fixes.removeFirst();
+        }
+    }
+
+    public synchronized void onCapture() {
+        lastCaptureTime = clock.currentTimeMillis();
+        lastActivityTime = lastCaptureTime;
+    }
+
+    /**
+     * The user interacted with the camera screen (zoom, focus, opened it).
+     */
+    public synchronized void onUserActivity() {
+        lastActivityTime = clock.currentTimeMillis();
+    }
+
+    /**
+     * @param slotTimes Times of the upcoming admin slots, in any order.
+     */
+    public synchronized void setUpcomingSlots(long[] slotTimes) {
+        upcomingSlots = slotTimes.clone();
+        Arrays.sort(upcomingSlots);
+    }
+
+    public synchronized Decision decide() {
+        long now = clock.currentTimeMillis();
+
+        // --- 1. About to shoot ---
+        if (now - lastActivityTime < CAPTURE_WINDOW_MS || isSlotClose(now)) {
+            return IMMINENT;
+        }
+
+        // --- 2. Moving, or no sharp fix lately ---
+        // Balanced-power fixes are always vague, so only the lack of any sharp one counts
+        if (!hasSharpFix() || now - lastMovementTime < MOVEMENT_WINDOW_MS) {
+            return ACTIVE;
+        }
+
+        // --- 3. Stationary ---
+        long idle = now - Math.max(lastCaptureTime, lastActivityTime);
+        return idle >= IDLE_LONG_MS ? IDLE_LONG : IDLE;
+    }
+
+    private boolean isSlotClose(long now) {
+        for (long slot : upcomingSlots) {
+            if (slot < now - CAPTURE_WINDOW_MS) continue; // Long past
+            return slot - now < CAPTURE_WINDOW_MS;
+        }
+        return false;
+    }
+
+    private boolean hasSharpFix() {
+        for (Fix fix : fixes) {
+            if (fix.accuracy <= POOR_ACCURACY_METERS) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the new fix is far enough from an earlier one in the movement window (or
+     * the fix just before it, however old) beyond what the two accuracies explain.
+     */
+    private boolean hasMoved(Fix latest) {
+        Iterator<Fix> iterator = fixes.descendingIterator();
+        iterator.next(); // The latest fix itself
+        while (iterator.hasNext()) {
+            Fix fix = iterator.next();
+            double distance = distanceMeters(fix.latitude, fix.longitude, latest.latitude, latest.longitude);
+            if (distance - (fix.accuracy + latest.accuracy) > MOVING_METERS) {
+                return true;
+            }
+            if (latest.time - fix.time > MOVEMENT_WINDOW_MS) break;
+        }
+        return false;
+    }
+
+    /**
+     * Equirectangular distance; accurate at the few hundred metres compared here.
+     */
+    static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * 6_371_000;
+    }
+}
@@ -0,0 +1,106 @@
+package com.lunartag.app.map;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Encoded map tiles on disk, bounded in size. Reading a tile marks it as recently used;
+ * when the cache grows past its limit the least recently used tiles are deleted.
+ *
+ * Not thread-safe; {@link MapThumbnailRenderer} uses it from its own thread only.
+ */
+class DiskTileCache {
+
+    private static final String TAG = "DiskTileCache";
+
+    private final File directory;
+    private final long maxBytes;
+    private long totalBytes = -1; // Computed on first use
+
+    DiskTileCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The encoded tile, or null if it is not cached.
+     */
+    byte[] get(int zoom, int x, int y) {
+        File file = fileFor(zoom, x, y);
+        if (!file.isFile()) return null;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int len = in.read(bytes, read, bytes.length - read);
+                if (len < 0) return null;
+                read += len;
+            }
+            file.setLastModified(System.currentTimeMillis()); // Recently used
+            return bytes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    void put(int zoom, int x, int y, byte[] bytes) {
+        ensureSize();
+        File file = fileFor(zoom, x, y);
+        File temp = new File(directory, file.getName() + ".tmp");
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache tile " + file.getName() + ": " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        long previous = file.isFile() ? file.length() : 0;
+        if (temp.renameTo(file)) {
+            totalBytes += bytes.length - previous;
+            trim();
+        } else {
+            temp.delete();
+        }
+    }
+
+    private File fileFor(int zoom, int x, int y) {
+        return new File(directory, zoom + "_" + x + "_" + y + ".tile");
+    }
+
+    private void ensureSize() {
+        if (totalBytes >= 0) return;
+        totalBytes = 0;
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+    }
+
+    /**
+     * Deletes least recently used tiles until the cache is at 90% of its limit.
+     */
+    private void trim() {
+        if (totalBytes <= maxBytes) return;
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long target = maxBytes * 9 / 10;
+        for (File file : files) {
+            if (totalBytes <= target) break;
+            long length = file.length();
+            if (file.delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+}
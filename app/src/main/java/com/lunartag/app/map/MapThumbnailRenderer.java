@@ -0,0 +1,323 @@
+package com.lunartag.app.map;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.location.Location;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.lunartag.app.config.SettingsStore;
+
+import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
+import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.util.MapTileIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Renders the mini-map for the watermark from map tiles, ahead of the shutter.
+ *
+ * Every new fix re-renders the thumbnail on a background thread if the position has
+ * moved; a capture only picks up the latest finished thumbnail and never waits.
+ * A thumbnail with tiles missing (a download failed, no network) is provisional: it is
+ * used until a later fix renders it again with the tiles that have arrived by then.
+ * Tiles come from, in order: a memory cache of decoded tiles, a bounded disk cache,
+ * a pre-seeded tile archive (files/maps/*.zip, for offline sites) and finally the
+ * OpenStreetMap tile server when there is a network.
+ *
+ * Off unless the user turns the mini-map on in Settings, since it sends the position's
+ * tile coordinates to the tile server.
+ */
+public class MapThumbnailRenderer {
+
+    private static final String TAG = "MapThumbnailRenderer";
+
+    public static final String ARCHIVE_DIRECTORY = "maps";
+    private static final String DISK_CACHE_DIRECTORY = "map_tiles";
+    private static final long DISK_CACHE_BYTES = 50L * 1024 * 1024;
+    private static final int MEMORY_CACHE_BYTES = 8 * 1024 * 1024;
+
+    private static final int ZOOM = 16;
+    private static final int TILE_SIZE = 256;
+    private static final int THUMBNAIL_SIZE = 384; // The watermark layout scales it to its map slot
+    private static final int MAX_SHIFT_PX = 8; // Re-render once the fix has moved this far on the map
+    private static final long INCOMPLETE_RETRY_MS = 10_000; // Minimum time between renders of a provisional thumbnail
+    private static final int MARKER_RADIUS = 9;
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+
+    private static volatile MapThumbnailRenderer INSTANCE;
+
+    public static MapThumbnailRenderer getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (MapThumbnailRenderer.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new MapThumbnailRenderer(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * A finished thumbnail and the map position (in world pixels at {@link #ZOOM}) it is centred on.
+     */
+    private static final class Thumbnail {
+        final Bitmap bitmap;
+        final double centerX, centerY;
+        final boolean complete; // False if some tiles were missing (drawn as grey)
+        final long renderedAt; // SystemClock.elapsedRealtime()
+
+        Thumbnail(Bitmap bitmap, double centerX, double centerY, boolean complete, long renderedAt) {
+            this.bitmap = bitmap;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.complete = complete;
+            this.renderedAt = renderedAt;
+        }
+    }
+
+    private final Context context;
+    private final OnlineTileSourceBase tileSource = TileSourceFactory.MAPNIK;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "LunarTag-MapTiles");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final AtomicBoolean renderQueued = new AtomicBoolean(false);
+    private volatile Location pendingLocation;
+    private volatile Thumbnail latest;
+
+    // Background thread only
+    private final LruCache<Long, Bitmap> memoryCache = new LruCache<Long, Bitmap>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Bitmap tile) {
+            return tile.getByteCount();
+        }
+    };
+    private DiskTileCache diskCache;
+    private TileArchive archive;
+    private boolean archiveOpened = false;
+    private String userAgent;
+
+    private MapThumbnailRenderer(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Whether the user wants the mini-map in the stamp.
+     */
+    public boolean isEnabled() {
+        return SettingsStore.getInstance(context).get().isMapInStamp();
+    }
+
+    /**
+     * The latest thumbnail if it shows this location, without blocking. A provisional one
+     * (tiles missing) is returned as well, and a new render is requested.
+     * @return The shared thumbnail (do not modify or recycle it), or null if none is ready.
+     */
+    public Bitmap getThumbnail(Location location) {
+        if (location == null || !isEnabled()) return null;
+        Thumbnail thumbnail = latest;
+        if (thumbnail == null || !isUpToDate(thumbnail, location)) {
+            prefetch(location);
+        }
+        return thumbnail != null && isNear(thumbnail, location) ? thumbnail.bitmap : null;
+    }
+
+    /**
+     * Renders the thumbnail for a new fix in the background. Fixes arriving while a render
+     * is queued replace its location, so a burst of fixes costs one render.
+     */
+    public void prefetch(Location location) {
+        if (location == null || !isEnabled()) return;
+        Thumbnail thumbnail = latest;
+        if (thumbnail != null && isUpToDate(thumbnail, location)) return;
+        pendingLocation = location;
+        if (renderQueued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                renderQueued.set(false);
+                Location target = pendingLocation;
+                Thumbnail current = latest;
+                if (target == null || (current != null && isUpToDate(current, target))) return;
+                Thumbnail rendered = render(target);
+                if (rendered != null) latest = rendered;
+            });
+        }
+    }
+
+    /**
+     * Whether the thumbnail needs no new render for this location: it is near, and either
+     * complete or rendered too recently to try the missing tiles again.
+     */
+    private static boolean isUpToDate(Thumbnail thumbnail, Location location) {
+        return isNear(thumbnail, location) && (thumbnail.complete
+                || SystemClock.elapsedRealtime() - thumbnail.renderedAt < INCOMPLETE_RETRY_MS);
+    }
+
+    private static boolean isNear(Thumbnail thumbnail, Location location) {
+        return Math.abs(worldX(location.getLongitude()) - thumbnail.centerX) <= MAX_SHIFT_PX
+                && Math.abs(worldY(location.getLatitude()) - thumbnail.centerY) <= MAX_SHIFT_PX;
+    }
+
+    /**
+     * Composes the tiles around the location. Runs on the background thread.
+     * @return The thumbnail, or null if not a single tile was available.
+     */
+    private Thumbnail render(Location location) {
+        double centerX = worldX(location.getLongitude());
+        double centerY = worldY(location.getLatitude());
+        int left = (int) Math.floor(centerX - THUMBNAIL_SIZE / 2.0);
+        int top = (int) Math.floor(centerY - THUMBNAIL_SIZE / 2.0);
+        int tiles = 1 << ZOOM;
+
+        Bitmap bitmap = Bitmap.createBitmap(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.LTGRAY); // Shows through where a tile is missing
+        Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        Rect destination = new Rect();
+        int drawn = 0;
+        int missing = 0;
+
+        for (int tileY = Math.floorDiv(top, TILE_SIZE); tileY * TILE_SIZE < top + THUMBNAIL_SIZE; tileY++) {
+            if (tileY < 0 || tileY >= tiles) continue;
+            for (int tileX = Math.floorDiv(left, TILE_SIZE); tileX * TILE_SIZE < left + THUMBNAIL_SIZE; tileX++) {
+                Bitmap tile = getTile(Math.floorMod(tileX, tiles), tileY);
+                if (tile == null) {
+                    missing++;
+                    continue;
+                }
+                int x = tileX * TILE_SIZE - left;
+                int y = tileY * TILE_SIZE - top;
+                destination.set(x, y, x + TILE_SIZE, y + TILE_SIZE);
+                canvas.drawBitmap(tile, null, destination, tilePaint);
+                drawn++;
+            }
+        }
+        if (drawn == 0) {
+            bitmap.recycle();
+            return null;
+        }
+
+        // Position marker
+        Paint marker = new Paint(Paint.ANTI_ALIAS_FLAG);
+        float markerX = (float) (centerX - left);
+        float markerY = (float) (centerY - top);
+        marker.setColor(Color.WHITE);
+        canvas.drawCircle(markerX, markerY, MARKER_RADIUS + 3, marker);
+        marker.setColor(Color.RED);
+        canvas.drawCircle(markerX, markerY, MARKER_RADIUS, marker);
+
+        if (missing > 0) {
+            Log.d(TAG, missing + " map tile(s) missing; the thumbnail is provisional.");
+        }
+        return new Thumbnail(bitmap, centerX, centerY, missing == 0, SystemClock.elapsedRealtime());
+    }
+
+    private Bitmap getTile(int x, int y) {
+        long key = MapTileIndex.getTileIndex(ZOOM, x, y);
+        Bitmap tile = memoryCache.get(key);
+        if (tile != null) return tile;
+
+        if (diskCache == null) {
+            diskCache = new DiskTileCache(new File(context.getCacheDir(), DISK_CACHE_DIRECTORY), DISK_CACHE_BYTES);
+        }
+        byte[] bytes = diskCache.get(ZOOM, x, y);
+        if (bytes == null) {
+            bytes = getArchive() != null ? archive.get(ZOOM, x, y) : null;
+        }
+        if (bytes == null && isOnline()) {
+            bytes = download(key);
+            if (bytes != null) diskCache.put(ZOOM, x, y, bytes);
+        }
+        if (bytes == null) return null;
+
+        tile = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        if (tile != null) memoryCache.put(key, tile);
+        return tile;
+    }
+
+    private TileArchive getArchive() {
+        if (!archiveOpened) {
+            archiveOpened = true;
+            archive = TileArchive.openFirst(new File(context.getFilesDir(), ARCHIVE_DIRECTORY), tileSource.name());
+            if (archive != null) Log.d(TAG, "Offline tile archive opened.");
+        }
+        return archive;
+    }
+
+    private boolean isOnline() {
+        ConnectivityManager connectivity = context.getSystemService(ConnectivityManager.class);
+        if (connectivity == null) return false;
+        NetworkCapabilities capabilities = connectivity.getNetworkCapabilities(connectivity.getActiveNetwork());
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    private byte[] download(long tileIndex) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(tileSource.getTileURLString(tileIndex)).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(CONNECT_TIMEOUT_MS);
+            // The OSM tile policy requires a User-Agent naming the app and its version
+            connection.setRequestProperty("User-Agent", getUserAgent());
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) return null;
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+                byte[] buffer = new byte[8192];
+                int len;
+                while ((len = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, len);
+                }
+                return out.toByteArray();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Tile download failed: " + e.getMessage());
+            return null;
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    private String getUserAgent() {
+        if (userAgent == null) {
+            String version = "unknown";
+            try {
+                version = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionName;
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Own package info not found.", e);
+            }
+            userAgent = "LunarTag/" + version + " (Android " + Build.VERSION.RELEASE + "; " + context.getPackageName() + ")";
+        }
+        return userAgent;
+    }
+
+    // --- Web Mercator, in pixels of the whole world at ZOOM ---
+
+    private static double worldX(double longitude) {
+        return (longitude + 180.0) / 360.0 * TILE_SIZE * (1 << ZOOM);
+    }
+
+    private static double worldY(double latitude) {
+        double lat = Math.toRadians(Math.max(-85.0511, Math.min(85.0511, latitude)));
+        double y = (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2;
+        return y * TILE_SIZE * (1 << ZOOM);
+    }
+}
@@ -0,0 +1,70 @@
+package com.lunartag.app.map;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A pre-seeded zip of map tiles, for sites without network.
+ * Uses the osmdroid archive layout, "{source}/{z}/{x}/{y}.png"; a bare "{z}/{x}/{y}.png"
+ * is accepted too.
+ */
+class TileArchive {
+
+    private static final String[] EXTENSIONS = {".png", ".jpg"};
+
+    private final ZipFile zip;
+    private final String prefix; // "Mapnik/" or ""
+
+    private TileArchive(ZipFile zip, String prefix) {
+        this.zip = zip;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Opens the first *.zip in a directory.
+     * @return The archive, or null if there is none.
+     */
+    static TileArchive openFirst(File directory, String sourceName) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".zip"));
+        if (files == null) return null;
+        for (File file : files) {
+            try {
+                ZipFile zip = new ZipFile(file);
+                return new TileArchive(zip, hasSourceFolder(zip, sourceName) ? sourceName + "/" : "");
+            } catch (IOException e) {
+                // Not a zip; try the next one
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The encoded tile, or null if the archive does not have it.
+     */
+    byte[] get(int zoom, int x, int y) {
+        for (String extension : EXTENSIONS) {
+            ZipEntry entry = zip.getEntry(prefix + zoom + "/" + x + "/" + y + extension);
+            if (entry == null) continue;
+            try (InputStream in = zip.getInputStream(entry)) {
+                byte[] bytes = new byte[(int) entry.getSize()];
+                int read = 0;
+                while (read < bytes.length) {
+                    int len = in.read(bytes, read, bytes.length - read);
+                    if (len < 0) return null;
+                    read += len;
+                }
+                return bytes;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasSourceFolder(ZipFile zip, String sourceName) {
+        return zip.stream().anyMatch(entry -> entry.getName().startsWith(sourceName + "/"));
+    }
+}
@@ -0,0 +1,47 @@
+package com.lunartag.app.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * A data model class that represents one cached reverse-geocoding result.
+ * The key is the geohash of the location, so every fix inside the same cell shares it.
+ */
+@Entity(tableName = "geocode_cache")
+public class GeocodeEntry {
+
+    @PrimaryKey
+    @NonNull
+    private String geohash = "";
+
+    private String address; // The first address line returned by the geocoder
+    private long resolvedAt; // Stored as long (milliseconds) for Room
+
+    // --- Getters and Setters for all fields ---
+
+    @NonNull
+    public String getGeohash() {
+        return geohash;
+    }
+
+    public void setGeohash(@NonNull String geohash) {
+        this.geohash = geohash;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public long getResolvedAt() {
+        return resolvedAt;
+    }
+
+    public void setResolvedAt(long resolvedAt) {
+        this.resolvedAt = resolvedAt;
+    }
+}
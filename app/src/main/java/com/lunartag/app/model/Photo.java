@@ -15,12 +15,14 @@ public class Photo {
     public long id;
 
     private String filePath;
+    private String thumbnailPath; // Small upright JPEG in the app's files, null for older photos
     private long assignedTimestamp; // Stored as long (milliseconds) for Room
     private long captureTimestampReal; // Stored as long (milliseconds) for Room
     private double lat;
     private double lon;
     private double accuracyMeters;
-    private String addressHuman;
+    private String addressHuman; // Null while the address is still being resolved
+    private String addressGeohash; // Cell the address is looked up by
     private String shiftStart;
     private String shiftEnd;
     private String watermarkName;
@@ -47,6 +49,14 @@ public class Photo {
         this.filePath = filePath;
     }
 
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
+    }
+
     public long getAssignedTimestamp() {
         return assignedTimestamp;
     }
@@ -95,6 +105,14 @@ public class Photo {
         this.addressHuman = addressHuman;
     }
 
+    public String getAddressGeohash() {
+        return addressGeohash;
+    }
+
+    public void setAddressGeohash(String addressGeohash) {
+        this.addressGeohash = addressGeohash;
+    }
+
     public String getShiftStart() {
         return shiftStart;
     }
@@ -0,0 +1,44 @@
+package com.lunartag.app.model;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A data model class that represents one preset timestamp in custom timestamp mode.
+ * Each capture reserves (and removes) the earliest slot; the index keeps that a lookup
+ * instead of a scan.
+ */
+@Entity(tableName = "timestamp_slots", indices = {@Index("slotTime")})
+public class TimestampSlot {
+
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+
+    private long slotTime; // Stored as long (milliseconds) for Room
+
+    public TimestampSlot() {
+    }
+
+    public TimestampSlot(long slotTime) {
+        this.slotTime = slotTime;
+    }
+
+    // --- Getters and Setters for all fields ---
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getSlotTime() {
+        return slotTime;
+    }
+
+    public void setSlotTime(long slotTime) {
+        this.slotTime = slotTime;
+    }
+}
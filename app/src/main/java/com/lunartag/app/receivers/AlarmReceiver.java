@@ -7,7 +7,6 @@ import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
 import android.util.Log;
@@ -17,6 +16,8 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.content.FileProvider;
 
 import com.lunartag.app.R;
+import com.lunartag.app.config.SettingsStore;
+import com.lunartag.app.diagnostics.LunarLog;
 
 import java.io.File;
 
@@ -32,28 +33,18 @@ public class AlarmReceiver extends BroadcastReceiver {
     // Key to retrieve file path (Must match Scheduler)
     public static final String EXTRA_FILE_PATH = "com.lunartag.app.EXTRA_FILE_PATH";
 
-    // Settings Prefs (To read "Love" group name)
-    private static final String PREFS_SETTINGS = "LunarTagSettings";
-    private static final String KEY_WHATSAPP_GROUP = "whatsapp_group";
-
-    // Bridge Prefs (To write commands for the Robot)
-    private static final String PREFS_ACCESSIBILITY = "LunarTagAccessPrefs";
-    private static final String KEY_TARGET_GROUP = "target_group_name";
-    private static final String KEY_JOB_PENDING = "job_is_pending";
-
     private static final String CHANNEL_ID = "SendServiceChannel"; 
     private static final int NOTIFICATION_ID = 999;
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        Log.d(TAG, "Alarm Received! Waking up...");
         // Live Log: Prove the alarm fired
-        Toast.makeText(context, "LunarTag: Scheduled Time Reached!", Toast.LENGTH_LONG).show();
+        LunarLog.i(TAG, "Alarm Received! Scheduled Time Reached.");
 
         String filePath = intent.getStringExtra(EXTRA_FILE_PATH);
 
         if (filePath == null || filePath.isEmpty()) {
-            Log.e(TAG, "No file path provided in Alarm Intent.");
+            LunarLog.e(TAG, "No file path provided in Alarm Intent.");
             return;
         }
 
@@ -68,7 +59,7 @@ public class AlarmReceiver extends BroadcastReceiver {
                 File file = new File(filePath);
                 if (!file.exists()) {
                     Toast.makeText(context, "Error: Photo file missing!", Toast.LENGTH_SHORT).show();
-                    Log.e(TAG, "File missing at: " + filePath);
+                    LunarLog.e(TAG, "File missing at: " + filePath);
                     return;
                 }
                 // Secure File Provider URI
@@ -79,7 +70,7 @@ public class AlarmReceiver extends BroadcastReceiver {
                 );
             }
         } catch (Exception e) {
-            Log.e(TAG, "URI Parse Error: " + e.getMessage());
+            LunarLog.e(TAG, "URI Parse Error: " + e.getMessage());
             return;
         }
 
@@ -93,19 +84,18 @@ public class AlarmReceiver extends BroadcastReceiver {
     /**
      * Writes the Target Group Name to persistent memory so the
      * Accessibility Service can read it whenever WhatsApp finally opens.
+     * Settings ("Love" group name) are read from memory, not from disk on the main thread.
      */
     private void armAccessibilityService(Context context) {
-        SharedPreferences settings = context.getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
-        String groupName = settings.getString(KEY_WHATSAPP_GROUP, "");
-
-        if (groupName != null && !groupName.isEmpty()) {
-            SharedPreferences accessPrefs = context.getSharedPreferences(PREFS_ACCESSIBILITY, Context.MODE_PRIVATE);
-            accessPrefs.edit()
-                    .putString(KEY_TARGET_GROUP, groupName)
-                    .putBoolean(KEY_JOB_PENDING, true)
-                    .apply();
-            Log.d(TAG, "Bridge Armed for Group: " + groupName);
+        SettingsStore store = SettingsStore.getInstance(context);
+        String groupName = store.get().getWhatsappGroup();
+
+        if (!groupName.isEmpty()) {
+            // Bridge: commands for the Robot
+            store.update(settings -> settings.setTargetGroupName(groupName).setSendJobPending(true));
+            LunarLog.i(TAG, "Bridge Armed for Group: " + groupName);
         } else {
+            LunarLog.w(TAG, "No WhatsApp Group Name in Settings.");
             Toast.makeText(context, "Warning: Set WhatsApp Group Name in Settings!", Toast.LENGTH_LONG).show();
         }
     }
@@ -150,7 +140,7 @@ public class AlarmReceiver extends BroadcastReceiver {
         NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         if (manager != null) {
             manager.notify(NOTIFICATION_ID, notification);
-            Log.d(TAG, "Notification Posted. Waiting for user selection.");
+            LunarLog.i(TAG, "Notification Posted. Waiting for user selection.");
         }
     }
 
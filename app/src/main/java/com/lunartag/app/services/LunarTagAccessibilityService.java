@@ -1,8 +1,6 @@
 package com.lunartag.app.services;
 
 import android.accessibilityservice.AccessibilityService;
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
@@ -10,22 +8,24 @@ import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.Toast;
 
+import com.lunartag.app.config.SettingsSnapshot;
+import com.lunartag.app.config.SettingsStore;
+import com.lunartag.app.diagnostics.LunarLog;
+
 import java.util.List;
 
 /**
  * The Automation Engine.
  * UPDATED: Prioritizes "Send" button to prevent infinite looping.
  * Includes Live Log (Toasts) to visualize every step of the automation.
+ * UPDATED: Steps go to the {@link LunarLog}; only problems the user must fix still show a Toast.
+ * UPDATED: The pending job is read from the {@link SettingsStore} snapshot, so the many events
+ * that arrive while no job is pending cost a field read instead of a preferences lookup.
  */
 public class LunarTagAccessibilityService extends AccessibilityService {
 
     private static final String TAG = "AccessibilityService";
 
-    // --- Shared Memory Constants (Must match AlarmReceiver) ---
-    private static final String PREFS_ACCESSIBILITY = "LunarTagAccessPrefs";
-    private static final String KEY_TARGET_GROUP = "target_group_name";
-    private static final String KEY_JOB_PENDING = "job_is_pending";
-
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
         // 1. Expanded Safety Check: Allow Standard, Business, and Clones
@@ -36,9 +36,9 @@ public class LunarTagAccessibilityService extends AccessibilityService {
         }
 
         // 2. Memory Check: Do we have an order to execute?
-        SharedPreferences prefs = getSharedPreferences(PREFS_ACCESSIBILITY, Context.MODE_PRIVATE);
-        boolean isJobPending = prefs.getBoolean(KEY_JOB_PENDING, false);
-        String targetGroupName = prefs.getString(KEY_TARGET_GROUP, null);
+        SettingsSnapshot settings = SettingsStore.getInstance(this).get();
+        boolean isJobPending = settings.isSendJobPending();
+        String targetGroupName = settings.getTargetGroupName();
 
         if (!isJobPending) {
             // Silent exit (No job active), to avoid spamming toast messages.
@@ -46,9 +46,9 @@ public class LunarTagAccessibilityService extends AccessibilityService {
         }
 
         if (targetGroupName == null || targetGroupName.isEmpty()) {
-            showLiveLog("Error: Auto-Send active but No Group Name found!");
+            showAlert("Error: Auto-Send active but No Group Name found!");
             // Cancel the bad job to prevent looping error
-            prefs.edit().putBoolean(KEY_JOB_PENDING, false).apply();
+            clearPendingJob();
             return;
         }
 
@@ -70,7 +70,7 @@ public class LunarTagAccessibilityService extends AccessibilityService {
 
                     // --- JOB COMPLETE: Update Memory ---
                     // This is the specific fix for the loop. We turn the job OFF immediately.
-                    prefs.edit().putBoolean(KEY_JOB_PENDING, false).apply();
+                    clearPendingJob();
                     showLiveLog("Auto-Send Complete! Job Cleared.");
 
                     rootNode.recycle();
@@ -103,10 +103,22 @@ public class LunarTagAccessibilityService extends AccessibilityService {
         rootNode.recycle();
     }
 
+    private void clearPendingJob() {
+        SettingsStore.getInstance(this).update(settings -> settings.setSendJobPending(false));
+    }
+
     /**
-     * Live Log Helper: Shows visual confirmation of background actions on screen.
+     * Live Log: records a step of the automation in the app log (no Toast per step).
      */
     private void showLiveLog(String message) {
+        LunarLog.i(TAG, message);
+    }
+
+    /**
+     * Shows a problem the user has to fix on screen, from any thread.
+     */
+    private void showAlert(String message) {
+        LunarLog.w(TAG, message);
         new Handler(Looper.getMainLooper()).post(() ->
                 Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show()
         );
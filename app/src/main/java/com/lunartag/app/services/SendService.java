@@ -5,9 +5,7 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
@@ -21,6 +19,8 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.content.FileProvider;
 
 import com.lunartag.app.R;
+import com.lunartag.app.config.SettingsStore;
+import com.lunartag.app.diagnostics.LunarLog;
 
 import java.io.File;
 
@@ -32,15 +32,6 @@ public class SendService extends Service {
 
     public static final String EXTRA_FILE_PATH = "com.lunartag.app.EXTRA_FILE_PATH";
 
-    // Settings Prefs
-    private static final String PREFS_SETTINGS = "LunarTagSettings";
-    private static final String KEY_WHATSAPP_GROUP = "whatsapp_group";
-
-    // Bridge Prefs (For Accessibility)
-    private static final String PREFS_ACCESSIBILITY = "LunarTagAccessPrefs";
-    private static final String KEY_TARGET_GROUP = "target_group_name";
-    private static final String KEY_JOB_PENDING = "job_is_pending";
-
     @Override
     public void onCreate() {
         super.onCreate();
@@ -56,7 +47,7 @@ public class SendService extends Service {
 
         if (filePath == null || filePath.isEmpty()) {
             Log.e(TAG, "File path was null.");
-            showLiveLog("Error: No File Path provided.");
+            showAlert("Error: No File Path provided.");
             stopSelf();
             return START_NOT_STICKY;
         }
@@ -73,7 +64,7 @@ public class SendService extends Service {
                 File imageFile = new File(filePath);
                 if (!imageFile.exists()) {
                     Log.e(TAG, "Image file missing: " + filePath);
-                    showLiveLog("Error: Image File Missing on Disk.");
+                    showAlert("Error: Image File Missing on Disk.");
                     stopSelf();
                     return START_NOT_STICKY;
                 }
@@ -85,7 +76,7 @@ public class SendService extends Service {
                 );
             }
         } catch (Exception e) {
-            showLiveLog("Error parsing File URI: " + e.getMessage());
+            showAlert("Error parsing File URI: " + e.getMessage());
             stopSelf();
             return START_NOT_STICKY;
         }
@@ -100,11 +91,19 @@ public class SendService extends Service {
     }
 
     /**
-     * Helper to show Live Logs (Toasts) on the screen from background.
+     * Live Log: records a step of the automation in the app log (no Toast per step).
      */
     private void showLiveLog(String message) {
-        new Handler(Looper.getMainLooper()).post(() -> 
-            Toast.makeText(getApplicationContext(), "SendService: " + message, Toast.LENGTH_SHORT).show()
+        LunarLog.i(TAG, message);
+    }
+
+    /**
+     * Shows a problem the user has to fix on screen, from any thread.
+     */
+    private void showAlert(String message) {
+        LunarLog.w(TAG, message);
+        new Handler(Looper.getMainLooper()).post(() ->
+                Toast.makeText(getApplicationContext(), "SendService: " + message, Toast.LENGTH_SHORT).show()
         );
     }
 
@@ -140,23 +139,20 @@ public class SendService extends Service {
             showLiveLog("Notification Posted! Tap it to send.");
             
         } catch (Exception e) {
-            showLiveLog("Error building notification: " + e.getMessage());
+            showAlert("Error building notification: " + e.getMessage());
         }
     }
 
     private void armAccessibilityService() {
-        SharedPreferences settings = getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
-        String groupName = settings.getString(KEY_WHATSAPP_GROUP, "");
-
-        if (groupName != null && !groupName.isEmpty()) {
-            SharedPreferences accessPrefs = getSharedPreferences(PREFS_ACCESSIBILITY, Context.MODE_PRIVATE);
-            accessPrefs.edit()
-                    .putString(KEY_TARGET_GROUP, groupName)
-                    .putBoolean(KEY_JOB_PENDING, true)
-                    .apply();
+        SettingsStore store = SettingsStore.getInstance(this);
+        String groupName = store.get().getWhatsappGroup();
+
+        if (!groupName.isEmpty()) {
+            // Bridge (For Accessibility)
+            store.update(settings -> settings.setTargetGroupName(groupName).setSendJobPending(true));
             Log.d(TAG, "Bridge Armed for: " + groupName);
         } else {
-            showLiveLog("Warning: No WhatsApp Group Name in Settings!");
+            showAlert("Warning: No WhatsApp Group Name in Settings!");
         }
     }
 
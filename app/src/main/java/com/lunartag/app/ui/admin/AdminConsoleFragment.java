@@ -1,7 +1,5 @@
 package com.lunartag.app.ui.admin;
 
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -11,23 +9,19 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import com.lunartag.app.config.SettingsStore;
 import com.lunartag.app.databinding.FragmentAdminConsoleBinding;
 
 public class AdminConsoleFragment extends Fragment {
 
-    private static final String PREFS_NAME = "LunarTagFeatureToggles";
-    private static final String KEY_CUSTOM_TIMESTAMP_ENABLED = "customTimestampEnabled";
-
     private FragmentAdminConsoleBinding binding;
-    private SharedPreferences featureTogglePrefs;
     private boolean isFeatureEnabled = false;
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        featureTogglePrefs = requireActivity().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         // Check if the feature is enabled. The default is false.
-        isFeatureEnabled = featureTogglePrefs.getBoolean(KEY_CUSTOM_TIMESTAMP_ENABLED, false);
+        isFeatureEnabled = SettingsStore.getInstance(requireContext()).get().isCustomTimestampEnabled();
     }
 
     @Override
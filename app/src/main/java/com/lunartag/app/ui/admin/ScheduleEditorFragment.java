@@ -2,9 +2,7 @@ package com.lunartag.app.ui.admin;
 
 import android.app.AlertDialog;
 import android.app.TimePickerDialog;
-import android.content.Context;
 import android.content.DialogInterface;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.text.InputType;
 import android.view.LayoutInflater;
@@ -20,29 +18,26 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
+import com.lunartag.app.config.SettingsStore;
+import com.lunartag.app.data.SlotQueue;
 import com.lunartag.app.databinding.FragmentScheduleEditorBinding;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Admin editor of the custom timestamp slots.
+ * UPDATED: The slots live in the {@link SlotQueue} (a Room table) instead of a JSON preference.
+ * Every edit is written through to it; the list here is only what the screen shows.
+ */
 public class ScheduleEditorFragment extends Fragment {
 
-    // These MUST match the keys used in CameraFragment to ensure they share data
-    private static final String PREFS_SCHEDULE = "LunarTagSchedule";
-    private static final String KEY_TIMESTAMP_LIST = "timestamp_list";
-    
-    // Keys for checking if the feature is enabled (to hide/show UI)
-    private static final String PREFS_TOGGLES = "LunarTagFeatureToggles";
-    private static final String KEY_ADMIN_ENABLED = "customTimestampEnabled";
-
     private FragmentScheduleEditorBinding binding;
     private ScheduleAdapter adapter;
-    private List<Long> timestampList;
+    private final List<Long> timestampList = new ArrayList<>();
+    private SlotQueue slotQueue;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -55,8 +50,7 @@ public class ScheduleEditorFragment extends Fragment {
         super.onViewCreated(view, savedInstanceState);
 
         // Check if Admin Mode is actually enabled via Remote Config
-        SharedPreferences featurePrefs = requireContext().getSharedPreferences(PREFS_TOGGLES, Context.MODE_PRIVATE);
-        boolean isFeatureEnabled = featurePrefs.getBoolean(KEY_ADMIN_ENABLED, false);
+        boolean isFeatureEnabled = SettingsStore.getInstance(requireContext()).get().isCustomTimestampEnabled();
 
         if (!isFeatureEnabled) {
             // If disabled, hide everything and stop.
@@ -66,16 +60,15 @@ public class ScheduleEditorFragment extends Fragment {
         
         binding.getRoot().setVisibility(View.VISIBLE);
 
-        // Load existing timestamps from storage
-        timestampList = loadTimestamps();
+        slotQueue = SlotQueue.getInstance(requireContext());
 
         // Setup RecyclerView
         adapter = new ScheduleAdapter(timestampList, new ScheduleAdapter.OnTimestampDeleteListener() {
             @Override
             public void onTimestampDeleted(int position) {
-                timestampList.remove(position);
+                long removed = timestampList.remove(position);
                 adapter.notifyItemRemoved(position);
-                saveTimestamps(timestampList); // Save changes immediately
+                slotQueue.remove(removed); // Save changes immediately
                 updateCountUI();
             }
         });
@@ -86,6 +79,7 @@ public class ScheduleEditorFragment extends Fragment {
 
         updateCountUI();
         setupClickListeners();
+        loadTimestamps();
     }
 
     private void setupClickListeners() {
@@ -150,7 +144,7 @@ public class ScheduleEditorFragment extends Fragment {
         timestampList.add(timestamp);
         Collections.sort(timestampList); // Keep them in chronological order
         adapter.notifyDataSetChanged();
-        saveTimestamps(timestampList);
+        slotQueue.add(timestamp);
         updateCountUI();
         Toast.makeText(getContext(), "Timestamp Added", Toast.LENGTH_SHORT).show();
     }
@@ -198,7 +192,7 @@ public class ScheduleEditorFragment extends Fragment {
             public void onClick(DialogInterface dialog, int which) {
                 timestampList.clear();
                 adapter.notifyDataSetChanged();
-                saveTimestamps(timestampList);
+                slotQueue.replaceAll(Collections.<Long>emptyList());
                 updateCountUI();
                 Toast.makeText(getContext(), "Schedule Cleared", Toast.LENGTH_SHORT).show();
             }
@@ -229,36 +223,33 @@ public class ScheduleEditorFragment extends Fragment {
 
         Collections.sort(timestampList);
         adapter.notifyDataSetChanged();
-        saveTimestamps(timestampList);
+        slotQueue.replaceAll(timestampList);
         updateCountUI();
         Toast.makeText(getContext(), "Generated " + timestampList.size() + " slots.", Toast.LENGTH_SHORT).show();
     }
 
     // --- Storage Helpers ---
 
-    private void saveTimestamps(List<Long> list) {
-        SharedPreferences prefs = requireContext().getSharedPreferences(PREFS_SCHEDULE, Context.MODE_PRIVATE);
-        JSONArray jsonArray = new JSONArray();
-        for (Long ts : list) {
-            jsonArray.put(ts);
-        }
-        prefs.edit().putString(KEY_TIMESTAMP_LIST, jsonArray.toString()).apply();
-    }
-
-    private List<Long> loadTimestamps() {
-        List<Long> list = new ArrayList<>();
-        SharedPreferences prefs = requireContext().getSharedPreferences(PREFS_SCHEDULE, Context.MODE_PRIVATE);
-        String json = prefs.getString(KEY_TIMESTAMP_LIST, "[]");
-        try {
-            JSONArray jsonArray = new JSONArray(json);
-            for (int i = 0; i < jsonArray.length(); i++) {
-                list.add(jsonArray.getLong(i));
+    /**
+     * Reads the slots from the database in the background, then shows them.
+     */
+    private void loadTimestamps() {
+        slotQueue.loadAll(new SlotQueue.Callback<List<Long>>() {
+            @Override
+            public void onResult(List<Long> slots) {
+                if (binding == null) return;
+                binding.getRoot().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (binding == null) return;
+                        timestampList.clear();
+                        timestampList.addAll(slots); // Already in chronological order
+                        adapter.notifyDataSetChanged();
+                        updateCountUI();
+                    }
+                });
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        Collections.sort(list);
-        return list;
+        });
     }
 
     @Override
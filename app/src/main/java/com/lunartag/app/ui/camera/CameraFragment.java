@@ -3,25 +3,17 @@ package com.lunartag.app.ui.camera;
 import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Activity;
-import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.location.Address;
-import android.location.Geocoder;
 import android.location.Location;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
 import android.os.Looper;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.view.ViewGroup;
@@ -40,51 +32,29 @@ import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
 import com.google.common.util.concurrent.ListenableFuture;
-import com.lunartag.app.data.AppDatabase;
-import com.lunartag.app.data.PhotoDao;
+import com.lunartag.app.capture.CaptureJob;
+import com.lunartag.app.capture.CapturePipeline;
+import com.lunartag.app.config.SettingsSnapshot;
+import com.lunartag.app.config.SettingsStore;
+import com.lunartag.app.data.SlotQueue;
 import com.lunartag.app.databinding.FragmentCameraBinding;
-import com.lunartag.app.model.Photo;
-import com.lunartag.app.utils.ImageUtils;
+import com.lunartag.app.diagnostics.CaptureMetrics;
+import com.lunartag.app.diagnostics.LogConsole;
+import com.lunartag.app.diagnostics.LunarLog;
 import com.lunartag.app.utils.LocationProvider;
-import com.lunartag.app.utils.Scheduler;
 import com.lunartag.app.utils.StorageUtils;
-import com.lunartag.app.utils.WatermarkUtils;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
+
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class CameraFragment extends Fragment {
 
     private static final String TAG = "CameraFragment";
-
-    // Preferences for Admin/Schedule Mode
-    private static final String PREFS_SCHEDULE = "LunarTagSchedule";
-    private static final String KEY_TIMESTAMP_LIST = "timestamp_list";
-    private static final String PREFS_TOGGLES = "LunarTagFeatureToggles";
-    private static final String KEY_ADMIN_ENABLED = "customTimestampEnabled";
-
-    // Preferences for Settings (Company Name)
-    private static final String PREFS_SETTINGS = "LunarTagSettings";
-    private static final String KEY_COMPANY_NAME = "company_name";
+    private static final String LIVE_LOG_TAG = "LunarTagLive";
+    private static final int CONSOLE_BACKLOG = 50; // Earlier entries shown when the camera opens
 
     private FragmentCameraBinding binding;
     private ImageCapture imageCapture;
-    private ExecutorService cameraExecutor;
+    private CapturePipeline capturePipeline;
     private Camera camera; // Reference to control Zoom
     private int lensFacing = CameraSelector.LENS_FACING_BACK; // Default to Back camera
 
@@ -93,6 +63,15 @@ public class CameraFragment extends Fragment {
 
     // Location
     private LocationProvider locationProvider;
+    private LogConsole logConsole;
+
+    // Listener to turn GPS Icon GREEN when locked (called on the main thread)
+    private final LocationProvider.LocationStatusListener gpsStatusListener = location -> {
+        if (binding != null) {
+            binding.buttonGpsStatus.setColorFilter(Color.GREEN);
+            // Don't spam the log, just visual indication
+        }
+    };
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -105,20 +84,14 @@ public class CameraFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        cameraExecutor = Executors.newSingleThreadExecutor();
-        locationProvider = new LocationProvider(getContext());
-
-        // Setup Listener to turn GPS Icon GREEN when locked
-        locationProvider.setStatusListener(location -> {
-            new android.os.Handler(Looper.getMainLooper()).post(() -> {
-                if (binding != null) {
-                    binding.buttonGpsStatus.setColorFilter(Color.GREEN);
-                    // Don't spam the log, just visual indication
-                }
-            });
-        });
+        capturePipeline = CapturePipeline.getInstance(requireContext());
+        capturePipeline.addListener(pipelineListener);
+        // Shared with the rest of the app: the last fix survives tab switches
+        locationProvider = LocationProvider.getInstance(requireContext());
 
         // --- LIVE LOG START ---
+        logConsole = new LogConsole(binding.textDebugConsole, "--- LIVE LOG SYSTEM STARTED ---", CONSOLE_BACKLOG);
+        logConsole.attach();
         logToScreen("System: Camera View Created.");
         // ----------------------
 
@@ -137,6 +110,9 @@ public class CameraFragment extends Fragment {
 
         // Attach Touch Listener to Preview for Zoom
         binding.cameraPreview.setOnTouchListener((v, event) -> {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                locationProvider.onUserActivity(); // Framing a shot: sharpen the GPS
+            }
             scaleGestureDetector.onTouchEvent(event);
             return true;
         });
@@ -163,6 +139,7 @@ public class CameraFragment extends Fragment {
         // 5. NEW: GPS Button Logic (Footer)
         binding.buttonGpsStatus.setOnClickListener(v -> {
             logToScreen("User Command: Force GPS Update.");
+            locationProvider.onUserActivity();
             // Logic is handled automatically by LocationProvider being on, 
             // but this gives user confidence
             Toast.makeText(getContext(), "Refining GPS Signal...", Toast.LENGTH_SHORT).show();
@@ -174,7 +151,10 @@ public class CameraFragment extends Fragment {
             StorageUtils.launchFolderSelector(this);
         });
 
+        SlotQueue.getInstance(requireContext()).addListener(slotListener);
+        SettingsStore.getInstance(requireContext()).addListener(settingsListener);
         updateSlotCounter(); // Update UI if in admin mode
+        pipelineListener.onCapacityChanged(capturePipeline.isFull()); // Reflect photos still saving
     }
 
     // --- LIFECYCLE FOR GPS ENGINE (NEW) ---
@@ -183,33 +163,25 @@ public class CameraFragment extends Fragment {
         super.onResume();
         logToScreen("System: Resuming. Starting GPS Engine...");
         // Start tracking immediately so we have data BEFORE capture
-        if (locationProvider != null) locationProvider.startLocationUpdates();
+        if (locationProvider != null) {
+            locationProvider.subscribe(gpsStatusListener);
+            locationProvider.onUserActivity(); // Opening the camera: a capture is likely
+        }
     }
 
     @Override
     public void onPause() {
         super.onPause();
         logToScreen("System: Pausing. Stopping GPS Engine.");
-        if (locationProvider != null) locationProvider.stopLocationUpdates();
+        if (locationProvider != null) locationProvider.unsubscribe(gpsStatusListener);
     }
     // --------------------------------------
 
-    // --- DEBUG CONSOLE HELPER (KEPT ORIGINAL) ---
-    private void logToScreen(String message) {
-        // Always run on Main Thread so we can update the UI
-        new android.os.Handler(Looper.getMainLooper()).post(() -> {
-            if (binding != null && binding.textDebugConsole != null) {
-                binding.textDebugConsole.append("\n" + message);
-                // Auto-scroll to ensure user sees the newest message
-                binding.textDebugConsole.post(() -> {
-                     if (binding.textDebugConsole.getParent() instanceof View) {
-                         View parent = (View) binding.textDebugConsole.getParent();
-                         parent.scrollBy(0, 1000); // Force scroll down
-                     }
-                });
-                Log.d("LunarTagLive", message); // Also print to system log just in case
-            }
-        });
+    // --- DEBUG CONSOLE HELPER ---
+    // UPDATED: Messages go to the bounded LunarLog from any thread; the console shows its
+    // tail and redraws at most once per frame, so it no longer grows over a shift.
+    private static void logToScreen(String message) {
+        LunarLog.i(LIVE_LOG_TAG, message);
     }
     // --------------------------------------------
 
@@ -255,130 +227,124 @@ public class CameraFragment extends Fragment {
             return;
         }
 
+        // Back-pressure: only ask the sensor for a frame if the pipeline has room for it.
+        if (!capturePipeline.tryReserve()) {
+            logToScreen("WARNING: Capture buffer full. Waiting for previous photos to save...");
+            Toast.makeText(getContext(), "Still saving previous photos...", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // Read everything the job needs NOW, on the main thread, so the callback
+        // never has to touch this Fragment (it may be gone by the time the frame arrives).
+        final Context appContext = requireContext().getApplicationContext();
+        final LocationProvider provider = locationProvider;
+        if (provider != null) provider.onCapture();
+        // One snapshot from memory: every setting of this shot comes from the same moment
+        final SettingsSnapshot settings = SettingsStore.getInstance(appContext).get();
+        final boolean adminMode = settings.isCustomTimestampEnabled();
+        // --- FIX: LOAD COMPANY NAME FROM SETTINGS ---
+        final String companyName = settings.getStampCompanyName();
+        final boolean exifOrientation = settings.isExifOrientation();
+        final boolean bandCompositing = settings.isBandCompositing(CapturePipeline.isLowMemoryDevice(appContext));
+        final boolean yuvOverlay = settings.isYuvOverlay();
+        final boolean jpegSplice = settings.isJpegSplice();
+        final String watermarkTemplate = settings.getWatermarkTemplate();
+        final String encoderProfile = settings.getEncoderProfile();
+
         Toast.makeText(getContext(), "Capturing...", Toast.LENGTH_SHORT).show();
         logToScreen("System: Requesting image from sensor...");
 
-        imageCapture.takePicture(cameraExecutor, new ImageCapture.OnImageCapturedCallback() {
+        final long shutterNanos = System.nanoTime();
+        imageCapture.takePicture(capturePipeline.getCallbackExecutor(), new ImageCapture.OnImageCapturedCallback() {
             @Override
             public void onCaptureSuccess(@NonNull ImageProxy image) {
+                CaptureMetrics.getInstance().record(CaptureMetrics.SHUTTER, shutterNanos);
                 logToScreen("System: Image sensor capture SUCCESS.");
-                processAndSaveImage(image);
+                long realTime = System.currentTimeMillis();
+                CaptureJob job = new CaptureJob(image, realTime);
+                job.setCompanyName(companyName);
+                job.setExifOrientation(exifOrientation);
+                // The YUV overlay works on the NV21 frame, so it implies band compositing
+                job.setBandCompositing(bandCompositing || yuvOverlay);
+                job.setYuvOverlay(yuvOverlay);
+                job.setJpegSplice(jpegSplice);
+                job.setWatermarkTemplate(watermarkTemplate);
+                job.setEncoderProfile(encoderProfile);
+                if (adminMode) {
+                    job.setAssignedTime(getNextScheduledTimestamp(appContext, realTime));
+                }
+
+                // --- CRITICAL CHANGE: INSTANT GPS ---
+                // We DO NOT wait here. We grab the value from memory instantly.
+                Location location = provider != null ? provider.getCurrentLocationFast() : null;
+                if (location == null) {
+                    logToScreen("WARNING: Location is NULL/Waiting. Saving anyway (Safety Mode).");
+                } else {
+                    logToScreen("System: Location Locked (Lat: " + location.getLatitude() + ")");
+                }
+                job.setLocation(location);
+
+                // Hand off and return: the shutter is free once the frame is journaled and queued.
+                capturePipeline.submit(job);
             }
 
             @Override
             public void onError(@NonNull ImageCaptureException exception) {
+                capturePipeline.cancelReservation();
                 logToScreen("CRITICAL ERROR: Image Sensor Failed: " + exception.getMessage());
                 Log.e(TAG, "Photo capture failed: " + exception.getMessage(), exception);
             }
         });
     }
 
-    private void processAndSaveImage(ImageProxy imageProxy) {
-        try {
-            logToScreen("System: Converting YUV to Bitmap...");
-            Bitmap bitmap = ImageUtils.imageProxyToBitmap(imageProxy);
-            imageProxy.close();
-
-            if (bitmap == null) {
-                logToScreen("ERROR: Failed to convert image to bitmap.");
-                return;
-            }
-
-            // --- CRITICAL CHANGE: INSTANT GPS ---
-            logToScreen("System: Grabbing Location immediately...");
-            // We DO NOT wait here. We grab the value from memory instantly.
-            Location location = locationProvider.getCurrentLocationFast();
-
-            if (location == null) {
-                logToScreen("WARNING: Location is NULL/Waiting. Saving anyway (Safety Mode).");
-            } else {
-                logToScreen("System: Location Locked (Lat: " + location.getLatitude() + ")");
-            }
-            // ------------------------------------
-
-            try {
-                long realTime = System.currentTimeMillis();
-                long assignedTime = realTime;
-
-                SharedPreferences togglePrefs = requireContext().getSharedPreferences(PREFS_TOGGLES, Context.MODE_PRIVATE);
-                if (togglePrefs.getBoolean(KEY_ADMIN_ENABLED, false)) {
-                    assignedTime = getNextScheduledTimestamp(realTime);
+    /**
+     * Keeps the slot counter in step with the slot queue (called on its background thread).
+     */
+    private final SlotQueue.Listener slotListener = remaining ->
+            new android.os.Handler(Looper.getMainLooper()).post(this::updateSlotCounter);
+
+    /**
+     * Shows or hides the slot counter when the admin mode is switched remotely (main thread).
+     */
+    private final SettingsStore.Listener settingsListener = (previous, current) -> {
+        if (previous.isCustomTimestampEnabled() != current.isCustomTimestampEnabled()) {
+            updateSlotCounter();
+        }
+    };
+
+    /**
+     * Receives progress from the background capture pipeline and mirrors it on screen.
+     */
+    private final CapturePipeline.Listener pipelineListener = new CapturePipeline.Listener() {
+        @Override
+        public void onCapacityChanged(boolean full) {
+            new android.os.Handler(Looper.getMainLooper()).post(() -> {
+                if (binding != null) {
+                    binding.buttonCapture.setEnabled(!full);
+                    binding.buttonCapture.setAlpha(full ? 0.4f : 1.0f);
                 }
+            });
+        }
 
-                // --- FIX: LOAD COMPANY NAME FROM SETTINGS ---
-                SharedPreferences settingsPrefs = requireContext().getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
-                String companyName = settingsPrefs.getString(KEY_COMPANY_NAME, "My Company"); 
-                // --------------------------------------------
-
-                String address = getAddressFromLocation(location);
-
-                // --- FIX: REMOVED ':ss' (SECONDS) FROM FORMAT ---
-                SimpleDateFormat sdf = new SimpleDateFormat("dd-MMM-yyyy hh:mm a", Locale.US);
-                // ------------------------------------------------
-
-                String timeString = sdf.format(new Date(assignedTime));
-                String gpsString = "Lat: " + (location != null ? location.getLatitude() : "0.0") +
-                        " Lon: " + (location != null ? location.getLongitude() : "0.0");
-
-                String[] watermarkLines = {
-                        "GPS Map Camera",
-                        companyName,
-                        address,
-                        gpsString,
-                        timeString
-                };
-
-                logToScreen("System: Applying Watermark...");
-                
-                // --- CRITICAL CHANGE: Pass 'getContext()' to load the LOGO ---
-                WatermarkUtils.addWatermark(getContext(), bitmap, null, watermarkLines);
-                // -------------------------------------------------------------
-
-                // --- CRITICAL CHANGE: STORAGE LOGIC ---
-                String absolutePath = null;
-                logToScreen("System: Saving File...");
-
-                // 1. Check if user selected a custom folder
-                if (StorageUtils.hasCustomFolder(getContext())) {
-                    logToScreen("Storage: Using User-Selected Folder (SD/External).");
-                    absolutePath = StorageUtils.saveImageToCustomFolder(getContext(), bitmap, "LunarTag_" + realTime);
-                } 
-                // 2. Fallback to Default Internal
-                else {
-                    logToScreen("Storage: Using Default Internal Storage.");
-                    absolutePath = saveImageToInternalStorage(getContext(), bitmap, "LunarTag_" + realTime);
-                    // If Internal, we also export to Gallery for visibility
-                    if (absolutePath != null) {
-                        logToScreen("Storage: Exporting copy to Public Gallery...");
-                        exportToPublicGallery(getContext(), absolutePath, "LunarTag_" + realTime);
-                    }
+        @Override
+        public void onJobCompleted(CaptureJob job) {
+            new android.os.Handler(Looper.getMainLooper()).post(() -> {
+                if (binding != null) {
+                    Toast.makeText(getContext(), "Photo Saved!", Toast.LENGTH_SHORT).show();
                 }
+            });
+        }
 
-                if (absolutePath != null) {
-                    logToScreen("SUCCESS: File Written. (" + absolutePath + ")");
-                    savePhotoToDatabase(absolutePath, realTime, assignedTime, location);
-                    logToScreen("System: Database Updated.");
-
-                    new android.os.Handler(Looper.getMainLooper()).post(() -> {
-                        Toast.makeText(getContext(), "Photo Saved!", Toast.LENGTH_SHORT).show();
-                        updateSlotCounter();
-                    });
-                } else {
-                    logToScreen("CRITICAL ERROR: File Write Failed! Check permissions.");
-                    new android.os.Handler(Looper.getMainLooper()).post(() ->
-                            Toast.makeText(getContext(), "Save Failed!", Toast.LENGTH_SHORT).show());
+        @Override
+        public void onJobFailed(CaptureJob job, String stageName, Exception error) {
+            // The pipeline has already logged the error
+            new android.os.Handler(Looper.getMainLooper()).post(() -> {
+                if (binding != null) {
+                    Toast.makeText(getContext(), "Save Failed!", Toast.LENGTH_SHORT).show();
                 }
-
-            } catch (Exception e) {
-                logToScreen("CRITICAL ERROR inside Processing: " + e.getMessage());
-                e.printStackTrace();
-            }
-
-        } catch (Exception e) {
-            logToScreen("CRITICAL ERROR Top Level: " + e.getMessage());
-            e.printStackTrace();
+            });
         }
-    }
+    };
 
     // --- Handle Folder Selection Result (NEW) ---
     @Override
@@ -398,142 +364,26 @@ public class CameraFragment extends Fragment {
     }
     // --------------------------------------------
 
-    private long getNextScheduledTimestamp(long fallbackTime) {
-        SharedPreferences prefs = requireContext().getSharedPreferences(PREFS_SCHEDULE, Context.MODE_PRIVATE);
-        String json = prefs.getString(KEY_TIMESTAMP_LIST, "[]");
-        List<Long> list = new ArrayList<>();
-
-        try {
-            JSONArray jsonArray = new JSONArray(json);
-            for (int i = 0; i < jsonArray.length(); i++) {
-                list.add(jsonArray.getLong(i));
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-
-        if (list.isEmpty()) {
-            return fallbackTime;
-        }
-        long assigned = list.remove(0);
-        JSONArray updatedArray = new JSONArray();
-        for (Long ts : list) {
-            updatedArray.put(ts);
-        }
-        prefs.edit().putString(KEY_TIMESTAMP_LIST, updatedArray.toString()).apply();
-
-        return assigned;
+    /**
+     * Takes the next preset slot (one database transaction, so two quick shots never share one).
+     * Runs on the capture callback thread, never the main thread.
+     */
+    private static long getNextScheduledTimestamp(Context context, long fallbackTime) {
+        Long slot = SlotQueue.getInstance(context).reserveNext();
+        return slot != null ? slot : fallbackTime;
     }
 
     private void updateSlotCounter() {
-        SharedPreferences togglePrefs = requireContext().getSharedPreferences(PREFS_TOGGLES, Context.MODE_PRIVATE);
-        if (!togglePrefs.getBoolean(KEY_ADMIN_ENABLED, false)) {
+        if (binding == null || getContext() == null) return;
+        boolean adminMode = SettingsStore.getInstance(requireContext()).get().isCustomTimestampEnabled();
+        int count = SlotQueue.getInstance(requireContext()).getRemainingCount();
+        if (!adminMode || count < 0) {
+            // Hidden while the queue is loading; the slot listener refreshes it
             binding.textSlotCounter.setVisibility(View.GONE);
             return;
         }
-        SharedPreferences prefs = requireContext().getSharedPreferences(PREFS_SCHEDULE, Context.MODE_PRIVATE);
-        String json = prefs.getString(KEY_TIMESTAMP_LIST, "[]");
-        try {
-            JSONArray jsonArray = new JSONArray(json);
-            int count = jsonArray.length();
-            binding.textSlotCounter.setText(count + " Slots Left");
-            binding.textSlotCounter.setVisibility(View.VISIBLE);
-        } catch (JSONException e) {
-            binding.textSlotCounter.setVisibility(View.GONE);
-        }
-    }
-
-    private String saveImageToInternalStorage(Context context, Bitmap bitmap, String filename) {
-        File directory = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-        if (directory == null) {
-            logToScreen("ERROR: External Files Dir is null!");
-            return null;
-        }
-        File file = new File(directory, filename + ".jpg");
-        try (OutputStream fos = new FileOutputStream(file)) {
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, fos);
-            return file.getAbsolutePath();
-        } catch (IOException e) {
-            logToScreen("ERROR Saving IO: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private void exportToPublicGallery(Context context, String internalPath, String filename) {
-        if (internalPath == null) return;
-        try {
-            File internalFile = new File(internalPath);
-            if (!internalFile.exists()) return;
-
-            ContentResolver resolver = context.getContentResolver();
-            ContentValues contentValues = new ContentValues();
-            contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, filename + ".jpg");
-            contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-            contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + File.separator + "LunarTag");
-
-            Uri imageUri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, contentValues);
-
-            if (imageUri != null) {
-                try (OutputStream out = resolver.openOutputStream(imageUri);
-                     InputStream in = new FileInputStream(internalFile)) {
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    while ((len = in.read(buffer)) > 0) {
-                        out.write(buffer, 0, len);
-                    }
-                    logToScreen("Export: Copy Success.");
-                }
-            }
-        } catch (Exception e) {
-            logToScreen("Export EXCEPTION: " + e.getMessage());
-        }
-    }
-
-    private void savePhotoToDatabase(String filePath, long realTime, long assignedTime, Location loc) {
-        try {
-            Photo photo = new Photo();
-            photo.setFilePath(filePath); 
-            photo.setCaptureTimestampReal(realTime);
-            photo.setAssignedTimestamp(assignedTime);
-            photo.setCreatedAt(System.currentTimeMillis());
-            photo.setStatus("PENDING");
-            if (loc != null) {
-                photo.setLat(loc.getLatitude());
-                photo.setLon(loc.getLongitude());
-                photo.setAccuracyMeters(loc.getAccuracy());
-            }
-            AppDatabase db = AppDatabase.getDatabase(getContext());
-            PhotoDao dao = db.photoDao();
-
-            // --- FIXED: Capture ID and Schedule Alarm ---
-            long id = dao.insertPhoto(photo);
-
-            logToScreen("System: Scheduling Alarm for Photo ID: " + id);
-            Scheduler.schedulePhotoSend(
-                requireContext(),
-                id,
-                filePath,
-                assignedTime
-            );
-            // --------------------------------------------
-
-        } catch (Exception e) {
-            logToScreen("DB ERROR: " + e.getMessage());
-        }
-    }
-
-    private String getAddressFromLocation(Location location) {
-        if (location == null) return "Location Unknown";
-        try {
-            Geocoder geocoder = new Geocoder(getContext(), Locale.getDefault());
-            List<Address> addresses = geocoder.getFromLocation(location.getLatitude(), location.getLongitude(), 1);
-            if (addresses != null && !addresses.isEmpty()) {
-                return addresses.get(0).getAddressLine(0);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return "Address Not Found";
+        binding.textSlotCounter.setText(count + " Slots Left");
+        binding.textSlotCounter.setVisibility(View.VISIBLE);
     }
 
     private boolean allPermissionsGranted() {
@@ -549,9 +399,16 @@ public class CameraFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        if (logConsole != null) {
+            logConsole.detach();
+            logConsole = null;
+        }
         binding = null;
-        if (cameraExecutor != null) {
-            cameraExecutor.shutdown();
+        // Photos still in the pipeline keep saving; we only stop listening.
+        if (capturePipeline != null) {
+            capturePipeline.removeListener(pipelineListener);
         }
+        SlotQueue.getInstance(requireContext()).removeListener(slotListener);
+        SettingsStore.getInstance(requireContext()).removeListener(settingsListener);
     }
 }
\ No newline at end of file
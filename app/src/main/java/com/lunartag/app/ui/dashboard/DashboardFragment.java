@@ -1,8 +1,6 @@
 package com.lunartag.app.ui.dashboard;
 
 import android.app.AlertDialog;
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -16,11 +14,14 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
+import com.lunartag.app.config.SettingsSnapshot;
+import com.lunartag.app.config.SettingsStore;
 import com.lunartag.app.data.AppDatabase;
 import com.lunartag.app.data.PhotoDao;
 import com.lunartag.app.databinding.FragmentDashboardBinding;
 import com.lunartag.app.model.Photo;
 import com.lunartag.app.ui.gallery.GalleryAdapter;
+import com.lunartag.app.utils.PhotoThumbnails;
 import com.lunartag.app.utils.Scheduler;
 
 import java.io.File;
@@ -33,11 +34,6 @@ public class DashboardFragment extends Fragment {
 
     private FragmentDashboardBinding binding;
 
-    // SharedPreferences to store the Shift State permanently
-    private static final String PREFS_SHIFT = "LunarTagShiftPrefs";
-    private static final String KEY_IS_SHIFT_ACTIVE = "is_shift_active";
-    private static final String KEY_LAST_ACTION_TIME = "last_action_time";
-
     // --- DB Components ---
     private ExecutorService databaseExecutor;
 
@@ -176,12 +172,13 @@ public class DashboardFragment extends Fragment {
                     // 2. Cancel Alarm (Crucial for Scheduled photos)
                     Scheduler.cancelPhotoSend(getContext(), photo.getId());
 
-                    // 3. Delete Physical File
+                    // 3. Delete Physical File (and its thumbnail)
                     try {
                         File file = new File(photo.getFilePath());
                         if (file.exists()) {
                             file.delete();
                         }
+                        PhotoThumbnails.delete(photo);
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -260,14 +257,14 @@ public class DashboardFragment extends Fragment {
     }
 
     /**
-     * Reads the current state from SharedPreferences and updates the Button and Text.
+     * Reads the current state from the settings and updates the Button and Text.
      */
     private void updateUI() {
         if (getContext() == null) return;
 
-        SharedPreferences prefs = getContext().getSharedPreferences(PREFS_SHIFT, Context.MODE_PRIVATE);
-        boolean isShiftActive = prefs.getBoolean(KEY_IS_SHIFT_ACTIVE, false);
-        long lastActionTime = prefs.getLong(KEY_LAST_ACTION_TIME, 0);
+        SettingsSnapshot settings = SettingsStore.getInstance(getContext()).get();
+        boolean isShiftActive = settings.isShiftActive();
+        long lastActionTime = settings.getLastShiftActionTime();
 
         if (isShiftActive) {
             binding.textShiftStatus.setText("Status: ON DUTY");
@@ -281,19 +278,15 @@ public class DashboardFragment extends Fragment {
     private void toggleShiftState() {
         if (getContext() == null) return;
 
-        SharedPreferences prefs = getContext().getSharedPreferences(PREFS_SHIFT, Context.MODE_PRIVATE);
-        boolean isCurrentlyActive = prefs.getBoolean(KEY_IS_SHIFT_ACTIVE, false);
-        SharedPreferences.Editor editor = prefs.edit();
+        SettingsStore store = SettingsStore.getInstance(getContext());
+        boolean isCurrentlyActive = store.get().isShiftActive();
+        long now = System.currentTimeMillis();
 
         if (isCurrentlyActive) {
-            editor.putBoolean(KEY_IS_SHIFT_ACTIVE, false);
-            editor.putLong(KEY_LAST_ACTION_TIME, System.currentTimeMillis());
-            editor.apply();
+            store.update(settings -> settings.setShiftActive(false).setLastShiftActionTime(now));
             Toast.makeText(getContext(), "Shift Ended. Good job!", Toast.LENGTH_SHORT).show();
         } else {
-            editor.putBoolean(KEY_IS_SHIFT_ACTIVE, true);
-            editor.putLong(KEY_LAST_ACTION_TIME, System.currentTimeMillis());
-            editor.apply();
+            store.update(settings -> settings.setShiftActive(true).setLastShiftActionTime(now));
             Toast.makeText(getContext(), "Shift Started. Tracking active.", Toast.LENGTH_SHORT).show();
         }
 
@@ -0,0 +1,180 @@
+package com.lunartag.app.ui.diagnostics;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.FileProvider;
+import androidx.fragment.app.Fragment;
+
+import com.lunartag.app.R;
+import com.lunartag.app.databinding.FragmentDiagnosticsBinding;
+import com.lunartag.app.diagnostics.CaptureMetrics;
+import com.lunartag.app.diagnostics.LatencyHistogram;
+import com.lunartag.app.encode.EncoderBenchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Shows the capture latency histograms from {@link CaptureMetrics} and exports them
+ * as a text file (with the device model) that can be attached to a field report.
+ * UPDATED: Can also benchmark the photo format profiles on this device; the last result
+ * is shown below the timings and included in the export.
+ */
+public class DiagnosticsFragment extends Fragment {
+
+    private static final String EXPORT_DIRECTORY = "diagnostics";
+
+    // Sample frames and encodes per profile for the benchmark
+    private static final int BENCHMARK_FRAMES = 2;
+    private static final int BENCHMARK_RUNS = 3;
+
+    private FragmentDiagnosticsBinding binding;
+    private String benchmarkReport; // Null until the benchmark has run
+
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        binding = FragmentDiagnosticsBinding.inflate(inflater, container, false);
+        return binding.getRoot();
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        binding.buttonDiagnosticsRefresh.setOnClickListener(v -> showReport());
+        binding.buttonDiagnosticsReset.setOnClickListener(v -> {
+            CaptureMetrics.getInstance().reset();
+            showReport();
+        });
+        binding.buttonDiagnosticsExport.setOnClickListener(v -> exportReport());
+        binding.buttonDiagnosticsBenchmark.setOnClickListener(v -> runBenchmark());
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        showReport();
+    }
+
+    private void showReport() {
+        if (binding == null) return;
+        CaptureMetrics metrics = CaptureMetrics.getInstance();
+        LatencyHistogram total = metrics.get(CaptureMetrics.TOTAL);
+        long photos = total != null ? total.getCount() : 0;
+        binding.textDiagnosticsSince.setText("Since " + formatTime(metrics.getSinceMillis(), "HH:mm:ss")
+                + ", " + photos + " photos");
+        binding.textDiagnosticsReport.setText(metrics.getTimers().isEmpty()
+                ? getString(R.string.diagnostics_empty)
+                : metrics.formatReport());
+        if (benchmarkReport != null) {
+            binding.textDiagnosticsReport.append("\n\n" + benchmarkReport);
+        }
+    }
+
+    /**
+     * Encodes sample frames with every profile on a background thread (takes several seconds).
+     */
+    private void runBenchmark() {
+        if (binding == null) return;
+        binding.buttonDiagnosticsBenchmark.setEnabled(false);
+        binding.textDiagnosticsReport.setText(R.string.diagnostics_benchmark_running);
+        final Context appContext = requireContext().getApplicationContext();
+        new Thread(() -> {
+            String report;
+            try {
+                report = EncoderBenchmark.run(appContext, BENCHMARK_FRAMES, BENCHMARK_RUNS);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                report = "Benchmark failed: " + e.getMessage();
+            }
+            final String result = "Photo formats\n" + report;
+            if (getActivity() == null) return;
+            getActivity().runOnUiThread(() -> {
+                benchmarkReport = result;
+                if (binding == null) return;
+                binding.buttonDiagnosticsBenchmark.setEnabled(true);
+                showReport();
+            });
+        }, "LunarTag-Benchmark").start();
+    }
+
+    /**
+     * Writes the report to the app's external files and offers it to other apps.
+     */
+    private void exportReport() {
+        File directory = requireContext().getExternalFilesDir(EXPORT_DIRECTORY);
+        if (directory == null) {
+            Toast.makeText(getContext(), "Storage not available.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File file = new File(directory,
+                "capture_timings_" + formatTime(System.currentTimeMillis(), "yyyyMMdd_HHmmss") + ".txt");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(buildExport().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Toast.makeText(getContext(), "Export failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        try {
+            Uri uri = FileProvider.getUriForFile(
+                    requireContext(),
+                    requireContext().getPackageName() + ".fileprovider",
+                    file
+            );
+            Intent shareIntent = new Intent(Intent.ACTION_SEND);
+            shareIntent.setType("text/plain");
+            shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
+            shareIntent.putExtra(Intent.EXTRA_SUBJECT, file.getName());
+            shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            startActivity(Intent.createChooser(shareIntent, "Export timings via..."));
+        } catch (Exception e) {
+            Toast.makeText(getContext(), "Saved to " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private String buildExport() {
+        CaptureMetrics metrics = CaptureMetrics.getInstance();
+        String version = "?";
+        try {
+            version = requireContext().getPackageManager()
+                    .getPackageInfo(requireContext().getPackageName(), 0).versionName;
+        } catch (PackageManager.NameNotFoundException e) {
+            // Keep "?"
+        }
+        return "Lunar Tag capture timings\n"
+                + "Device: " + Build.MANUFACTURER + " " + Build.MODEL + " (Android " + Build.VERSION.RELEASE
+                + ", API " + Build.VERSION.SDK_INT + ")\n"
+                + "App version: " + version + "\n"
+                + "Recorded: " + formatTime(metrics.getSinceMillis(), "yyyy-MM-dd HH:mm:ss")
+                + " to " + formatTime(System.currentTimeMillis(), "yyyy-MM-dd HH:mm:ss") + "\n\n"
+                + metrics.formatReport()
+                + (benchmarkReport != null ? "\n\n" + benchmarkReport : "");
+    }
+
+    private static String formatTime(long millis, String pattern) {
+        return new SimpleDateFormat(pattern, Locale.US).format(new Date(millis));
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        binding = null;
+    }
+}
@@ -69,9 +69,19 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.PhotoVie
         holder.statusTextView.setText(currentPhoto.getStatus());
 
         // 2. Load Image Efficiently (Thumbnail size)
-        // We force a small size to prevent out-of-memory errors and lag
+        // The thumbnail tier first: a few KB instead of decoding the full photo
+        File thumbnailFile = currentPhoto.getThumbnailPath() != null ? new File(currentPhoto.getThumbnailPath()) : null;
         File imageFile = new File(currentPhoto.getFilePath());
-        if (imageFile.exists()) {
+        if (thumbnailFile != null && thumbnailFile.exists()) {
+            Glide.with(context)
+                    .load(thumbnailFile)
+                    .override(320, 320)
+                    .centerCrop()
+                    .diskCacheStrategy(DiskCacheStrategy.RESOURCE) // The source is already small and local
+                    .into(holder.thumbnailImageView);
+        } else if (imageFile.exists()) {
+            // Older photo whose thumbnail is not made yet
+            // We force a small size to prevent out-of-memory errors and lag
             Glide.with(context)
                     .load(Uri.fromFile(imageFile))
                     .override(320, 320) // Render small for grid performance
@@ -142,14 +152,17 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.PhotoVie
         // but passing the ID list is robust for filtering.
         
         ArrayList<String> pathList = new ArrayList<>();
+        ArrayList<String> thumbnailList = new ArrayList<>();
         ArrayList<Long> idList = new ArrayList<>();
         
         for (Photo p : photoList) {
             pathList.add(p.getFilePath());
+            thumbnailList.add(p.getThumbnailPath()); // Null for photos without one
             idList.add(p.getId());
         }
 
         intent.putStringArrayListExtra("paths", pathList);
+        intent.putStringArrayListExtra("thumbnail_paths", thumbnailList);
         intent.putExtra("start_position", position);
         
         context.startActivity(intent);
@@ -18,6 +18,7 @@ import com.lunartag.app.data.AppDatabase;
 import com.lunartag.app.data.PhotoDao;
 import com.lunartag.app.databinding.FragmentGalleryBinding;
 import com.lunartag.app.model.Photo;
+import com.lunartag.app.utils.PhotoThumbnails;
 import com.lunartag.app.utils.Scheduler;
 
 import java.io.File;
@@ -120,12 +121,13 @@ public class GalleryFragment extends Fragment {
                     // 1. Cancel Alarm
                     Scheduler.cancelPhotoSend(getContext(), photo.getId());
 
-                    // 2. Delete Physical File
+                    // 2. Delete Physical File (and its thumbnail)
                     try {
                         File file = new File(photo.getFilePath());
                         if (file.exists()) {
                             file.delete();
                         }
+                        PhotoThumbnails.delete(photo);
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
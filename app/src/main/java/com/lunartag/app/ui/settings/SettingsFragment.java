@@ -1,8 +1,6 @@
 package com.lunartag.app.ui.settings;
 
 import android.app.TimePickerDialog;
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -16,26 +14,34 @@ import androidx.fragment.app.Fragment;
 import androidx.navigation.fragment.NavHostFragment;
 
 import com.lunartag.app.R;
+import com.lunartag.app.capture.CapturePipeline;
+import com.lunartag.app.config.SettingsSnapshot;
+import com.lunartag.app.config.SettingsStore;
 import com.lunartag.app.databinding.FragmentSettingsBinding;
+import com.lunartag.app.encode.EncoderProfile;
+import com.lunartag.app.watermark.WatermarkTemplate;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Locale;
 
+/**
+ * The user's settings.
+ * UPDATED: Reads and writes go through the {@link SettingsStore}; the log file sink follows
+ * the "log to file" switch by itself.
+ */
 public class SettingsFragment extends Fragment {
 
-    private static final String PREFS_NAME = "LunarTagSettings";
-    private static final String KEY_COMPANY_NAME = "company_name";
-    private static final String KEY_SHIFT_START = "shift_start";
-    private static final String KEY_SHIFT_END = "shift_end";
-    private static final String KEY_WHATSAPP_GROUP = "whatsapp_group";
+    // Spinner entries of the address cache cell size, as geohash precisions
+    private static final int[] GEOHASH_PRECISIONS = {6, 7, 8};
 
     private FragmentSettingsBinding binding;
-    private SharedPreferences settingsPrefs;
+    private SettingsStore settingsStore;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         binding = FragmentSettingsBinding.inflate(inflater, container, false);
-        settingsPrefs = requireActivity().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        settingsStore = SettingsStore.getInstance(requireContext());
         return binding.getRoot();
     }
 
@@ -74,31 +80,80 @@ public class SettingsFragment extends Fragment {
                 showTimePickerDialog(false);
             }
         });
+
+        // Listener for the capture timings screen
+        binding.buttonDiagnostics.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                NavHostFragment.findNavController(SettingsFragment.this)
+                        .navigate(R.id.action_settings_to_diagnostics);
+            }
+        });
     }
 
     private void loadSettings() {
-        // Load the saved values from SharedPreferences and display them in the UI.
-        String companyName = settingsPrefs.getString(KEY_COMPANY_NAME, "");
-        String shiftStart = settingsPrefs.getString(KEY_SHIFT_START, "00:00 AM");
-        String shiftEnd = settingsPrefs.getString(KEY_SHIFT_END, "00:00 AM");
-        String whatsappGroup = settingsPrefs.getString(KEY_WHATSAPP_GROUP, "");
-
-        binding.editTextCompanyName.setText(companyName);
-        binding.editTextShiftStart.setText(shiftStart);
-        binding.editTextShiftEnd.setText(shiftEnd);
-        binding.editTextWhatsappGroup.setText(whatsappGroup);
+        // Display the current settings in the UI.
+        SettingsSnapshot settings = settingsStore.get();
+
+        String companyName = settings.getCompanyName();
+        binding.editTextCompanyName.setText(companyName != null ? companyName : "");
+        binding.editTextShiftStart.setText(settings.getShiftStart());
+        binding.editTextShiftEnd.setText(settings.getShiftEnd());
+        binding.editTextWhatsappGroup.setText(settings.getWhatsappGroup());
+        binding.switchExifOrientation.setChecked(settings.isExifOrientation());
+        binding.switchBandCompositing.setChecked(
+                settings.isBandCompositing(CapturePipeline.isLowMemoryDevice(requireContext())));
+        binding.switchMapInStamp.setChecked(settings.isMapInStamp());
+        binding.switchLogToFile.setChecked(settings.isLogToFile());
+        binding.switchYuvOverlay.setChecked(settings.isYuvOverlay());
+        binding.switchJpegSplice.setChecked(settings.isJpegSplice());
+
+        // Spinner entries follow WatermarkTemplate.getTemplateIds()
+        binding.spinnerWatermarkTemplate.setSelection(
+                Math.max(0, Arrays.asList(WatermarkTemplate.getTemplateIds()).indexOf(settings.getWatermarkTemplate())));
+
+        // Spinner entries follow EncoderProfile.getProfileIds()
+        binding.spinnerEncoderProfile.setSelection(
+                Math.max(0, Arrays.asList(EncoderProfile.getProfileIds()).indexOf(settings.getEncoderProfile())));
+
+        int precision = settings.getGeohashPrecision();
+        for (int i = 0; i < GEOHASH_PRECISIONS.length; i++) {
+            if (GEOHASH_PRECISIONS[i] == precision) binding.spinnerGeohashPrecision.setSelection(i);
+        }
     }
 
     private void saveSettings() {
-        // Save the current values from the UI into SharedPreferences.
-        SharedPreferences.Editor editor = settingsPrefs.edit();
-
-        editor.putString(KEY_COMPANY_NAME, binding.editTextCompanyName.getText().toString().trim());
-        editor.putString(KEY_SHIFT_START, binding.editTextShiftStart.getText().toString());
-        editor.putString(KEY_SHIFT_END, binding.editTextShiftEnd.getText().toString());
-        editor.putString(KEY_WHATSAPP_GROUP, binding.editTextWhatsappGroup.getText().toString().trim());
-
-        editor.apply();
+        // Read the UI now; the store persists the change in the background.
+        final String companyName = binding.editTextCompanyName.getText().toString().trim();
+        final String shiftStart = binding.editTextShiftStart.getText().toString();
+        final String shiftEnd = binding.editTextShiftEnd.getText().toString();
+        final String whatsappGroup = binding.editTextWhatsappGroup.getText().toString().trim();
+        final boolean exifOrientation = binding.switchExifOrientation.isChecked();
+        final boolean bandCompositing = binding.switchBandCompositing.isChecked();
+        final boolean mapInStamp = binding.switchMapInStamp.isChecked();
+        final boolean yuvOverlay = binding.switchYuvOverlay.isChecked();
+        final boolean jpegSplice = binding.switchJpegSplice.isChecked();
+        final String watermarkTemplate =
+                WatermarkTemplate.getTemplateIds()[binding.spinnerWatermarkTemplate.getSelectedItemPosition()];
+        final String encoderProfile =
+                EncoderProfile.getProfileIds()[binding.spinnerEncoderProfile.getSelectedItemPosition()];
+        final int geohashPrecision = GEOHASH_PRECISIONS[binding.spinnerGeohashPrecision.getSelectedItemPosition()];
+        final boolean logToFile = binding.switchLogToFile.isChecked();
+
+        settingsStore.update(settings -> settings
+                .setCompanyName(companyName)
+                .setShiftStart(shiftStart)
+                .setShiftEnd(shiftEnd)
+                .setWhatsappGroup(whatsappGroup)
+                .setExifOrientation(exifOrientation)
+                .setBandCompositing(bandCompositing)
+                .setMapInStamp(mapInStamp)
+                .setYuvOverlay(yuvOverlay)
+                .setJpegSplice(jpegSplice)
+                .setWatermarkTemplate(watermarkTemplate)
+                .setEncoderProfile(encoderProfile)
+                .setGeohashPrecision(geohashPrecision)
+                .setLogToFile(logToFile));
 
         Toast.makeText(getContext(), "Settings saved successfully!", Toast.LENGTH_SHORT).show();
     }
@@ -140,9 +195,8 @@ public class SettingsFragment extends Fragment {
      * This method checks for the admin feature toggle and configures the UI accordingly.
      */
     private void setupAdminFeatures() {
-        // Access the feature toggles preferences that are set by the Firebase service
-        SharedPreferences featureTogglePrefs = requireActivity().getSharedPreferences("LunarTagFeatureToggles", Context.MODE_PRIVATE);
-        boolean isAdminModeEnabled = featureTogglePrefs.getBoolean("customTimestampEnabled", false);
+        // The feature toggle is set by the Firebase service
+        boolean isAdminModeEnabled = settingsStore.get().isCustomTimestampEnabled();
 
         // THIS IS THE IMPORTANT DEBUG LINE
         Toast.makeText(getContext(), "Admin Flag is: " + isAdminModeEnabled, Toast.LENGTH_LONG).show();
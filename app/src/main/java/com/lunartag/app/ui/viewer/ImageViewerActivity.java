@@ -17,11 +17,14 @@ import androidx.viewpager2.widget.ViewPager2;
 import com.lunartag.app.R;
 import com.lunartag.app.data.AppDatabase;
 import com.lunartag.app.data.PhotoDao;
+import com.lunartag.app.encode.OutputFormat;
 import com.lunartag.app.model.Photo;
+import com.lunartag.app.utils.PhotoThumbnails;
 import com.lunartag.app.utils.Scheduler;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -34,6 +37,7 @@ public class ImageViewerActivity extends AppCompatActivity {
 
     private ImageViewerAdapter adapter;
     private List<String> imagePaths;
+    private List<String> thumbnailPaths; // Same order as imagePaths, null entries allowed
     private ExecutorService databaseExecutor;
 
     @Override
@@ -56,7 +60,12 @@ public class ImageViewerActivity extends AppCompatActivity {
             imagePaths = getIntent().getStringArrayListExtra("paths");
             int startPosition = getIntent().getIntExtra("start_position", 0);
 
+            thumbnailPaths = getIntent().getStringArrayListExtra("thumbnail_paths");
+
             if (imagePaths == null) imagePaths = new ArrayList<>();
+            if (thumbnailPaths == null || thumbnailPaths.size() != imagePaths.size()) {
+                thumbnailPaths = new ArrayList<>(Collections.<String>nCopies(imagePaths.size(), null));
+            }
 
             setupViewPager(startPosition);
         }
@@ -65,7 +74,7 @@ public class ImageViewerActivity extends AppCompatActivity {
     }
 
     private void setupViewPager(int startPosition) {
-        adapter = new ImageViewerAdapter(this, imagePaths);
+        adapter = new ImageViewerAdapter(this, imagePaths, thumbnailPaths);
         viewPager.setAdapter(adapter);
         
         // Jump to the clicked photo
@@ -115,7 +124,7 @@ public class ImageViewerActivity extends AppCompatActivity {
                 );
 
                 Intent shareIntent = new Intent(Intent.ACTION_SEND);
-                shareIntent.setType("image/jpeg");
+                shareIntent.setType(OutputFormat.forFileName(path).getMimeType());
                 shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
                 shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 
@@ -168,6 +177,7 @@ public class ImageViewerActivity extends AppCompatActivity {
                 List<Long> idList = new ArrayList<>();
                 idList.add(targetPhoto.getId());
                 dao.deletePhotos(idList);
+                PhotoThumbnails.delete(targetPhoto);
             }
 
             // 2. Delete Physical File
@@ -179,6 +189,7 @@ public class ImageViewerActivity extends AppCompatActivity {
             // 3. Update UI
             new Handler(Looper.getMainLooper()).post(() -> {
                 imagePaths.remove(currentPos);
+                thumbnailPaths.remove(currentPos);
                 adapter.notifyItemRemoved(currentPos);
                 
                 if (imagePaths.isEmpty()) {
@@ -1,6 +1,7 @@
 package com.lunartag.app.ui.viewer;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,6 +11,7 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
 import com.lunartag.app.R;
 
 import java.io.File;
@@ -19,10 +21,12 @@ public class ImageViewerAdapter extends RecyclerView.Adapter<ImageViewerAdapter.
 
     private final Context context;
     private final List<String> imagePaths;
+    private final List<String> thumbnailPaths; // Same order as imagePaths, null entries allowed
 
-    public ImageViewerAdapter(Context context, List<String> imagePaths) {
+    public ImageViewerAdapter(Context context, List<String> imagePaths, List<String> thumbnailPaths) {
         this.context = context;
         this.imagePaths = imagePaths;
+        this.thumbnailPaths = thumbnailPaths;
     }
 
     @NonNull
@@ -40,10 +44,14 @@ public class ImageViewerAdapter extends RecyclerView.Adapter<ImageViewerAdapter.
 
         // Load the image using Glide. 
         // Note: We do NOT downsample here (no .override) because the user wants to see details.
+        // The thumbnail shows at once while the full photo decodes.
         if (file.exists()) {
-            Glide.with(context)
-                    .load(file)
-                    .into(holder.imageView);
+            String thumbnailPath = thumbnailPaths.get(position);
+            RequestBuilder<Drawable> request = Glide.with(context).load(file);
+            if (thumbnailPath != null && new File(thumbnailPath).exists()) {
+                request = request.thumbnail(Glide.with(context).load(new File(thumbnailPath)));
+            }
+            request.into(holder.imageView);
         }
     }
 
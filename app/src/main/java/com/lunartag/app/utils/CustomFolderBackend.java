@@ -0,0 +1,226 @@
+package com.lunartag.app.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.UriPermission;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.lunartag.app.config.SettingsStore;
+import com.lunartag.app.diagnostics.CaptureMetrics;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes photos into the folder the user picked (Storage Access Framework), with as few calls
+ * to the documents provider as possible. Each call is a round-trip to another process, and the
+ * SD card providers are slow.
+ *
+ * The picked tree is resolved and checked once, and the folder's document URI is kept. A photo
+ * then costs one createDocument and one open. The check (permission still held, folder still
+ * accepts new files) runs again after {@link #REVALIDATE_INTERVAL_MS}, when the user picks
+ * another folder, or when a write fails.
+ */
+public class CustomFolderBackend {
+
+    private static final String TAG = "CustomFolderBackend";
+
+    private static final long REVALIDATE_INTERVAL_MS = 60_000;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static volatile CustomFolderBackend INSTANCE;
+
+    public static CustomFolderBackend getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (CustomFolderBackend.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new CustomFolderBackend(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final Context context;
+
+    // --- Cached folder, guarded by this ---
+    private String cachedTreeUri;      // The setting the cache was built from
+    private Uri folderDocumentUri;     // Null while the folder is not usable
+    private long validatedAt;          // SystemClock.elapsedRealtime() of the last check
+
+    private CustomFolderBackend(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Saves the encoded photo into the picked folder.
+     * @param replaceExisting Look for a document with the same name first and overwrite it.
+     *                        Costs a listing of the folder, so only for photos that may have
+     *                        been written before the process died.
+     * @return The document's URI as a string, or null if the folder cannot be written.
+     */
+    @Nullable
+    public String write(byte[] imageBytes, String displayName, String mimeType, boolean replaceExisting) {
+        long start = System.nanoTime();
+        Uri folder = resolveFolder(false);
+        if (folder == null) return null;
+
+        Uri document = replaceExisting ? findDocument(folder, displayName) : null;
+        boolean overwriting = document != null;
+        if (document == null) {
+            document = createDocument(folder, displayName, mimeType);
+        }
+        if (document == null) {
+            // The folder may have been removed or the card swapped since the last check
+            folder = resolveFolder(true);
+            if (folder == null) return null;
+            document = createDocument(folder, displayName, mimeType);
+            if (document == null) return null;
+        }
+
+        ContentResolver resolver = context.getContentResolver();
+        try {
+            // An existing document may be longer than the new bytes
+            ParcelFileDescriptor pfd = resolver.openFileDescriptor(document, overwriting ? "wt" : "w");
+            if (pfd == null) throw new IOException("No file descriptor for " + document);
+            try (OutputStream out = new BufferedOutputStream(
+                    new ParcelFileDescriptor.AutoCloseOutputStream(pfd), WRITE_BUFFER_SIZE)) {
+                out.write(imageBytes);
+            }
+            CaptureMetrics.getInstance().record(CaptureMetrics.WRITE_CUSTOM_FOLDER, start);
+            return document.toString();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error writing image to custom folder", e);
+            deleteQuietly(document);
+            invalidate();
+            return null;
+        }
+    }
+
+    /**
+     * Forgets the cached folder; the next write checks it again.
+     */
+    public synchronized void invalidate() {
+        folderDocumentUri = null;
+        validatedAt = 0;
+    }
+
+    // --- Helpers ---
+
+    @Nullable
+    private synchronized Uri resolveFolder(boolean forceCheck) {
+        String uriString = SettingsStore.getInstance(context).get().getCustomFolderUri();
+        if (uriString == null || uriString.isEmpty()) {
+            Log.e(TAG, "No custom folder selected.");
+            return null;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        boolean fresh = uriString.equals(cachedTreeUri) && now - validatedAt < REVALIDATE_INTERVAL_MS;
+        if (!forceCheck && fresh) {
+            return folderDocumentUri;
+        }
+
+        cachedTreeUri = uriString;
+        validatedAt = now;
+        folderDocumentUri = validate(Uri.parse(uriString));
+        return folderDocumentUri;
+    }
+
+    /**
+     * @return The document URI of the picked folder, or null if photos cannot be created in it.
+     */
+    @Nullable
+    private Uri validate(Uri treeUri) {
+        if (!hasWritePermission(treeUri)) {
+            Log.e(TAG, "Cannot write to the selected folder. Permission lost.");
+            return null;
+        }
+        Uri folder;
+        try {
+            folder = DocumentsContract.buildDocumentUriUsingTree(treeUri, DocumentsContract.getTreeDocumentId(treeUri));
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Not a folder tree: " + treeUri);
+            return null;
+        }
+
+        String[] projection = {DocumentsContract.Document.COLUMN_FLAGS};
+        try (Cursor cursor = context.getContentResolver().query(folder, projection, null, null, null)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                Log.e(TAG, "Selected folder not found. SD Card removed?");
+                return null;
+            }
+            int flags = cursor.getInt(0);
+            if ((flags & DocumentsContract.Document.FLAG_DIR_SUPPORTS_CREATE) == 0) {
+                Log.e(TAG, "The selected folder does not accept new files.");
+                return null;
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Selected folder cannot be read: " + e.getMessage());
+            return null;
+        }
+        return folder;
+    }
+
+    private boolean hasWritePermission(Uri treeUri) {
+        for (UriPermission permission : context.getContentResolver().getPersistedUriPermissions()) {
+            if (permission.getUri().equals(treeUri) && permission.isWritePermission()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The document URI of the folder's child with this name, or null if there is none.
+     */
+    @Nullable
+    private Uri findDocument(Uri folder, String displayName) {
+        Uri treeUri;
+        synchronized (this) {
+            treeUri = cachedTreeUri != null ? Uri.parse(cachedTreeUri) : null;
+        }
+        if (treeUri == null) return null;
+        Uri children = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, DocumentsContract.getDocumentId(folder));
+        String[] projection = {DocumentsContract.Document.COLUMN_DOCUMENT_ID, DocumentsContract.Document.COLUMN_DISPLAY_NAME};
+        // Providers ignore selections on child listings, so the names are compared here
+        try (Cursor cursor = context.getContentResolver().query(children, projection, null, null, null)) {
+            while (cursor != null && cursor.moveToNext()) {
+                if (displayName.equals(cursor.getString(1))) {
+                    return DocumentsContract.buildDocumentUriUsingTree(treeUri, cursor.getString(0));
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not list the custom folder: " + e.getMessage());
+        }
+        return null;
+    }
+
+    @Nullable
+    private Uri createDocument(Uri folder, String displayName, String mimeType) {
+        try {
+            Uri document = DocumentsContract.createDocument(context.getContentResolver(), folder, mimeType, displayName);
+            if (document == null) Log.e(TAG, "Failed to create file inside custom folder.");
+            return document;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to create file inside custom folder: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void deleteQuietly(Uri document) {
+        try {
+            DocumentsContract.deleteDocument(context.getContentResolver(), document);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not remove the incomplete file: " + e.getMessage());
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.util.TimeZone;
 
 /**
  * A utility class to handle writing custom EXIF data to image files.
+ * Rewrites the whole file; the capture path writes the same tags in memory with {@link ExifWriter}.
  */
 public class ExifUtils {
 
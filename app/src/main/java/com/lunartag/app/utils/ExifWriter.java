@@ -0,0 +1,622 @@
+package com.lunartag.app.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes EXIF metadata straight into in-memory JPEG bytes, before the file is saved.
+ * Unlike {@link ExifUtils} (which rewrites a file that is already on disk), this needs no
+ * second pass over the storage.
+ *
+ * Pure Java, so the produced segments can be checked on a plain JVM.
+ * UPDATED: {@link #withMetadata} writes the full set the capture path records: orientation,
+ * capture times, GPS position and the JSON audit payload in ImageDescription.
+ * UPDATED: When it replaces a camera's EXIF block, the camera's shooting settings are kept.
+ */
+public final class ExifWriter {
+
+    // EXIF Orientation values (TIFF tag 0x0112)
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    // --- IFD0 ---
+    private static final int TAG_COMPRESSION = 0x0103; // IFD1 only, for the thumbnail
+    private static final int TAG_IMAGE_DESCRIPTION = 0x010E;
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201; // JPEGInterchangeFormat, IFD1
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_GPS_IFD = 0x8825;
+    // --- Exif IFD ---
+    private static final int TAG_EXIF_VERSION = 0x9000;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_DATE_TIME_DIGITIZED = 0x9004;
+    private static final int TAG_OFFSET_TIME_ORIGINAL = 0x9011;
+    private static final int TAG_SUBSEC_TIME_ORIGINAL = 0x9291;
+    // --- GPS IFD ---
+    private static final int TAG_GPS_VERSION = 0x0000;
+    private static final int TAG_GPS_LATITUDE_REF = 0x0001;
+    private static final int TAG_GPS_LATITUDE = 0x0002;
+    private static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+    private static final int TAG_GPS_LONGITUDE = 0x0004;
+    private static final int TAG_GPS_ALTITUDE_REF = 0x0005;
+    private static final int TAG_GPS_ALTITUDE = 0x0006;
+    private static final int TAG_GPS_TIME_STAMP = 0x0007;
+    private static final int TAG_GPS_DATE_STAMP = 0x001D;
+    private static final int TAG_GPS_H_POSITIONING_ERROR = 0x001F;
+
+    private static final int TYPE_BYTE = 1;
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_RATIONAL = 5;
+    private static final int TYPE_UNDEFINED = 7;
+
+    private static final int MAX_SEGMENT_LENGTH = 0xFFFF - 2; // Length field counts itself
+    private static final int COMPRESSION_JPEG = 6;
+
+    /**
+     * What {@link #withMetadata} records about a photo. Setters return this so it can be chained.
+     */
+    public static final class Metadata {
+        private int orientation = ORIENTATION_NORMAL;
+        private long captureTime;
+        private TimeZone timeZone = TimeZone.getDefault();
+        private String description;
+        private String make;
+        private String model;
+        private boolean hasLocation;
+        private double latitude;
+        private double longitude;
+        private boolean hasAltitude;
+        private double altitude;
+        private float accuracyMeters; // 0: unknown
+        private long fixTime; // 0: unknown
+        private byte[] thumbnail; // Small JPEG in the same orientation as the photo
+
+        public Metadata setOrientation(int orientation) {
+            this.orientation = orientation;
+            return this;
+        }
+
+        /**
+         * @param captureTime Real time of the capture, written as DateTimeOriginal in {@code timeZone}.
+         */
+        public Metadata setCaptureTime(long captureTime, TimeZone timeZone) {
+            this.captureTime = captureTime;
+            this.timeZone = timeZone;
+            return this;
+        }
+
+        public Metadata setDescription(String description) {
+            this.description = description;
+            return this;
+        }
+
+        public Metadata setCamera(String make, String model) {
+            this.make = make;
+            this.model = model;
+            return this;
+        }
+
+        /**
+         * @param fixTime When the fix was taken (written as the UTC GPS date and time), or 0.
+         */
+        public Metadata setLocation(double latitude, double longitude, float accuracyMeters, long fixTime) {
+            this.hasLocation = true;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracyMeters = accuracyMeters;
+            this.fixTime = fixTime;
+            return this;
+        }
+
+        public Metadata setAltitude(double altitude) {
+            this.hasAltitude = true;
+            this.altitude = altitude;
+            return this;
+        }
+
+        /**
+         * @param thumbnail A small JPEG (160 px is customary), stored in the same orientation as
+         *                  the photo's pixels. Left out if it would not fit the segment.
+         */
+        public Metadata setThumbnail(byte[] thumbnail) {
+            this.thumbnail = thumbnail;
+            return this;
+        }
+    }
+
+    private ExifWriter() {}
+
+    /**
+     * Maps a clockwise display rotation to the EXIF Orientation value.
+     */
+    public static int orientationForRotation(int rotationDegrees) {
+        switch (((rotationDegrees % 360) + 360) % 360) {
+            case 90: return ORIENTATION_ROTATE_90;
+            case 180: return ORIENTATION_ROTATE_180;
+            case 270: return ORIENTATION_ROTATE_270;
+            default: return ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Returns a copy of the JPEG with an APP1/EXIF segment holding the metadata. The segment
+     * goes right after SOI, or after the JFIF APP0 segment when there is one.
+     * An EXIF segment the JPEG already has (e.g. a spliced camera JPEG) is replaced, so the
+     * file never carries two conflicting sets, but the camera's record of the shot (exposure,
+     * aperture, ISO, lens, flash...) is carried over; see {@link #readCameraTags}.
+     * The bytes are returned unchanged if they are not a JPEG.
+     */
+    public static byte[] withMetadata(byte[] jpeg, Metadata metadata) {
+        if (jpeg == null || jpeg.length < 4
+                || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+            return jpeg;
+        }
+
+        // --- 1. Find the insertion point and any EXIF segment to drop ---
+        int insertAt = 2;
+        if (isMarker(jpeg, insertAt, 0xE0) && insertAt + 4 <= jpeg.length) {
+            insertAt += 2 + readShort(jpeg, insertAt + 2);
+        }
+        if (insertAt > jpeg.length) {
+            return jpeg;
+        }
+        int resumeAt = insertAt;
+        List<Entry> cameraIfd0 = new ArrayList<>();
+        List<Entry> cameraExif = new ArrayList<>();
+        if (isExifSegment(jpeg, insertAt)) {
+            resumeAt = Math.min(jpeg.length, insertAt + 2 + readShort(jpeg, insertAt + 2));
+            readCameraTags(jpeg, insertAt + 10, resumeAt, cameraIfd0, cameraExif);
+        }
+
+        // --- 2. Splice in the segment (one copy of the compressed bytes) ---
+        byte[] segment;
+        try {
+            segment = buildSegment(metadata, cameraIfd0, cameraExif);
+        } catch (IllegalArgumentException e) {
+            segment = buildSegment(metadata); // The camera's tags do not fit next to ours
+        }
+        byte[] out = new byte[jpeg.length - (resumeAt - insertAt) + segment.length];
+        System.arraycopy(jpeg, 0, out, 0, insertAt);
+        System.arraycopy(segment, 0, out, insertAt, segment.length);
+        System.arraycopy(jpeg, resumeAt, out, insertAt + segment.length, jpeg.length - resumeAt);
+        return out;
+    }
+
+    static byte[] buildSegment(Metadata m) {
+        return buildSegment(m, Collections.<Entry>emptyList(), Collections.<Entry>emptyList());
+    }
+
+    /**
+     * The complete APP1 segment for the metadata: IFD0, the Exif IFD, with a location the GPS
+     * IFD, and with a thumbnail IFD1 followed by the thumbnail JPEG. Big-endian, values that
+     * do not fit an entry follow their IFD.
+     * @param cameraIfd0 Extra IFD0 entries, added where the metadata has no tag of their own.
+     * @param cameraExif Extra Exif IFD entries, likewise.
+     */
+    private static byte[] buildSegment(Metadata m, List<Entry> cameraIfd0, List<Entry> cameraExif) {
+        SimpleDateFormat local = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+        local.setTimeZone(m.timeZone);
+        String dateTime = local.format(new Date(m.captureTime));
+
+        // --- 1. Entries, per IFD ---
+        List<Entry> ifd0 = new ArrayList<>();
+        if (m.description != null) ifd0.add(ascii(TAG_IMAGE_DESCRIPTION, m.description));
+        if (m.make != null) ifd0.add(ascii(TAG_MAKE, m.make));
+        if (m.model != null) ifd0.add(ascii(TAG_MODEL, m.model));
+        ifd0.add(new Entry(TAG_ORIENTATION, TYPE_SHORT, 1, shorts(m.orientation)));
+        ifd0.add(ascii(TAG_DATE_TIME, dateTime));
+        Entry exifPointer = new Entry(TAG_EXIF_IFD, TYPE_LONG, 1, new byte[4]);
+        ifd0.add(exifPointer);
+        Entry gpsPointer = null;
+        if (m.hasLocation) {
+            gpsPointer = new Entry(TAG_GPS_IFD, TYPE_LONG, 1, new byte[4]);
+            ifd0.add(gpsPointer);
+        }
+
+        List<Entry> exif = new ArrayList<>();
+        exif.add(new Entry(TAG_EXIF_VERSION, TYPE_UNDEFINED, 4, "0232".getBytes(StandardCharsets.US_ASCII)));
+        exif.add(ascii(TAG_DATE_TIME_ORIGINAL, dateTime));
+        exif.add(ascii(TAG_DATE_TIME_DIGITIZED, dateTime));
+        exif.add(ascii(TAG_OFFSET_TIME_ORIGINAL, utcOffset(m.timeZone, m.captureTime)));
+        exif.add(ascii(TAG_SUBSEC_TIME_ORIGINAL, String.format(Locale.US, "%03d", m.captureTime % 1000)));
+
+        addMissing(ifd0, cameraIfd0);
+        addMissing(exif, cameraExif);
+
+        List<Entry> gps = new ArrayList<>();
+        if (m.hasLocation) {
+            gps.add(new Entry(TAG_GPS_VERSION, TYPE_BYTE, 4, new byte[]{2, 3, 0, 0}));
+            gps.add(ascii(TAG_GPS_LATITUDE_REF, m.latitude < 0 ? "S" : "N"));
+            gps.add(new Entry(TAG_GPS_LATITUDE, TYPE_RATIONAL, 3, degreesToRationals(Math.abs(m.latitude))));
+            gps.add(ascii(TAG_GPS_LONGITUDE_REF, m.longitude < 0 ? "W" : "E"));
+            gps.add(new Entry(TAG_GPS_LONGITUDE, TYPE_RATIONAL, 3, degreesToRationals(Math.abs(m.longitude))));
+            if (m.hasAltitude) {
+                gps.add(new Entry(TAG_GPS_ALTITUDE_REF, TYPE_BYTE, 1, new byte[]{(byte) (m.altitude < 0 ? 1 : 0)}));
+                gps.add(new Entry(TAG_GPS_ALTITUDE, TYPE_RATIONAL, 1,
+                        rationals(Math.round(Math.abs(m.altitude) * 100), 100)));
+            }
+            if (m.fixTime > 0) {
+                SimpleDateFormat utc = new SimpleDateFormat("yyyy:MM:dd", Locale.US);
+                utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+                long secondOfDay = Math.floorMod(m.fixTime / 1000, 86400L);
+                gps.add(new Entry(TAG_GPS_TIME_STAMP, TYPE_RATIONAL, 3,
+                        rationals(secondOfDay / 3600, 1, secondOfDay / 60 % 60, 1, secondOfDay % 60, 1)));
+                gps.add(ascii(TAG_GPS_DATE_STAMP, utc.format(new Date(m.fixTime))));
+            }
+            if (m.accuracyMeters > 0) {
+                gps.add(new Entry(TAG_GPS_H_POSITIONING_ERROR, TYPE_RATIONAL, 1,
+                        rationals(Math.round(m.accuracyMeters * 100), 100)));
+            }
+        }
+
+        List<Entry> ifd1 = new ArrayList<>();
+        Entry thumbnailOffset = new Entry(TAG_THUMBNAIL_OFFSET, TYPE_LONG, 1, new byte[4]);
+        if (m.thumbnail != null) {
+            ifd1.add(new Entry(TAG_COMPRESSION, TYPE_SHORT, 1, shorts(COMPRESSION_JPEG)));
+            ifd1.add(thumbnailOffset);
+            byte[] length = new byte[4];
+            putInt(length, 0, m.thumbnail.length);
+            ifd1.add(new Entry(TAG_THUMBNAIL_LENGTH, TYPE_LONG, 1, length));
+        }
+
+        // --- 2. Layout: IFD0, Exif IFD, GPS IFD, IFD1, each followed by its values ---
+        int exifOffset = 8 + ifdSize(ifd0);
+        int gpsOffset = exifOffset + ifdSize(exif);
+        int ifd1Offset = gpsOffset + ifdSize(gps);
+        int thumbnailStart = ifd1Offset + ifdSize(ifd1);
+        if (m.thumbnail != null && 2 + 6 + thumbnailStart + m.thumbnail.length > MAX_SEGMENT_LENGTH) {
+            ifd1.clear(); // Too big for one segment: the photo matters more than its preview
+            thumbnailStart = ifd1Offset;
+        }
+        putInt(exifPointer.value, 0, exifOffset);
+        if (gpsPointer != null) putInt(gpsPointer.value, 0, gpsOffset);
+        putInt(thumbnailOffset.value, 0, thumbnailStart);
+
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream(thumbnailStart
+                + (ifd1.isEmpty() ? 0 : m.thumbnail.length));
+        tiff.write('M');
+        tiff.write('M');
+        writeShort(tiff, 42);
+        writeInt(tiff, 8);
+        writeIfd(tiff, ifd0, 8, ifd1.isEmpty() ? 0 : ifd1Offset);
+        writeIfd(tiff, exif, exifOffset, 0);
+        if (!gps.isEmpty()) writeIfd(tiff, gps, gpsOffset, 0);
+        if (!ifd1.isEmpty()) {
+            writeIfd(tiff, ifd1, ifd1Offset, 0);
+            tiff.write(m.thumbnail, 0, m.thumbnail.length);
+        }
+
+        // --- 3. APP1 header ---
+        byte[] body = tiff.toByteArray();
+        int length = 2 + 6 + body.length;
+        if (length > MAX_SEGMENT_LENGTH) {
+            throw new IllegalArgumentException("EXIF data too large: " + length + " bytes");
+        }
+        byte[] s = new byte[2 + length];
+        int p = 0;
+        s[p++] = (byte) 0xFF;
+        s[p++] = (byte) 0xE1;
+        p = putShort(s, p, length);
+        s[p++] = 'E'; s[p++] = 'x'; s[p++] = 'i'; s[p++] = 'f'; s[p++] = 0; s[p++] = 0;
+        System.arraycopy(body, 0, s, p, body.length);
+        return s;
+    }
+
+    private static void addMissing(List<Entry> entries, List<Entry> extra) {
+        int own = entries.size();
+        for (Entry candidate : extra) {
+            boolean present = false;
+            for (int i = 0; i < own && !present; i++) {
+                present = entries.get(i).tag == candidate.tag;
+            }
+            if (!present) entries.add(candidate);
+        }
+    }
+
+    // --- Reading the camera's block ---
+
+    /**
+     * Collects the IFD0 and Exif IFD entries worth keeping from an existing EXIF segment,
+     * converted to big-endian. Left out: every time tag (the photo may carry an assigned
+     * time, and a second, real one would contradict it), the GPS IFD (the location is the
+     * app's), sub-IFD pointers, the thumbnail, tags whose values hold file offsets, and the
+     * MakerNote, whose vendor data often points outside itself. A malformed block gives
+     * whatever was read before the problem.
+     * @param tiffStart Position of the TIFF header in {@code jpeg}.
+     * @param end End of the segment.
+     */
+    private static void readCameraTags(byte[] jpeg, int tiffStart, int end, List<Entry> ifd0, List<Entry> exif) {
+        if (tiffStart + 8 > end) return;
+        boolean littleEndian;
+        if (jpeg[tiffStart] == 'I' && jpeg[tiffStart + 1] == 'I') {
+            littleEndian = true;
+        } else if (jpeg[tiffStart] == 'M' && jpeg[tiffStart + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return;
+        }
+        Tiff tiff = new Tiff(jpeg, tiffStart, end - tiffStart, littleEndian);
+        try {
+            int exifOffset = tiff.readIfd(tiff.readInt(4), ifd0, true);
+            if (exifOffset > 0) tiff.readIfd(exifOffset, exif, false);
+        } catch (IndexOutOfBoundsException e) {
+            // Truncated or garbled block: keep what was read
+        }
+    }
+
+    private static boolean isCameraTag(int tag) {
+        switch (tag) {
+            case 0x0111: case 0x0117: // Strip offsets and sizes
+            case 0x0132: // DateTime
+            case 0x0144: case 0x0145: // Tile offsets and sizes
+            case 0x014A: // SubIFDs
+            case TAG_THUMBNAIL_OFFSET: case TAG_THUMBNAIL_LENGTH:
+            case TAG_EXIF_IFD: case TAG_GPS_IFD:
+            case 0x9003: case 0x9004: // DateTimeOriginal, DateTimeDigitized
+            case 0x9010: case 0x9011: case 0x9012: // OffsetTime...
+            case 0x9290: case 0x9291: case 0x9292: // SubSecTime...
+            case 0x927C: // MakerNote
+            case 0xA005: // Interoperability IFD
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Bytes per value of a TIFF type, or 0 for types that are not copied.
+     */
+    private static int typeSize(int type) {
+        switch (type) {
+            case TYPE_BYTE: case TYPE_ASCII: case 6: case TYPE_UNDEFINED: // 6: SBYTE
+                return 1;
+            case TYPE_SHORT: case 8: // SSHORT
+                return 2;
+            case TYPE_LONG: case 9: case 11: // SLONG, FLOAT
+                return 4;
+            case TYPE_RATIONAL: case 10: case 12: // SRATIONAL, DOUBLE
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * A TIFF structure inside a byte array, in either byte order.
+     */
+    private static final class Tiff {
+        final byte[] b;
+        final int start;
+        final int length;
+        final boolean littleEndian;
+
+        Tiff(byte[] b, int start, int length, boolean littleEndian) {
+            this.b = b;
+            this.start = start;
+            this.length = length;
+            this.littleEndian = littleEndian;
+        }
+
+        /**
+         * Adds the IFD's copyable entries to {@code out}.
+         * @param ifd0 Whether this is IFD0, whose Exif IFD pointer is returned.
+         * @return The Exif IFD offset, or 0.
+         */
+        int readIfd(int offset, List<Entry> out, boolean ifd0) {
+            int count = readShort(offset);
+            int exifOffset = 0;
+            for (int i = 0; i < count; i++) {
+                int entry = offset + 2 + i * 12;
+                int tag = readShort(entry);
+                int type = readShort(entry + 2);
+                long valueCount = readInt(entry + 4) & 0xFFFFFFFFL;
+                if (ifd0 && tag == TAG_EXIF_IFD) exifOffset = readInt(entry + 8);
+                int unit = typeSize(type);
+                long size = valueCount * unit;
+                if (!isCameraTag(tag) || unit == 0 || size > length) continue;
+                int valueAt = size <= 4 ? entry + 8 : readInt(entry + 8);
+                if (valueAt < 0 || valueAt + size > length) continue;
+                out.add(new Entry(tag, type, (int) valueCount, bigEndian(valueAt, (int) size, type, unit)));
+            }
+            return exifOffset;
+        }
+
+        /**
+         * Copies a value, swapping each number to big-endian. Rationals are two 4-byte numbers.
+         */
+        private byte[] bigEndian(int offset, int size, int type, int unit) {
+            byte[] value = new byte[size];
+            System.arraycopy(b, start + offset, value, 0, size);
+            int swap = type == TYPE_RATIONAL || type == 10 ? 4 : unit;
+            if (littleEndian && swap > 1) {
+                for (int i = 0; i + swap <= size; i += swap) {
+                    for (int lo = i, hi = i + swap - 1; lo < hi; lo++, hi--) {
+                        byte t = value[lo];
+                        value[lo] = value[hi];
+                        value[hi] = t;
+                    }
+                }
+            }
+            return value;
+        }
+
+        int readShort(int offset) {
+            check(offset, 2);
+            int p = start + offset;
+            return littleEndian ? (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 : (b[p] & 0xFF) << 8 | (b[p + 1] & 0xFF);
+        }
+
+        int readInt(int offset) {
+            check(offset, 4);
+            int p = start + offset;
+            return littleEndian
+                    ? (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16 | (b[p + 3] & 0xFF) << 24
+                    : (b[p] & 0xFF) << 24 | (b[p + 1] & 0xFF) << 16 | (b[p + 2] & 0xFF) << 8 | (b[p + 3] & 0xFF);
+        }
+
+        private void check(int offset, int size) {
+            if (offset < 0 || offset + size > length) {
+                throw new IndexOutOfBoundsException("Offset " + offset + " outside the EXIF block");
+            }
+        }
+    }
+
+    // --- Writing ---
+
+    /**
+     * One IFD entry. Values of up to 4 bytes are stored in the entry itself.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final int tag;
+        final int type;
+        final int count;
+        final byte[] value;
+
+        Entry(int tag, int type, int count, byte[] value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+
+        int dataSize() {
+            return value.length <= 4 ? 0 : value.length + (value.length & 1); // Kept at even offsets
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Integer.compare(tag, other.tag);
+        }
+    }
+
+    private static int ifdSize(List<Entry> entries) {
+        if (entries.isEmpty()) return 0;
+        int size = 2 + entries.size() * 12 + 4;
+        for (Entry entry : entries) size += entry.dataSize();
+        return size;
+    }
+
+    /**
+     * Writes the IFD at {@code offset} (from the TIFF header).
+     * @param nextIfd Offset of the IFD that follows in the chain (IFD0 to IFD1), or 0.
+     */
+    private static void writeIfd(ByteArrayOutputStream out, List<Entry> entries, int offset, int nextIfd) {
+        Collections.sort(entries); // Readers expect ascending tags
+        writeShort(out, entries.size());
+        int dataOffset = offset + 2 + entries.size() * 12 + 4;
+        for (Entry entry : entries) {
+            writeShort(out, entry.tag);
+            writeShort(out, entry.type);
+            writeInt(out, entry.count);
+            if (entry.value.length <= 4) {
+                out.write(entry.value, 0, entry.value.length);
+                for (int i = entry.value.length; i < 4; i++) out.write(0);
+            } else {
+                writeInt(out, dataOffset);
+                dataOffset += entry.dataSize();
+            }
+        }
+        writeInt(out, nextIfd);
+        for (Entry entry : entries) {
+            if (entry.value.length <= 4) continue;
+            out.write(entry.value, 0, entry.value.length);
+            if ((entry.value.length & 1) != 0) out.write(0);
+        }
+    }
+
+    private static Entry ascii(int tag, String text) {
+        byte[] chars = text.getBytes(StandardCharsets.UTF_8); // Readers take UTF-8 in practice
+        byte[] value = new byte[chars.length + 1]; // NUL-terminated
+        System.arraycopy(chars, 0, value, 0, chars.length);
+        return new Entry(tag, TYPE_ASCII, value.length, value);
+    }
+
+    private static byte[] shorts(int value) {
+        byte[] b = new byte[2];
+        putShort(b, 0, value);
+        return b;
+    }
+
+    /**
+     * Numerator/denominator pairs, as unsigned 32-bit values.
+     */
+    private static byte[] rationals(long... parts) {
+        byte[] b = new byte[parts.length * 4];
+        for (int i = 0; i < parts.length; i++) {
+            putInt(b, i * 4, (int) parts[i]);
+        }
+        return b;
+    }
+
+    /**
+     * Degrees, minutes and seconds, the seconds to 1/10000.
+     */
+    private static byte[] degreesToRationals(double value) {
+        long totalSeconds = Math.round(value * 3600 * 10000);
+        long degrees = totalSeconds / (3600 * 10000L);
+        long minutes = totalSeconds / (60 * 10000L) % 60;
+        long seconds = totalSeconds % (60 * 10000L);
+        return rationals(degrees, 1, minutes, 1, seconds, 10000);
+    }
+
+    private static String utcOffset(TimeZone zone, long time) {
+        int minutes = zone.getOffset(time) / 60000;
+        char sign = minutes < 0 ? '-' : '+';
+        minutes = Math.abs(minutes);
+        return String.format(Locale.US, "%c%02d:%02d", sign, minutes / 60, minutes % 60);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >> 24);
+        out.write(value >> 16);
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static boolean isMarker(byte[] b, int pos, int marker) {
+        return pos + 1 < b.length && (b[pos] & 0xFF) == 0xFF && (b[pos + 1] & 0xFF) == marker;
+    }
+
+    private static boolean isExifSegment(byte[] b, int pos) {
+        return isMarker(b, pos, 0xE1) && pos + 10 <= b.length
+                && b[pos + 4] == 'E' && b[pos + 5] == 'x' && b[pos + 6] == 'i' && b[pos + 7] == 'f';
+    }
+
+    private static int readShort(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+    }
+
+    private static int putShort(byte[] b, int pos, int value) {
+        b[pos] = (byte) (value >> 8);
+        b[pos + 1] = (byte) value;
+        return pos + 2;
+    }
+
+    private static int putInt(byte[] b, int pos, int value) {
+        b[pos] = (byte) (value >> 24);
+        b[pos + 1] = (byte) (value >> 16);
+        b[pos + 2] = (byte) (value >> 8);
+        b[pos + 3] = (byte) value;
+        return pos + 4;
+    }
+}
@@ -0,0 +1,63 @@
+package com.lunartag.app.utils;
+
+/**
+ * Standard base-32 geohash encoding. Nearby points share a prefix, so a geohash of a
+ * chosen precision works as a cache key for "the same place".
+ *
+ * Approximate cell size by precision: 5 = 4.9 km, 6 = 1.2 km x 0.6 km,
+ * 7 = 153 m x 153 m, 8 = 38 m x 19 m.
+ */
+public final class Geohash {
+
+    public static final int MIN_PRECISION = 1;
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {}
+
+    /**
+     * Encodes a coordinate.
+     * @param precision Number of characters, clamped to 1..12.
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        precision = Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        char[] hash = new char[precision];
+        boolean evenBit = true; // Bits alternate, starting with longitude
+        int bit = 0;
+        int value = 0;
+        int length = 0;
+
+        while (length < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    value = (value << 1) | 1;
+                    minLon = mid;
+                } else {
+                    value <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    value = (value << 1) | 1;
+                    minLat = mid;
+                } else {
+                    value <<= 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash[length++] = BASE32[value];
+                bit = 0;
+                value = 0;
+            }
+        }
+        return new String(hash);
+    }
+}
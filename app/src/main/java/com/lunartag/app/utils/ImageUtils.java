@@ -2,22 +2,41 @@ package com.lunartag.app.utils;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.media.Image;
 import androidx.camera.core.ImageProxy;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 /**
  * A utility class with static methods for image processing.
  * UPDATED: Includes robust handling for Hardware RowStrides (Padding) to prevent corruption.
+ * UPDATED: YUV frames are converted straight to ARGB (no intermediate JPEG), so every
+ * photo is encoded exactly once, by the capture pipeline's encode stage.
+ * UPDATED: Rotation can be left to EXIF, avoiding a second full-resolution bitmap.
+ * UPDATED: Frames can be extracted as NV21 for band-only watermarking (no full ARGB frame).
+ * UPDATED: The camera JPEG can be taken as-is, for splicing the watermark into it.
  */
 public class ImageUtils {
 
+    // Rows converted per setPixels() call. Keeps the scratch buffer small (~256 KB at 4000 px wide).
+    private static final int STRIPE_ROWS = 16;
+
+    // Rows decoded per BitmapRegionDecoder call when a JPEG is turned into NV21 (even).
+    private static final int JPEG_STRIPE_ROWS = 64;
+
+    // One converter per worker thread; its scratch rows are sized once per resolution
+    private static final ThreadLocal<Nv21Converter> NV21_CONVERTER = new ThreadLocal<Nv21Converter>() {
+        @Override
+        protected Nv21Converter initialValue() {
+            return new Nv21Converter();
+        }
+    };
+
     private ImageUtils() {}
 
     /**
@@ -25,6 +44,16 @@ public class ImageUtils {
      * Handles JPEG, YUV_420_888, and Hardware Padding correctly.
      */
     public static Bitmap imageProxyToBitmap(ImageProxy imageProxy) {
+        return imageProxyToBitmap(imageProxy, true);
+    }
+
+    /**
+     * Converts the frame, optionally leaving it in sensor orientation.
+     * @param rotatePixels If false, the caller must record
+     *                     {@code imageProxy.getImageInfo().getRotationDegrees()} (e.g. as the EXIF
+     *                     Orientation tag) instead, and no rotated copy is allocated.
+     */
+    public static Bitmap imageProxyToBitmap(ImageProxy imageProxy, boolean rotatePixels) {
         if (imageProxy == null || imageProxy.getImage() == null) {
             return null;
         }
@@ -35,21 +64,14 @@ public class ImageUtils {
         // 1. Try to Extract Bitmap based on Format
         if (image.getFormat() == ImageFormat.JPEG) {
             // Handle JPEG directly
-            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-            buffer.rewind(); // CRITICAL: Reset buffer position before reading
-            byte[] bytes = new byte[buffer.remaining()];
-            buffer.get(bytes);
-            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            // Decode straight into a mutable bitmap so the watermark can be drawn without a copy
+            bitmap = jpegToBitmap(imageProxyToJpegBytes(imageProxy));
         } 
         else if (image.getFormat() == ImageFormat.YUV_420_888) {
             // Handle YUV with strict padding calculations
             byte[] nv21 = yuv420ToNv21(image);
             if (nv21 != null) {
-                YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 100, out);
-                byte[] imageBytes = out.toByteArray();
-                bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+                bitmap = nv21ToBitmap(nv21, image.getWidth(), image.getHeight());
             }
         }
 
@@ -59,7 +81,7 @@ public class ImageUtils {
 
         // 2. Handle Rotation
         int rotationDegrees = imageProxy.getImageInfo().getRotationDegrees();
-        if (rotationDegrees != 0) {
+        if (rotatePixels && rotationDegrees != 0) {
             Matrix matrix = new Matrix();
             matrix.postRotate(rotationDegrees);
             Bitmap rotated = Bitmap.createBitmap(
@@ -75,96 +97,128 @@ public class ImageUtils {
     }
 
     /**
-     * Highly Robust YUV_420_888 to NV21 Converter.
-     * Skips the 'Padding' bytes that cause corruption on Oppo/Vivo/Samsung devices.
+     * Converts an NV21 frame into a mutable ARGB_8888 Bitmap without a JPEG round trip.
+     * Pixels are converted in small strips so only one extra strip buffer is allocated.
      */
-    private static byte[] yuv420ToNv21(Image image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        
-        ByteBuffer yBuffer = image.getPlanes()[0].getBuffer();
-        ByteBuffer uBuffer = image.getPlanes()[1].getBuffer();
-        ByteBuffer vBuffer = image.getPlanes()[2].getBuffer();
-
-        int rowStride = image.getPlanes()[0].getRowStride();
-        int pixelStride = image.getPlanes()[0].getPixelStride(); // Usually 1 for Y
-
-        int pos = 0;
-        byte[] nv21 = new byte[width * height + (width * height / 2)];
-
-        // --- 1. Copy Y Channel (Luminance) ---
-        // If rowStride == width, we can copy everything at once.
-        // If rowStride > width, we must copy row-by-row to skip padding.
-        if (rowStride == width) {
-            yBuffer.get(nv21, 0, width * height);
-            pos = width * height;
-        } else {
-            // Complex copy for hardware with padding
-            int yBufferPos = width * height; // Approximate check
-            yBuffer.rewind();
-            for (int row = 0; row < height; row++) {
-                // Be careful with buffer limits
-                int length = Math.min(width, yBuffer.remaining());
-                yBuffer.get(nv21, pos, length);
-                pos += width;
-                
-                // Skip the padding bytes at end of row
-                if (row < height - 1) {
-                    int padding = rowStride - width;
-                    if (yBuffer.remaining() >= padding) {
-                         // Manually advance buffer position
-                         yBuffer.position(yBuffer.position() + padding);
-                    }
-                }
-            }
+    public static Bitmap nv21ToBitmap(byte[] nv21, int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        int[] stripe = new int[width * STRIPE_ROWS];
+        for (int top = 0; top < height; top += STRIPE_ROWS) {
+            int rows = Math.min(STRIPE_ROWS, height - top);
+            YuvConverter.nv21ToArgb(nv21, width, height, top, rows, stripe);
+            bitmap.setPixels(stripe, 0, width, 0, top, width, rows);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Extracts the frame as NV21 in sensor orientation, never holding it as a full ARGB Bitmap.
+     * YUV frames are repacked directly; JPEG frames are decoded in horizontal stripes.
+     * The frame size is {@code imageProxy.getWidth()} x {@code imageProxy.getHeight()}.
+     * @return The NV21 bytes, or null if the frame could not be read or has odd dimensions.
+     */
+    public static byte[] imageProxyToNv21(ImageProxy imageProxy) {
+        if (imageProxy == null || imageProxy.getImage() == null) {
+            return null;
+        }
+        Image image = imageProxy.getImage();
+        if ((image.getWidth() & 1) != 0 || (image.getHeight() & 1) != 0) {
+            return null;
         }
 
-        // --- 2. Copy U and V Channels (Chrominance) Interleaved ---
-        int rowStrideUV = image.getPlanes()[1].getRowStride();
-        int pixelStrideUV = image.getPlanes()[1].getPixelStride();
-        
-        // Fallback mechanism if conversion is too complex for standard copy
-        // Just trying to be safe for your specific crash
+        if (image.getFormat() == ImageFormat.YUV_420_888) {
+            return yuv420ToNv21(image);
+        }
+        if (image.getFormat() == ImageFormat.JPEG) {
+            return jpegToNv21(imageProxyToJpegBytes(imageProxy), image.getWidth(), image.getHeight());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the camera's encoded JPEG bytes, or null if the frame is not a JPEG.
+     */
+    public static byte[] imageProxyToJpegBytes(ImageProxy imageProxy) {
+        if (imageProxy == null || imageProxy.getImage() == null
+                || imageProxy.getImage().getFormat() != ImageFormat.JPEG) {
+            return null;
+        }
+        ByteBuffer buffer = imageProxy.getImage().getPlanes()[0].getBuffer();
+        buffer.rewind(); // CRITICAL: Reset buffer position before reading
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes JPEG bytes into a mutable bitmap in sensor orientation.
+     */
+    public static Bitmap jpegToBitmap(byte[] jpeg) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+    }
+
+    /**
+     * Decodes a JPEG into NV21 one stripe at a time. Peak memory is the NV21 frame
+     * (1.5 bytes per pixel) plus one stripe, instead of a 4 bytes per pixel Bitmap.
+     * @return The NV21 bytes, or null if the JPEG does not have the expected size.
+     */
+    public static byte[] jpegToNv21(byte[] jpeg, int width, int height) {
+        BitmapRegionDecoder decoder;
         try {
-            // Simplified NV21 packing
-            // V first, then U (NV21 standard)
-            // Note: Usually UV planes are subsampled (width/2, height/2)
-            
-            // Reset buffers
-            uBuffer.rewind();
-            vBuffer.rewind();
-            
-            int uvHeight = height / 2;
-            int uvWidth = width / 2;
-            
-            // We are writing to nv21[pos]
-            // NV21 format expects: V, U, V, U...
-            
-            // The safest generic way is to pull bytes individually if we suspect strides
-            byte[] vBytes = new byte[vBuffer.remaining()];
-            vBuffer.get(vBytes);
-            
-            byte[] uBytes = new byte[uBuffer.remaining()];
-            uBuffer.get(uBytes);
-
-            for (int row = 0; row < uvHeight; row++) {
-                for (int col = 0; col < uvWidth; col++) {
-                     // Calculate source index with strides
-                     int vIndex = (row * rowStrideUV) + (col * pixelStrideUV);
-                     int uIndex = (row * rowStrideUV) + (col * pixelStrideUV);
-                     
-                     if (vIndex < vBytes.length && uIndex < uBytes.length && pos < nv21.length - 1) {
-                         nv21[pos++] = vBytes[vIndex]; // V
-                         nv21[pos++] = uBytes[uIndex]; // U
-                     }
+            decoder = BitmapRegionDecoder.newInstance(jpeg, 0, jpeg.length, false);
+        } catch (IOException e) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true; // Allows the stripe bitmap to be reused as inBitmap
+        try {
+            if (decoder.getWidth() != width || decoder.getHeight() != height) {
+                return null;
+            }
+            byte[] nv21 = new byte[width * height * 3 / 2];
+            int[] pixels = new int[width * JPEG_STRIPE_ROWS];
+            Rect region = new Rect();
+
+            for (int top = 0; top < height; top += JPEG_STRIPE_ROWS) {
+                int rows = Math.min(JPEG_STRIPE_ROWS, height - top);
+                region.set(0, top, width, top + rows);
+                Bitmap stripe = decoder.decodeRegion(region, options);
+                if (stripe == null) {
+                    return null;
                 }
+                options.inBitmap = stripe; // The last, shorter stripe decodes into its top rows
+                stripe.getPixels(pixels, 0, width, 0, 0, width, rows);
+                YuvConverter.argbToNv21(pixels, width, rows, nv21, width, height, 0, top);
+            }
+            return nv21;
+        } finally {
+            if (options.inBitmap != null) {
+                options.inBitmap.recycle();
             }
+            decoder.recycle();
+        }
+    }
 
-        } catch (Exception e) {
+    /**
+     * Highly Robust YUV_420_888 to NV21 Converter.
+     * Skips the 'Padding' bytes that cause corruption on Oppo/Vivo/Samsung devices.
+     * The per-plane stride handling and the interleaved fast paths live in {@link Nv21Converter}.
+     */
+    private static byte[] yuv420ToNv21(Image image) {
+        Image.Plane[] planes = image.getPlanes();
+        try {
+            // A fresh output array per frame: the NV21 bytes travel on through the pipeline.
+            return NV21_CONVERTER.get().convert(image.getWidth(), image.getHeight(),
+                    planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                    planes[1].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                    planes[2].getBuffer(), planes[2].getRowStride(), planes[2].getPixelStride(),
+                    null);
+        } catch (RuntimeException e) {
             // If precise conversion fails, return null to trigger the outer error
             return null;
         }
-
-        return nv21;
     }
-}
\ No newline at end of file
+}
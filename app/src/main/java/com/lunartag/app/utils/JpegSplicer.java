@@ -0,0 +1,633 @@
+package com.lunartag.app.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Re-encodes part of a baseline JPEG while keeping the rest of its entropy-coded data
+ * byte-for-byte, so untouched areas suffer no extra generation loss.
+ *
+ * The unit of splicing is the restart interval (DRI): every interval starts with fresh
+ * DC predictors on a byte boundary, so any interval can be swapped for a newly encoded
+ * one. Camera hardware encoders normally write restart markers. Files without them,
+ * progressive files and files with several scans are rejected by {@link #parse(byte[])},
+ * and the caller falls back to a full decode and re-encode.
+ *
+ * New intervals reuse the file's own quantisation and Huffman tables, so no header is
+ * rewritten. Pure Java (no Android classes) so the splice can be verified on a plain JVM.
+ *
+ * Usage: parse, {@link #planRegions} for the rectangle to change, supply the new ARGB
+ * pixels of each returned region, then {@link #splice}.
+ */
+public final class JpegSplicer {
+
+    // Beyond this share of re-encoded MCUs a full re-encode is simpler and about as fast
+    public static final float DEFAULT_MAX_FRACTION = 0.5f;
+
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // AAN DCT output scale per frequency: 1 for k = 0, cos(k * PI / 16) * sqrt(2) otherwise
+    private static final double[] AAN_SCALE = new double[8];
+
+    static {
+        AAN_SCALE[0] = 1.0;
+        for (int k = 1; k < 8; k++) {
+            AAN_SCALE[k] = Math.cos(k * Math.PI / 16.0) * Math.sqrt(2.0);
+        }
+    }
+
+    /**
+     * A rectangle of the image that must be supplied as new pixels. It covers a run of
+     * consecutive restart intervals, rounded out to whole MCUs and clipped to the image.
+     */
+    public static final class Region {
+        public final int left, top, right, bottom;
+        final int firstInterval, lastInterval;
+
+        Region(int left, int top, int right, int bottom, int firstInterval, int lastInterval) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.firstInterval = firstInterval;
+            this.lastInterval = lastInterval;
+        }
+
+        public int getWidth() {
+            return right - left;
+        }
+
+        public int getHeight() {
+            return bottom - top;
+        }
+    }
+
+    /**
+     * Canonical Huffman code for one table, indexed by symbol.
+     */
+    private static final class HuffTable {
+        final int[] code = new int[256];
+        final int[] size = new int[256];
+    }
+
+    private final byte[] jpeg;
+
+    // --- Frame header (SOF0/SOF1) ---
+    private int width, height;
+    private int componentCount;
+    private int[] componentId;
+    private int[] hSampling, vSampling;
+    private int[] quantTableId;
+    private final int[][] quantTables = new int[4][]; // Zigzag order, as stored in DQT
+    private final float[][] dctDivisors = new float[4][]; // Quantiser folded with the AAN scale, natural order
+    private final HuffTable[] dcTables = new HuffTable[4];
+    private final HuffTable[] acTables = new HuffTable[4];
+
+    // --- Scan header (SOS) ---
+    private int[] scanComponent; // Frame component index, in scan order
+    private int[] scanDcTable, scanAcTable;
+
+    // --- Layout ---
+    private int restartInterval;
+    private int mcuWidth, mcuHeight, mcusPerRow, totalMcus, intervalCount;
+    private int scanDataStart, scanEnd;
+    private int[] intervalStart, intervalEnd; // Entropy data of each interval, end excludes its RST marker
+
+    private JpegSplicer(byte[] jpeg) {
+        this.jpeg = jpeg;
+    }
+
+    /**
+     * Parses the JPEG structure.
+     * @return A splicer, or null if the file cannot be spliced (not baseline, no restart
+     *         markers, several scans, or malformed).
+     */
+    public static JpegSplicer parse(byte[] jpeg) {
+        JpegSplicer splicer = new JpegSplicer(jpeg);
+        try {
+            return splicer.parseHeaders() && splicer.indexIntervals() ? splicer : null;
+        } catch (RuntimeException e) {
+            // Truncated or inconsistent segment lengths
+            return null;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Works out which restart intervals a rectangle touches.
+     * @return The regions whose pixels must be supplied to {@link #splice}, or null if more
+     *         than {@code maxFraction} of the MCUs would have to be re-encoded.
+     */
+    public List<Region> planRegions(int left, int top, int right, int bottom, float maxFraction) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(width, right);
+        bottom = Math.min(height, bottom);
+        List<Region> regions = new ArrayList<>();
+        if (left >= right || top >= bottom) {
+            return regions;
+        }
+
+        // --- 1. Mark every interval holding an MCU that overlaps the rectangle ---
+        boolean[] touched = new boolean[intervalCount];
+        int firstCol = left / mcuWidth, lastCol = (right - 1) / mcuWidth;
+        int firstRow = top / mcuHeight, lastRow = (bottom - 1) / mcuHeight;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                touched[(row * mcusPerRow + col) / restartInterval] = true;
+            }
+        }
+
+        int touchedMcus = 0;
+        for (int i = 0; i < intervalCount; i++) {
+            if (touched[i]) touchedMcus += intervalMcuCount(i);
+        }
+        if (touchedMcus > maxFraction * totalMcus) {
+            return null;
+        }
+
+        // --- 2. Group consecutive intervals and take their bounding rectangle ---
+        int i = 0;
+        while (i < intervalCount) {
+            if (!touched[i]) {
+                i++;
+                continue;
+            }
+            int first = i;
+            while (i + 1 < intervalCount && touched[i + 1]) i++;
+            int last = i;
+            i++;
+
+            int firstMcu = first * restartInterval;
+            int lastMcu = firstMcu + (last - first) * restartInterval + intervalMcuCount(last) - 1;
+            int rowA = firstMcu / mcusPerRow, rowB = lastMcu / mcusPerRow;
+            int colA = rowA == rowB ? firstMcu % mcusPerRow : 0;
+            int colB = rowA == rowB ? lastMcu % mcusPerRow : mcusPerRow - 1;
+            regions.add(new Region(colA * mcuWidth, rowA * mcuHeight,
+                    Math.min(width, (colB + 1) * mcuWidth), Math.min(height, (rowB + 1) * mcuHeight),
+                    first, last));
+        }
+        return regions;
+    }
+
+    /**
+     * Builds the new file.
+     * @param regions The list returned by {@link #planRegions}.
+     * @param pixels New ARGB pixels for each region, row-major with a stride of the region width.
+     * @return The spliced JPEG, or null if the file's Huffman tables cannot code the new data.
+     */
+    public byte[] splice(List<Region> regions, List<int[]> pixels) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length + jpeg.length / 8);
+        out.write(jpeg, 0, scanDataStart);
+
+        int regionIndex = 0;
+        try {
+            for (int i = 0; i < intervalCount; i++) {
+                while (regionIndex < regions.size() && regions.get(regionIndex).lastInterval < i) {
+                    regionIndex++;
+                }
+                Region region = regionIndex < regions.size() ? regions.get(regionIndex) : null;
+                if (region != null && region.firstInterval <= i) {
+                    encodeInterval(i, region, pixels.get(regionIndex), out);
+                } else {
+                    out.write(jpeg, intervalStart[i], intervalEnd[i] - intervalStart[i]);
+                }
+                if (i < intervalCount - 1) {
+                    out.write(0xFF);
+                    out.write(0xD0 + (i & 7));
+                }
+            }
+        } catch (IllegalStateException e) {
+            // A symbol the camera's tables have no code for
+            return null;
+        }
+
+        out.write(jpeg, scanEnd, jpeg.length - scanEnd);
+        return out.toByteArray();
+    }
+
+    // --- Parsing ---
+
+    private boolean parseHeaders() {
+        if (jpeg.length < 4 || u8(0) != 0xFF || u8(1) != 0xD8) return false;
+        boolean haveFrame = false;
+        int pos = 2;
+        while (pos + 4 <= jpeg.length) {
+            if (u8(pos) != 0xFF) return false;
+            int marker = u8(pos + 1);
+            if (marker == 0xFF) { // Fill byte
+                pos++;
+                continue;
+            }
+            if (marker == 0xD9 || (marker >= 0xD0 && marker <= 0xD7)) return false;
+            int segmentEnd = pos + 2 + u16(pos + 2);
+            int p = pos + 4;
+            if (segmentEnd > jpeg.length) return false;
+
+            switch (marker) {
+                case 0xC0: // Baseline
+                case 0xC1: // Extended sequential, Huffman: same coding if 8-bit
+                    if (u8(p) != 8) return false;
+                    height = u16(p + 1);
+                    width = u16(p + 3);
+                    componentCount = u8(p + 5);
+                    if (width == 0 || height == 0 || (componentCount != 1 && componentCount != 3)) return false;
+                    componentId = new int[componentCount];
+                    hSampling = new int[componentCount];
+                    vSampling = new int[componentCount];
+                    quantTableId = new int[componentCount];
+                    for (int c = 0; c < componentCount; c++) {
+                        int q = p + 6 + c * 3;
+                        componentId[c] = u8(q);
+                        hSampling[c] = u8(q + 1) >> 4;
+                        vSampling[c] = u8(q + 1) & 15;
+                        quantTableId[c] = u8(q + 2) & 3;
+                        if (hSampling[c] < 1 || vSampling[c] < 1) return false;
+                    }
+                    haveFrame = true;
+                    break;
+                case 0xC2: case 0xC3: case 0xC5: case 0xC6: case 0xC7:
+                case 0xC9: case 0xCA: case 0xCB: case 0xCD: case 0xCE: case 0xCF:
+                    return false; // Progressive, lossless, hierarchical or arithmetic
+                case 0xDB:
+                    parseQuantTables(p, segmentEnd);
+                    break;
+                case 0xC4:
+                    parseHuffmanTables(p, segmentEnd);
+                    break;
+                case 0xDD:
+                    restartInterval = u16(p);
+                    break;
+                case 0xDA:
+                    return haveFrame && parseScanHeader(p) && setUpLayout(segmentEnd);
+                default:
+                    break; // APPn, COM: kept as they are
+            }
+            pos = segmentEnd;
+        }
+        return false;
+    }
+
+    private void parseQuantTables(int p, int end) {
+        while (p < end) {
+            int precision = u8(p) >> 4;
+            int id = u8(p) & 3;
+            p++;
+            int[] table = new int[64];
+            for (int k = 0; k < 64; k++) {
+                if (precision == 0) {
+                    table[k] = u8(p++);
+                } else {
+                    table[k] = u16(p);
+                    p += 2;
+                }
+            }
+            quantTables[id] = table;
+
+            float[] divisors = new float[64];
+            for (int k = 0; k < 64; k++) {
+                int natural = ZIGZAG[k];
+                divisors[natural] = (float) (table[k] * AAN_SCALE[natural >> 3] * AAN_SCALE[natural & 7] * 8.0);
+            }
+            dctDivisors[id] = divisors;
+        }
+    }
+
+    private void parseHuffmanTables(int p, int end) {
+        while (p < end) {
+            int tableClass = u8(p) >> 4;
+            int id = u8(p) & 3;
+            int[] counts = new int[17];
+            int total = 0;
+            for (int len = 1; len <= 16; len++) {
+                counts[len] = u8(p + len);
+                total += counts[len];
+            }
+            int symbols = p + 17;
+
+            // Canonical code assignment (JPEG Annex C)
+            HuffTable table = new HuffTable();
+            int code = 0;
+            int k = 0;
+            for (int len = 1; len <= 16; len++) {
+                for (int n = 0; n < counts[len]; n++) {
+                    int symbol = u8(symbols + k++);
+                    table.code[symbol] = code++;
+                    table.size[symbol] = len;
+                }
+                code <<= 1;
+            }
+            if (tableClass == 0) {
+                dcTables[id] = table;
+            } else {
+                acTables[id] = table;
+            }
+            p = symbols + total;
+        }
+    }
+
+    private boolean parseScanHeader(int p) {
+        int count = u8(p);
+        if (count != componentCount) return false; // Only one interleaved scan is supported
+        scanComponent = new int[count];
+        scanDcTable = new int[count];
+        scanAcTable = new int[count];
+        for (int s = 0; s < count; s++) {
+            int id = u8(p + 1 + s * 2);
+            int tables = u8(p + 2 + s * 2);
+            scanComponent[s] = -1;
+            for (int c = 0; c < componentCount; c++) {
+                if (componentId[c] == id) scanComponent[s] = c;
+            }
+            scanDcTable[s] = (tables >> 4) & 3;
+            scanAcTable[s] = tables & 3;
+            if (scanComponent[s] < 0 || dcTables[scanDcTable[s]] == null || acTables[scanAcTable[s]] == null
+                    || quantTables[quantTableId[scanComponent[s]]] == null) {
+                return false;
+            }
+        }
+        int q = p + 1 + count * 2;
+        // Ss = 0, Se = 63, Ah = Al = 0 for a sequential scan
+        return u8(q) == 0 && u8(q + 1) == 63 && u8(q + 2) == 0;
+    }
+
+    private boolean setUpLayout(int scanDataStart) {
+        if (restartInterval <= 0) return false;
+        this.scanDataStart = scanDataStart;
+        if (componentCount == 1) {
+            // A single-component scan is never interleaved: one block per MCU
+            hSampling[0] = 1;
+            vSampling[0] = 1;
+        }
+        int hMax = 1, vMax = 1;
+        for (int c = 0; c < componentCount; c++) {
+            hMax = Math.max(hMax, hSampling[c]);
+            vMax = Math.max(vMax, vSampling[c]);
+        }
+        for (int c = 0; c < componentCount; c++) {
+            if (hMax % hSampling[c] != 0 || vMax % vSampling[c] != 0) return false;
+        }
+        mcuWidth = 8 * hMax;
+        mcuHeight = 8 * vMax;
+        mcusPerRow = (width + mcuWidth - 1) / mcuWidth;
+        totalMcus = mcusPerRow * ((height + mcuHeight - 1) / mcuHeight);
+        intervalCount = (totalMcus + restartInterval - 1) / restartInterval;
+        return true;
+    }
+
+    /**
+     * Finds where each restart interval's data starts and ends.
+     */
+    private boolean indexIntervals() {
+        intervalStart = new int[intervalCount];
+        intervalEnd = new int[intervalCount];
+        intervalStart[0] = scanDataStart;
+        int interval = 0;
+        int p = scanDataStart;
+        while (p + 1 < jpeg.length) {
+            if (u8(p) != 0xFF) {
+                p++;
+                continue;
+            }
+            int marker = u8(p + 1);
+            if (marker == 0x00 || marker == 0xFF) { // Stuffed byte or fill byte
+                p += marker == 0x00 ? 2 : 1;
+                continue;
+            }
+            if (marker >= 0xD0 && marker <= 0xD7) {
+                if (marker - 0xD0 != (interval & 7) || interval + 1 >= intervalCount) return false;
+                intervalEnd[interval++] = p;
+                intervalStart[interval] = p + 2;
+                p += 2;
+                continue;
+            }
+            // Any other marker ends the scan; only a plain EOI is expected here
+            intervalEnd[interval] = p;
+            scanEnd = p;
+            return marker == 0xD9 && interval == intervalCount - 1;
+        }
+        return false;
+    }
+
+    private int intervalMcuCount(int interval) {
+        return Math.min(restartInterval, totalMcus - interval * restartInterval);
+    }
+
+    // --- Encoding ---
+
+    private void encodeInterval(int interval, Region region, int[] pixels, ByteArrayOutputStream out) {
+        BitWriter writer = new BitWriter(out);
+        int[] predictors = new int[componentCount]; // DC prediction restarts with every interval
+        float[] samples = new float[64];
+        int[] coefficients = new int[64];
+        int hMax = mcuWidth / 8, vMax = mcuHeight / 8;
+
+        int firstMcu = interval * restartInterval;
+        int lastMcu = firstMcu + intervalMcuCount(interval);
+        for (int mcu = firstMcu; mcu < lastMcu; mcu++) {
+            int mcuX = (mcu % mcusPerRow) * mcuWidth;
+            int mcuY = (mcu / mcusPerRow) * mcuHeight;
+            for (int s = 0; s < scanComponent.length; s++) {
+                int c = scanComponent[s];
+                int stepX = hMax / hSampling[c], stepY = vMax / vSampling[c];
+                float[] divisors = dctDivisors[quantTableId[c]];
+                for (int by = 0; by < vSampling[c]; by++) {
+                    for (int bx = 0; bx < hSampling[c]; bx++) {
+                        sampleBlock(region, pixels, c, mcuX + bx * 8 * stepX, mcuY + by * 8 * stepY, stepX, stepY, samples);
+                        forwardDct(samples, divisors, coefficients);
+                        predictors[s] = encodeBlock(writer, coefficients, predictors[s],
+                                dcTables[scanDcTable[s]], acTables[scanAcTable[s]]);
+                    }
+                }
+            }
+        }
+        writer.padToByte();
+    }
+
+    /**
+     * Reads one 8x8 block of component {@code c}, averaging stepX x stepY pixels per sample
+     * and repeating the edge pixels past the image border. Output is level-shifted by -128.
+     */
+    private void sampleBlock(Region region, int[] pixels, int c, int originX, int originY,
+                             int stepX, int stepY, float[] samples) {
+        int stride = region.getWidth();
+        int area = stepX * stepY;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                int r = 0, g = 0, b = 0;
+                for (int dy = 0; dy < stepY; dy++) {
+                    int py = Math.min(height - 1, originY + y * stepY + dy) - region.top;
+                    for (int dx = 0; dx < stepX; dx++) {
+                        int px = Math.min(width - 1, originX + x * stepX + dx) - region.left;
+                        int argb = pixels[py * stride + px];
+                        r += (argb >> 16) & 0xFF;
+                        g += (argb >> 8) & 0xFF;
+                        b += argb & 0xFF;
+                    }
+                }
+                float value;
+                if (componentCount == 1 || c == 0) {
+                    value = 0.299f * r + 0.587f * g + 0.114f * b;
+                } else if (c == 1) {
+                    value = -0.168736f * r - 0.331264f * g + 0.5f * b;
+                } else {
+                    value = 0.5f * r - 0.418688f * g - 0.081312f * b;
+                }
+                // Chroma is centred on 128, so after the level shift it needs no offset
+                samples[y * 8 + x] = c == 0 || componentCount == 1 ? value / area - 128f : value / area;
+            }
+        }
+    }
+
+    /**
+     * 8x8 forward DCT (Arai-Agui-Nakajima, as in the IJG float FDCT) followed by
+     * quantisation. The AAN output scale is folded into {@code divisors}. Output is in
+     * zigzag order.
+     */
+    private static void forwardDct(float[] d, float[] divisors, int[] out) {
+        // Pass 1 on rows, pass 2 on columns
+        for (int pass = 0; pass < 2; pass++) {
+            int step = pass == 0 ? 1 : 8;
+            int next = pass == 0 ? 8 : 1;
+            for (int line = 0, base = 0; line < 8; line++, base += next) {
+                int i0 = base, i1 = base + step, i2 = base + 2 * step, i3 = base + 3 * step;
+                int i4 = base + 4 * step, i5 = base + 5 * step, i6 = base + 6 * step, i7 = base + 7 * step;
+
+                float tmp0 = d[i0] + d[i7], tmp7 = d[i0] - d[i7];
+                float tmp1 = d[i1] + d[i6], tmp6 = d[i1] - d[i6];
+                float tmp2 = d[i2] + d[i5], tmp5 = d[i2] - d[i5];
+                float tmp3 = d[i3] + d[i4], tmp4 = d[i3] - d[i4];
+
+                // Even part
+                float tmp10 = tmp0 + tmp3, tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2, tmp12 = tmp1 - tmp2;
+                d[i0] = tmp10 + tmp11;
+                d[i4] = tmp10 - tmp11;
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                d[i2] = tmp13 + z1;
+                d[i6] = tmp13 - z1;
+
+                // Odd part
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+                float z11 = tmp7 + z3, z13 = tmp7 - z3;
+                d[i5] = z13 + z2;
+                d[i3] = z13 - z2;
+                d[i1] = z11 + z4;
+                d[i7] = z11 - z4;
+            }
+        }
+        for (int k = 0; k < 64; k++) {
+            int natural = ZIGZAG[k];
+            out[k] = Math.round(d[natural] / divisors[natural]);
+        }
+    }
+
+    /**
+     * Huffman-codes one quantised block (JPEG Annex F.1.2).
+     * @return The new DC predictor.
+     */
+    private static int encodeBlock(BitWriter writer, int[] coefficients, int predictor, HuffTable dc, HuffTable ac) {
+        int diff = coefficients[0] - predictor;
+        int category = bitLength(diff);
+        writer.writeCode(dc, category);
+        writer.writeValue(diff, category);
+
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = coefficients[k];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                writer.writeCode(ac, 0xF0); // ZRL: sixteen zeros
+                run -= 16;
+            }
+            int size = bitLength(value);
+            writer.writeCode(ac, (run << 4) | size);
+            writer.writeValue(value, size);
+            run = 0;
+        }
+        if (run > 0) {
+            writer.writeCode(ac, 0x00); // EOB
+        }
+        return coefficients[0];
+    }
+
+    private static int bitLength(int value) {
+        int magnitude = Math.abs(value);
+        return magnitude == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(magnitude);
+    }
+
+    private int u8(int pos) {
+        return jpeg[pos] & 0xFF;
+    }
+
+    private int u16(int pos) {
+        return (u8(pos) << 8) | u8(pos + 1);
+    }
+
+    /**
+     * Entropy-coded output with 0xFF byte stuffing.
+     */
+    private static final class BitWriter {
+        private final ByteArrayOutputStream out;
+        private long buffer;
+        private int count;
+
+        BitWriter(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        void writeCode(HuffTable table, int symbol) {
+            int size = table.size[symbol];
+            if (size == 0) {
+                throw new IllegalStateException("No Huffman code for symbol " + symbol);
+            }
+            writeBits(table.code[symbol], size);
+        }
+
+        void writeValue(int value, int size) {
+            if (size == 0) return;
+            // Negative values are sent as value - 1 in 'size' bits (one's complement)
+            writeBits(value < 0 ? value - 1 : value, size);
+        }
+
+        void padToByte() {
+            if (count > 0) {
+                int pad = 8 - count;
+                writeBits((1 << pad) - 1, pad);
+            }
+        }
+
+        private void writeBits(int bits, int size) {
+            buffer = (buffer << size) | (bits & ((1L << size) - 1));
+            count += size;
+            while (count >= 8) {
+                int b = (int) (buffer >> (count - 8)) & 0xFF;
+                out.write(b);
+                if (b == 0xFF) out.write(0);
+                count -= 8;
+            }
+        }
+    }
+}
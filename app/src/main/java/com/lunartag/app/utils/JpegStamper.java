@@ -0,0 +1,89 @@
+package com.lunartag.app.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stamps the watermark onto the camera's own JPEG without re-encoding the whole photo.
+ * Only the restart intervals under the watermark block are decoded, drawn on and
+ * re-encoded (see {@link JpegSplicer}); everything above them is copied unchanged.
+ */
+public class JpegStamper {
+
+    private static final String TAG = "JpegStamper";
+
+    private JpegStamper() {}
+
+    /**
+     * @param templateId The watermark template; null uses the default.
+     * @param jpeg The camera JPEG, in sensor orientation.
+     * @param rotationDegrees Clockwise rotation needed to show the photo upright.
+     * @return The stamped JPEG, or null if this file cannot be spliced (the caller must
+     *         then decode and re-encode the full frame).
+     */
+    public static byte[] stamp(Context context, String templateId, byte[] jpeg, Bitmap mapBitmap, CharSequence[] lines,
+                               int rotationDegrees) {
+        if (jpeg == null || lines == null || lines.length == 0) {
+            return null;
+        }
+
+        // --- 1. Check the file and plan the splice ---
+        JpegSplicer splicer = JpegSplicer.parse(jpeg);
+        if (splicer == null) {
+            Log.d(TAG, "JPEG has no restart markers or is not baseline; using full re-encode.");
+            return null;
+        }
+        int width = splicer.getWidth();
+        int height = splicer.getHeight();
+        Rect band = WatermarkUtils.computeBandRect(context, templateId, width, height, mapBitmap, lines,
+                rotationDegrees);
+        List<JpegSplicer.Region> regions = splicer.planRegions(band.left, band.top, band.right, band.bottom,
+                JpegSplicer.DEFAULT_MAX_FRACTION);
+        if (regions == null) {
+            Log.d(TAG, "Restart intervals too coarse for this band; using full re-encode.");
+            return null;
+        }
+
+        // --- 2. Decode each region, draw the part of the watermark it holds ---
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(jpeg, 0, jpeg.length, false);
+        } catch (IOException e) {
+            return null;
+        }
+        List<int[]> pixels = new ArrayList<>(regions.size());
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        try {
+            for (JpegSplicer.Region region : regions) {
+                Bitmap bitmap = decoder.decodeRegion(new Rect(region.left, region.top, region.right, region.bottom), options);
+                if (bitmap == null) {
+                    return null;
+                }
+                try {
+                    WatermarkUtils.addWatermarkToRegion(context, templateId, bitmap, region.left, region.top,
+                            width, height, mapBitmap, lines, rotationDegrees);
+                    int[] regionPixels = new int[region.getWidth() * region.getHeight()];
+                    bitmap.getPixels(regionPixels, 0, region.getWidth(), 0, 0, region.getWidth(), region.getHeight());
+                    pixels.add(regionPixels);
+                } finally {
+                    bitmap.recycle();
+                }
+            }
+        } finally {
+            decoder.recycle();
+        }
+
+        // --- 3. Splice the re-encoded intervals into the original scan ---
+        return splicer.splice(regions, pixels);
+    }
+}
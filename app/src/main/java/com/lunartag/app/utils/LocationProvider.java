@@ -16,111 +16,253 @@ import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.Priority;
+import com.lunartag.app.data.SlotQueue;
+import com.lunartag.app.geocode.GeocodeCache;
+import com.lunartag.app.location.LocationPolicy;
+import com.lunartag.app.map.MapThumbnailRenderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A "Pro" architecture Location Provider.
  * It runs in the background, maintaining a constant "Fresh" GPS lock
  * so the Camera never has to wait.
+ * UPDATED: Every fix is prefetched into the {@link GeocodeCache} and the {@link MapThumbnailRenderer}.
+ * UPDATED: The request is no longer fixed at high accuracy every 5s. A {@link LocationPolicy}
+ * picks priority and interval from movement, fix accuracy, captures and the admin slots,
+ * and the request is re-issued whenever its decision changes.
+ * UPDATED: One engine per process. Screens subscribe and unsubscribe; the GPS runs while
+ * anyone is subscribed, and the best fix and recent history survive tab switches.
  */
 public class LocationProvider {
 
     private static final String TAG = "LocationProvider";
+    private static final long MAX_KEEP_BETTER_FIX_MS = 2 * 60_000; // Keep a sharper fix over a vaguer one this long
+    private static final int HISTORY_SIZE = 64;
+
+    private static volatile LocationProvider INSTANCE;
+
+    public static LocationProvider getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (LocationProvider.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new LocationProvider(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
     private final FusedLocationProviderClient fusedLocationClient;
     private final Context context;
-    private LocationCallback locationCallback;
-    
-    // The "Hot" variable that holds the instant coordinate
-    private Location currentBestLocation = null;
-    
-    // Interfaces for status updates (Optional, used to change GPS Icon color)
-    private LocationStatusListener statusListener;
+    private final LocationPolicy policy = new LocationPolicy(LocationPolicy.Clock.SYSTEM);
+
+    // The "Hot" value that holds the instant coordinate. Written on the main thread,
+    // read from any thread (the capture path reads it on the camera executor).
+    private final AtomicReference<Location> bestFix = new AtomicReference<>();
+
+    // Recent fixes, oldest overwritten first. Guarded by itself.
+    private final Location[] history = new Location[HISTORY_SIZE];
+    private int historyNext = 0;
+    private int historyCount = 0;
+
+    // Main thread only
+    private final List<LocationStatusListener> subscribers = new ArrayList<>();
+    private LocationCallback locationCallback; // Null while the engine is stopped
+    private LocationPolicy.Decision activeDecision;
 
     public interface LocationStatusListener {
         void onLocationUpdated(Location location);
     }
 
-    public void setStatusListener(LocationStatusListener listener) {
-        this.statusListener = listener;
-    }
-
-    public LocationProvider(Context context) {
+    private LocationProvider(Context context) {
         this.context = context;
         this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
     }
 
     /**
-     * STEP 1: Start the Engine.
-     * Call this in onResume(). It starts the GPS immediately.
+     * STEP 1: Subscribe. Call this in onResume() (main thread).
+     * The first subscriber starts the GPS; a later one gets the current best fix at once.
+     */
+    public void subscribe(LocationStatusListener listener) {
+        if (subscribers.contains(listener)) return;
+        subscribers.add(listener);
+        Location best = bestFix.get();
+        if (best != null) listener.onLocationUpdated(best);
+        if (locationCallback == null) {
+            startEngine();
+        }
+    }
+
+    /**
+     * STEP 2: Unsubscribe. Call this in onPause() (main thread).
+     * The GPS stops, to save battery, once nobody is subscribed.
      */
-    public void startLocationUpdates() {
+    public void unsubscribe(LocationStatusListener listener) {
+        subscribers.remove(listener);
+        if (subscribers.isEmpty() && locationCallback != null) {
+            fusedLocationClient.removeLocationUpdates(locationCallback);
+            locationCallback = null;
+            activeDecision = null;
+            Log.d(TAG, "GPS Engine Stopped.");
+        }
+    }
+
+    /**
+     * STEP 3: The Instant Getter.
+     * Call this when "Capture" is clicked. It returns IMMEDIATELY, from any thread.
+     * No callbacks. No waiting.
+     * @return The best recent fix, or null if the engine hasn't found anything yet
+     * (e.g. deep underground), allowing the Camera to print "Location Unknown" instantly.
+     */
+    public Location getCurrentLocationFast() {
+        return bestFix.get();
+    }
+
+    /**
+     * Fixes received in the last {@code maxAgeMillis}, newest first. Safe from any thread.
+     */
+    public List<Location> getRecentFixes(long maxAgeMillis) {
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        List<Location> recent = new ArrayList<>();
+        synchronized (history) {
+            for (int i = 1; i <= historyCount; i++) {
+                Location location = history[(historyNext - i + HISTORY_SIZE) % HISTORY_SIZE];
+                if (location.getTime() < cutoff) break;
+                recent.add(location);
+            }
+        }
+        return recent;
+    }
+
+    private void startEngine() {
         if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
             Log.e(TAG, "Permission missing. Cannot start updates.");
             return;
         }
 
-        // 1. INSTANTLY grab the last known location (Cache)
+        // 1. If we have nothing yet, INSTANTLY grab the last known location (Cache)
         // This ensures we have data even if the GPS takes 30 seconds to warm up.
-        fusedLocationClient.getLastLocation().addOnSuccessListener(location -> {
-            if (location != null) {
-                // Apply "Freshness" logic if needed, but for now, take what we can get.
-                Log.d(TAG, "Last Known Location recovered: " + location.toString());
-                currentBestLocation = location;
-                if (statusListener != null) statusListener.onLocationUpdated(location);
-            }
-        });
+        if (bestFix.get() == null) {
+            fusedLocationClient.getLastLocation().addOnSuccessListener(location -> {
+                if (location != null && bestFix.compareAndSet(null, location)) {
+                    Log.d(TAG, "Last Known Location recovered: " + location.toString());
+                    GeocodeCache.getInstance(context).prefetch(location);
+                    MapThumbnailRenderer.getInstance(context).prefetch(location);
+                    notifySubscribers(location);
+                }
+            });
+        }
 
-        // 2. Create the Request for FRESH data
-        LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, 5000) // Update every 5s
-                .setMinUpdateIntervalMillis(2000) // Fastest every 2s
-                .setWaitForAccurateLocation(false) // CRITICAL: Do not wait!
-                .build();
+        policy.setUpcomingSlots(readUpcomingSlots());
 
-        // 3. Define what happens when a NEW satellite signal arrives
+        // 2. Define what happens when a NEW satellite signal arrives
         locationCallback = new LocationCallback() {
             @Override
             public void onLocationResult(@NonNull LocationResult locationResult) {
+                if (locationCallback != this) return; // Delivered after the engine stopped
                 for (Location location : locationResult.getLocations()) {
                     if (location != null) {
-                        Log.d(TAG, "Fresh GPS Signal Received: " + location.toString());
-                        currentBestLocation = location;
-                        
-                        // Notify the UI to turn the icon Green
-                        if (statusListener != null) statusListener.onLocationUpdated(location);
+                        onFix(location);
                     }
                 }
+                applyPolicy();
             }
         };
 
-        // 4. Start the loop
-        fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
+        // 3. Start the loop
+        activeDecision = null;
+        applyPolicy();
         Log.d(TAG, "GPS Engine Started (Background Mode).");
     }
 
     /**
-     * STEP 2: Stop the Engine.
-     * Call this in onPause() to save battery.
+     * Main thread.
      */
-    public void stopLocationUpdates() {
-        if (locationCallback != null) {
-            fusedLocationClient.removeLocationUpdates(locationCallback);
-            Log.d(TAG, "GPS Engine Stopped.");
+    private void onFix(Location location) {
+        Log.d(TAG, "Fresh GPS Signal Received: " + location.toString());
+        policy.onFix(location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE);
+        synchronized (history) {
+            history[historyNext] = location;
+            historyNext = (historyNext + 1) % HISTORY_SIZE;
+            historyCount = Math.min(historyCount + 1, HISTORY_SIZE);
+        }
+        if (!isWorseThanCurrent(location)) {
+            bestFix.set(location);
+        }
+        // Resolve the address and map now, so the shutter only has to read memory
+        GeocodeCache.getInstance(context).prefetch(location);
+        MapThumbnailRenderer.getInstance(context).prefetch(location);
+
+        // Notify the UI to turn the icon Green
+        notifySubscribers(location);
+    }
+
+    private void notifySubscribers(Location location) {
+        // Copy: a subscriber may unsubscribe from its callback
+        for (LocationStatusListener listener : new ArrayList<>(subscribers)) {
+            listener.onLocationUpdated(location);
         }
     }
 
     /**
-     * STEP 3: The Instant Getter.
-     * Call this when "Capture" is clicked. It returns IMMEDIATELY.
-     * No callbacks. No waiting.
+     * Call when the shutter is pressed (main thread): keeps the GPS at full accuracy for the next shots.
      */
-    public Location getCurrentLocationFast() {
-        if (currentBestLocation != null) {
-            // We have a location! Return it.
-            return currentBestLocation;
-        } else {
-            // The engine hasn't found anything yet (e.g. deep underground).
-            // Return null, allowing the Camera to print "Location Unknown" instantly
-            // rather than crashing or hanging.
-            return null;
+    public void onCapture() {
+        policy.onCapture();
+        policy.setUpcomingSlots(readUpcomingSlots());
+        applyPolicy();
+    }
+
+    /**
+     * Call when the user interacts with the camera screen (main thread); a capture is likely soon.
+     */
+    public void onUserActivity() {
+        policy.onUserActivity();
+        applyPolicy();
+    }
+
+    /**
+     * Re-issues the location request if the policy's decision has changed.
+     * Requesting again with the same callback replaces the previous request.
+     */
+    private void applyPolicy() {
+        if (locationCallback == null) return;
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            return;
         }
+        LocationPolicy.Decision decision = policy.decide();
+        if (decision.sameRequest(activeDecision)) return;
+        activeDecision = decision;
+
+        int priority = decision.getPriority() == LocationPolicy.Priority.HIGH_ACCURACY
+                ? Priority.PRIORITY_HIGH_ACCURACY
+                : Priority.PRIORITY_BALANCED_POWER_ACCURACY;
+        LocationRequest locationRequest = new LocationRequest.Builder(priority, decision.getIntervalMillis())
+                .setMinUpdateIntervalMillis(decision.getMinIntervalMillis())
+                .setWaitForAccurateLocation(false) // CRITICAL: Do not wait!
+                .build();
+        fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
+        Log.d(TAG, "Location request: " + decision);
+    }
+
+    /**
+     * A vaguer fix (e.g. from balanced power mode) that still agrees with a recent sharper one
+     * does not replace it, so a stationary user keeps the precise position for the stamp.
+     */
+    private boolean isWorseThanCurrent(Location location) {
+        Location current = bestFix.get();
+        if (current == null || !current.hasAccuracy()) return false;
+        if (!location.hasAccuracy()) return true;
+        if (location.getAccuracy() <= current.getAccuracy()) return false;
+        if (location.getTime() - current.getTime() > MAX_KEEP_BETTER_FIX_MS) return false;
+        return location.distanceTo(current) <= location.getAccuracy();
+    }
+
+    private long[] readUpcomingSlots() {
+        return SlotQueue.getInstance(context).getUpcomingSlots(); // From memory, no database access
     }
-}
\ No newline at end of file
+}
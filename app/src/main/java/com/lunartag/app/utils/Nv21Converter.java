@@ -0,0 +1,253 @@
+package com.lunartag.app.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stride-correct YUV_420_888 to NV21 repacker.
+ *
+ * Three ways to build the interleaved V/U plane, picked for each frame:
+ * 1. NV21 fast path: the camera already stores chroma as V,U,V,U (pixelStride 2 and the
+ *    V buffer is the U buffer shifted by one byte). Whole rows are bulk-copied from V.
+ * 2. NV12 path: chroma is stored U,V,U,V. Rows are bulk-copied and each pair swapped.
+ * 3. Planar/strided path: U and V live in separate planes. Each row of each plane is
+ *    bulk-copied into scratch and then interleaved in a tight array loop.
+ *
+ * The layout is checked on every frame (front and back cameras can differ at the same
+ * resolution), but only by its first chroma row. The whole-plane comparison that proves
+ * the planes are one interleaved buffer runs once per layout (size, strides, buffer
+ * lengths) and its result is kept, so the check never costs as much as the copy.
+ * Every plane uses its own row and pixel stride, and buffers are only read with bulk
+ * {@link ByteBuffer#get(byte[], int, int)} calls. Scratch rows are sized once per
+ * resolution and reused. Instances are NOT thread-safe; keep one per worker thread.
+ *
+ * Only java.nio is used, so synthetic planes (including padded strides) can be fed in
+ * on a plain JVM to check correctness and throughput.
+ */
+public final class Nv21Converter {
+
+    public static final int PATH_NV21 = 1;
+    public static final int PATH_NV12 = 2;
+    public static final int PATH_PLANAR = 3;
+
+    private byte[] rowScratchA = new byte[0];
+    private byte[] rowScratchB = new byte[0];
+
+    private int lastPath;
+
+    // The layout whose chroma planes were last compared in full, and the path it got
+    private int checkedWidth = -1;
+    private int checkedRowStride;
+    private int checkedLength;
+    private int checkedPath;
+
+    /**
+     * Repacks one frame into NV21.
+     * @param out Optional destination of at least {@link YuvConverter#nv21Size} bytes; a new array is
+     *            allocated when null or too small. Pass a new array when the result outlives the call.
+     * @return The NV21 bytes.
+     */
+    public byte[] convert(int width, int height,
+                          ByteBuffer yBuffer, int yRowStride, int yPixelStride,
+                          ByteBuffer uBuffer, int uRowStride, int uPixelStride,
+                          ByteBuffer vBuffer, int vRowStride, int vPixelStride,
+                          byte[] out) {
+        int frameSize = width * height;
+        int nv21Size = YuvConverter.nv21Size(width, height);
+        if (out == null || out.length < nv21Size) {
+            out = new byte[nv21Size];
+        }
+
+        copyLuma(width, height, yBuffer, yRowStride, yPixelStride, out);
+
+        int path = choosePath(width, uBuffer, uRowStride, uPixelStride, vBuffer, vRowStride, vPixelStride);
+        lastPath = path;
+        if (path == PATH_NV21) {
+            copyInterleavedNv21(width, height, uBuffer, vBuffer, vRowStride, out, frameSize);
+        } else if (path == PATH_NV12) {
+            copyInterleavedNv12(width, height, uBuffer, vBuffer, uRowStride, out, frameSize);
+        } else {
+            copyPlanar(width, height, uBuffer, uRowStride, uPixelStride, vBuffer, vRowStride, vPixelStride, out, frameSize);
+        }
+        return out;
+    }
+
+    /**
+     * Which chroma path the last {@link #convert} call used (one of the PATH_ constants).
+     */
+    public int getLastPath() {
+        return lastPath;
+    }
+
+    // --- Luma ---
+
+    private void copyLuma(int width, int height, ByteBuffer yBuffer, int rowStride, int pixelStride, byte[] out) {
+        int base = yBuffer.position();
+        try {
+            if (pixelStride == 1 && rowStride == width) {
+                // Unpadded: one bulk copy for the whole plane
+                yBuffer.get(out, 0, width * height);
+            } else if (pixelStride == 1) {
+                // Padded rows: one bulk copy per row, skipping the padding
+                for (int row = 0; row < height; row++) {
+                    yBuffer.position(base + row * rowStride);
+                    yBuffer.get(out, row * width, width);
+                }
+            } else {
+                int rowLength = (width - 1) * pixelStride + 1;
+                byte[] scratch = scratchA(rowLength);
+                int dst = 0;
+                for (int row = 0; row < height; row++) {
+                    yBuffer.position(base + row * rowStride);
+                    yBuffer.get(scratch, 0, rowLength);
+                    for (int col = 0, src = 0; col < width; col++, src += pixelStride) {
+                        out[dst++] = scratch[src];
+                    }
+                }
+            }
+        } finally {
+            yBuffer.position(base);
+        }
+    }
+
+    // --- Chroma ---
+
+    private int choosePath(int width,
+                           ByteBuffer uBuffer, int uRowStride, int uPixelStride,
+                           ByteBuffer vBuffer, int vRowStride, int vPixelStride) {
+        if (uPixelStride != 2 || vPixelStride != 2 || uRowStride != vRowStride) {
+            return PATH_PLANAR;
+        }
+        int firstRow = YuvConverter.chromaStride(width) - 1;
+        boolean checked = width == checkedWidth && uRowStride == checkedRowStride
+                && uBuffer.remaining() == checkedLength && vBuffer.remaining() == checkedLength;
+        if (checked) {
+            // A camera does not change how it lays out its chroma memory between frames
+            // of one stream, so the first row is enough to tell it is still the same stream
+            if (checkedPath == PATH_NV21 && isShiftedCopy(vBuffer, uBuffer, firstRow)) return PATH_NV21;
+            if (checkedPath == PATH_NV12 && isShiftedCopy(uBuffer, vBuffer, firstRow)) return PATH_NV12;
+            if (checkedPath == PATH_PLANAR) return PATH_PLANAR; // Always correct
+        }
+
+        int path = PATH_PLANAR;
+        if (isShiftedCopy(vBuffer, uBuffer, firstRow) && isShiftedCopy(vBuffer, uBuffer, -1)) {
+            path = PATH_NV21; // V,U,V,U...: U is V shifted by one byte
+        } else if (isShiftedCopy(uBuffer, vBuffer, firstRow) && isShiftedCopy(uBuffer, vBuffer, -1)) {
+            path = PATH_NV12; // U,V,U,V...: V is U shifted by one byte
+        }
+        checkedWidth = width;
+        checkedRowStride = uRowStride;
+        checkedLength = uBuffer.remaining() == vBuffer.remaining() ? uBuffer.remaining() : -1;
+        checkedPath = path;
+        return path;
+    }
+
+    /**
+     * True if {@code second} holds the same bytes as {@code first} advanced by one, i.e. both
+     * planes are views into one interleaved buffer. If the contents match, copying from
+     * {@code first} alone produces exactly the right interleaving, so the check is safe even
+     * if the buffers happen to be separate.
+     * @param length Number of bytes to compare, or -1 for the whole buffer.
+     */
+    private static boolean isShiftedCopy(ByteBuffer first, ByteBuffer second, int length) {
+        ByteBuffer a = first.duplicate();
+        ByteBuffer b = second.duplicate();
+        if (a.remaining() < 2 || b.remaining() < 1) return false;
+        a.position(a.position() + 1);
+        b.limit(b.limit() - 1);
+        if (a.remaining() != b.remaining()) return false;
+        if (length >= 0 && length < a.remaining()) {
+            a.limit(a.position() + length);
+            b.limit(b.position() + length);
+        }
+        return a.equals(b);
+    }
+
+    private void copyInterleavedNv21(int width, int height, ByteBuffer uBuffer, ByteBuffer vBuffer,
+                                     int rowStride, byte[] out, int frameSize) {
+        int chromaHeight = (height + 1) / 2;
+        int rowBytes = YuvConverter.chromaStride(width);
+        int vBase = vBuffer.position();
+        int uBase = uBuffer.position();
+        try {
+            if (rowStride == rowBytes) {
+                // Contiguous: the V buffer already is the NV21 chroma plane minus its last U byte
+                int total = rowBytes * chromaHeight;
+                vBuffer.get(out, frameSize, total - 1);
+                out[frameSize + total - 1] = uBuffer.get(uBase + total - 2);
+            } else {
+                int dst = frameSize;
+                for (int row = 0; row < chromaHeight; row++) {
+                    vBuffer.position(vBase + row * rowStride);
+                    vBuffer.get(out, dst, rowBytes - 1);
+                    out[dst + rowBytes - 1] = uBuffer.get(uBase + row * rowStride + rowBytes - 2);
+                    dst += rowBytes;
+                }
+            }
+        } finally {
+            vBuffer.position(vBase);
+        }
+    }
+
+    private void copyInterleavedNv12(int width, int height, ByteBuffer uBuffer, ByteBuffer vBuffer,
+                                     int rowStride, byte[] out, int frameSize) {
+        int chromaHeight = (height + 1) / 2;
+        int rowBytes = YuvConverter.chromaStride(width);
+        byte[] scratch = scratchA(rowBytes);
+        int uBase = uBuffer.position();
+        int vBase = vBuffer.position();
+        int dst = frameSize;
+        try {
+            for (int row = 0; row < chromaHeight; row++) {
+                uBuffer.position(uBase + row * rowStride);
+                uBuffer.get(scratch, 0, rowBytes - 1);
+                scratch[rowBytes - 1] = vBuffer.get(vBase + row * rowStride + rowBytes - 2);
+                for (int i = 0; i < rowBytes; i += 2) {
+                    out[dst++] = scratch[i + 1]; // V
+                    out[dst++] = scratch[i];     // U
+                }
+            }
+        } finally {
+            uBuffer.position(uBase);
+        }
+    }
+
+    private void copyPlanar(int width, int height,
+                            ByteBuffer uBuffer, int uRowStride, int uPixelStride,
+                            ByteBuffer vBuffer, int vRowStride, int vPixelStride,
+                            byte[] out, int frameSize) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int uRowLength = (chromaWidth - 1) * uPixelStride + 1;
+        int vRowLength = (chromaWidth - 1) * vPixelStride + 1;
+        byte[] uRow = scratchA(uRowLength);
+        byte[] vRow = scratchB(vRowLength);
+        int uBase = uBuffer.position();
+        int vBase = vBuffer.position();
+        int dst = frameSize;
+        try {
+            for (int row = 0; row < chromaHeight; row++) {
+                uBuffer.position(uBase + row * uRowStride);
+                uBuffer.get(uRow, 0, uRowLength);
+                vBuffer.position(vBase + row * vRowStride);
+                vBuffer.get(vRow, 0, vRowLength);
+                for (int col = 0, us = 0, vs = 0; col < chromaWidth; col++, us += uPixelStride, vs += vPixelStride) {
+                    out[dst++] = vRow[vs]; // V
+                    out[dst++] = uRow[us]; // U
+                }
+            }
+        } finally {
+            uBuffer.position(uBase);
+            vBuffer.position(vBase);
+        }
+    }
+
+    private byte[] scratchA(int size) {
+        if (rowScratchA.length < size) rowScratchA = new byte[size];
+        return rowScratchA;
+    }
+
+    private byte[] scratchB(int size) {
+        if (rowScratchB.length < size) rowScratchB = new byte[size];
+        return rowScratchB;
+    }
+}
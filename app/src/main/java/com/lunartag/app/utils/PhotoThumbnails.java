@@ -0,0 +1,215 @@
+package com.lunartag.app.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.util.Log;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.data.PhotoDao;
+import com.lunartag.app.model.Photo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * The thumbnail tier: a small upright JPEG per photo, kept in the app's own files, that every
+ * list (gallery, dashboard) and the viewer's first frame load instead of the full photo.
+ *
+ * Thumbnails are made by the capture pipeline from the frame it already has in memory
+ * (see {@link #scaleDown} and {@link #decodeSmall}), so no full-resolution file is read for them.
+ * Photos from before the tier existed get theirs once, in the background ({@link #backfillAsync}).
+ */
+public final class PhotoThumbnails {
+
+    private static final String TAG = "PhotoThumbnails";
+
+    private static final String DIRECTORY = "thumbnails";
+    public static final int SHORT_EDGE = 320; // Grid cells are 320 x 320, center-cropped
+    private static final int EXIF_LONG_EDGE = 160; // The customary EXIF thumbnail size
+    private static final int QUALITY = 80;
+    private static final int EXIF_QUALITY = 75;
+    private static final int BACKFILL_BATCH = 20;
+
+    private PhotoThumbnails() {}
+
+    /**
+     * Scales a frame down so its short edge is {@link #SHORT_EDGE}. Orientation is kept.
+     * Returns a new bitmap; the source is left alone.
+     */
+    public static Bitmap scaleDown(Bitmap source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        float scale = Math.min(1f, (float) SHORT_EDGE / Math.min(width, height));
+        return Bitmap.createScaledBitmap(source,
+                Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+    }
+
+    /**
+     * Decodes an encoded JPEG straight at a reduced size (the decoder skips most of the work
+     * with a power-of-two sample size), then scales it like {@link #scaleDown}.
+     * @return The small bitmap in the JPEG's stored orientation, or null if it cannot be decoded.
+     */
+    public static Bitmap decodeSmall(byte[] jpeg) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight);
+        Bitmap sampled = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        return sampled != null ? replace(sampled, scaleDown(sampled)) : null;
+    }
+
+    /**
+     * The list thumbnail: the small frame turned upright and compressed.
+     * @param rotationDegrees Clockwise rotation still pending on the photo (EXIF orientation).
+     */
+    public static byte[] encodeUpright(Bitmap small, int rotationDegrees) {
+        Bitmap upright = small;
+        if (rotationDegrees % 360 != 0) {
+            Matrix matrix = new Matrix();
+            matrix.postRotate(rotationDegrees);
+            upright = Bitmap.createBitmap(small, 0, 0, small.getWidth(), small.getHeight(), matrix, true);
+        }
+        try {
+            return compress(upright, QUALITY);
+        } finally {
+            if (upright != small) upright.recycle();
+        }
+    }
+
+    /**
+     * The EXIF thumbnail: 160 px on the long edge, in the photo's stored orientation.
+     */
+    public static byte[] encodeForExif(Bitmap small) {
+        float scale = Math.min(1f, (float) EXIF_LONG_EDGE / Math.max(small.getWidth(), small.getHeight()));
+        Bitmap tiny = Bitmap.createScaledBitmap(small,
+                Math.max(1, Math.round(small.getWidth() * scale)), Math.max(1, Math.round(small.getHeight() * scale)),
+                true);
+        try {
+            return compress(tiny, EXIF_QUALITY);
+        } finally {
+            if (tiny != small) tiny.recycle();
+        }
+    }
+
+    /**
+     * Writes a thumbnail next to the others, named after its photo.
+     * @return The absolute path, or null if it could not be written.
+     */
+    public static String save(Context context, String fileName, byte[] thumbnail) {
+        File directory = new File(context.getFilesDir(), DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Cannot create " + directory);
+            return null;
+        }
+        File file = new File(directory, fileName + ".jpg");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(thumbnail);
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            Log.e(TAG, "Thumbnail not saved: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Removes a photo's thumbnail, if it has one. Call this wherever the photo itself is deleted.
+     */
+    public static void delete(Photo photo) {
+        if (photo == null || photo.getThumbnailPath() == null) return;
+        File file = new File(photo.getThumbnailPath());
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+
+    /**
+     * Makes thumbnails for photos taken before the tier existed, on a background thread.
+     * Photos whose file is gone or not a plain file (custom folder) are skipped.
+     */
+    public static void backfillAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        Thread thread = new Thread(() -> backfill(appContext), "LunarTag-Thumbnails");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    // --- Helpers ---
+
+    private static void backfill(Context context) {
+        PhotoDao dao = AppDatabase.getDatabase(context).photoDao();
+        long afterId = 0;
+        List<Photo> batch;
+        int made = 0;
+        while (!(batch = dao.getPhotosWithoutThumbnail(afterId, BACKFILL_BATCH)).isEmpty()) {
+            for (Photo photo : batch) {
+                afterId = photo.getId();
+                String path = photo.getFilePath();
+                if (path == null || path.startsWith("content://") || !new File(path).isFile()) continue;
+                String thumbnailPath = fromFile(context, path);
+                if (thumbnailPath != null) {
+                    dao.setThumbnailPath(photo.getId(), thumbnailPath);
+                    made++;
+                }
+            }
+        }
+        if (made > 0) Log.d(TAG, "Made " + made + " thumbnail(s) for older photos.");
+    }
+
+    private static String fromFile(Context context, String path) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight);
+        Bitmap sampled = BitmapFactory.decodeFile(path, options);
+        if (sampled == null) return null;
+        Bitmap small = replace(sampled, scaleDown(sampled));
+        try {
+            int rotation = 0;
+            try {
+                rotation = new ExifInterface(path).getRotationDegrees();
+            } catch (IOException e) {
+                // Not a JPEG with EXIF: already upright
+            }
+            String name = new File(path).getName();
+            int dot = name.lastIndexOf('.');
+            return save(context, dot < 0 ? name : name.substring(0, dot), encodeUpright(small, rotation));
+        } finally {
+            small.recycle();
+        }
+    }
+
+    /**
+     * Largest power of two that keeps the short edge at or above {@link #SHORT_EDGE}.
+     */
+    private static int sampleSize(int width, int height) {
+        int shortEdge = Math.min(width, height);
+        int sample = 1;
+        while (shortEdge / (sample * 2) >= SHORT_EDGE) sample *= 2;
+        return sample;
+    }
+
+    private static Bitmap replace(Bitmap old, Bitmap replacement) {
+        if (replacement != old) old.recycle();
+        return replacement;
+    }
+
+    private static byte[] compress(Bitmap bitmap, int quality) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out);
+        return out.toByteArray();
+    }
+}
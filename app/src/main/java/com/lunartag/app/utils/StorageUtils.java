@@ -4,19 +4,16 @@ import android.app.Activity;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.UriPermission;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
-import androidx.documentfile.provider.DocumentFile;
 import androidx.fragment.app.Fragment;
 
-import java.io.OutputStream;
+import com.lunartag.app.config.SettingsStore;
 
 /**
  * A dedicated utility to handle Storage Access Framework (SAF).
@@ -25,8 +22,6 @@ import java.io.OutputStream;
 public class StorageUtils {
 
     private static final String TAG = "StorageUtils";
-    private static final String PREFS_STORAGE = "LunarTagStoragePrefs";
-    private static final String KEY_CUSTOM_FOLDER_URI = "custom_folder_tree_uri";
 
     // Request Code to identify when the User returns from the File Picker
     public static final int REQUEST_CODE_PICK_FOLDER = 999;
@@ -68,8 +63,9 @@ public class StorageUtils {
         }
 
         // 2. Save the URI string to local settings so we remember it tomorrow
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_STORAGE, Context.MODE_PRIVATE);
-        prefs.edit().putString(KEY_CUSTOM_FOLDER_URI, treeUri.toString()).apply();
+        final String uriString = treeUri.toString();
+        SettingsStore.getInstance(context).update(settings -> settings.setCustomFolderUri(uriString));
+        CustomFolderBackend.getInstance(context).invalidate(); // Even the same folder: permission just changed
 
         Toast.makeText(context, "Save Location Updated!", Toast.LENGTH_SHORT).show();
     }
@@ -78,54 +74,22 @@ public class StorageUtils {
      * Helper: Check if the user has picked a custom folder previously.
      */
     public static boolean hasCustomFolder(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_STORAGE, Context.MODE_PRIVATE);
-        String uriString = prefs.getString(KEY_CUSTOM_FOLDER_URI, null);
+        String uriString = SettingsStore.getInstance(context).get().getCustomFolderUri();
         return uriString != null && !uriString.isEmpty();
     }
 
     /**
      * Step 3: The Heavy Lifting. Save the actual photo into that specific folder.
      * Returns the absolute URI string on success, or null on failure.
+     * UPDATED: Goes through {@link CustomFolderBackend}, which keeps the checked folder between photos.
+     * @param extension File name extension of the encoded format, without the dot
+     * @param replaceExisting Overwrite a file of the same name instead of adding another one
+     *                        (a photo saved again after a restart).
      */
     @Nullable
-    public static String saveImageToCustomFolder(Context context, Bitmap bitmap, String filename) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_STORAGE, Context.MODE_PRIVATE);
-        String uriString = prefs.getString(KEY_CUSTOM_FOLDER_URI, null);
-
-        if (uriString == null) {
-            Log.e(TAG, "No custom folder selected.");
-            return null;
-        }
-
-        Uri treeUri = Uri.parse(uriString);
-        DocumentFile pickedDir = DocumentFile.fromTreeUri(context, treeUri);
-
-        if (pickedDir == null || !pickedDir.canWrite()) {
-            Log.e(TAG, "Cannot write to the selected folder. Permission lost or SD Card removed.");
-            return null;
-        }
-
-        // Create the file (MIME type, Display Name)
-        DocumentFile newFile = pickedDir.createFile("image/jpeg", filename + ".jpg");
-        
-        if (newFile == null) {
-            Log.e(TAG, "Failed to create file inside custom folder.");
-            return null;
-        }
-
-        // Write the Bitmap data
-        try (OutputStream out = context.getContentResolver().openOutputStream(newFile.getUri())) {
-            if (out == null) return null;
-            
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, out);
-            out.flush();
-            
-            // Return the usable URI
-            return newFile.getUri().toString();
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error writing bitmap to custom folder", e);
-            return null;
-        }
+    public static String saveImageToCustomFolder(Context context, byte[] imageBytes, String filename,
+                                                 String mimeType, String extension, boolean replaceExisting) {
+        return CustomFolderBackend.getInstance(context).write(imageBytes, filename + "." + extension, mimeType,
+                replaceExisting);
     }
-}
\ No newline at end of file
+}
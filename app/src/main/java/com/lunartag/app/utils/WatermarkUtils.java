@@ -2,21 +2,29 @@ package com.lunartag.app.utils;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.text.TextPaint;
 
-import com.lunartag.app.R;
+import com.lunartag.app.watermark.WatermarkRenderer;
+import com.lunartag.app.watermark.WatermarkTemplate;
 
 /**
  * A utility class with static methods for rendering the watermark onto a photo.
  * UPDATED: Fixed build error by removing reference to missing mipmap resource.
+ * UPDATED: Can draw onto a photo still in sensor orientation (rotation kept in EXIF).
+ * UPDATED: Band-only mode draws into an NV21 frame, touching only the watermark rows.
+ * UPDATED: Can draw into any sub-region of a frame (used by the JPEG splice path).
+ * UPDATED: The drawing itself lives in {@link WatermarkRenderer}, which caches the logo and paints.
+ * UPDATED: YUV overlay mode blends a pre-rendered overlay into the NV21 planes (no ARGB band).
+ * UPDATED: Every call names its watermark template.
  */
 public class WatermarkUtils {
 
+    // Transparent band the YUV overlay is drawn on, reused while the band size stays the same
+    private static Bitmap overlayBand;
+    private static int[] overlayPixels;
+
     // Private constructor to prevent instantiation
     private WatermarkUtils() {}
 
@@ -27,7 +35,19 @@ public class WatermarkUtils {
      * @param mapBitmap The small, pre-rendered bitmap of the map preview.
      * @param lines An array of strings, with each string representing one line of the watermark text.
      */
-    public static void addWatermark(Context context, Bitmap originalBitmap, Bitmap mapBitmap, String[] lines) {
+    public static void addWatermark(Context context, Bitmap originalBitmap, Bitmap mapBitmap, CharSequence[] lines) {
+        addWatermark(context, WatermarkTemplate.DEFAULT_ID, originalBitmap, mapBitmap, lines, 0);
+    }
+
+    /**
+     * Renders the watermark onto a photo whose pixels are still in sensor orientation.
+     * The canvas is rotated so the block lands at the bottom of the photo as it will be
+     * displayed once the viewer applies the EXIF orientation.
+     * @param templateId The watermark template; null uses the default.
+     * @param rotationDegrees Clockwise rotation (0, 90, 180 or 270) needed to show the photo upright.
+     */
+    public static void addWatermark(Context context, String templateId, Bitmap originalBitmap, Bitmap mapBitmap,
+                                    CharSequence[] lines, int rotationDegrees) {
         if (originalBitmap == null || lines == null || lines.length == 0) {
             return;
         }
@@ -35,89 +55,174 @@ public class WatermarkUtils {
         Canvas canvas = new Canvas(originalBitmap);
         int width = canvas.getWidth();
         int height = canvas.getHeight();
+        int rotation = normalizeRotation(rotationDegrees);
 
-        // --- 1. Configure Main Text Paint ---
-        TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-        textPaint.setColor(Color.WHITE);
-        textPaint.setTextSize(width / 40.0f); // Slightly smaller text for address to fit better
-        textPaint.setShadowLayer(3f, 2f, 2f, Color.BLACK);
-
-        // --- 2. Configure Branding Paint (App Name) ---
-        TextPaint brandPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-        brandPaint.setColor(Color.YELLOW); // Yellow color looks professional on black
-        brandPaint.setTextSize(width / 35.0f); // Slightly larger/bolder than body text
-        brandPaint.setFakeBoldText(true);
-        brandPaint.setShadowLayer(3f, 2f, 2f, Color.BLACK);
-
-        Paint backgroundPaint = new Paint();
-        backgroundPaint.setColor(Color.BLACK);
-        backgroundPaint.setAlpha(140); // Semi-transparent black
-
-        // --- 3. Calculate Dimensions ---
-        float textHeight = textPaint.descent() - textPaint.ascent();
-        // Height is roughly text lines + padding. Added extra padding for the Logo header.
-        float blockHeight = (textHeight * lines.length) + (lines.length * 12) + 40;
-
-        // Ensure block is tall enough for the map if map exists
-        if (mapBitmap != null && mapBitmap.getHeight() + 20 > blockHeight) {
-            blockHeight = mapBitmap.getHeight() + 40;
-        }
-
-        float watermarkTop = height - blockHeight;
-
-        // --- 4. Draw Background ---
-        Rect backgroundRect = new Rect(0, (int) watermarkTop, width, height);
-        canvas.drawRect(backgroundRect, backgroundPaint);
+        // Switch to upright coordinates (no pixel copy, only the canvas matrix)
+        applyOrientation(canvas, width, height, rotation);
+        boolean swapped = rotation == 90 || rotation == 270;
+        WatermarkRenderer.getInstance(context).drawBlock(templateId, canvas,
+                swapped ? height : width, swapped ? width : height, mapBitmap, lines);
+    }
 
-        // --- 5. Draw Map Bitmap (if provided) ---
-        float mapLeft = 20;
-        float mapTop = watermarkTop + 20;
-        if (mapBitmap != null) {
-            canvas.drawBitmap(mapBitmap, mapLeft, mapTop, null);
+    /**
+     * Band-only compositing: renders the watermark straight into an NV21 frame.
+     * Only the rectangle covered by the watermark block is taken to ARGB, drawn on and
+     * written back, so the full frame never has to exist as a mutable ARGB Bitmap.
+     * @param nv21 The full frame; modified in place.
+     * @param width Frame width in sensor orientation (even).
+     * @param height Frame height in sensor orientation (even).
+     * @param rotationDegrees Clockwise rotation (0, 90, 180 or 270) needed to show the frame upright.
+     */
+    public static void addWatermarkToNv21(Context context, String templateId, byte[] nv21, int width, int height,
+                                          Bitmap mapBitmap, CharSequence[] lines, int rotationDegrees) {
+        if (nv21 == null || lines == null || lines.length == 0) {
+            return;
         }
 
-        // --- 6. Draw Branding (Top-Right Corner) ---
-        // Load the Logo. We assume 'lunartag' is the file name in drawable folder.
-        Bitmap logo = null;
-        if (context != null) {
-            // FIXED: Removed the fallback to R.mipmap.ic_launcher because it doesn't exist.
-            // We strictly use your provided logo.
-            logo = BitmapFactory.decodeResource(context.getResources(), R.drawable.lunartag);
+        // --- 1. Find the band; chroma is shared by 2x2 blocks, so it must be even-aligned ---
+        Rect bandRect = computeBandRect(context, templateId, width, height, mapBitmap, lines, rotationDegrees);
+        int left = bandRect.left & ~1;
+        int top = bandRect.top & ~1;
+        int right = Math.min(width, (bandRect.right + 1) & ~1);
+        int bottom = Math.min(height, (bandRect.bottom + 1) & ~1);
+        int bandWidth = right - left;
+        int bandHeight = bottom - top;
+        if (bandWidth <= 0 || bandHeight <= 0) {
+            return;
         }
 
-        if (logo != null) {
-            // Resize logo to be small (e.g., 8% of screen width)
-            int targetLogoSize = (int) (width * 0.08); 
-            // Ensure it's at least a visible size
-            if (targetLogoSize < 50) targetLogoSize = 50; 
+        // --- 2. Band to ARGB, draw, and back ---
+        int[] pixels = new int[bandWidth * bandHeight];
+        YuvConverter.nv21ToArgb(nv21, width, height, left, top, bandWidth, bandHeight, pixels);
+        Bitmap band = Bitmap.createBitmap(bandWidth, bandHeight, Bitmap.Config.ARGB_8888);
+        try {
+            band.setPixels(pixels, 0, bandWidth, 0, 0, bandWidth, bandHeight);
+            addWatermarkToRegion(context, templateId, band, left, top, width, height, mapBitmap, lines,
+                    rotationDegrees);
+            band.getPixels(pixels, 0, bandWidth, 0, 0, bandWidth, bandHeight);
+        } finally {
+            band.recycle();
+        }
+        YuvConverter.argbToNv21(pixels, bandWidth, bandHeight, nv21, width, height, left, top);
+    }
 
-            Bitmap scaledLogo = Bitmap.createScaledBitmap(logo, targetLogoSize, targetLogoSize, true);
+    /**
+     * YUV overlay mode: renders the block onto a transparent band, converts it to a
+     * premultiplied {@link YuvOverlay} and blends that into the Y and VU planes. The frame's
+     * pixels are never converted to ARGB. The block is drawn for every frame (its GPS and time
+     * lines change with each fix); the parts that do not change are cached by
+     * {@link WatermarkRenderer}.
+     * @param nv21 The full frame; modified in place.
+     * @param width Frame width in sensor orientation (even).
+     * @param height Frame height in sensor orientation (even).
+     * @param rotationDegrees Clockwise rotation (0, 90, 180 or 270) needed to show the frame upright.
+     */
+    public static void addWatermarkOverlayToNv21(Context context, String templateId, byte[] nv21, int width, int height,
+                                                 Bitmap mapBitmap, CharSequence[] lines, int rotationDegrees) {
+        if (nv21 == null || lines == null || lines.length == 0) {
+            return;
+        }
+        YuvOverlay overlay = renderOverlay(context, templateId, width, height, mapBitmap, lines, rotationDegrees);
+        if (overlay != null) {
+            overlay.blendInto(nv21, width, height);
+        }
+    }
 
-            float logoX = width - targetLogoSize - 30; // 30px padding from right
-            float logoY = watermarkTop + 20; // 20px padding from top of black box
+    private static synchronized YuvOverlay renderOverlay(Context context, String templateId, int width, int height,
+                                                         Bitmap mapBitmap, CharSequence[] lines, int rotationDegrees) {
+        // --- 1. Find the band; chroma is shared by 2x2 blocks, so it must be even-aligned ---
+        Rect bandRect = computeBandRect(context, templateId, width, height, mapBitmap, lines, rotationDegrees);
+        int left = bandRect.left & ~1;
+        int top = bandRect.top & ~1;
+        int right = Math.min(width, (bandRect.right + 1) & ~1);
+        int bottom = Math.min(height, (bandRect.bottom + 1) & ~1);
+        int bandWidth = right - left;
+        int bandHeight = bottom - top;
+        if (bandWidth <= 0 || bandHeight <= 0) {
+            return null;
+        }
 
-            canvas.drawBitmap(scaledLogo, logoX, logoY, null);
+        // --- 2. Draw onto a transparent band and convert it ---
+        if (overlayBand == null || overlayBand.getWidth() != bandWidth || overlayBand.getHeight() != bandHeight) {
+            if (overlayBand != null) overlayBand.recycle();
+            overlayBand = Bitmap.createBitmap(bandWidth, bandHeight, Bitmap.Config.ARGB_8888);
+            overlayPixels = new int[bandWidth * bandHeight];
+        } else {
+            overlayBand.eraseColor(Color.TRANSPARENT);
+        }
+        addWatermarkToRegion(context, templateId, overlayBand, left, top, width, height, mapBitmap, lines,
+                rotationDegrees);
+        overlayBand.getPixels(overlayPixels, 0, bandWidth, 0, 0, bandWidth, bandHeight);
+        return YuvOverlay.fromArgb(overlayPixels, bandWidth, bandHeight, left, top);
+    }
 
-            // Draw App Name "Lunar Tag" to the LEFT of the logo
-            String appName = "Lunar Tag";
-            float textWidth = brandPaint.measureText(appName);
-            float brandTextX = logoX - textWidth - 20;
-            // Center text vertically relative to logo
-            float brandTextY = logoY + (targetLogoSize / 2f) - ((brandPaint.descent() + brandPaint.ascent()) / 2f);
+    /**
+     * Draws the part of the watermark that falls inside one region of a larger frame.
+     * @param region Mutable bitmap holding the frame's pixels at (left, top).
+     * @param width Full frame width in sensor orientation.
+     * @param height Full frame height in sensor orientation.
+     */
+    public static void addWatermarkToRegion(Context context, String templateId, Bitmap region, int left, int top,
+                                            int width, int height, Bitmap mapBitmap, CharSequence[] lines,
+                                            int rotationDegrees) {
+        int rotation = normalizeRotation(rotationDegrees);
+        boolean swapped = rotation == 90 || rotation == 270;
+        Canvas canvas = new Canvas(region);
+        canvas.translate(-left, -top);
+        applyOrientation(canvas, width, height, rotation);
+        WatermarkRenderer.getInstance(context).drawBlock(templateId, canvas,
+                swapped ? height : width, swapped ? width : height, mapBitmap, lines);
+    }
 
-            canvas.drawText(appName, brandTextX, brandTextY, brandPaint);
+    /**
+     * The rectangle of a sensor-oriented frame covered by the watermark block.
+     * The block sits at the bottom of the upright photo; depending on the rotation that is
+     * the bottom, top, left or right edge of the sensor frame.
+     */
+    public static Rect computeBandRect(Context context, String templateId, int width, int height, Bitmap mapBitmap,
+                                       CharSequence[] lines, int rotationDegrees) {
+        int rotation = normalizeRotation(rotationDegrees);
+        boolean swapped = rotation == 90 || rotation == 270;
+        int uprightWidth = swapped ? height : width;
+        int uprightHeight = swapped ? width : height;
+        int blockHeight = (int) Math.ceil(measureBlockHeight(context, templateId, uprightWidth, mapBitmap, lines));
+        blockHeight = Math.min(uprightHeight, blockHeight);
+
+        if (rotation == 90) {
+            return new Rect(width - blockHeight, 0, width, height);
+        } else if (rotation == 180) {
+            return new Rect(0, 0, width, blockHeight);
+        } else if (rotation == 270) {
+            return new Rect(0, 0, blockHeight, height);
         }
+        return new Rect(0, height - blockHeight, width, height);
+    }
 
-        // --- 7. Draw Main Text Lines ---
-        float textLeft = (mapBitmap != null) ? mapBitmap.getWidth() + 50 : 40;
-        // Start text lower to account for the Branding Header we just drew
-        float currentY = watermarkTop + textHeight + 40; 
+    /**
+     * Height of the watermark block for a photo of the given upright width.
+     */
+    public static float measureBlockHeight(Context context, String templateId, int width, Bitmap mapBitmap,
+                                           CharSequence[] lines) {
+        return WatermarkRenderer.getInstance(context).measureBlockHeight(templateId, width, mapBitmap, lines);
+    }
 
-        for (String line : lines) {
-            if (line != null) {
-                canvas.drawText(line, textLeft, currentY, textPaint);
-                currentY += (textHeight + 10); // Add line spacing
-            }
+    private static int normalizeRotation(int rotationDegrees) {
+        return ((rotationDegrees % 360) + 360) % 360;
+    }
+
+    /**
+     * Maps upright drawing coordinates onto a frame that is still in sensor orientation.
+     */
+    private static void applyOrientation(Canvas canvas, int width, int height, int rotation) {
+        if (rotation == 90) {
+            canvas.translate(0, height);
+            canvas.rotate(-90);
+        } else if (rotation == 180) {
+            canvas.translate(width, height);
+            canvas.rotate(180);
+        } else if (rotation == 270) {
+            canvas.translate(width, 0);
+            canvas.rotate(90);
         }
     }
-}
\ No newline at end of file
+}
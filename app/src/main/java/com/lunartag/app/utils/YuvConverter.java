@@ -0,0 +1,178 @@
+package com.lunartag.app.utils;
+
+/**
+ * Pure-Java colour conversion between NV21 (YUV 4:2:0, interleaved V/U) and packed ARGB.
+ * Both directions work on a rectangular region, so a small band of a frame can be taken
+ * to ARGB, drawn on and written back without touching the rest of the frame.
+ * Uses the full-range BT.601 (JFIF) equations, the same ones the JPEG round trip
+ * (YuvImage.compressToJpeg + BitmapFactory) applied, so colours match the old path.
+ *
+ * Odd frame sizes use the YUV_420_888 layout: the chroma plane has (width + 1) / 2 pairs per
+ * row and (height + 1) / 2 rows, so the last column and row have a chroma sample of their own.
+ *
+ * No Android classes are used here, so the maths can be checked on a plain JVM
+ * against reference frames.
+ */
+public final class YuvConverter {
+
+    // Fixed-point (16.16) BT.601 full-range coefficients
+    private static final int CR_TO_R = 91881;   // 1.402
+    private static final int CB_TO_G = 22554;   // 0.344136
+    private static final int CR_TO_G = 46802;   // 0.714136
+    private static final int CB_TO_B = 116130;  // 1.772
+    private static final int ROUND = 1 << 15;
+
+    // Fixed-point (16.16) forward coefficients, RGB to full-range YCbCr
+    private static final int R_TO_Y = 19595;    // 0.299
+    private static final int G_TO_Y = 38470;    // 0.587
+    private static final int B_TO_Y = 7471;     // 0.114
+    private static final int R_TO_CB = -11059;  // -0.168736
+    private static final int G_TO_CB = -21709;  // -0.331264
+    private static final int B_TO_CB = 32768;   // 0.5
+    private static final int R_TO_CR = 32768;   // 0.5
+    private static final int G_TO_CR = -27439;  // -0.418688
+    private static final int B_TO_CR = -5329;   // -0.081312
+
+    private YuvConverter() {}
+
+    /**
+     * Size in bytes of an NV21 frame, chroma rounded up for odd dimensions.
+     */
+    public static int nv21Size(int width, int height) {
+        return width * height + chromaStride(width) * ((height + 1) / 2);
+    }
+
+    /**
+     * Bytes per row of the interleaved V/U plane: one V,U pair per two columns, rounded up.
+     */
+    public static int chromaStride(int width) {
+        return (width + 1) & ~1;
+    }
+
+    /**
+     * Converts a horizontal strip of an NV21 frame to opaque ARGB pixels.
+     * @param nv21 The full NV21 frame (Y plane followed by interleaved V/U rows).
+     * @param width Frame width in pixels.
+     * @param height Frame height in pixels.
+     * @param firstRow First frame row to convert.
+     * @param rowCount Number of rows to convert.
+     * @param out Destination, row-major with a stride of {@code width}; must hold width * rowCount ints.
+     */
+    public static void nv21ToArgb(byte[] nv21, int width, int height, int firstRow, int rowCount, int[] out) {
+        int frameSize = width * height;
+        int uvStride = chromaStride(width);
+        int lastRow = Math.min(height, firstRow + rowCount);
+        int outIndex = 0;
+
+        for (int row = firstRow; row < lastRow; row++) {
+            int yIndex = row * width;
+            int uvRowStart = frameSize + (row >> 1) * uvStride;
+
+            for (int col = 0; col < width; col += 2) {
+                int uvIndex = uvRowStart + col;
+                int v = (nv21[uvIndex] & 0xFF) - 128;
+                int u = (nv21[uvIndex + 1] & 0xFF) - 128;
+
+                // The chroma terms are shared by the two pixels of this pair
+                int rDelta = CR_TO_R * v + ROUND;
+                int gDelta = -CB_TO_G * u - CR_TO_G * v + ROUND;
+                int bDelta = CB_TO_B * u + ROUND;
+
+                out[outIndex++] = toArgb((nv21[yIndex + col] & 0xFF) << 16, rDelta, gDelta, bDelta);
+                if (col + 1 < width) {
+                    out[outIndex++] = toArgb((nv21[yIndex + col + 1] & 0xFF) << 16, rDelta, gDelta, bDelta);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a rectangle of an NV21 frame to opaque ARGB pixels.
+     * @param left Left edge of the region (even).
+     * @param top Top edge of the region.
+     * @param out Destination, row-major with a stride of {@code regionWidth}.
+     */
+    public static void nv21ToArgb(byte[] nv21, int width, int height,
+                                  int left, int top, int regionWidth, int regionHeight, int[] out) {
+        int frameSize = width * height;
+        int uvStride = chromaStride(width);
+        int outIndex = 0;
+
+        for (int row = top; row < top + regionHeight; row++) {
+            int yIndex = row * width;
+            int uvRowStart = frameSize + (row >> 1) * uvStride;
+
+            for (int col = left; col < left + regionWidth; col += 2) {
+                int uvIndex = uvRowStart + col;
+                int v = (nv21[uvIndex] & 0xFF) - 128;
+                int u = (nv21[uvIndex + 1] & 0xFF) - 128;
+
+                int rDelta = CR_TO_R * v + ROUND;
+                int gDelta = -CB_TO_G * u - CR_TO_G * v + ROUND;
+                int bDelta = CB_TO_B * u + ROUND;
+
+                out[outIndex++] = toArgb((nv21[yIndex + col] & 0xFF) << 16, rDelta, gDelta, bDelta);
+                if (col + 1 < left + regionWidth) {
+                    out[outIndex++] = toArgb((nv21[yIndex + col + 1] & 0xFF) << 16, rDelta, gDelta, bDelta);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes ARGB pixels into a rectangle of an NV21 frame (alpha is ignored).
+     * Each 2x2 block shares one chroma sample, taken from the average of its four pixels.
+     * @param argb Source pixels, row-major with a stride of {@code regionWidth}.
+     * @param left Left edge of the region in the frame (even).
+     * @param top Top edge of the region in the frame (even).
+     * @param regionWidth Region width (even).
+     * @param regionHeight Region height (even).
+     */
+    public static void argbToNv21(int[] argb, int regionWidth, int regionHeight,
+                                  byte[] nv21, int width, int height, int left, int top) {
+        int frameSize = width * height;
+        int uvStride = chromaStride(width);
+
+        for (int row = 0; row < regionHeight; row += 2) {
+            int src0 = row * regionWidth;
+            int src1 = src0 + regionWidth;
+            int y0 = (top + row) * width + left;
+            int y1 = y0 + width;
+            int uvIndex = frameSize + ((top + row) >> 1) * uvStride + left;
+
+            for (int col = 0; col < regionWidth; col += 2) {
+                int p00 = argb[src0 + col];
+                int p01 = argb[src0 + col + 1];
+                int p10 = argb[src1 + col];
+                int p11 = argb[src1 + col + 1];
+
+                nv21[y0 + col] = luma(p00);
+                nv21[y0 + col + 1] = luma(p01);
+                nv21[y1 + col] = luma(p10);
+                nv21[y1 + col + 1] = luma(p11);
+
+                int r = ((p00 >> 16 & 0xFF) + (p01 >> 16 & 0xFF) + (p10 >> 16 & 0xFF) + (p11 >> 16 & 0xFF) + 2) >> 2;
+                int g = ((p00 >> 8 & 0xFF) + (p01 >> 8 & 0xFF) + (p10 >> 8 & 0xFF) + (p11 >> 8 & 0xFF) + 2) >> 2;
+                int b = ((p00 & 0xFF) + (p01 & 0xFF) + (p10 & 0xFF) + (p11 & 0xFF) + 2) >> 2;
+                nv21[uvIndex + col] = (byte) clamp(((R_TO_CR * r + G_TO_CR * g + B_TO_CR * b + ROUND) >> 16) + 128);
+                nv21[uvIndex + col + 1] = (byte) clamp(((R_TO_CB * r + G_TO_CB * g + B_TO_CB * b + ROUND) >> 16) + 128);
+            }
+        }
+    }
+
+    private static byte luma(int argb) {
+        int y = (R_TO_Y * (argb >> 16 & 0xFF) + G_TO_Y * (argb >> 8 & 0xFF) + B_TO_Y * (argb & 0xFF) + ROUND) >> 16;
+        return (byte) (y > 255 ? 255 : y);
+    }
+
+    private static int toArgb(int y, int rDelta, int gDelta, int bDelta) {
+        int r = clamp((y + rDelta) >> 16);
+        int g = clamp((y + gDelta) >> 16);
+        int b = clamp((y + bDelta) >> 16);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,163 @@
+package com.lunartag.app.utils;
+
+/**
+ * A translucent image prepared for blending straight into NV21 frames: luma and chroma
+ * are premultiplied by alpha, and chroma is already subsampled to the 2x2 blocks of NV21.
+ * Blending is then a multiply-add per sample, with no ARGB conversion of the frame.
+ *
+ * Uses the same full-range BT.601 (JFIF) equations as {@link YuvConverter}.
+ * No Android classes are used here, so the maths can be checked on a plain JVM.
+ */
+public final class YuvOverlay {
+
+    // Fixed-point (16.16) forward coefficients, RGB to full-range YCbCr
+    private static final int R_TO_Y = 19595;    // 0.299
+    private static final int G_TO_Y = 38470;    // 0.587
+    private static final int B_TO_Y = 7471;     // 0.114
+    private static final int R_TO_CB = -11059;  // -0.168736
+    private static final int G_TO_CB = -21709;  // -0.331264
+    private static final int B_TO_CB = 32768;   // 0.5
+    private static final int R_TO_CR = 32768;   // 0.5
+    private static final int G_TO_CR = -27439;  // -0.418688
+    private static final int B_TO_CR = -5329;   // -0.081312
+    private static final int ROUND = 1 << 15;
+
+    private final int width;
+    private final int height;
+    private final int left;
+    private final int top;
+
+    private final byte[] luma;       // Y * alpha, one per pixel
+    private final byte[] alpha;      // One per pixel
+    private final byte[] chroma;     // Interleaved (Cr, Cb) * alpha, signed, one pair per 2x2 block
+    private final byte[] chromaAlpha; // Average alpha of each 2x2 block
+
+    private YuvOverlay(int width, int height, int left, int top) {
+        this.width = width;
+        this.height = height;
+        this.left = left;
+        this.top = top;
+        luma = new byte[width * height];
+        alpha = new byte[width * height];
+        chroma = new byte[width * height / 2];
+        chromaAlpha = new byte[width * height / 4];
+    }
+
+    /**
+     * Prepares an overlay from non-premultiplied ARGB pixels (as returned by Bitmap.getPixels).
+     * @param argb Source pixels, row-major with a stride of {@code width}.
+     * @param width Overlay width (even).
+     * @param height Overlay height (even).
+     * @param left Where the overlay goes in the frame (even).
+     * @param top Where the overlay goes in the frame (even).
+     */
+    public static YuvOverlay fromArgb(int[] argb, int width, int height, int left, int top) {
+        if (((width | height | left | top) & 1) != 0) {
+            throw new IllegalArgumentException("Overlay size and position must be even");
+        }
+        YuvOverlay overlay = new YuvOverlay(width, height, left, top);
+
+        for (int row = 0; row < height; row += 2) {
+            int chromaIndex = (row >> 1) * width;
+            for (int col = 0; col < width; col += 2) {
+                int alphaSum = 0, crSum = 0, cbSum = 0;
+                for (int dy = 0; dy < 2; dy++) {
+                    for (int dx = 0; dx < 2; dx++) {
+                        int index = (row + dy) * width + col + dx;
+                        int pixel = argb[index];
+                        int a = pixel >>> 24;
+                        int r = pixel >> 16 & 0xFF;
+                        int g = pixel >> 8 & 0xFF;
+                        int b = pixel & 0xFF;
+
+                        int y = (R_TO_Y * r + G_TO_Y * g + B_TO_Y * b + ROUND) >> 16;
+                        overlay.luma[index] = (byte) ((Math.min(255, y) * a + 127) / 255);
+                        overlay.alpha[index] = (byte) a;
+
+                        alphaSum += a;
+                        crSum += ((R_TO_CR * r + G_TO_CR * g + B_TO_CR * b + ROUND) >> 16) * a;
+                        cbSum += ((R_TO_CB * r + G_TO_CB * g + B_TO_CB * b + ROUND) >> 16) * a;
+                    }
+                }
+                // Four pixels, each scaled by alpha / 255
+                overlay.chroma[chromaIndex + col] = (byte) clampSigned(divRound(crSum, 4 * 255));
+                overlay.chroma[chromaIndex + col + 1] = (byte) clampSigned(divRound(cbSum, 4 * 255));
+                overlay.chromaAlpha[(chromaIndex + col) >> 1] = (byte) ((alphaSum + 2) >> 2);
+            }
+        }
+        return overlay;
+    }
+
+    /**
+     * Blends the overlay over an NV21 frame in place (source-over).
+     * @param nv21 The full frame (Y plane followed by interleaved V/U rows).
+     * @param frameWidth Frame width (even).
+     * @param frameHeight Frame height (even).
+     */
+    public void blendInto(byte[] nv21, int frameWidth, int frameHeight) {
+        int rows = Math.min(height, frameHeight - top);
+        int cols = Math.min(width, frameWidth - left);
+        if (rows <= 0 || cols <= 0) return;
+
+        // --- 1. Luma ---
+        for (int row = 0; row < rows; row++) {
+            int src = row * width;
+            int dst = (top + row) * frameWidth + left;
+            for (int col = 0; col < cols; col++) {
+                int a = alpha[src + col] & 0xFF;
+                if (a == 255) {
+                    nv21[dst + col] = luma[src + col];
+                } else if (a != 0) {
+                    int background = nv21[dst + col] & 0xFF;
+                    int blended = (luma[src + col] & 0xFF) + ((255 - a) * background + 127) / 255;
+                    nv21[dst + col] = (byte) Math.min(255, blended);
+                }
+            }
+        }
+
+        // --- 2. Chroma (interleaved V/U, one pair per 2x2 block) ---
+        int frameSize = frameWidth * frameHeight;
+        for (int row = 0; row < rows; row += 2) {
+            int src = (row >> 1) * width;
+            int dst = frameSize + ((top + row) >> 1) * frameWidth + left;
+            for (int col = 0; col < cols; col += 2) {
+                int a = chromaAlpha[(src + col) >> 1] & 0xFF;
+                if (a == 0) continue;
+                int inverse = 255 - a;
+                int v = nv21[dst + col] & 0xFF;
+                int u = nv21[dst + col + 1] & 0xFF;
+                // Premultiplied chroma is centred on zero; its neutral point adds 128 * alpha
+                nv21[dst + col] = (byte) clamp(chroma[src + col] + (inverse * v + 128 * a + 127) / 255);
+                nv21[dst + col + 1] = (byte) clamp(chroma[src + col + 1] + (inverse * u + 128 * a + 127) / 255);
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    private static int divRound(int value, int divisor) {
+        return value >= 0 ? (value + divisor / 2) / divisor : -((-value + divisor / 2) / divisor);
+    }
+
+    private static int clampSigned(int value) {
+        return value < -128 ? -128 : (value > 127 ? 127 : value);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,238 @@
+package com.lunartag.app.watermark;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A {@link WatermarkTemplate} resolved for one upright photo width: paints configured,
+ * the logo scaled, and the fixed texts (brand name, literal lines) laid out once.
+ * Per capture only the dynamic field values are measured, in {@link #prepare}, and the
+ * text is blitted from a {@link GlyphAtlas} per style.
+ *
+ * Not thread-safe; {@link WatermarkRenderer} serialises access.
+ */
+final class CompiledLayout {
+
+    /**
+     * The measured block for one set of field values.
+     */
+    static final class Prepared {
+        final StaticLayout[] lineLayouts;
+        final float blockHeight;
+        final float textLeft;
+
+        Prepared(StaticLayout[] lineLayouts, float blockHeight, float textLeft) {
+            this.lineLayouts = lineLayouts;
+            this.blockHeight = blockHeight;
+            this.textLeft = textLeft;
+        }
+    }
+
+    private final WatermarkTemplate template;
+    private final int width;
+    private final float unit; // One template unit in pixels
+
+    private final Paint backgroundPaint;
+    private final Paint mapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF mapRect = new RectF();
+    private final float mapSize;
+    private final TextPaint[] linePaints;
+    private final StaticLayout[] fixedLayouts; // Literal lines, null for field lines
+    private final GlyphAtlas[] lineAtlases; // Shared by lines with the same style
+
+    private final Bitmap scaledLogo;
+    private final int logoSize;
+    private final TextPaint brandPaint;
+    private final GlyphAtlas brandAtlas;
+    private final float brandTextWidth;
+    private final float brandBaselineOffset; // Centres the brand name on the logo
+    private final float rightReserve; // Space kept free for logo and brand at the right
+
+    CompiledLayout(WatermarkTemplate template, int width, Bitmap logo) {
+        this.template = template;
+        this.width = width;
+        this.unit = width / 1000f;
+
+        backgroundPaint = new Paint();
+        backgroundPaint.setColor(template.backgroundColor);
+        mapSize = Math.round(template.mapSize * unit);
+
+        // --- Logo and brand (top-right corner) ---
+        if (template.hasLogo && logo != null) {
+            logoSize = Math.max(template.logoMinPx, Math.round(template.logoSize * unit));
+            scaledLogo = Bitmap.createScaledBitmap(logo, logoSize, logoSize, true);
+        } else {
+            logoSize = 0;
+            scaledLogo = null;
+        }
+        if (scaledLogo != null && template.brandText != null) {
+            brandPaint = createPaint(template.brandStyle);
+            brandTextWidth = brandPaint.measureText(template.brandText);
+            brandBaselineOffset = (logoSize / 2f) - ((brandPaint.descent() + brandPaint.ascent()) / 2f);
+            brandAtlas = new GlyphAtlas(brandPaint);
+        } else {
+            brandPaint = null;
+            brandAtlas = null;
+            brandTextWidth = 0;
+            brandBaselineOffset = 0;
+        }
+        float reserve = template.paddingRight * unit;
+        if (scaledLogo != null) {
+            reserve = template.logoMarginRight * unit + logoSize;
+            if (brandPaint != null) reserve += template.brandGap * unit + brandTextWidth + template.brandGap * unit;
+        }
+        rightReserve = reserve;
+
+        // --- Text rows: paints, and fixed rows laid out now ---
+        int count = template.lines.size();
+        linePaints = new TextPaint[count];
+        fixedLayouts = new StaticLayout[count];
+        lineAtlases = new GlyphAtlas[count];
+        Map<WatermarkTemplate.TextStyle, Integer> firstWithStyle = new IdentityHashMap<>();
+        int fixedWidth = textWidth(template.textLeft * unit);
+        for (int i = 0; i < count; i++) {
+            WatermarkTemplate.LineSpec spec = template.lines.get(i);
+            Integer shared = firstWithStyle.get(spec.style);
+            if (shared != null) {
+                linePaints[i] = linePaints[shared];
+                lineAtlases[i] = lineAtlases[shared];
+            } else {
+                linePaints[i] = createPaint(spec.style);
+                lineAtlases[i] = new GlyphAtlas(linePaints[i]);
+                firstWithStyle.put(spec.style, i);
+            }
+            if (spec.field < 0) {
+                fixedLayouts[i] = buildLayout(spec.text, linePaints[i], fixedWidth, spec.maxLines);
+            }
+        }
+    }
+
+    /**
+     * Measures the block for the given field values (indexed by the template field slots).
+     * @param values Field values; must not change while the returned object is in use.
+     * @param previous The block last prepared by this layout for the same map bitmap, or null.
+     *                 Its lines are reused unless their field is in {@code changedFields}.
+     * @param changedFields Bit mask of the field slots whose value changed since {@code previous}.
+     */
+    Prepared prepare(CharSequence[] values, Bitmap mapBitmap, Prepared previous, int changedFields) {
+        float textLeft = mapBitmap != null
+                ? template.mapMargin * unit + mapSize + template.mapTextGap * unit
+                : template.textLeft * unit;
+        int wrapWidth = textWidth(textLeft);
+
+        int count = template.lines.size();
+        StaticLayout[] layouts = new StaticLayout[count];
+        float textHeight = template.paddingTop * unit + template.paddingBottom * unit;
+        for (int i = 0; i < count; i++) {
+            WatermarkTemplate.LineSpec spec = template.lines.get(i);
+            if (spec.field < 0 && mapBitmap == null) {
+                layouts[i] = fixedLayouts[i];
+            } else if (previous != null && (spec.field < 0 || (changedFields & (1 << spec.field)) == 0)) {
+                layouts[i] = previous.lineLayouts[i];
+            } else {
+                CharSequence text = spec.field < 0 ? spec.text
+                        : (spec.field < values.length && values[spec.field] != null ? values[spec.field] : "");
+                layouts[i] = buildLayout(text, linePaints[i], wrapWidth, spec.maxLines);
+            }
+            textHeight += layouts[i].getHeight();
+            if (i > 0) textHeight += template.lineSpacing * unit;
+        }
+
+        float blockHeight = textHeight;
+        if (scaledLogo != null) {
+            blockHeight = Math.max(blockHeight, 2 * template.logoMarginTop * unit + logoSize);
+        }
+        // Ensure block is tall enough for the map if map exists
+        if (mapBitmap != null) {
+            blockHeight = Math.max(blockHeight, mapSize + 2 * template.mapMargin * unit);
+        }
+        return new Prepared(layouts, blockHeight, textLeft);
+    }
+
+    /**
+     * Draws a prepared block at the bottom of an upright canvas of this layout's width.
+     */
+    void draw(Canvas canvas, int height, Prepared prepared, Bitmap mapBitmap) {
+        float top = height - prepared.blockHeight;
+
+        // --- 1. Background ---
+        canvas.drawRect(0, (int) top, width, height, backgroundPaint);
+
+        // --- 2. Map (left) ---
+        if (mapBitmap != null) {
+            // The thumbnail is scaled into the template's square map slot
+            float mapLeft = template.mapMargin * unit;
+            float mapTop = top + template.mapMargin * unit;
+            mapRect.set(mapLeft, mapTop, mapLeft + mapSize, mapTop + mapSize);
+            canvas.drawBitmap(mapBitmap, null, mapRect, mapPaint);
+        }
+
+        // --- 3. Logo and brand name (top-right) ---
+        if (scaledLogo != null) {
+            float logoX = width - logoSize - template.logoMarginRight * unit;
+            float logoY = top + template.logoMarginTop * unit;
+            canvas.drawBitmap(scaledLogo, logoX, logoY, null);
+            if (brandPaint != null) {
+                float brandX = logoX - brandTextWidth - template.brandGap * unit;
+                brandAtlas.drawText(canvas, template.brandText, brandX, logoY + brandBaselineOffset);
+            }
+        }
+
+        // --- 4. Text rows ---
+        float y = top + template.paddingTop * unit;
+        for (int i = 0; i < prepared.lineLayouts.length; i++) {
+            StaticLayout layout = prepared.lineLayouts[i];
+            lineAtlases[i].drawLayout(canvas, layout, prepared.textLeft, y);
+            y += layout.getHeight() + template.lineSpacing * unit;
+        }
+    }
+
+    /**
+     * Frees the scaled logo and glyph atlases. The layout must not be used afterwards.
+     */
+    void release() {
+        if (scaledLogo != null) {
+            scaledLogo.recycle();
+        }
+        if (brandAtlas != null) {
+            brandAtlas.release();
+        }
+        for (GlyphAtlas atlas : lineAtlases) {
+            atlas.release(); // Releasing a shared atlas twice is harmless
+        }
+    }
+
+    private int textWidth(float textLeft) {
+        return Math.max(1, (int) (width - textLeft - rightReserve));
+    }
+
+    private TextPaint createPaint(WatermarkTemplate.TextStyle style) {
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(style.color);
+        paint.setTextSize(style.size * unit);
+        paint.setFakeBoldText(style.bold);
+        if (style.shadow) {
+            paint.setShadowLayer(3f, 2f, 2f, Color.BLACK);
+        }
+        return paint;
+    }
+
+    private static StaticLayout buildLayout(CharSequence text, TextPaint paint, int wrapWidth, int maxLines) {
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, wrapWidth)
+                .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+                .setIncludePad(false)
+                .setMaxLines(maxLines)
+                .setEllipsize(TextUtils.TruncateAt.END)
+                .build();
+    }
+}
@@ -0,0 +1,224 @@
+package com.lunartag.app.watermark;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pre-rasterised glyphs for one text paint, shadow included. Drawing a line then
+ * blits one cached tile per character instead of running the text rasteriser and the
+ * shadow blur again on every capture.
+ *
+ * Glyphs are rasterised on first use into pages of tiles. Only Latin-1 and the
+ * ellipsis are cached; text with any other character (other scripts need shaping)
+ * is drawn the normal way, as is everything once the pages are full.
+ *
+ * Not thread-safe; {@link WatermarkRenderer} serialises access.
+ */
+final class GlyphAtlas {
+
+    private static final int PAGE_WIDTH = 1024;
+    private static final int ROWS_PER_PAGE = 4;
+    private static final int MAX_PAGES = 4;
+    private static final char ELLIPSIS = '\u2026';
+
+    /**
+     * Where one glyph sits in the atlas, relative to its pen position on the baseline.
+     */
+    private static final class Glyph {
+        final int page;
+        final Rect source;
+        final int offsetX; // Tile left minus pen x
+        final int offsetY; // Tile top minus baseline
+        final float advance;
+
+        Glyph(int page, Rect source, int offsetX, int offsetY, float advance) {
+            this.page = page;
+            this.source = source;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.advance = advance;
+        }
+    }
+
+    private final TextPaint paint;
+    private final int padLeft, padTop, padRight, padBottom; // Room for the shadow and fake bold
+    private final int rowHeight;
+
+    private final List<Bitmap> pages = new ArrayList<>();
+    private final SparseArray<Glyph> glyphs = new SparseArray<>();
+    private Canvas pageCanvas;
+    private int cursorX, cursorRow;
+    private boolean full = false;
+
+    // Scratch objects, reused for every glyph
+    private final char[] oneChar = new char[1];
+    private final Rect bounds = new Rect();
+    private final Rect target = new Rect();
+
+    GlyphAtlas(TextPaint paint) {
+        this.paint = paint;
+        int blur = (int) Math.ceil(paint.getShadowLayerRadius());
+        int bold = paint.isFakeBoldText() ? (int) Math.ceil(paint.getTextSize() / 24f) : 0;
+        float dx = paint.getShadowLayerDx();
+        float dy = paint.getShadowLayerDy();
+        padLeft = blur + bold + (int) Math.ceil(Math.max(0, -dx)) + 1;
+        padRight = blur + bold + (int) Math.ceil(Math.max(0, dx)) + 1;
+        padTop = blur + (int) Math.ceil(Math.max(0, -dy)) + 1;
+        padBottom = blur + (int) Math.ceil(Math.max(0, dy)) + 1;
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        rowHeight = (metrics.bottom - metrics.top) + padTop + padBottom;
+    }
+
+    /**
+     * Draws every line of a laid-out text block with its top-left corner at (left, top),
+     * falling back to {@link Layout#draw} if any character is not cacheable.
+     */
+    void drawLayout(Canvas canvas, Layout layout, float left, float top) {
+        CharSequence text = layout.getText();
+        if (!isCacheable(text, 0, text.length()) || !ensureGlyphs(layout)) {
+            canvas.save();
+            canvas.translate(left, top);
+            layout.draw(canvas);
+            canvas.restore();
+            return;
+        }
+        for (int line = 0; line < layout.getLineCount(); line++) {
+            int start = layout.getLineStart(line);
+            int end = layout.getLineEnd(line);
+            int ellipsisStart = layout.getEllipsisCount(line) > 0 ? start + layout.getEllipsisStart(line) : end;
+            float baseline = top + layout.getLineBaseline(line);
+            float x = drawRun(canvas, text, start, ellipsisStart, left + layout.getLineLeft(line), baseline);
+            if (ellipsisStart < end) {
+                drawGlyph(canvas, ELLIPSIS, x, baseline);
+            }
+        }
+    }
+
+    /**
+     * Draws a single-line text run at the given baseline, like {@link Canvas#drawText}.
+     */
+    void drawText(Canvas canvas, CharSequence text, float x, float baseline) {
+        if (!isCacheable(text, 0, text.length()) || !ensureGlyphs(text, 0, text.length())) {
+            canvas.drawText(text, 0, text.length(), x, baseline, paint);
+            return;
+        }
+        drawRun(canvas, text, 0, text.length(), x, baseline);
+    }
+
+    /**
+     * Frees the atlas pages.
+     */
+    void release() {
+        for (Bitmap page : pages) {
+            page.recycle();
+        }
+        pages.clear();
+        glyphs.clear();
+        pageCanvas = null;
+    }
+
+    private float drawRun(Canvas canvas, CharSequence text, int start, int end, float x, float baseline) {
+        for (int i = start; i < end; i++) {
+            x = drawGlyph(canvas, text.charAt(i), x, baseline);
+        }
+        return x;
+    }
+
+    private float drawGlyph(Canvas canvas, char c, float x, float baseline) {
+        if (c == '\n') return x;
+        Glyph glyph = glyphs.get(c);
+        int left = Math.round(x) + glyph.offsetX;
+        int top = Math.round(baseline) + glyph.offsetY;
+        target.set(left, top, left + glyph.source.width(), top + glyph.source.height());
+        canvas.drawBitmap(pages.get(glyph.page), glyph.source, target, null);
+        return x + glyph.advance;
+    }
+
+    private boolean ensureGlyphs(Layout layout) {
+        CharSequence text = layout.getText();
+        if (!ensureGlyphs(text, 0, text.length())) return false;
+        for (int line = 0; line < layout.getLineCount(); line++) {
+            if (layout.getEllipsisCount(line) > 0) {
+                return addGlyph(ELLIPSIS);
+            }
+        }
+        return true;
+    }
+
+    private boolean ensureGlyphs(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c != '\n' && glyphs.get(c) == null && !addGlyph(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rasterises one glyph into the current page, opening a new page when needed.
+     * @return False once the atlas is full.
+     */
+    private boolean addGlyph(char c) {
+        if (glyphs.get(c) != null) return true;
+        if (full) return false;
+
+        oneChar[0] = c;
+        paint.getTextBounds(oneChar, 0, 1, bounds);
+        float advance = paint.measureText(oneChar, 0, 1);
+        int width = Math.max(1, bounds.width()) + padLeft + padRight;
+        if (width > PAGE_WIDTH || rowHeight * ROWS_PER_PAGE <= 0) {
+            full = true;
+            return false;
+        }
+
+        if (pageCanvas == null || cursorX + width > PAGE_WIDTH) {
+            cursorX = 0;
+            cursorRow++;
+            if (pageCanvas == null || cursorRow >= ROWS_PER_PAGE) {
+                if (pages.size() >= MAX_PAGES) {
+                    full = true;
+                    return false;
+                }
+                Bitmap page = Bitmap.createBitmap(PAGE_WIDTH, rowHeight * ROWS_PER_PAGE, Bitmap.Config.ARGB_8888);
+                page.eraseColor(Color.TRANSPARENT);
+                pages.add(page);
+                pageCanvas = new Canvas(page);
+                cursorRow = 0;
+            }
+        }
+
+        // The tile's ink box starts padLeft/padTop inside the tile
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        int tileLeft = cursorX;
+        int tileTop = cursorRow * rowHeight;
+        int penX = tileLeft + padLeft - bounds.left;
+        int baseline = tileTop + padTop - metrics.top;
+        pageCanvas.drawText(oneChar, 0, 1, penX, baseline, paint);
+
+        Rect source = new Rect(tileLeft, tileTop, tileLeft + width, tileTop + rowHeight);
+        glyphs.put(c, new Glyph(pages.size() - 1, source, tileLeft - penX, tileTop - baseline, advance));
+        cursorX += width;
+        return true;
+    }
+
+    private static boolean isCacheable(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            boolean latin1 = (c >= 0x20 && c < 0x7F) || (c >= 0xA0 && c <= 0xFF);
+            if (!latin1 && c != ELLIPSIS && c != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
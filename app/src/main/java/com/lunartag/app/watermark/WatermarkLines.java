@@ -0,0 +1,102 @@
+package com.lunartag.app.watermark;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * One set of watermark lines held in reusable buffers, indexed by the template field slots
+ * ({@link WatermarkTemplate#FIELD_HEADER} and on).
+ *
+ * Used two ways: each worker thread builds its lines into its own set ({@link #build}), and
+ * {@link WatermarkRenderer} keeps a set holding the text it last laid out ({@link #copyFrom}),
+ * so the lines are compared and copied character by character without new Strings.
+ * The formatted time is only redone when the minute changes (so a time zone change shows
+ * from the next minute on). With the buffers grown to their working size, neither call allocates.
+ *
+ * No Android classes are used, so allocations can be counted on a plain JVM.
+ * Not thread-safe.
+ */
+final class WatermarkLines {
+
+    static final int COUNT = 5;
+
+    private static final String HEADER_LINE = "GPS Map Camera";
+    private static final long MINUTE_MILLIS = 60_000;
+
+    // --- FIX: REMOVED ':ss' (SECONDS) FROM FORMAT ---
+    // java.time formatters are immutable and thread-safe, unlike SimpleDateFormat
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("dd-MMM-yyyy hh:mm a", Locale.US);
+
+    private final StringBuilder[] builders = new StringBuilder[COUNT];
+    final CharSequence[] lines = new CharSequence[COUNT];
+
+    // The minute (millis / 60000) whose text is in the time line; zone offsets are whole minutes
+    private long formattedMinute = Long.MIN_VALUE;
+
+    WatermarkLines() {
+        for (int i = 0; i < COUNT; i++) {
+            builders[i] = new StringBuilder(64);
+            lines[i] = builders[i];
+        }
+    }
+
+    /**
+     * Fills the buffers with the standard watermark text.
+     * @return The lines; valid until the next call on this object.
+     */
+    CharSequence[] build(String companyName, String address, boolean hasLocation,
+                         double latitude, double longitude, long timeMillis) {
+        StringBuilder[] b = builders;
+        for (int i = 0; i < WatermarkTemplate.FIELD_TIME; i++) {
+            b[i].setLength(0);
+        }
+        b[WatermarkTemplate.FIELD_HEADER].append(HEADER_LINE);
+        b[WatermarkTemplate.FIELD_COMPANY].append(companyName);
+        b[WatermarkTemplate.FIELD_ADDRESS].append(address);
+
+        StringBuilder gps = b[WatermarkTemplate.FIELD_GPS];
+        gps.append("Lat: ");
+        if (hasLocation) gps.append(latitude); else gps.append("0.0");
+        gps.append(" Lon: ");
+        if (hasLocation) gps.append(longitude); else gps.append("0.0");
+
+        long minute = Math.floorDiv(timeMillis, MINUTE_MILLIS);
+        if (minute != formattedMinute) {
+            StringBuilder time = b[WatermarkTemplate.FIELD_TIME];
+            time.setLength(0);
+            TIME_FORMAT.formatTo(Instant.ofEpochMilli(timeMillis).atZone(ZoneId.systemDefault()), time);
+            formattedMinute = minute;
+        }
+        return lines;
+    }
+
+    /**
+     * Makes these buffers hold the given text. Null lines count as empty.
+     * @return A bit mask of the lines that changed (bit i for line i); 0 if none did.
+     */
+    int copyFrom(CharSequence[] source) {
+        int changed = 0;
+        for (int i = 0; i < COUNT; i++) {
+            CharSequence line = i < source.length && source[i] != null ? source[i] : "";
+            StringBuilder target = builders[i];
+            if (!contentEquals(target, line)) {
+                target.setLength(0);
+                target.append(line);
+                changed |= 1 << i;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean contentEquals(StringBuilder a, CharSequence b) {
+        int length = a.length();
+        if (length != b.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) return false;
+        }
+        return true;
+    }
+}
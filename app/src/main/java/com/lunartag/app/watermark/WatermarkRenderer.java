@@ -0,0 +1,212 @@
+package com.lunartag.app.watermark;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.location.Location;
+import android.util.Log;
+
+import com.lunartag.app.R;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws the watermark block and keeps everything that does not change between captures:
+ * the decoded logo, each {@link WatermarkTemplate} in use compiled for each output width
+ * (paints, scaled logo, fixed text laid out, glyph atlases). Text lines are built
+ * into per-thread {@link WatermarkLines} that are reused. The renderer copies the text it lays out
+ * into its own buffers, and only lines whose text changed since the last capture are measured
+ * again; measuring the band and drawing it share one measurement.
+ *
+ * The template is chosen per call (captures carry the id from their settings snapshot), so
+ * concurrent callers with different templates never see each other's choice.
+ *
+ * Process-scoped like {@link com.lunartag.app.data.AppDatabase}.
+ */
+public class WatermarkRenderer {
+
+    private static final String TAG = "WatermarkRenderer";
+
+    public static final int LINE_COUNT = WatermarkLines.COUNT;
+
+    // Used without resources (no logo) and if a bundled template fails to load
+    private static final String BUILT_IN_TEMPLATE = "{\"name\":\"built-in\",\"lines\":["
+            + "{\"field\":\"header\"},{\"field\":\"company\"},{\"field\":\"address\",\"maxLines\":2},"
+            + "{\"field\":\"gps\"},{\"field\":\"time\"}]}";
+
+    // Output widths seen in a session: usually one per camera and orientation
+    private static final int MAX_CACHED_LAYOUTS = 4;
+
+    private static volatile WatermarkRenderer INSTANCE;
+    private static volatile WatermarkRenderer NO_LOGO_INSTANCE;
+
+    /**
+     * Returns the shared renderer. A null context gives a renderer that draws no logo
+     * and always uses the built-in template.
+     */
+    public static WatermarkRenderer getInstance(Context context) {
+        if (context == null) {
+            if (NO_LOGO_INSTANCE == null) {
+                synchronized (WatermarkRenderer.class) {
+                    if (NO_LOGO_INSTANCE == null) {
+                        NO_LOGO_INSTANCE = new WatermarkRenderer(null);
+                    }
+                }
+            }
+            return NO_LOGO_INSTANCE;
+        }
+        if (INSTANCE == null) {
+            synchronized (WatermarkRenderer.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new WatermarkRenderer(context.getApplicationContext().getResources());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final Resources resources;
+    private Bitmap logo;
+    private boolean logoLoaded = false;
+
+    private final Map<String, WatermarkTemplate> templates = new HashMap<>();
+
+    // Keyed by template id and width
+    private final Map<String, CompiledLayout> layouts =
+            new LinkedHashMap<String, CompiledLayout>(MAX_CACHED_LAYOUTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledLayout> eldest) {
+            if (size() > MAX_CACHED_LAYOUTS) {
+                eldest.getValue().release();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // The last measured block and the text it was measured with (the layouts reference it)
+    private CompiledLayout lastLayout;
+    private String lastLayoutTemplate;
+    private int lastLayoutWidth;
+    private Bitmap lastMap;
+    private final WatermarkLines lastText = new WatermarkLines();
+    private CompiledLayout.Prepared lastPrepared;
+
+    // The CharSequences handed out stay valid until the same thread builds the next set
+    private final ThreadLocal<WatermarkLines> lineBuffers = new ThreadLocal<WatermarkLines>() {
+        @Override
+        protected WatermarkLines initialValue() {
+            return new WatermarkLines();
+        }
+    };
+
+    private WatermarkRenderer(Resources resources) {
+        this.resources = resources;
+    }
+
+    /**
+     * Fills this thread's line buffers with the standard watermark text.
+     * @return The lines; reused by the next call on the same thread.
+     */
+    public CharSequence[] buildLines(String companyName, String address, Location location, long timeMillis) {
+        return lineBuffers.get().build(companyName, address, location != null,
+                location != null ? location.getLatitude() : 0, location != null ? location.getLongitude() : 0,
+                timeMillis);
+    }
+
+    /**
+     * Height of the watermark block for a photo of the given upright width.
+     * @param templateId The template to lay out with; null or unknown ids use the default.
+     */
+    public synchronized float measureBlockHeight(String templateId, int width, Bitmap mapBitmap,
+                                                 CharSequence[] lines) {
+        return prepare(templateId, width, mapBitmap, lines).blockHeight;
+    }
+
+    /**
+     * Draws the block at the bottom of an upright {@code width} x {@code height} canvas.
+     * The canvas may carry a transform (rotation, region offset) set up by the caller.
+     * @param templateId The template to lay out with; null or unknown ids use the default.
+     */
+    public synchronized void drawBlock(String templateId, Canvas canvas, int width, int height, Bitmap mapBitmap,
+                                       CharSequence[] lines) {
+        CompiledLayout.Prepared prepared = prepare(templateId, width, mapBitmap, lines);
+        lastLayout.draw(canvas, height, prepared, mapBitmap);
+    }
+
+    private CompiledLayout.Prepared prepare(String templateId, int width, Bitmap mapBitmap, CharSequence[] lines) {
+        CompiledLayout layout = getLayout(templateId != null ? templateId : WatermarkTemplate.DEFAULT_ID, width);
+        // The layouts keep a reference to their text, so it is copied out of the caller's buffers
+        int changed = lastText.copyFrom(lines);
+        if (layout == lastLayout && mapBitmap == lastMap) {
+            if (changed == 0) return lastPrepared;
+            // Same block geometry: only the lines whose text changed are laid out again
+            lastPrepared = layout.prepare(lastText.lines, mapBitmap, lastPrepared, changed);
+        } else {
+            lastPrepared = layout.prepare(lastText.lines, mapBitmap, null, 0);
+        }
+        lastLayout = layout;
+        lastMap = mapBitmap;
+        return lastPrepared;
+    }
+
+    private CompiledLayout getLayout(String templateId, int width) {
+        // Consecutive captures nearly always reuse the last layout; skip building the key
+        if (lastLayout != null && width == lastLayoutWidth && templateId.equals(lastLayoutTemplate)) {
+            return lastLayout;
+        }
+        String key = templateId + ":" + width;
+        CompiledLayout layout = layouts.get(key);
+        if (layout == null) {
+            layout = new CompiledLayout(getTemplate(templateId), width, getLogo());
+            layouts.put(key, layout);
+        }
+        lastLayoutTemplate = templateId;
+        lastLayoutWidth = width;
+        return layout;
+    }
+
+    private WatermarkTemplate getTemplate(String templateId) {
+        WatermarkTemplate template = templates.get(templateId);
+        if (template == null) {
+            template = loadTemplate(templateId);
+            templates.put(templateId, template);
+        }
+        return template;
+    }
+
+    private WatermarkTemplate loadTemplate(String templateId) {
+        if (resources != null) {
+            try {
+                return WatermarkTemplate.load(resources, templateId);
+            } catch (IOException | JSONException e) {
+                Log.e(TAG, "Watermark template '" + templateId + "' could not be loaded; using built-in layout.", e);
+            }
+        }
+        try {
+            return WatermarkTemplate.parse(BUILT_IN_TEMPLATE);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Bitmap getLogo() {
+        if (!logoLoaded && resources != null) {
+            logoLoaded = true;
+            // FIXED: Removed the fallback to R.mipmap.ic_launcher because it doesn't exist.
+            // We strictly use your provided logo.
+            logo = BitmapFactory.decodeResource(resources, R.drawable.lunartag);
+            if (logo == null) {
+                Log.w(TAG, "Logo resource could not be decoded; watermark will have no logo.");
+            }
+        }
+        return logo;
+    }
+}
@@ -0,0 +1,209 @@
+package com.lunartag.app.watermark;
+
+import android.content.res.Resources;
+import android.graphics.Color;
+
+import com.lunartag.app.R;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A declarative description of the watermark block, read from a JSON file in res/raw.
+ *
+ * All lengths are in units of 1/1000 of the upright photo width, so one template looks
+ * the same at every resolution. The block is anchored to the bottom of the photo:
+ * - "lines": the text rows, top to bottom. Each is a "field" (header, company, address,
+ *   gps, time) or a fixed "text", with optional "maxLines" (wraps, then ellipsizes) and
+ *   its own "style".
+ * - "text": the default style ("color", "size", "bold", "shadow").
+ * - "logo" / "brand": the optional logo in the top-right corner and the name next to it.
+ * - "map": size and margins of the map preview, drawn on the left when there is one.
+ *
+ * Parsing happens once per template; {@link CompiledLayout} does the per-resolution work.
+ */
+public final class WatermarkTemplate {
+
+    public static final String DEFAULT_ID = "default";
+
+    // Template ids and their bundled files. Ids are stored in the settings.
+    private static final String[] TEMPLATE_IDS = {DEFAULT_ID, "compact"};
+    private static final int[] TEMPLATE_RESOURCES = {R.raw.watermark_default, R.raw.watermark_compact};
+
+    // Field slots, in the order WatermarkRenderer.buildLines() fills them
+    public static final int FIELD_HEADER = 0;
+    public static final int FIELD_COMPANY = 1;
+    public static final int FIELD_ADDRESS = 2;
+    public static final int FIELD_GPS = 3;
+    public static final int FIELD_TIME = 4;
+    private static final String[] FIELD_NAMES = {"header", "company", "address", "gps", "time"};
+
+    /**
+     * Colour, size (in width units) and weight of one kind of text.
+     */
+    static final class TextStyle {
+        final int color;
+        final float size;
+        final boolean bold;
+        final boolean shadow;
+
+        TextStyle(int color, float size, boolean bold, boolean shadow) {
+            this.color = color;
+            this.size = size;
+            this.bold = bold;
+            this.shadow = shadow;
+        }
+    }
+
+    /**
+     * One text row: a dynamic field slot, or a fixed text when {@code field} is -1.
+     */
+    static final class LineSpec {
+        final int field;
+        final String text;
+        final int maxLines;
+        final TextStyle style;
+
+        LineSpec(int field, String text, int maxLines, TextStyle style) {
+            this.field = field;
+            this.text = text;
+            this.maxLines = maxLines;
+            this.style = style;
+        }
+    }
+
+    final String name;
+    final int backgroundColor;
+    final float paddingTop, paddingBottom, paddingRight;
+    final float textLeft;
+    final float lineSpacing;
+    final TextStyle textStyle;
+
+    final boolean hasLogo;
+    final float logoSize;
+    final int logoMinPx;
+    final float logoMarginRight, logoMarginTop;
+
+    final String brandText; // Null if there is no brand name
+    final TextStyle brandStyle;
+    final float brandGap;
+
+    final float mapSize, mapMargin, mapTextGap;
+
+    final List<LineSpec> lines;
+
+    private WatermarkTemplate(JSONObject root) throws JSONException {
+        name = root.optString("name", DEFAULT_ID);
+        backgroundColor = parseColor(root.optString("background", "#8C000000"));
+        paddingTop = (float) root.optDouble("paddingTop", 10);
+        paddingBottom = (float) root.optDouble("paddingBottom", 5);
+        paddingRight = (float) root.optDouble("paddingRight", 5);
+        textLeft = (float) root.optDouble("textLeft", 10);
+        lineSpacing = (float) root.optDouble("lineSpacing", 2.5);
+        textStyle = parseStyle(root.optJSONObject("text"), new TextStyle(Color.WHITE, 25, false, true));
+
+        JSONObject logo = root.optJSONObject("logo");
+        hasLogo = logo != null;
+        logoSize = logo != null ? (float) logo.optDouble("size", 80) : 0;
+        logoMinPx = logo != null ? logo.optInt("minPx", 50) : 0;
+        logoMarginRight = logo != null ? (float) logo.optDouble("marginRight", 7.5) : 0;
+        logoMarginTop = logo != null ? (float) logo.optDouble("marginTop", 5) : 0;
+
+        JSONObject brand = root.optJSONObject("brand");
+        brandText = brand != null ? brand.optString("text", null) : null;
+        brandStyle = brand != null ? parseStyle(brand.optJSONObject("style"), textStyle) : textStyle;
+        brandGap = brand != null ? (float) brand.optDouble("gap", 5) : 0;
+
+        JSONObject map = root.optJSONObject("map");
+        mapSize = map != null ? (float) map.optDouble("size", 160) : 160;
+        mapMargin = map != null ? (float) map.optDouble("margin", 5) : 5;
+        mapTextGap = map != null ? (float) map.optDouble("textGap", 7.5) : 7.5f;
+
+        JSONArray lineArray = root.getJSONArray("lines");
+        List<LineSpec> parsed = new ArrayList<>(lineArray.length());
+        for (int i = 0; i < lineArray.length(); i++) {
+            JSONObject line = lineArray.getJSONObject(i);
+            int field = -1;
+            if (line.has("field")) {
+                field = fieldSlot(line.getString("field"));
+                if (field < 0) {
+                    throw new JSONException("Unknown watermark field: " + line.getString("field"));
+                }
+            }
+            String text = line.optString("text", "");
+            int maxLines = Math.max(1, line.optInt("maxLines", 1));
+            parsed.add(new LineSpec(field, text, maxLines, parseStyle(line.optJSONObject("style"), textStyle)));
+        }
+        lines = Collections.unmodifiableList(parsed);
+    }
+
+    /**
+     * Parses a template from its JSON text.
+     */
+    public static WatermarkTemplate parse(String json) throws JSONException {
+        return new WatermarkTemplate(new JSONObject(json));
+    }
+
+    /**
+     * Loads one of the bundled templates. Unknown ids load the default template.
+     */
+    public static WatermarkTemplate load(Resources resources, String id) throws IOException, JSONException {
+        int resource = TEMPLATE_RESOURCES[0];
+        for (int i = 0; i < TEMPLATE_IDS.length; i++) {
+            if (TEMPLATE_IDS[i].equals(id)) resource = TEMPLATE_RESOURCES[i];
+        }
+        try (InputStream in = resources.openRawResource(resource)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+            return parse(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Ids of the bundled templates, in the order shown in the settings.
+     */
+    public static String[] getTemplateIds() {
+        return TEMPLATE_IDS.clone();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private static int fieldSlot(String fieldName) {
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            if (FIELD_NAMES[i].equals(fieldName)) return i;
+        }
+        return -1;
+    }
+
+    private static TextStyle parseStyle(JSONObject style, TextStyle fallback) throws JSONException {
+        if (style == null) return fallback;
+        return new TextStyle(
+                style.has("color") ? parseColor(style.optString("color")) : fallback.color,
+                (float) style.optDouble("size", fallback.size),
+                style.optBoolean("bold", fallback.bold),
+                style.optBoolean("shadow", fallback.shadow));
+    }
+
+    private static int parseColor(String value) throws JSONException {
+        try {
+            return Color.parseColor(value);
+        } catch (IllegalArgumentException e) {
+            throw new JSONException("Bad colour in watermark template: " + value);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.lunartag.app.utils;
+
+import java.util.Locale;
+
+/**
+ * Compares two NV21 frames of the same size, plane by plane, for tests that check an
+ * alternative compositing path against the reference one. Shared by the JVM and device tests.
+ */
+final class PixelDiff {
+
+    private final int maxLuma;
+    private final double meanLuma;
+    private final int maxChroma;
+    private final double meanChroma;
+    private final double lumaPsnr;
+
+    private PixelDiff(int maxLuma, double meanLuma, int maxChroma, double meanChroma, double lumaPsnr) {
+        this.maxLuma = maxLuma;
+        this.meanLuma = meanLuma;
+        this.maxChroma = maxChroma;
+        this.meanChroma = meanChroma;
+        this.lumaPsnr = lumaPsnr;
+    }
+
+    /**
+     * Compares two frames.
+     * @param width Frame width (even).
+     * @param height Frame height (even).
+     */
+    static PixelDiff compareNv21(byte[] expected, byte[] actual, int width, int height) {
+        int frameSize = width * height;
+        int chromaSize = frameSize / 2;
+        if (expected.length < frameSize + chromaSize || actual.length < frameSize + chromaSize) {
+            throw new IllegalArgumentException("Frames are smaller than " + width + "x" + height);
+        }
+
+        int maxLuma = 0;
+        long sumLuma = 0;
+        long sumSquares = 0;
+        for (int i = 0; i < frameSize; i++) {
+            int diff = Math.abs((expected[i] & 0xFF) - (actual[i] & 0xFF));
+            if (diff > maxLuma) maxLuma = diff;
+            sumLuma += diff;
+            sumSquares += diff * diff;
+        }
+
+        int maxChroma = 0;
+        long sumChroma = 0;
+        for (int i = frameSize; i < frameSize + chromaSize; i++) {
+            int diff = Math.abs((expected[i] & 0xFF) - (actual[i] & 0xFF));
+            if (diff > maxChroma) maxChroma = diff;
+            sumChroma += diff;
+        }
+
+        double mse = (double) sumSquares / frameSize;
+        double psnr = mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+        return new PixelDiff(maxLuma, (double) sumLuma / frameSize, maxChroma, (double) sumChroma / chromaSize, psnr);
+    }
+
+    int getMaxLuma() {
+        return maxLuma;
+    }
+
+    double getMeanLuma() {
+        return meanLuma;
+    }
+
+    int getMaxChroma() {
+        return maxChroma;
+    }
+
+    double getMeanChroma() {
+        return meanChroma;
+    }
+
+    /**
+     * Peak signal-to-noise ratio of the luma plane in dB; infinite for identical frames.
+     */
+    double getLumaPsnr() {
+        return lumaPsnr;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "Y max %d mean %.3f, VU max %d mean %.3f, Y PSNR %.1f dB",
+                maxLuma, meanLuma, maxChroma, meanChroma, lumaPsnr);
+    }
+}
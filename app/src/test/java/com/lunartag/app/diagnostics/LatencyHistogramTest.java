@@ -0,0 +1,141 @@
+package com.lunartag.app.diagnostics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Checks the bucket layout of {@link LatencyHistogram} and its percentiles against exact
+ * ones computed from the sorted values.
+ */
+public class LatencyHistogramTest {
+
+    private static final long MAX_MICROS = (1L << 40) - 1;
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 32; // One sub-bucket of a power of two
+
+    @Test
+    public void everyValueFallsInTheBucketThatEndsAtOrAboveIt() {
+        int previous = -1;
+        for (long micros = 0; micros < (1 << 16); micros++) {
+            assertBucket(micros);
+            int index = LatencyHistogram.indexOf(micros);
+            assertTrue("index at " + micros, index == previous || index == previous + 1);
+            previous = index;
+        }
+        for (int bit = 6; bit < 40; bit++) {
+            for (long micros : new long[] {(1L << bit) - 1, 1L << bit, (1L << bit) + 1, 3L << (bit - 1)}) {
+                assertBucket(micros);
+            }
+        }
+        assertBucket(MAX_MICROS);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        for (int micros = 0; micros < 64; micros++) {
+            assertEquals(micros, LatencyHistogram.indexOf(micros));
+            assertEquals(micros, LatencyHistogram.upperEdge(micros));
+        }
+        assertEquals(64, LatencyHistogram.indexOf(64));
+        assertEquals(65, LatencyHistogram.upperEdge(64));
+        assertEquals(65, LatencyHistogram.indexOf(66));
+    }
+
+    @Test
+    public void percentilesAreWithinOneBucketOfTheExactValue() {
+        Random random = new Random(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] micros = new long[100_000];
+        for (int i = 0; i < micros.length; i++) {
+            // Log-normal around 20 ms with a long tail, like stage timings
+            micros[i] = Math.max(1, (long) (20_000 * Math.exp(random.nextGaussian())));
+            histogram.recordNanos(micros[i] * 1000 + random.nextInt(1000));
+        }
+        Arrays.sort(micros);
+
+        assertEquals(micros.length, histogram.getCount());
+        assertEquals(micros[micros.length - 1], histogram.getMaxMicros());
+        for (double percentile : new double[] {1, 10, 50, 90, 95, 99, 99.9, 100}) {
+            long exact = micros[(int) Math.ceil(percentile / 100 * micros.length) - 1];
+            long reported = histogram.getPercentileMicros(percentile);
+            assertTrue("p" + percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue("p" + percentile + ": " + reported + " vs " + exact,
+                    reported <= exact * (1 + MAX_RELATIVE_ERROR));
+        }
+        long sum = 0;
+        for (long value : micros) sum += value;
+        assertEquals(sum / micros.length, histogram.getMeanMicros());
+    }
+
+    @Test
+    public void percentileIsCappedAtTheMaximumSeen() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(1_000_000_000); // 1 s, in a bucket ending above it
+        assertEquals(1_000_000, histogram.getPercentileMicros(50));
+        assertEquals(1_000_000, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(Long.MAX_VALUE);
+        histogram.recordNanos(-5_000);
+        assertEquals(2, histogram.getCount());
+        assertEquals(MAX_MICROS, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(MAX_MICROS, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(0, histogram.getMeanMicros());
+        histogram.recordNanos(5_000_000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8, perThread = 50_000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long micros = 100L * (t + 1);
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) histogram.recordNanos(micros * 1000);
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+
+        assertEquals((long) threads * perThread, histogram.getCount());
+        assertEquals(800, histogram.getMaxMicros());
+        assertEquals(450, histogram.getMeanMicros());
+        long p50 = histogram.getPercentileMicros(50);
+        assertTrue("p50 " + p50, p50 >= 400 && p50 <= 400 * (1 + MAX_RELATIVE_ERROR));
+    }
+
+    private static void assertBucket(long micros) {
+        int index = LatencyHistogram.indexOf(micros);
+        long upper = LatencyHistogram.upperEdge(index);
+        assertTrue(micros + " above its bucket's edge " + upper, upper >= micros);
+        assertTrue(micros + " fits the previous bucket", index == 0 || LatencyHistogram.upperEdge(index - 1) < micros);
+        assertTrue(micros + ": bucket edge " + upper, upper - micros <= micros * MAX_RELATIVE_ERROR);
+    }
+}
@@ -0,0 +1,194 @@
+package com.lunartag.app.diagnostics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wrapping, overwriting and concurrent writers for {@link LogRing}.
+ */
+public class LogRingTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new LogRing(1).getCapacity());
+        assertEquals(2, new LogRing(2).getCapacity());
+        assertEquals(4, new LogRing(3).getCapacity());
+        assertEquals(128, new LogRing(100).getCapacity());
+        assertEquals(128, new LogRing(128).getCapacity());
+        assertEquals(256, new LogRing(129).getCapacity());
+    }
+
+    @Test
+    public void readsEverythingInOrderBeforeTheRingWraps() {
+        LogRing ring = new LogRing(8);
+        for (int i = 0; i < 5; i++) ring.append(1000 + i, 3, "T", "m" + i);
+
+        List<LogRing.Entry> entries = new ArrayList<>();
+        long cursor = ring.read(0, entries::add);
+        assertEquals(5, cursor);
+        assertSequences(entries, 0, 5);
+        assertEquals("m3", entries.get(3).message);
+        assertEquals(1003, entries.get(3).timeMillis);
+
+        // Nothing new: the cursor stays put
+        entries.clear();
+        assertEquals(5, ring.read(cursor, entries::add));
+        assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void wrappedRingKeepsTheNewestEntries() {
+        LogRing ring = new LogRing(8);
+        for (int i = 0; i < 21; i++) ring.append(i, 3, "T", "m" + i);
+
+        List<LogRing.Entry> entries = new ArrayList<>();
+        assertEquals(21, ring.read(0, entries::add));
+        assertSequences(entries, 13, 21);
+        for (LogRing.Entry entry : entries) {
+            assertEquals("m" + entry.sequence, entry.message);
+        }
+    }
+
+    @Test
+    public void readerThatFellBehindSkipsOverwrittenEntries() {
+        LogRing ring = new LogRing(8);
+        for (int i = 0; i < 6; i++) ring.append(i, 3, "T", "m" + i);
+        List<LogRing.Entry> entries = new ArrayList<>();
+        long cursor = ring.read(0, entries::add);
+        assertEquals(6, cursor);
+
+        // 20 more: sequences 6-17 are gone by the next read
+        for (int i = 6; i < 26; i++) ring.append(i, 3, "T", "m" + i);
+        entries.clear();
+        assertEquals(26, ring.read(cursor, entries::add));
+        assertSequences(entries, 18, 26);
+    }
+
+    @Test
+    public void entriesOverwrittenDuringAReadAreSkipped() {
+        LogRing ring = new LogRing(8);
+        for (int i = 0; i < 8; i++) ring.append(i, 3, "T", "m" + i);
+
+        // Writers overtake the reader: after each entry read, four more are appended
+        List<LogRing.Entry> entries = new ArrayList<>();
+        long cursor = ring.read(0, entry -> {
+            entries.add(entry);
+            for (int i = 0; i < 4; i++) ring.append(0, 3, "T", "late");
+        });
+        assertEquals(8, cursor);
+        // 0 is read and 8-11 take slots 0-3, so 1-3 are gone; 4 is read and 12-15 take 4-7
+        assertEquals(2, entries.size());
+        assertEquals(0, entries.get(0).sequence);
+        assertEquals(4, entries.get(1).sequence);
+
+        // The next read resumes with what is still in the ring
+        entries.clear();
+        long end = ring.getEndSequence();
+        assertEquals(end, ring.read(cursor, entries::add));
+        assertSequences(entries, end - 8, end);
+    }
+
+    @Test
+    public void readerStartingAtTheEndOnlySeesNewEntries() {
+        LogRing ring = new LogRing(16);
+        for (int i = 0; i < 10; i++) ring.append(i, 3, "T", "old");
+        long cursor = ring.getEndSequence();
+        ring.append(10, 3, "T", "new");
+
+        List<LogRing.Entry> entries = new ArrayList<>();
+        assertEquals(11, ring.read(cursor, entries::add));
+        assertSequences(entries, 10, 11);
+        assertEquals("new", entries.get(0).message);
+    }
+
+    @Test
+    public void concurrentWritersLoseNothingTheRingCanHold() throws InterruptedException {
+        int threads = 8, perThread = 20_000;
+        LogRing ring = new LogRing(threads * perThread);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            writers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) ring.append(i, thread, "W" + thread, Integer.toString(i));
+            });
+            writers[t].start();
+        }
+
+        // A reader polling while the writers run: it must stop at slots claimed but not yet
+        // stored and pick them up later, so every entry arrives exactly once and in order
+        List<LogRing.Entry> entries = new ArrayList<>();
+        start.countDown();
+        long cursor = 0;
+        Thread watcher = new Thread(() -> {
+            for (Thread writer : writers) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            writing.set(false);
+        });
+        watcher.start();
+        while (writing.get()) {
+            cursor = ring.read(cursor, entries::add);
+        }
+        watcher.join();
+        cursor = ring.read(cursor, entries::add);
+
+        assertEquals((long) threads * perThread, cursor);
+        assertSequences(entries, 0, cursor);
+        // Each writer's entries all arrived, in the order it wrote them
+        int[] nextPerThread = new int[threads];
+        for (LogRing.Entry entry : entries) {
+            assertEquals(Integer.toString(nextPerThread[entry.level]++), entry.message);
+        }
+        for (int next : nextPerThread) assertEquals(perThread, next);
+    }
+
+    @Test
+    public void concurrentWritersOnASmallRingLeaveAConsistentTail() throws InterruptedException {
+        LogRing ring = new LogRing(64);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final int thread = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) ring.append(i, thread, "W", "m");
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) writer.join();
+
+        List<LogRing.Entry> entries = new ArrayList<>();
+        assertEquals(40_000, ring.read(0, entries::add));
+        assertSequences(entries, 40_000 - 64, 40_000);
+    }
+
+    /**
+     * The entries are exactly the sequences {@code from} (inclusive) to {@code to}, in order.
+     */
+    private static void assertSequences(List<LogRing.Entry> entries, long from, long to) {
+        assertEquals("entries", to - from, entries.size());
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(from + i, entries.get(i).sequence);
+            assertTrue(seen.add(entries.get(i).sequence));
+        }
+    }
+}
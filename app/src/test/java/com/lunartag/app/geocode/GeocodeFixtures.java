@@ -0,0 +1,87 @@
+package com.lunartag.app.geocode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Synthetic region packs for the offline geocoder tests. Every point gets a unique name
+ * ("p" + index), so a query result can be traced back to its coordinates.
+ */
+final class GeocodeFixtures {
+
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    // Roughly India's extent, like a real national pack
+    static final double MIN_LATITUDE = 8;
+    static final double MAX_LATITUDE = 35;
+    static final double MIN_LONGITUDE = 68;
+    static final double MAX_LONGITUDE = 97;
+
+    final double[] latitudes;
+    final double[] longitudes;
+    final File file;
+
+    private GeocodeFixtures(double[] latitudes, double[] longitudes, File file) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.file = file;
+    }
+
+    /**
+     * Writes a pack of uniformly scattered points over {@link #MIN_LATITUDE}..{@link #MAX_LONGITUDE}.
+     */
+    static GeocodeFixtures random(File file, int count, long seed) throws IOException {
+        Random random = new Random(seed);
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        RegionPackBuilder builder = new RegionPackBuilder();
+        for (int i = 0; i < count; i++) {
+            // Stored at microdegree precision, so the brute force sees what the pack holds
+            latitudes[i] = Math.round((MIN_LATITUDE + random.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE))
+                    * RegionPack.MICRODEGREES) / RegionPack.MICRODEGREES;
+            longitudes[i] = Math.round((MIN_LONGITUDE + random.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE))
+                    * RegionPack.MICRODEGREES) / RegionPack.MICRODEGREES;
+            builder.add(latitudes[i], longitudes[i], "p" + i);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            builder.writeTo(out);
+        }
+        return new GeocodeFixtures(latitudes, longitudes, file);
+    }
+
+    /**
+     * Index of the point a name belongs to.
+     */
+    static int indexOf(String name) {
+        return Integer.parseInt(name.substring(1));
+    }
+
+    /**
+     * Distance in metres with the same equirectangular approximation the geocoder uses.
+     */
+    static double distanceMeters(double latitude, double longitude, double pointLatitude, double pointLongitude) {
+        double dLat = pointLatitude - latitude;
+        double dLon = (pointLongitude - longitude) * Math.cos(Math.toRadians(latitude));
+        return Math.sqrt(dLat * dLat + dLon * dLon) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Distance to the nearest point by checking every one, or infinity if none is within the radius.
+     */
+    double bruteForceNearest(double latitude, double longitude, double maxDistanceMeters) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < latitudes.length; i++) {
+            double distance = distanceMeters(latitude, longitude, latitudes[i], longitudes[i]);
+            if (distance < best) best = distance;
+        }
+        return best <= maxDistanceMeters ? best : Double.POSITIVE_INFINITY;
+    }
+
+    double distanceTo(String name, double latitude, double longitude) {
+        int index = indexOf(name);
+        return distanceMeters(latitude, longitude, latitudes[index], longitudes[index]);
+    }
+}
@@ -0,0 +1,67 @@
+package com.lunartag.app.geocode;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A national-sized pack: one million points over India's extent. Prints build time, pack
+ * size and the time per query, and checks a sample of the answers against brute force.
+ * The timings are for comparing changes on one machine, so nothing is asserted about them.
+ */
+public class OfflineReverseGeocoderBenchmark {
+
+    private static final int POINTS = 1_000_000;
+    private static final int WARMUP_QUERIES = 50_000;
+    private static final int TIMED_QUERIES = 200_000;
+    private static final int CHECKED_QUERIES = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void millionPoints() throws IOException {
+        long start = System.nanoTime();
+        GeocodeFixtures pack = GeocodeFixtures.random(folder.newFile("india.ltrg"), POINTS, 42);
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        OfflineReverseGeocoder geocoder = new OfflineReverseGeocoder(pack.file,
+                OfflineReverseGeocoder.DEFAULT_MAX_DISTANCE_METERS);
+        assertEquals(POINTS, geocoder.size());
+
+        double[] latitudes = new double[TIMED_QUERIES];
+        double[] longitudes = new double[TIMED_QUERIES];
+        Random random = new Random(7);
+        for (int i = 0; i < TIMED_QUERIES; i++) {
+            latitudes[i] = GeocodeFixtures.MIN_LATITUDE
+                    + random.nextDouble() * (GeocodeFixtures.MAX_LATITUDE - GeocodeFixtures.MIN_LATITUDE);
+            longitudes[i] = GeocodeFixtures.MIN_LONGITUDE
+                    + random.nextDouble() * (GeocodeFixtures.MAX_LONGITUDE - GeocodeFixtures.MIN_LONGITUDE);
+        }
+        int found = 0;
+        for (int i = 0; i < WARMUP_QUERIES; i++) {
+            if (geocoder.nearest(latitudes[i], longitudes[i]) >= 0) found++;
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < TIMED_QUERIES; i++) {
+            if (geocoder.nearest(latitudes[i], longitudes[i]) >= 0) found++;
+        }
+        double nearestMicros = (System.nanoTime() - start) / 1e3 / TIMED_QUERIES;
+        start = System.nanoTime();
+        for (int i = 0; i < TIMED_QUERIES; i++) {
+            if (geocoder.reverseGeocode(latitudes[i], longitudes[i]) != null) found++;
+        }
+        double lookupMicros = (System.nanoTime() - start) / 1e3 / TIMED_QUERIES;
+
+        System.out.printf("OfflineReverseGeocoder %,d points: build %d ms, pack %.1f MB, "
+                        + "nearest %.2f us, with name %.2f us (%d hits)%n",
+                POINTS, buildMillis, pack.file.length() / 1e6, nearestMicros, lookupMicros, found);
+
+        OfflineReverseGeocoderTest.assertNearestMatches(pack, geocoder, CHECKED_QUERIES, 8);
+    }
+}
@@ -0,0 +1,143 @@
+package com.lunartag.app.geocode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Builds region packs with {@link RegionPackBuilder} and checks {@link OfflineReverseGeocoder}
+ * answers against a brute-force nearest-neighbour search.
+ */
+public class OfflineReverseGeocoderTest {
+
+    private static final double RADIUS = OfflineReverseGeocoder.DEFAULT_MAX_DISTANCE_METERS;
+    private static final double TOLERANCE_METERS = 1e-6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void nearestMatchesBruteForce() throws IOException {
+        GeocodeFixtures pack = GeocodeFixtures.random(folder.newFile("dense.ltrg"), 50_000, 1);
+        OfflineReverseGeocoder geocoder = new OfflineReverseGeocoder(pack.file, RADIUS);
+        assertEquals(50_000, geocoder.size());
+        assertNearestMatches(pack, geocoder, 2_000, 2);
+    }
+
+    @Test
+    public void sparsePackRespectsRadius() throws IOException {
+        // About one point per 300 km2: many queries have nothing within 2 km
+        GeocodeFixtures pack = GeocodeFixtures.random(folder.newFile("sparse.ltrg"), 2_000, 3);
+        OfflineReverseGeocoder geocoder = new OfflineReverseGeocoder(pack.file, RADIUS);
+        int misses = assertNearestMatches(pack, geocoder, 2_000, 4);
+        assertEquals(true, misses > 0);
+    }
+
+    @Test
+    public void queryOnAPointReturnsIt() throws IOException {
+        GeocodeFixtures pack = GeocodeFixtures.random(folder.newFile("exact.ltrg"), 10_000, 5);
+        OfflineReverseGeocoder geocoder = new OfflineReverseGeocoder(pack.file, RADIUS);
+        for (int i = 0; i < 10_000; i += 97) {
+            assertEquals("p" + i, geocoder.reverseGeocode(pack.latitudes[i], pack.longitudes[i]));
+        }
+    }
+
+    @Test
+    public void repeatedNamesAndUnicodeSurviveTheNameTable() throws IOException {
+        File file = folder.newFile("names.ltrg");
+        RegionPackBuilder builder = new RegionPackBuilder()
+                .add(12.9716, 77.5946, "MG Road, Bengaluru")
+                .add(12.9720, 77.5950, "MG Road, Bengaluru")
+                .add(28.6139, 77.2090, "कनॉट प्लेस, नई दिल्ली")
+                .add(19.0760, 72.8777, "");
+        write(builder, file);
+
+        OfflineReverseGeocoder geocoder = new OfflineReverseGeocoder(file, RADIUS);
+        assertEquals(4, geocoder.size());
+        assertEquals("MG Road, Bengaluru", geocoder.reverseGeocode(12.9717, 77.5947));
+        assertEquals("कनॉट प्लेस, नई दिल्ली", geocoder.reverseGeocode(28.6140, 77.2091));
+        assertEquals("", geocoder.reverseGeocode(19.0760, 72.8777));
+        assertNull(geocoder.reverseGeocode(0, 0));
+        // The file holds each distinct name once
+        assertEquals(16 + 4 * 12 + 3 * 2 + ("MG Road, Bengaluru".length()
+                + "कनॉट प्लेस, नई दिल्ली".getBytes("UTF-8").length), file.length());
+    }
+
+    @Test
+    public void emptyPackFindsNothing() throws IOException {
+        File file = folder.newFile("empty.ltrg");
+        write(new RegionPackBuilder(), file);
+        OfflineReverseGeocoder geocoder = new OfflineReverseGeocoder(file, RADIUS);
+        assertEquals(0, geocoder.size());
+        assertNull(geocoder.reverseGeocode(12.9716, 77.5946));
+    }
+
+    @Test
+    public void foreignFilesAreRejected() throws IOException {
+        File file = folder.newFile("photo.ltrg");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        }
+        try {
+            new OfflineReverseGeocoder(file, RADIUS);
+            fail("Opened a file that is not a region pack");
+        } catch (IOException expected) {
+            // Expected
+        }
+        assertNull(OfflineReverseGeocoder.openFirst(folder.getRoot()));
+
+        write(new RegionPackBuilder().add(1, 2, "x"), folder.newFile("valid.ltrg"));
+        assertNotNull(OfflineReverseGeocoder.openFirst(folder.getRoot()));
+    }
+
+    /**
+     * Queries random spots, half of them close to a pack point, and compares distances
+     * (not indices: two points can be equally near).
+     * @return How many queries had no point within the radius.
+     */
+    static int assertNearestMatches(GeocodeFixtures pack, OfflineReverseGeocoder geocoder, int queries, long seed) {
+        Random random = new Random(seed);
+        int misses = 0;
+        for (int q = 0; q < queries; q++) {
+            double latitude, longitude;
+            if ((q & 1) == 0) {
+                int near = random.nextInt(pack.latitudes.length);
+                latitude = pack.latitudes[near] + (random.nextDouble() - 0.5) * 0.01;
+                longitude = pack.longitudes[near] + (random.nextDouble() - 0.5) * 0.01;
+            } else {
+                latitude = GeocodeFixtures.MIN_LATITUDE
+                        + random.nextDouble() * (GeocodeFixtures.MAX_LATITUDE - GeocodeFixtures.MIN_LATITUDE);
+                longitude = GeocodeFixtures.MIN_LONGITUDE
+                        + random.nextDouble() * (GeocodeFixtures.MAX_LONGITUDE - GeocodeFixtures.MIN_LONGITUDE);
+            }
+            double expected = pack.bruteForceNearest(latitude, longitude, RADIUS);
+            String name = geocoder.reverseGeocode(latitude, longitude);
+            String where = "query " + q + " at " + latitude + "," + longitude;
+            if (expected == Double.POSITIVE_INFINITY) {
+                assertNull(where, name);
+                misses++;
+            } else {
+                assertNotNull(where, name);
+                assertEquals(where, expected, pack.distanceTo(name, latitude, longitude), TOLERANCE_METERS);
+            }
+        }
+        return misses;
+    }
+
+    private static void write(RegionPackBuilder builder, File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            builder.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.lunartag.app.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays a fix trace through {@link LocationPolicy} the way LocationProvider drives it,
+ * and checks the sequence of location requests it makes.
+ *
+ * The trace holds 1 Hz high-accuracy fixes. The replay only delivers a fix when the current
+ * request's interval has passed, and under balanced power reports it with the vague accuracy
+ * such fixes have, so the policy's choices feed back into what it sees next. As in the app,
+ * the policy is consulted after every fix, capture and touch.
+ */
+public class LocationPolicyTraceTest {
+
+    private static final String TRACE = "walk_then_stand.csv";
+    private static final float BALANCED_ACCURACY_METERS = 60;
+
+    /**
+     * A change of location request during the replay.
+     */
+    private static final class Transition {
+        final long second;
+        final LocationPolicy.Decision decision;
+
+        Transition(long second, LocationPolicy.Decision decision) {
+            this.second = second;
+            this.decision = decision;
+        }
+
+        @Override
+        public String toString() {
+            return second + "s " + decision.getReason();
+        }
+    }
+
+    private static final class FakeClock implements LocationPolicy.Clock {
+        long now;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    @Test
+    public void walkShootStandAndSlotCycleThroughRequests() throws IOException {
+        List<Transition> transitions = replay(loadTrace());
+        System.out.println("LocationPolicy trace: " + transitions);
+
+        // Decisions are only revisited on events, so each change lands on the first fix,
+        // capture or touch after the condition starts to hold
+        assertEquals(Arrays.asList(
+                "0s capture likely",            // Camera opened
+                "120s moving or poor fix",      // Walking
+                "200s capture likely",          // Shot taken
+                "320s moving or poor fix",      // Still walking until 300 s
+                "385s stationary",              // Fixes within a few metres for a minute
+                "715s moving or poor fix",      // Only vague fixes for 5 min: take a sharp one
+                "720s stationary",
+                "1050s moving or poor fix",
+                "1055s stationary",
+                "1115s stationary, long idle",  // 15 min since the shot, on the next 30 s fix
+                "1415s moving or poor fix",
+                "1420s stationary, long idle",
+                "1780s moving or poor fix",
+                "1785s stationary, long idle",
+                "1905s capture likely",         // Slot at 2000 s, seen on the next 60 s fix
+                "2121s stationary, long idle",  // Slot passed, still standing
+                // Walking again from 2200 s: vague fixes 60 s apart have to be 145 m apart to count
+                "2361s moving or poor fix"),
+                describe(transitions));
+    }
+
+    @Test
+    public void standingStillKeepsHighAccuracyBelowFivePercent() throws IOException {
+        List<Transition> transitions = replay(loadTrace());
+        long from = 385, to = 1905; // Stationary, before the slot window
+        long highAccuracy = 0;
+        for (int i = 0; i < transitions.size(); i++) {
+            Transition transition = transitions.get(i);
+            long end = i + 1 < transitions.size() ? transitions.get(i + 1).second : Long.MAX_VALUE;
+            if (transition.decision.getPriority() == LocationPolicy.Priority.HIGH_ACCURACY) {
+                highAccuracy += Math.max(0, Math.min(end, to) - Math.max(transition.second, from));
+            }
+        }
+        assertTrue("high accuracy for " + highAccuracy + " s", highAccuracy * 20 < to - from);
+    }
+
+    @Test
+    public void slotIsSeenBeforeItsTimeEvenAtTheSlowestRate() throws IOException {
+        for (Transition transition : replay(loadTrace())) {
+            if (transition.decision == LocationPolicy.IMMINENT && transition.second > 1000) {
+                // The long idle interval is shorter than the window, so the slot cannot be missed
+                assertTrue(transition.toString(), transition.second
+                        <= 2000 - (LocationPolicy.CAPTURE_WINDOW_MS - LocationPolicy.IDLE_LONG.getIntervalMillis()) / 1000);
+                return;
+            }
+        }
+        throw new AssertionError("slot never tightened the request");
+    }
+
+    // --- Replay ---
+
+    private static List<Transition> replay(List<String[]> trace) {
+        FakeClock clock = new FakeClock();
+        LocationPolicy policy = new LocationPolicy(clock);
+        List<Transition> transitions = new ArrayList<>();
+        LocationPolicy.Decision active = null;
+        long lastFixSecond = Long.MIN_VALUE / 2;
+        String[] latestFix = null;
+
+        int next = 0;
+        long end = Long.parseLong(trace.get(trace.size() - 1)[0]);
+        for (long second = 0; second <= end; second++) {
+            clock.now = second * 1000;
+            boolean consult = second == 0; // Subscribing issues the first request
+            for (; next < trace.size() && Long.parseLong(trace.get(next)[0]) == second; next++) {
+                String[] event = trace.get(next);
+                switch (event[1]) {
+                    case "fix":
+                        latestFix = event;
+                        break;
+                    case "capture":
+                        policy.onCapture();
+                        consult = true;
+                        break;
+                    case "touch":
+                        policy.onUserActivity();
+                        consult = true;
+                        break;
+                    case "slot":
+                        policy.setUpcomingSlots(new long[] {Long.parseLong(event[2]) * 1000});
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown trace event: " + Arrays.toString(event));
+                }
+            }
+            if (active != null && latestFix != null
+                    && (second - lastFixSecond) * 1000 >= active.getIntervalMillis()) {
+                float accuracy = Float.parseFloat(latestFix[4]);
+                if (active.getPriority() == LocationPolicy.Priority.BALANCED_POWER) {
+                    accuracy = Math.max(accuracy, BALANCED_ACCURACY_METERS);
+                }
+                policy.onFix(Double.parseDouble(latestFix[2]), Double.parseDouble(latestFix[3]), accuracy);
+                lastFixSecond = second;
+                consult = true;
+            }
+            if (consult) {
+                LocationPolicy.Decision decision = policy.decide();
+                if (!decision.sameRequest(active)) {
+                    transitions.add(new Transition(second, decision));
+                    active = decision;
+                }
+            }
+        }
+        return transitions;
+    }
+
+    private static List<String[]> loadTrace() throws IOException {
+        InputStream in = LocationPolicyTraceTest.class.getResourceAsStream(TRACE);
+        assertNotNull(TRACE + " missing", in);
+        List<String[]> events = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                events.add(line.split(","));
+            }
+        }
+        return events;
+    }
+
+    private static List<String> describe(List<Transition> transitions) {
+        List<String> descriptions = new ArrayList<>();
+        for (Transition transition : transitions) {
+            descriptions.add(transition.toString());
+        }
+        return descriptions;
+    }
+}
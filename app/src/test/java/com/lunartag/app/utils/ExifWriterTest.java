@@ -0,0 +1,414 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Writes EXIF blocks with {@link ExifWriter} and parses them back with an independent TIFF
+ * reader (below), the way a gallery or an EXIF tool would.
+ */
+public class ExifWriterTest {
+
+    // 2024-03-15 09:26:53.589 UTC
+    private static final long CAPTURE_TIME = 1710494813589L;
+    private static final TimeZone KOLKATA = TimeZone.getTimeZone("Asia/Kolkata");
+
+    @Test
+    public void metadataRoundTrips() {
+        byte[] thumbnail = fakeJpeg(new byte[] {1, 2, 3, 4, 5, 6, 7});
+        ExifWriter.Metadata metadata = new ExifWriter.Metadata()
+                .setOrientation(ExifWriter.ORIENTATION_ROTATE_90)
+                .setCaptureTime(CAPTURE_TIME, KOLKATA)
+                .setDescription("{\"site\":\"Bengaluru – MG Road\"}")
+                .setCamera("LunarTag", "Pixel 7")
+                .setLocation(12.9715987, -77.5945627, 4.5f, CAPTURE_TIME - 2000)
+                .setAltitude(-12.34)
+                .setThumbnail(thumbnail);
+
+        byte[] jpeg = fakeJpeg(new byte[] {9, 9, 9});
+        byte[] out = ExifWriter.withMetadata(jpeg, metadata);
+        Exif exif = Exif.parse(out);
+
+        assertEquals(6, exif.ifd0.shortValue(0x0112));
+        assertEquals("LunarTag", exif.ifd0.ascii(0x010F));
+        assertEquals("Pixel 7", exif.ifd0.ascii(0x0110));
+        assertEquals("{\"site\":\"Bengaluru – MG Road\"}", exif.ifd0.ascii(0x010E));
+        assertEquals("2024:03:15 14:56:53", exif.ifd0.ascii(0x0132)); // IST is UTC+5:30
+
+        assertArrayEquals("0232".getBytes(StandardCharsets.US_ASCII), exif.exif.bytes(0x9000));
+        assertEquals("2024:03:15 14:56:53", exif.exif.ascii(0x9003));
+        assertEquals("2024:03:15 14:56:53", exif.exif.ascii(0x9004));
+        assertEquals("+05:30", exif.exif.ascii(0x9011));
+        assertEquals("589", exif.exif.ascii(0x9291));
+
+        assertArrayEquals(new byte[] {2, 3, 0, 0}, exif.gps.bytes(0x0000));
+        assertEquals("N", exif.gps.ascii(0x0001));
+        assertEquals(12.9715987, exif.gps.degrees(0x0002), 1e-7);
+        assertEquals("W", exif.gps.ascii(0x0003));
+        assertEquals(77.5945627, exif.gps.degrees(0x0004), 1e-7);
+        assertEquals(1, exif.gps.bytes(0x0005)[0]); // Below sea level
+        assertEquals(12.34, exif.gps.rational(0x0006, 0), 1e-9);
+        assertEquals(9, exif.gps.rational(0x0007, 0), 0);
+        assertEquals(26, exif.gps.rational(0x0007, 1), 0);
+        assertEquals(51, exif.gps.rational(0x0007, 2), 0);
+        assertEquals("2024:03:15", exif.gps.ascii(0x001D));
+        assertEquals(4.5, exif.gps.rational(0x001F, 0), 1e-9);
+
+        assertNotNull("IFD1", exif.ifd1);
+        assertEquals(6, exif.ifd1.shortValue(0x0103));
+        assertArrayEquals(thumbnail, exif.thumbnail());
+
+        // The compressed data follows the segment untouched
+        assertArrayEquals(Arrays.copyOfRange(jpeg, 2, jpeg.length),
+                Arrays.copyOfRange(out, out.length - (jpeg.length - 2), out.length));
+    }
+
+    @Test
+    public void segmentGoesAfterJfifHeader() {
+        byte[] app0 = {(byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0};
+        byte[] jpeg = concat(new byte[] {(byte) 0xFF, (byte) 0xD8}, app0, scanAndEnd());
+        byte[] out = ExifWriter.withMetadata(jpeg, new ExifWriter.Metadata().setCaptureTime(CAPTURE_TIME, KOLKATA));
+
+        assertArrayEquals(app0, Arrays.copyOfRange(out, 2, 2 + app0.length));
+        assertEquals(0xE1, out[2 + app0.length + 1] & 0xFF);
+        assertEquals(1, Exif.parse(out).ifd0.shortValue(0x0112));
+    }
+
+    @Test
+    public void cameraBlockIsReplacedButItsShootingSettingsKept() {
+        // A little-endian block like a camera writes, with its own time, GPS and MakerNote
+        LittleEndianTiff camera = new LittleEndianTiff();
+        camera.ifd0.put(0x010F, camera.ascii("Google"));
+        camera.ifd0.put(0x0112, camera.shorts(1));
+        camera.ifd0.put(0x0132, camera.ascii("2020:01:01 00:00:00"));
+        camera.exif.put(0x829A, camera.rational(1, 120)); // ExposureTime
+        camera.exif.put(0x829D, camera.rational(185, 100)); // FNumber
+        camera.exif.put(0x8827, camera.shorts(400)); // ISO
+        camera.exif.put(0x9003, camera.ascii("2020:01:01 00:00:00"));
+        camera.exif.put(0x9209, camera.shorts(16)); // Flash
+        camera.exif.put(0x920A, camera.rational(6810, 1000)); // FocalLength
+        camera.exif.put(0x927C, camera.undefined(new byte[40])); // MakerNote
+        camera.exif.put(0xA434, camera.ascii("Pixel 7 back camera 6.81mm f/1.85")); // LensModel
+        camera.gps.put(0x0001, camera.ascii("S"));
+        byte[] jpeg = concat(new byte[] {(byte) 0xFF, (byte) 0xD8}, camera.segment(), scanAndEnd());
+
+        byte[] out = ExifWriter.withMetadata(jpeg, new ExifWriter.Metadata()
+                .setOrientation(ExifWriter.ORIENTATION_ROTATE_270)
+                .setCaptureTime(CAPTURE_TIME, KOLKATA)
+                .setCamera(null, "Pixel 7"));
+        assertEquals("one EXIF block", 1, countExifSegments(out));
+        Exif exif = Exif.parse(out);
+
+        // Ours wins where both have a tag
+        assertEquals(8, exif.ifd0.shortValue(0x0112));
+        assertEquals("2024:03:15 14:56:53", exif.ifd0.ascii(0x0132));
+        assertEquals("2024:03:15 14:56:53", exif.exif.ascii(0x9003));
+        assertEquals("Pixel 7", exif.ifd0.ascii(0x0110));
+        // The camera's settings are carried over, now big-endian
+        assertEquals("Google", exif.ifd0.ascii(0x010F));
+        assertEquals(1.0 / 120, exif.exif.rational(0x829A, 0), 1e-12);
+        assertEquals(1.85, exif.exif.rational(0x829D, 0), 1e-12);
+        assertEquals(400, exif.exif.shortValue(0x8827));
+        assertEquals(16, exif.exif.shortValue(0x9209));
+        assertEquals(6.81, exif.exif.rational(0x920A, 0), 1e-12);
+        assertEquals("Pixel 7 back camera 6.81mm f/1.85", exif.exif.ascii(0xA434));
+        // Its MakerNote and location are not
+        assertFalse(exif.exif.has(0x927C));
+        assertNull("GPS IFD", exif.gps);
+    }
+
+    @Test
+    public void garbledCameraBlockIsDropped() {
+        byte[] garbled = {(byte) 0xFF, (byte) 0xE1, 0, 20, 'E', 'x', 'i', 'f', 0, 0,
+                'I', 'I', 42, 0, (byte) 0xF0, 0, 0, 0, 1, 2, 3, 4};
+        byte[] jpeg = concat(new byte[] {(byte) 0xFF, (byte) 0xD8}, garbled, scanAndEnd());
+        byte[] out = ExifWriter.withMetadata(jpeg, new ExifWriter.Metadata().setCaptureTime(CAPTURE_TIME, KOLKATA));
+        assertEquals(1, countExifSegments(out));
+        assertEquals("2024:03:15 14:56:53", Exif.parse(out).ifd0.ascii(0x0132));
+    }
+
+    @Test
+    public void oversizedThumbnailIsLeftOut() {
+        byte[] thumbnail = fakeJpeg(new byte[70_000]);
+        byte[] out = ExifWriter.withMetadata(fakeJpeg(new byte[] {1}),
+                new ExifWriter.Metadata().setCaptureTime(CAPTURE_TIME, KOLKATA).setThumbnail(thumbnail));
+        Exif exif = Exif.parse(out);
+        assertNull("IFD1", exif.ifd1);
+        assertEquals(1, exif.ifd0.shortValue(0x0112));
+    }
+
+    @Test
+    public void nonJpegBytesAreReturnedAsTheyAre() {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 13, 10, 26, 10};
+        assertSame(png, ExifWriter.withMetadata(png, new ExifWriter.Metadata()));
+        assertNull(ExifWriter.withMetadata(null, new ExifWriter.Metadata()));
+    }
+
+    @Test
+    public void rotationMapsToOrientation() {
+        assertEquals(ExifWriter.ORIENTATION_NORMAL, ExifWriter.orientationForRotation(0));
+        assertEquals(ExifWriter.ORIENTATION_ROTATE_90, ExifWriter.orientationForRotation(90));
+        assertEquals(ExifWriter.ORIENTATION_ROTATE_180, ExifWriter.orientationForRotation(-180));
+        assertEquals(ExifWriter.ORIENTATION_ROTATE_270, ExifWriter.orientationForRotation(630));
+    }
+
+    // --- Fixtures ---
+
+    private static byte[] scanAndEnd() {
+        return new byte[] {(byte) 0xFF, (byte) 0xDA, 0, 2, 0x12, 0x34, (byte) 0xFF, 0, 0x56, (byte) 0xFF, (byte) 0xD9};
+    }
+
+    /**
+     * SOI, a fake scan holding the payload, EOI. Enough for the writer, which stops at its segment.
+     */
+    private static byte[] fakeJpeg(byte[] payload) {
+        return concat(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2}, payload,
+                new byte[] {(byte) 0xFF, (byte) 0xD9});
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.write(part, 0, part.length);
+        return out.toByteArray();
+    }
+
+    private static int countExifSegments(byte[] jpeg) {
+        int count = 0;
+        int p = 2;
+        while (p + 4 <= jpeg.length && (jpeg[p] & 0xFF) == 0xFF && (jpeg[p + 1] & 0xFF) != 0xDA) {
+            if ((jpeg[p + 1] & 0xFF) == 0xE1 && jpeg[p + 4] == 'E' && jpeg[p + 5] == 'x') count++;
+            p += 2 + ((jpeg[p + 2] & 0xFF) << 8 | (jpeg[p + 3] & 0xFF));
+        }
+        return count;
+    }
+
+    // --- Reading EXIF back ---
+
+    /**
+     * The first APP1/EXIF segment of a JPEG, parsed into its IFDs.
+     */
+    private static final class Exif {
+        final byte[] tiff;
+        final boolean littleEndian;
+        Ifd ifd0, exif, gps, ifd1;
+
+        private Exif(byte[] tiff) {
+            this.tiff = tiff;
+            this.littleEndian = tiff[0] == 'I';
+        }
+
+        static Exif parse(byte[] jpeg) {
+            int p = 2;
+            while (p + 4 <= jpeg.length && (jpeg[p] & 0xFF) == 0xFF) {
+                int length = (jpeg[p + 2] & 0xFF) << 8 | (jpeg[p + 3] & 0xFF);
+                if ((jpeg[p + 1] & 0xFF) == 0xE1 && new String(jpeg, p + 4, 4, StandardCharsets.US_ASCII).equals("Exif")) {
+                    Exif exif = new Exif(Arrays.copyOfRange(jpeg, p + 10, p + 2 + length));
+                    assertEquals(42, exif.u16(2));
+                    exif.ifd0 = exif.readIfd(exif.u32(4));
+                    exif.exif = exif.ifd0.has(0x8769) ? exif.readIfd(exif.ifd0.longValue(0x8769)) : null;
+                    exif.gps = exif.ifd0.has(0x8825) ? exif.readIfd(exif.ifd0.longValue(0x8825)) : null;
+                    exif.ifd1 = exif.ifd0.next != 0 ? exif.readIfd(exif.ifd0.next) : null;
+                    return exif;
+                }
+                p += 2 + length;
+            }
+            throw new AssertionError("No EXIF segment");
+        }
+
+        byte[] thumbnail() {
+            int offset = (int) ifd1.longValue(0x0201);
+            int length = (int) ifd1.longValue(0x0202);
+            return Arrays.copyOfRange(tiff, offset, offset + length);
+        }
+
+        Ifd readIfd(long offset) {
+            Ifd ifd = new Ifd();
+            int count = u16((int) offset);
+            int previousTag = -1;
+            for (int i = 0; i < count; i++) {
+                int entry = (int) offset + 2 + i * 12;
+                int tag = u16(entry);
+                assertTrue("tags in ascending order", tag > previousTag);
+                previousTag = tag;
+                int type = u16(entry + 2);
+                int valueCount = (int) u32(entry + 4);
+                int size = valueCount * new int[] {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8}[type];
+                int at = size <= 4 ? entry + 8 : (int) u32(entry + 8);
+                if (size > 4) assertEquals("values at even offsets", 0, at & 1);
+                ifd.values.put(tag, Arrays.copyOfRange(tiff, at, at + size));
+                ifd.types.put(tag, type);
+            }
+            ifd.next = u32((int) offset + 2 + count * 12);
+            return ifd;
+        }
+
+        int u16(int p) {
+            return littleEndian ? (tiff[p] & 0xFF) | (tiff[p + 1] & 0xFF) << 8 : (tiff[p] & 0xFF) << 8 | (tiff[p + 1] & 0xFF);
+        }
+
+        long u32(int p) {
+            return littleEndian
+                    ? ((long) u16(p + 2) << 16) | u16(p)
+                    : ((long) u16(p) << 16) | u16(p + 2);
+        }
+
+        private final class Ifd {
+            final Map<Integer, byte[]> values = new HashMap<>();
+            final Map<Integer, Integer> types = new HashMap<>();
+            long next;
+
+            boolean has(int tag) {
+                return values.containsKey(tag);
+            }
+
+            byte[] bytes(int tag) {
+                assertTrue(String.format("tag %04X present", tag), has(tag));
+                return values.get(tag);
+            }
+
+            String ascii(int tag) {
+                assertEquals(String.format("type of %04X", tag), Integer.valueOf(2), types.get(tag));
+                byte[] value = bytes(tag);
+                assertEquals("NUL-terminated", 0, value[value.length - 1]);
+                return new String(value, 0, value.length - 1, StandardCharsets.UTF_8);
+            }
+
+            int shortValue(int tag) {
+                assertEquals(String.format("type of %04X", tag), Integer.valueOf(3), types.get(tag));
+                return value(tag, 0, 2);
+            }
+
+            long longValue(int tag) {
+                assertEquals(String.format("type of %04X", tag), Integer.valueOf(4), types.get(tag));
+                return value(tag, 0, 4) & 0xFFFFFFFFL;
+            }
+
+            double rational(int tag, int index) {
+                assertEquals(String.format("type of %04X", tag), Integer.valueOf(5), types.get(tag));
+                return (double) (value(tag, index * 8, 4) & 0xFFFFFFFFL) / (value(tag, index * 8 + 4, 4) & 0xFFFFFFFFL);
+            }
+
+            double degrees(int tag) {
+                return rational(tag, 0) + rational(tag, 1) / 60 + rational(tag, 2) / 3600;
+            }
+
+            private int value(int tag, int offset, int size) {
+                byte[] b = bytes(tag);
+                int result = 0;
+                for (int i = 0; i < size; i++) {
+                    int shift = littleEndian ? 8 * i : 8 * (size - 1 - i);
+                    result |= (b[offset + i] & 0xFF) << shift;
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Builds a little-endian EXIF segment with IFD0, an Exif IFD and a GPS IFD.
+     */
+    private static final class LittleEndianTiff {
+        final Map<Integer, Object[]> ifd0 = new java.util.TreeMap<>();
+        final Map<Integer, Object[]> exif = new java.util.TreeMap<>();
+        final Map<Integer, Object[]> gps = new java.util.TreeMap<>();
+
+        Object[] ascii(String text) {
+            byte[] chars = text.getBytes(StandardCharsets.US_ASCII);
+            return new Object[] {2, chars.length + 1, Arrays.copyOf(chars, chars.length + 1)};
+        }
+
+        Object[] shorts(int value) {
+            return new Object[] {3, 1, new byte[] {(byte) value, (byte) (value >> 8)}};
+        }
+
+        Object[] rational(int numerator, int denominator) {
+            byte[] b = new byte[8];
+            putInt(b, 0, numerator);
+            putInt(b, 4, denominator);
+            return new Object[] {5, 1, b};
+        }
+
+        Object[] undefined(byte[] value) {
+            return new Object[] {7, value.length, value};
+        }
+
+        byte[] segment() {
+            Object[] pointer = {4, 1, new byte[4]};
+            Object[] gpsPointer = {4, 1, new byte[4]};
+            ifd0.put(0x8769, pointer);
+            ifd0.put(0x8825, gpsPointer);
+            int exifOffset = 8 + size(ifd0);
+            int gpsOffset = exifOffset + size(exif);
+            putInt((byte[]) pointer[2], 0, exifOffset);
+            putInt((byte[]) gpsPointer[2], 0, gpsOffset);
+
+            ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+            tiff.write('I');
+            tiff.write('I');
+            write(tiff, 42, 2);
+            write(tiff, 8, 4);
+            writeIfd(tiff, ifd0, 8);
+            writeIfd(tiff, exif, exifOffset);
+            writeIfd(tiff, gps, gpsOffset);
+            byte[] body = tiff.toByteArray();
+            int length = 8 + body.length;
+            return concat(new byte[] {(byte) 0xFF, (byte) 0xE1, (byte) (length >> 8), (byte) length,
+                    'E', 'x', 'i', 'f', 0, 0}, body);
+        }
+
+        private static int size(Map<Integer, Object[]> ifd) {
+            int size = 2 + ifd.size() * 12 + 4;
+            for (Object[] value : ifd.values()) {
+                int length = ((byte[]) value[2]).length;
+                if (length > 4) size += length + (length & 1);
+            }
+            return size;
+        }
+
+        private static void writeIfd(ByteArrayOutputStream out, Map<Integer, Object[]> ifd, int offset) {
+            write(out, ifd.size(), 2);
+            int data = offset + 2 + ifd.size() * 12 + 4;
+            ByteArrayOutputStream values = new ByteArrayOutputStream();
+            for (Map.Entry<Integer, Object[]> entry : ifd.entrySet()) {
+                byte[] value = (byte[]) entry.getValue()[2];
+                write(out, entry.getKey(), 2);
+                write(out, (Integer) entry.getValue()[0], 2);
+                write(out, (Integer) entry.getValue()[1], 4);
+                if (value.length <= 4) {
+                    out.write(value, 0, value.length);
+                    for (int i = value.length; i < 4; i++) out.write(0);
+                } else {
+                    write(out, data, 4);
+                    values.write(value, 0, value.length);
+                    if ((value.length & 1) != 0) values.write(0);
+                    data += value.length + (value.length & 1);
+                }
+            }
+            write(out, 0, 4);
+            byte[] b = values.toByteArray();
+            out.write(b, 0, b.length);
+        }
+
+        private static void write(ByteArrayOutputStream out, int value, int bytes) {
+            for (int i = 0; i < bytes; i++) out.write(value >> (8 * i));
+        }
+
+        private static void putInt(byte[] b, int p, int value) {
+            for (int i = 0; i < 4; i++) b[p + i] = (byte) (value >> (8 * i));
+        }
+    }
+}
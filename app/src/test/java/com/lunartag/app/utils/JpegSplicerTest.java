@@ -0,0 +1,375 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Splices JPEGs written by the JDK's encoder (libjpeg, standard Huffman tables, 4:2:0 for
+ * colour) with restart markers added, and decodes the result with the JDK's decoder.
+ */
+public class JpegSplicerTest {
+
+    private static final String JPEG_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    // --- Files the splicer must refuse ---
+
+    @Test
+    public void fileWithoutRestartMarkersIsRejected() throws IOException {
+        assertNull(JpegSplicer.parse(encode(photo(64, 48, 1), 0.9f, 0, false, false)));
+    }
+
+    @Test
+    public void progressiveFileIsRejected() throws IOException {
+        assertNull(JpegSplicer.parse(encode(photo(64, 48, 1), 0.9f, 4, true, false)));
+    }
+
+    @Test
+    public void scanWithFewerComponentsThanTheFrameIsRejected() throws IOException {
+        // A scan holding only Y means the chroma follows in further scans
+        byte[] jpeg = encode(photo(64, 48, 1), 0.9f, 4, false, false);
+        int sos = findMarker(jpeg, 0xDA);
+        byte[] oneComponent = new byte[jpeg.length - 4];
+        System.arraycopy(jpeg, 0, oneComponent, 0, sos + 2);
+        oneComponent[sos + 2] = 0;
+        oneComponent[sos + 3] = 8; // Length without the two dropped component entries
+        oneComponent[sos + 4] = 1;
+        System.arraycopy(jpeg, sos + 5, oneComponent, sos + 5, 2); // Y and its tables
+        System.arraycopy(jpeg, sos + 11, oneComponent, sos + 7, jpeg.length - sos - 11);
+        assertNull(JpegSplicer.parse(oneComponent));
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        byte[] jpeg = encode(photo(64, 48, 1), 0.9f, 4, false, false);
+        assertNotNull(JpegSplicer.parse(jpeg));
+        int sos = findMarker(jpeg, 0xDA);
+        for (int length : new int[] {1, 3, 20, sos, sos + 30, jpeg.length / 2, jpeg.length - 2}) {
+            assertNull("cut at " + length, JpegSplicer.parse(Arrays.copyOf(jpeg, length)));
+        }
+        assertNull(JpegSplicer.parse(new byte[] {1, 2, 3, 4, 5}));
+    }
+
+    @Test
+    public void restartMarkersOutOfSequenceAreRejected() throws IOException {
+        byte[] jpeg = encode(photo(64, 48, 1), 0.9f, 1, false, false);
+        int rst = findRestart(jpeg, findMarker(jpeg, 0xDA));
+        jpeg[rst + 1] = (byte) 0xD3;
+        assertNull(JpegSplicer.parse(jpeg));
+    }
+
+    // --- Planning ---
+
+    @Test
+    public void regionsAreWholeIntervalsAtOddSizes() throws IOException {
+        // 101 x 77 in 16 x 16 MCUs: 7 per row, 5 rows, 35 in all
+        JpegSplicer splicer = JpegSplicer.parse(encode(photo(101, 77, 2), 0.9f, 5, false, false));
+        assertNotNull(splicer);
+        assertEquals(101, splicer.getWidth());
+        assertEquals(77, splicer.getHeight());
+
+        // Rows 3-4 are MCUs 21-34, so intervals 4-6; interval 4 starts at the end of row 2
+        List<JpegSplicer.Region> regions = splicer.planRegions(0, 50, 101, 77, 1f);
+        assertRegions(regions, new int[] {0, 32, 101, 77, 4, 6});
+
+        // One MCU row, but interval 0 holds MCUs 0-4
+        assertRegions(splicer.planRegions(40, 0, 50, 10, 1f), new int[] {0, 0, 80, 16, 0, 0});
+
+        // Bottom-right MCU: interval 6 is MCUs 30-34, all in the last row; clipped to the image
+        assertRegions(splicer.planRegions(96, 70, 500, 500, 1f), new int[] {32, 64, 101, 77, 6, 6});
+    }
+
+    @Test
+    public void singleMcuIntervalsGiveTightRegions() throws IOException {
+        JpegSplicer splicer = JpegSplicer.parse(encode(photo(101, 77, 2), 0.9f, 1, false, false));
+        assertNotNull(splicer);
+        assertRegions(splicer.planRegions(40, 0, 50, 10, 1f), new int[] {32, 0, 64, 16, 2, 3});
+        assertRegions(splicer.planRegions(96, 70, 101, 77, 1f), new int[] {96, 64, 101, 77, 34, 34});
+        // Two rows: one region per run of consecutive intervals
+        assertRegions(splicer.planRegions(20, 20, 40, 40, 1f),
+                new int[] {16, 16, 48, 32, 8, 9}, new int[] {16, 32, 48, 48, 15, 16});
+        assertTrue(splicer.planRegions(10, 10, 10, 40, 1f).isEmpty());
+        assertTrue(splicer.planRegions(-5, 200, 40, 300, 1f).isEmpty());
+    }
+
+    @Test
+    public void largeShareOfTheImageIsLeftToAFullReencode() throws IOException {
+        JpegSplicer splicer = JpegSplicer.parse(encode(photo(101, 77, 2), 0.9f, 7, false, false));
+        assertNotNull(splicer);
+        assertNull(splicer.planRegions(0, 0, 101, 77, JpegSplicer.DEFAULT_MAX_FRACTION));
+        assertNull(splicer.planRegions(0, 30, 101, 77, JpegSplicer.DEFAULT_MAX_FRACTION)); // 3 of 5 rows
+        assertEquals(1, splicer.planRegions(0, 50, 101, 77, JpegSplicer.DEFAULT_MAX_FRACTION).size());
+    }
+
+    // --- Splicing ---
+
+    @Test
+    public void splicedFilesDecodeAndKeepTheRestExact() throws IOException {
+        int[][] sizes = {{64, 48}, {101, 77}, {333, 250}, {17, 9}};
+        int[] intervals = {1, 3, 7, 40};
+        float[] qualities = {0.75f, 0.95f, 1f};
+        for (int[] size : sizes) {
+            for (int interval : intervals) {
+                for (float quality : qualities) {
+                    for (boolean gray : new boolean[] {false, true}) {
+                        String name = size[0] + "x" + size[1] + " DRI " + interval + " q" + quality
+                                + (gray ? " gray" : "");
+                        BufferedImage image = photo(size[0], size[1], interval);
+                        if (gray) image = toGray(image);
+                        checkSplice(name, image, encode(image, quality, interval, false, false));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void symbolMissingFromTheFilesTablesGivesNull() throws IOException {
+        // Optimised tables for a flat image only hold the few codes it needed
+        BufferedImage flat = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        byte[] jpeg = encode(flat, 0.9f, 4, false, true);
+        JpegSplicer splicer = JpegSplicer.parse(jpeg);
+        assertNotNull(splicer);
+        List<JpegSplicer.Region> regions = splicer.planRegions(0, 48, 64, 64, 1f);
+        int[] noise = new int[regions.get(0).getWidth() * regions.get(0).getHeight()];
+        Random random = new Random(5);
+        for (int i = 0; i < noise.length; i++) noise[i] = 0xFF000000 | random.nextInt(0x1000000);
+        assertNull(splicer.splice(regions, Collections.singletonList(noise)));
+    }
+
+    /**
+     * Paints a bar along the bottom, splices it in, and checks the file: it parses again
+     * (restart markers renumbered in sequence), the bytes before and after the new intervals
+     * are the original ones, it decodes, the bar is there, and pixels away from the
+     * re-encoded regions are identical to the original decode.
+     */
+    private static void checkSplice(String name, BufferedImage image, byte[] jpeg) throws IOException {
+        JpegSplicer splicer = JpegSplicer.parse(jpeg);
+        assertNotNull(name, splicer);
+        int width = image.getWidth(), height = image.getHeight();
+        int barTop = (height - Math.max(4, height / 4)) & ~1; // On a chroma row pair
+        List<JpegSplicer.Region> regions = splicer.planRegions(0, barTop, width, height, 1f);
+        assertTrue(name, !regions.isEmpty());
+
+        BufferedImage original = ImageIO.read(new ByteArrayInputStream(jpeg));
+        List<int[]> pixels = new ArrayList<>();
+        for (JpegSplicer.Region region : regions) {
+            int[] argb = new int[region.getWidth() * region.getHeight()];
+            for (int y = region.top; y < region.bottom; y++) {
+                for (int x = region.left; x < region.right; x++) {
+                    argb[(y - region.top) * region.getWidth() + x - region.left] = rgb(original, x, y);
+                }
+            }
+            for (int y = Math.max(barTop, region.top); y < region.bottom; y++) {
+                Arrays.fill(argb, (y - region.top) * region.getWidth(), (y - region.top + 1) * region.getWidth(),
+                        0xFFE0C020);
+            }
+            pixels.add(argb);
+        }
+        byte[] spliced = splicer.splice(regions, pixels);
+        assertNotNull(name, spliced);
+        assertNotNull(name + ": restart markers in sequence", JpegSplicer.parse(spliced));
+
+        // Entropy data before the first new interval and the tail after the last are copied
+        int unchangedHead = intervalOffset(jpeg, regions.get(0).firstInterval);
+        assertArrayEquals(name, Arrays.copyOf(jpeg, unchangedHead), Arrays.copyOf(spliced, unchangedHead));
+        int lastNew = regions.get(regions.size() - 1).lastInterval;
+        if (lastNew < restartCount(jpeg)) {
+            int unchangedTail = jpeg.length - intervalOffset(jpeg, lastNew + 1);
+            assertArrayEquals(name, Arrays.copyOfRange(jpeg, jpeg.length - unchangedTail, jpeg.length),
+                    Arrays.copyOfRange(spliced, spliced.length - unchangedTail, spliced.length));
+        }
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(spliced));
+        assertNotNull(name, decoded);
+        assertEquals(width, decoded.getWidth());
+        assertEquals(height, decoded.getHeight());
+
+        boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        int barPixels = 0;
+        long barError = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int actual = rgb(decoded, x, y);
+                if (y >= barTop + 2) { // Clear of the chroma blended with the row above
+                    barError += colourDistance(gray ? toGray(0xFFE0C020) : 0xFFE0C020, actual);
+                    barPixels++;
+                } else if (distanceToRegions(regions, x, y) > 2) {
+                    // Chroma upsampling blends across block edges, so look 2 px away
+                    assertEquals(name + " at " + x + "," + y, Integer.toHexString(rgb(original, x, y)),
+                            Integer.toHexString(actual));
+                }
+            }
+        }
+        assertTrue(name + ": bar error " + barError / barPixels, barError / barPixels <= 12);
+    }
+
+    // --- Fixtures ---
+
+    /**
+     * Gradients, texture and a few hard edges, like a photo; deterministic per seed.
+     */
+    private static BufferedImage photo(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(17) - 8;
+                int r = clamp(60 + 150 * x / width + noise);
+                int g = clamp(90 + 100 * y / height + ((x / 9 + y / 7) % 2) * 40 + noise);
+                int b = clamp(200 - 120 * x / width + (x > width / 2 && y < height / 3 ? 50 : 0) + noise);
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage toGray(BufferedImage image) {
+        BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        gray.getGraphics().drawImage(image, 0, 0, null);
+        return gray;
+    }
+
+    /**
+     * The decoded samples as ARGB. Gray images are read from the raster: getRGB would convert
+     * them from the JDK's linear gray colour space.
+     */
+    private static int rgb(BufferedImage image, int x, int y) {
+        if (image.getType() != BufferedImage.TYPE_BYTE_GRAY) return image.getRGB(x, y);
+        int luma = image.getRaster().getSample(x, y, 0);
+        return 0xFF000000 | luma << 16 | luma << 8 | luma;
+    }
+
+    private static int toGray(int rgb) {
+        int luma = Math.round(0.299f * (rgb >> 16 & 0xFF) + 0.587f * (rgb >> 8 & 0xFF) + 0.114f * (rgb & 0xFF));
+        return 0xFF000000 | luma << 16 | luma << 8 | luma;
+    }
+
+    /**
+     * Encodes with the JDK's JPEG writer.
+     * @param restartInterval MCUs per restart interval; 0 writes no DRI.
+     */
+    private static byte[] encode(BufferedImage image, float quality, int restartInterval, boolean progressive,
+                                 boolean optimizeHuffman) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        JPEGImageWriteParam param = new JPEGImageWriteParam(null);
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        param.setOptimizeHuffmanTables(optimizeHuffman);
+        if (progressive) param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        if (restartInterval > 0) {
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(JPEG_FORMAT);
+            IIOMetadataNode markers = (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+            IIOMetadataNode dri = new IIOMetadataNode("dri");
+            dri.setAttribute("interval", Integer.toString(restartInterval));
+            Node sos = markers.getElementsByTagName("sos").item(0);
+            markers.insertBefore(dri, sos);
+            metadata.setFromTree(JPEG_FORMAT, root);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int findMarker(byte[] jpeg, int marker) {
+        int p = 2;
+        while ((jpeg[p + 1] & 0xFF) != marker) {
+            p += 2 + ((jpeg[p + 2] & 0xFF) << 8 | (jpeg[p + 3] & 0xFF));
+        }
+        return p;
+    }
+
+    private static int findRestart(byte[] jpeg, int from) {
+        for (int p = from; p + 1 < jpeg.length; p++) {
+            int marker = jpeg[p + 1] & 0xFF;
+            if ((jpeg[p] & 0xFF) == 0xFF && marker >= 0xD0 && marker <= 0xD7) return p;
+        }
+        throw new AssertionError("No restart marker");
+    }
+
+    private static int restartCount(byte[] jpeg) {
+        int count = 0;
+        for (int p = findMarker(jpeg, 0xDA); p + 1 < jpeg.length; p++) {
+            int marker = jpeg[p + 1] & 0xFF;
+            if ((jpeg[p] & 0xFF) == 0xFF && marker >= 0xD0 && marker <= 0xD7) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Offset of the first entropy-coded byte of a restart interval.
+     */
+    private static int intervalOffset(byte[] jpeg, int interval) {
+        int sos = findMarker(jpeg, 0xDA);
+        int p = sos + 2 + ((jpeg[sos + 2] & 0xFF) << 8 | (jpeg[sos + 3] & 0xFF));
+        for (int i = 0; i < interval; i++) {
+            p = findRestart(jpeg, p) + 2;
+        }
+        return p;
+    }
+
+    private static void assertRegions(List<JpegSplicer.Region> regions, int[]... expected) {
+        assertNotNull(regions);
+        assertEquals(expected.length, regions.size());
+        for (int i = 0; i < expected.length; i++) {
+            JpegSplicer.Region r = regions.get(i);
+            assertArrayEquals("region " + i, expected[i],
+                    new int[] {r.left, r.top, r.right, r.bottom, r.firstInterval, r.lastInterval});
+        }
+    }
+
+    private static int distanceToRegions(List<JpegSplicer.Region> regions, int x, int y) {
+        int distance = Integer.MAX_VALUE;
+        for (JpegSplicer.Region r : regions) {
+            int dx = Math.max(0, Math.max(r.left - x, x - (r.right - 1)));
+            int dy = Math.max(0, Math.max(r.top - y, y - (r.bottom - 1)));
+            distance = Math.min(distance, Math.max(dx, dy));
+        }
+        return distance;
+    }
+
+    private static int colourDistance(int a, int b) {
+        int max = 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            max = Math.max(max, Math.abs((a >> shift & 0xFF) - (b >> shift & 0xFF)));
+        }
+        return max;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,53 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+/**
+ * Throughput of each repacking path on full-HD and 12 MP synthetic frames with the padded
+ * strides real sensors use. Prints MB/s of NV21 output; the numbers are for comparing
+ * changes on one machine, so nothing is asserted about them.
+ */
+public class Nv21ConverterBenchmark {
+
+    private static final int WARMUP_FRAMES = 20;
+    private static final int MEASURED_FRAMES = 50;
+
+    @Test
+    public void fullHd() {
+        run(1920, 1080, 128);
+    }
+
+    @Test
+    public void twelveMegapixels() {
+        run(4000, 3000, 96);
+    }
+
+    private static void run(int width, int height, int rowPadding) {
+        YuvFixtures.Frame frame = YuvFixtures.random(width, height, width);
+        measure("planar", frame, YuvFixtures.planar(frame, rowPadding, 1));
+        measure("strided", frame, YuvFixtures.planar(frame, rowPadding, 2));
+        measure("nv21", frame, YuvFixtures.interleaved(frame, rowPadding, true));
+        measure("nv12", frame, YuvFixtures.interleaved(frame, rowPadding, false));
+    }
+
+    private static void measure(String layout, YuvFixtures.Frame frame, YuvFixtures.Planes planes) {
+        Nv21Converter converter = new Nv21Converter();
+        byte[] out = new byte[YuvConverter.nv21Size(frame.width, frame.height)];
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            planes.convert(converter, frame, out);
+        }
+        assertArrayEquals(frame.nv21(), out);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            planes.convert(converter, frame, out);
+        }
+        long elapsed = System.nanoTime() - start;
+        double megabytes = (double) out.length * MEASURED_FRAMES / (1024 * 1024);
+        System.out.printf("Nv21Converter %dx%d %-7s %8.1f MB/s  %6.2f ms/frame%n",
+                frame.width, frame.height, layout,
+                megabytes / (elapsed / 1e9), elapsed / 1e6 / MEASURED_FRAMES);
+    }
+}
@@ -0,0 +1,104 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Repacks synthetic YUV_420_888 planes (padded rows, junk in the padding) and checks the
+ * NV21 output byte for byte, along with the chroma path each layout takes.
+ */
+public class Nv21ConverterTest {
+
+    private static final int[][] SIZES = {{64, 48}, {640, 480}, {37, 21}, {2, 2}};
+    // A single chroma pair has no shift to detect, so 2 x 2 frames always go planar
+    private static final int[][] INTERLEAVED_SIZES = {{64, 48}, {640, 480}, {37, 21}, {4, 2}};
+
+    @Test
+    public void planarPlanesWithPaddedStrides() {
+        for (int[] size : SIZES) {
+            YuvFixtures.Frame frame = YuvFixtures.random(size[0], size[1], 11);
+            for (int padding : new int[] {0, 1, 16, 64}) {
+                assertConverts(frame, YuvFixtures.planar(frame, padding, 1), Nv21Converter.PATH_PLANAR);
+            }
+        }
+    }
+
+    @Test
+    public void stridedChromaInSeparatePlanes() {
+        for (int[] size : SIZES) {
+            YuvFixtures.Frame frame = YuvFixtures.random(size[0], size[1], 12);
+            assertConverts(frame, YuvFixtures.planar(frame, 0, 2), Nv21Converter.PATH_PLANAR);
+            assertConverts(frame, YuvFixtures.planar(frame, 20, 2), Nv21Converter.PATH_PLANAR);
+        }
+    }
+
+    @Test
+    public void interleavedNv21UsesFastPath() {
+        for (int[] size : INTERLEAVED_SIZES) {
+            YuvFixtures.Frame frame = YuvFixtures.random(size[0], size[1], 13);
+            assertConverts(frame, YuvFixtures.interleaved(frame, 0, true), Nv21Converter.PATH_NV21);
+            assertConverts(frame, YuvFixtures.interleaved(frame, 48, true), Nv21Converter.PATH_NV21);
+        }
+    }
+
+    @Test
+    public void interleavedNv12IsSwapped() {
+        for (int[] size : INTERLEAVED_SIZES) {
+            YuvFixtures.Frame frame = YuvFixtures.random(size[0], size[1], 14);
+            assertConverts(frame, YuvFixtures.interleaved(frame, 0, false), Nv21Converter.PATH_NV12);
+            assertConverts(frame, YuvFixtures.interleaved(frame, 48, false), Nv21Converter.PATH_NV12);
+        }
+    }
+
+    @Test
+    public void layoutChangeAtSameSizeIsNoticed() {
+        // Front and back cameras can deliver the same size with different chroma order
+        Nv21Converter converter = new Nv21Converter();
+        YuvFixtures.Frame first = YuvFixtures.random(64, 48, 15);
+        YuvFixtures.Frame second = YuvFixtures.random(64, 48, 16);
+        YuvFixtures.Planes[] sequence = {
+                YuvFixtures.interleaved(first, 16, true),
+                YuvFixtures.interleaved(second, 16, true),
+                YuvFixtures.interleaved(first, 16, false),
+                YuvFixtures.planar(second, 16, 1),
+                YuvFixtures.interleaved(second, 16, true),
+        };
+        YuvFixtures.Frame[] frames = {first, second, first, second, second};
+        int[] paths = {Nv21Converter.PATH_NV21, Nv21Converter.PATH_NV21, Nv21Converter.PATH_NV12,
+                Nv21Converter.PATH_PLANAR, Nv21Converter.PATH_NV21};
+        for (int i = 0; i < sequence.length; i++) {
+            assertArrayEquals("frame " + i, frames[i].nv21(), sequence[i].convert(converter, frames[i], null));
+            assertEquals("frame " + i, paths[i], converter.getLastPath());
+        }
+    }
+
+    @Test
+    public void outputArrayIsReusedAndBuffersAreLeftAlone() {
+        Nv21Converter converter = new Nv21Converter();
+        YuvFixtures.Frame frame = YuvFixtures.random(64, 48, 17);
+        YuvFixtures.Planes planes = YuvFixtures.interleaved(frame, 16, true);
+        int yPosition = planes.y.position();
+        int uPosition = planes.u.position();
+        int vPosition = planes.v.position();
+
+        byte[] out = new byte[YuvConverter.nv21Size(64, 48)];
+        assertSame(out, planes.convert(converter, frame, out));
+        assertArrayEquals(frame.nv21(), out);
+        assertEquals(yPosition, planes.y.position());
+        assertEquals(uPosition, planes.u.position());
+        assertEquals(vPosition, planes.v.position());
+    }
+
+    private static void assertConverts(YuvFixtures.Frame frame, YuvFixtures.Planes planes, int expectedPath) {
+        Nv21Converter converter = new Nv21Converter();
+        String label = frame.width + "x" + frame.height;
+        // Twice: the second frame of a layout takes the cached path
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(label, frame.nv21(), planes.convert(converter, frame, null));
+            assertEquals(label, expectedPath, converter.getLastPath());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Checks {@link YuvConverter} against a floating-point BT.601 full-range (JFIF) reference.
+ * The fixed-point maths may differ from the reference by one step per channel, no more.
+ */
+public class YuvConverterTest {
+
+    private static final int TOLERANCE = 1;
+
+    @Test
+    public void knownColoursMatchJfifEquations() {
+        assertPixel(0xFFFFFFFF, convertSolid(255, 128, 128));
+        assertPixel(0xFF000000, convertSolid(0, 128, 128));
+        assertPixel(0xFF808080, convertSolid(128, 128, 128));
+        // Pure red, green and blue as a JFIF encoder writes them
+        assertPixel(0xFFFE0000, convertSolid(76, 85, 255));
+        assertPixel(0xFF00FF01, convertSolid(150, 44, 21));
+        assertPixel(0xFF0000FE, convertSolid(29, 255, 107));
+    }
+
+    @Test
+    public void outOfGamutSamplesAreClamped() {
+        int pixel = convertSolid(255, 255, 255);
+        assertEquals(0xFF, pixel >>> 24);
+        assertEquals(255, pixel >> 16 & 0xFF);
+        assertEquals(255, pixel & 0xFF);
+        pixel = convertSolid(0, 0, 0);
+        assertEquals(0, pixel >> 16 & 0xFF);
+        assertEquals(0, pixel & 0xFF);
+    }
+
+    @Test
+    public void randomFrameMatchesReference() {
+        YuvFixtures.Frame frame = YuvFixtures.random(64, 48, 1);
+        assertMatchesReference(frame, convertInStrips(frame.nv21(), frame.width, frame.height, 16));
+    }
+
+    @Test
+    public void oddDimensionsUseRoundedUpChroma() {
+        for (int[] size : new int[][] {{7, 5}, {1, 1}, {9, 2}, {2, 9}, {33, 17}}) {
+            YuvFixtures.Frame frame = YuvFixtures.random(size[0], size[1], size[0] * 31 + size[1]);
+            int chromaPairs = (size[0] + 1) / 2 * ((size[1] + 1) / 2);
+            assertEquals(size[0] * size[1] + 2 * chromaPairs, YuvConverter.nv21Size(size[0], size[1]));
+            assertMatchesReference(frame, convertInStrips(frame.nv21(), frame.width, frame.height, 3));
+        }
+    }
+
+    @Test
+    public void paddedStridesMatchReferenceAfterRepacking() {
+        Nv21Converter repacker = new Nv21Converter();
+        for (int[] size : new int[][] {{64, 48}, {37, 21}}) {
+            YuvFixtures.Frame frame = YuvFixtures.random(size[0], size[1], 7);
+            YuvFixtures.Planes[] layouts = {
+                    YuvFixtures.planar(frame, 0, 1),
+                    YuvFixtures.planar(frame, 24, 1),
+                    YuvFixtures.planar(frame, 13, 2),
+                    YuvFixtures.interleaved(frame, 32, true),
+                    YuvFixtures.interleaved(frame, 32, false),
+            };
+            for (YuvFixtures.Planes planes : layouts) {
+                byte[] nv21 = planes.convert(repacker, frame, null);
+                assertMatchesReference(frame, convertInStrips(nv21, frame.width, frame.height, 16));
+            }
+        }
+    }
+
+    @Test
+    public void regionConversionMatchesStripConversion() {
+        YuvFixtures.Frame frame = YuvFixtures.random(40, 30, 3);
+        byte[] nv21 = frame.nv21();
+        int[] whole = convertInStrips(nv21, frame.width, frame.height, frame.height);
+
+        int left = 6, top = 9, regionWidth = 20, regionHeight = 11;
+        int[] region = new int[regionWidth * regionHeight];
+        YuvConverter.nv21ToArgb(nv21, frame.width, frame.height, left, top, regionWidth, regionHeight, region);
+        for (int row = 0; row < regionHeight; row++) {
+            for (int col = 0; col < regionWidth; col++) {
+                assertEquals(whole[(top + row) * frame.width + left + col], region[row * regionWidth + col]);
+            }
+        }
+    }
+
+    @Test
+    public void argbRoundTripKeepsFlatColours() {
+        int width = 8, height = 6;
+        int[] colours = {0xFFFFFFFF, 0xFF000000, 0xFF336699, 0xFFC08040, 0xFF10E0A0};
+        for (int colour : colours) {
+            int[] argb = new int[width * height];
+            Arrays.fill(argb, colour);
+            byte[] nv21 = new byte[YuvConverter.nv21Size(width, height)];
+            YuvConverter.argbToNv21(argb, width, height, nv21, width, height, 0, 0);
+            int[] back = convertInStrips(nv21, width, height, height);
+            for (int pixel : back) {
+                assertClose(colour, pixel, 2);
+            }
+        }
+    }
+
+    // --- Helpers ---
+
+    private static int convertSolid(int y, int u, int v) {
+        YuvFixtures.Frame frame = YuvFixtures.solid(2, 2, y, u, v);
+        return convertInStrips(frame.nv21(), 2, 2, 2)[0];
+    }
+
+    private static int[] convertInStrips(byte[] nv21, int width, int height, int stripRows) {
+        int[] argb = new int[width * height];
+        int[] strip = new int[width * stripRows];
+        for (int top = 0; top < height; top += stripRows) {
+            int rows = Math.min(stripRows, height - top);
+            YuvConverter.nv21ToArgb(nv21, width, height, top, rows, strip);
+            System.arraycopy(strip, 0, argb, top * width, width * rows);
+        }
+        return argb;
+    }
+
+    private static void assertMatchesReference(YuvFixtures.Frame frame, int[] argb) {
+        for (int row = 0; row < frame.height; row++) {
+            for (int col = 0; col < frame.width; col++) {
+                int expected = reference(frame.y(col, row), frame.u(col, row), frame.v(col, row));
+                int actual = argb[row * frame.width + col];
+                assertEquals("alpha at " + col + "," + row, 0xFF, actual >>> 24);
+                assertClose(expected, actual, TOLERANCE);
+            }
+        }
+    }
+
+    /**
+     * The JFIF equations in double precision.
+     */
+    private static int reference(int y, int u, int v) {
+        int r = clamp(Math.round(y + 1.402 * (v - 128)));
+        int g = clamp(Math.round(y - 0.344136 * (u - 128) - 0.714136 * (v - 128)));
+        int b = clamp(Math.round(y + 1.772 * (u - 128)));
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(long value) {
+        return (int) Math.max(0, Math.min(255, value));
+    }
+
+    private static void assertPixel(int expected, int actual) {
+        assertClose(expected, actual, TOLERANCE);
+    }
+
+    private static void assertClose(int expected, int actual, int tolerance) {
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int e = expected >> shift & 0xFF;
+            int a = actual >> shift & 0xFF;
+            assertTrue(String.format("expected %08X, got %08X", expected, actual), Math.abs(e - a) <= tolerance);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.lunartag.app.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic YUV_420_888 frames for the converter tests: tightly packed reference samples,
+ * and the same samples laid out the way camera HALs hand them over (padded rows,
+ * planar or interleaved chroma), with the padding filled with junk.
+ */
+final class YuvFixtures {
+
+    private static final byte PADDING = (byte) 0xA5;
+
+    private YuvFixtures() {}
+
+    /**
+     * Reference samples: luma width x height, chroma (width + 1) / 2 x (height + 1) / 2.
+     */
+    static final class Frame {
+        final int width;
+        final int height;
+        final int chromaWidth;
+        final int chromaHeight;
+        final byte[] y;
+        final byte[] u;
+        final byte[] v;
+
+        Frame(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.chromaWidth = (width + 1) / 2;
+            this.chromaHeight = (height + 1) / 2;
+            this.y = new byte[width * height];
+            this.u = new byte[chromaWidth * chromaHeight];
+            this.v = new byte[chromaWidth * chromaHeight];
+        }
+
+        int y(int col, int row) {
+            return y[row * width + col] & 0xFF;
+        }
+
+        int u(int col, int row) {
+            return u[(row / 2) * chromaWidth + col / 2] & 0xFF;
+        }
+
+        int v(int col, int row) {
+            return v[(row / 2) * chromaWidth + col / 2] & 0xFF;
+        }
+
+        /**
+         * The frame as NV21, built sample by sample.
+         */
+        byte[] nv21() {
+            byte[] out = new byte[YuvConverter.nv21Size(width, height)];
+            System.arraycopy(y, 0, out, 0, y.length);
+            int dst = y.length;
+            for (int i = 0; i < u.length; i++) {
+                out[dst++] = v[i];
+                out[dst++] = u[i];
+            }
+            return out;
+        }
+    }
+
+    /**
+     * The planes of one frame, as {@code Image.getPlanes()} would return them.
+     */
+    static final class Planes {
+        ByteBuffer y;
+        int yRowStride;
+        int yPixelStride;
+        ByteBuffer u;
+        int uRowStride;
+        int uPixelStride;
+        ByteBuffer v;
+        int vRowStride;
+        int vPixelStride;
+
+        byte[] convert(Nv21Converter converter, Frame frame, byte[] out) {
+            return converter.convert(frame.width, frame.height,
+                    y, yRowStride, yPixelStride,
+                    u, uRowStride, uPixelStride,
+                    v, vRowStride, vPixelStride,
+                    out);
+        }
+    }
+
+    static Frame random(int width, int height, long seed) {
+        Frame frame = new Frame(width, height);
+        Random random = new Random(seed);
+        random.nextBytes(frame.y);
+        random.nextBytes(frame.u);
+        random.nextBytes(frame.v);
+        return frame;
+    }
+
+    static Frame solid(int width, int height, int y, int u, int v) {
+        Frame frame = new Frame(width, height);
+        Arrays.fill(frame.y, (byte) y);
+        Arrays.fill(frame.u, (byte) u);
+        Arrays.fill(frame.v, (byte) v);
+        return frame;
+    }
+
+    /**
+     * Separate U and V planes.
+     * @param rowPadding Extra bytes at the end of every row but the last.
+     * @param chromaPixelStride 1 for packed planes, 2 or more for strided ones.
+     */
+    static Planes planar(Frame frame, int rowPadding, int chromaPixelStride) {
+        Planes planes = new Planes();
+        planes.yRowStride = frame.width + rowPadding;
+        planes.yPixelStride = 1;
+        planes.y = plane(frame.y, frame.width, frame.height, 1, planes.yRowStride);
+
+        int chromaRowStride = (frame.chromaWidth - 1) * chromaPixelStride + 1 + rowPadding;
+        planes.uRowStride = planes.vRowStride = chromaRowStride;
+        planes.uPixelStride = planes.vPixelStride = chromaPixelStride;
+        planes.u = plane(frame.u, frame.chromaWidth, frame.chromaHeight, chromaPixelStride, chromaRowStride);
+        planes.v = plane(frame.v, frame.chromaWidth, frame.chromaHeight, chromaPixelStride, chromaRowStride);
+        return planes;
+    }
+
+    /**
+     * One interleaved chroma buffer with U and V as views one byte apart, like most HALs.
+     * @param vFirst True for V,U,V,U (NV21 order), false for U,V,U,V (NV12 order).
+     */
+    static Planes interleaved(Frame frame, int rowPadding, boolean vFirst) {
+        Planes planes = new Planes();
+        planes.yRowStride = frame.width + rowPadding;
+        planes.yPixelStride = 1;
+        planes.y = plane(frame.y, frame.width, frame.height, 1, planes.yRowStride);
+
+        int rowStride = 2 * frame.chromaWidth + rowPadding;
+        int viewLength = rowStride * (frame.chromaHeight - 1) + 2 * frame.chromaWidth - 1;
+        ByteBuffer shared = ByteBuffer.allocateDirect(viewLength + 1);
+        for (int i = 0; i < viewLength + 1; i++) shared.put(i, PADDING);
+        int uOffset = vFirst ? 1 : 0;
+        int vOffset = vFirst ? 0 : 1;
+        for (int row = 0; row < frame.chromaHeight; row++) {
+            for (int col = 0; col < frame.chromaWidth; col++) {
+                int index = row * frame.chromaWidth + col;
+                shared.put(row * rowStride + 2 * col + uOffset, frame.u[index]);
+                shared.put(row * rowStride + 2 * col + vOffset, frame.v[index]);
+            }
+        }
+        planes.uRowStride = planes.vRowStride = rowStride;
+        planes.uPixelStride = planes.vPixelStride = 2;
+        planes.u = view(shared, uOffset, viewLength);
+        planes.v = view(shared, vOffset, viewLength);
+        return planes;
+    }
+
+    /**
+     * Packs samples into a direct buffer with the given strides. The last row is not padded,
+     * which is what cameras do and what trips converters that assume height * rowStride bytes.
+     */
+    private static ByteBuffer plane(byte[] samples, int width, int height, int pixelStride, int rowStride) {
+        int length = rowStride * (height - 1) + (width - 1) * pixelStride + 1;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        for (int i = 0; i < length; i++) buffer.put(i, PADDING);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                buffer.put(row * rowStride + col * pixelStride, samples[row * width + col]);
+            }
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer view(ByteBuffer shared, int offset, int length) {
+        ByteBuffer view = shared.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+}
@@ -0,0 +1,165 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Checks the compositing maths of {@link YuvOverlay}: blending a premultiplied overlay into
+ * the NV21 planes against drawing the same ARGB block source-over onto the frame converted
+ * with {@link YuvConverter} and converting back.
+ *
+ * The source-over reference is written out in this test; neither {@link WatermarkUtils}
+ * path runs here, because Canvas text rendering cannot run on a JVM. Both sides get the
+ * same synthetic block (translucent background, anti-aliased "text", an opaque map square).
+ * The comparison with the real addWatermark output, templates, band placement and rotation
+ * included, is the device test {@code WatermarkOverlayTest} under androidTest.
+ */
+public class YuvOverlayTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int BAND_HEIGHT = 120;
+    private static final int BACKGROUND = 0x8C000000; // The templates' default block colour
+
+    @Test
+    public void overlayMatchesArgbSourceOver() {
+        byte[] frame = naturalFrame(WIDTH, HEIGHT);
+        int[] band = block(WIDTH, BAND_HEIGHT);
+        int top = HEIGHT - BAND_HEIGHT;
+
+        byte[] reference = sourceOverArgb(frame, band, top);
+        byte[] overlay = frame.clone();
+        YuvOverlay.fromArgb(band, WIDTH, BAND_HEIGHT, 0, top).blendInto(overlay, WIDTH, HEIGHT);
+
+        PixelDiff diff = PixelDiff.compareNv21(reference, overlay, WIDTH, HEIGHT);
+        System.out.println("YUV overlay vs ARGB source-over: " + diff);
+        // Both paths round to 8 bits at different points; anything beyond that is a bug
+        assertTrue(diff.toString(), diff.getLumaPsnr() > 55);
+        assertTrue(diff.toString(), diff.getMeanLuma() < 0.1);
+        assertTrue(diff.toString(), diff.getMeanChroma() < 0.1);
+        assertTrue(diff.toString(), diff.getMaxLuma() <= 2);
+        assertTrue(diff.toString(), diff.getMaxChroma() <= 2);
+    }
+
+    @Test
+    public void overlayLeavesRowsAboveTheBandUntouched() {
+        byte[] frame = naturalFrame(WIDTH, HEIGHT);
+        byte[] overlay = frame.clone();
+        int top = HEIGHT - BAND_HEIGHT;
+        YuvOverlay.fromArgb(block(WIDTH, BAND_HEIGHT), WIDTH, BAND_HEIGHT, 0, top).blendInto(overlay, WIDTH, HEIGHT);
+
+        for (int i = 0; i < top * WIDTH; i++) {
+            assertEquals("luma " + i, frame[i], overlay[i]);
+        }
+        int chromaStart = WIDTH * HEIGHT;
+        for (int i = chromaStart; i < chromaStart + (top / 2) * WIDTH; i++) {
+            assertEquals("chroma " + i, frame[i], overlay[i]);
+        }
+    }
+
+    @Test
+    public void opaqueAndTransparentPixelsAreExact() {
+        int[] band = new int[4 * 2];
+        Arrays.fill(band, 0, 2, 0xFFFFFFFF); // Opaque white 2x2 block on the left
+        Arrays.fill(band, 4, 6, 0xFFFFFFFF);
+        byte[] frame = naturalFrame(4, 2);
+        byte[] blended = frame.clone();
+        YuvOverlay.fromArgb(band, 4, 2, 0, 0).blendInto(blended, 4, 2);
+
+        assertEquals((byte) 255, blended[0]);
+        assertEquals((byte) 255, blended[4]);
+        assertEquals((byte) 128, blended[8]); // V
+        assertEquals((byte) 128, blended[9]); // U
+        // Fully transparent right half: untouched
+        assertArrayEquals(new byte[] {frame[2], frame[3], frame[6], frame[7], frame[10], frame[11]},
+                new byte[] {blended[2], blended[3], blended[6], blended[7], blended[10], blended[11]});
+    }
+
+    // --- Reference compositing ---
+
+    /**
+     * NV21 frame to a full ARGB frame, the block drawn source-over, and back to YCbCr.
+     */
+    private static byte[] sourceOverArgb(byte[] nv21, int[] band, int top) {
+        int[] argb = new int[WIDTH * HEIGHT];
+        YuvConverter.nv21ToArgb(nv21, WIDTH, HEIGHT, 0, HEIGHT, argb);
+        for (int row = 0; row < BAND_HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int index = (top + row) * WIDTH + col;
+                argb[index] = sourceOver(band[row * WIDTH + col], argb[index]);
+            }
+        }
+        byte[] out = new byte[YuvConverter.nv21Size(WIDTH, HEIGHT)];
+        YuvConverter.argbToNv21(argb, WIDTH, HEIGHT, out, WIDTH, HEIGHT, 0, 0);
+        return out;
+    }
+
+    private static int sourceOver(int source, int destination) {
+        int a = source >>> 24;
+        int result = 0xFF000000;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int s = source >> shift & 0xFF;
+            int d = destination >> shift & 0xFF;
+            result |= ((s * a + d * (255 - a) + 127) / 255) << shift;
+        }
+        return result;
+    }
+
+    // --- Fixtures ---
+
+    /**
+     * Smooth gradients with mild texture, like a photo; chroma varies slowly.
+     */
+    private static byte[] naturalFrame(int width, int height) {
+        byte[] nv21 = new byte[YuvConverter.nv21Size(width, height)];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int texture = ((col * 7 + row * 13) % 9) - 4;
+                nv21[row * width + col] = (byte) clamp(40 + 160 * col / width + 30 * row / height + texture);
+            }
+        }
+        int chroma = width * height;
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                nv21[chroma + row * width + 2 * col] = (byte) (110 + 40 * row / (height / 2));     // V
+                nv21[chroma + row * width + 2 * col + 1] = (byte) (150 - 40 * col / (width / 2)); // U
+            }
+        }
+        return nv21;
+    }
+
+    /**
+     * A watermark-like block: translucent background, white text strokes with anti-aliased
+     * edges, and an opaque coloured map square on the left.
+     */
+    private static int[] block(int width, int height) {
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, BACKGROUND);
+        int mapSize = height - 20;
+        for (int row = 10; row < 10 + mapSize; row++) {
+            for (int col = 10; col < 10 + mapSize; col++) {
+                argb[row * width + col] = 0xFF000000 | ((col * 2) & 0xFF) << 16 | ((row * 2) & 0xFF) << 8 | 0x60;
+            }
+        }
+        for (int line = 0; line < 5; line++) {
+            int baseline = 16 + line * 20;
+            for (int col = mapSize + 30; col < width - 40; col++) {
+                if ((col / 6) % 3 == 2) continue; // Gaps between "letters"
+                for (int row = baseline; row < baseline + 12; row++) {
+                    boolean edge = row == baseline || row == baseline + 11 || col % 6 == 0;
+                    argb[row * width + col] = edge ? 0x80FFFFFF : 0xFFFFFFFF;
+                }
+            }
+        }
+        return argb;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,94 @@
+package com.lunartag.app.watermark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes allocated per capture by the text side of the watermark: a worker
+ * building its lines and the renderer copying the changed ones into its own buffers.
+ * In steady state (same minute, moving position) this must not allocate at all, so the
+ * only per-capture allocations left are the output image and the layouts of changed lines.
+ */
+public class WatermarkLinesBenchmark {
+
+    private static final int WARMUP = 20_000;
+    private static final int CAPTURES = 10_000;
+    private static final long START_MILLIS = 1_700_000_000_000L - 1_700_000_000_000L % 60_000;
+
+    @Test
+    public void steadyStateCapturesDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        WatermarkLines worker = new WatermarkLines();
+        WatermarkLines renderer = new WatermarkLines();
+
+        // Same minute throughout: the time line is formatted once
+        for (int i = 0; i < WARMUP; i++) {
+            capture(worker, renderer, i, START_MILLIS + i % 50_000);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int changedLines = 0;
+        for (int i = 0; i < CAPTURES; i++) {
+            changedLines += capture(worker, renderer, i, START_MILLIS + i % 50_000);
+        }
+        long bytesPerCapture = (threads.getCurrentThreadAllocatedBytes() - before) / CAPTURES;
+
+        System.out.printf("WatermarkLines steady state: %d bytes/capture, %.2f lines re-laid out/capture%n",
+                bytesPerCapture, (double) changedLines / CAPTURES);
+        assertEquals(0, bytesPerCapture);
+    }
+
+    @Test
+    public void newMinuteFormatsTimeOnce() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        WatermarkLines worker = new WatermarkLines();
+        WatermarkLines renderer = new WatermarkLines();
+        for (int i = 0; i < WARMUP; i++) {
+            capture(worker, renderer, i, START_MILLIS + i * 60_000L);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < CAPTURES; i++) {
+            capture(worker, renderer, i, START_MILLIS + i * 60_000L);
+        }
+        long bytesPerCapture = (threads.getCurrentThreadAllocatedBytes() - before) / CAPTURES;
+        // java.time allocates while formatting; this is the cost of one capture per minute
+        System.out.printf("WatermarkLines new minute: %d bytes/capture%n", bytesPerCapture);
+        assertTrue(bytesPerCapture < 4096);
+    }
+
+    @Test
+    public void copyReportsChangedLinesOnly() {
+        WatermarkLines worker = new WatermarkLines();
+        WatermarkLines renderer = new WatermarkLines();
+        CharSequence[] lines = worker.build("Acme", "1 Main St", true, 12.5, 77.25, START_MILLIS);
+        assertEquals(0b11111, renderer.copyFrom(lines));
+        assertEquals(0, renderer.copyFrom(lines));
+
+        lines = worker.build("Acme", "1 Main St", true, 12.5, 77.5, START_MILLIS + 1_000);
+        assertEquals(1 << WatermarkTemplate.FIELD_GPS, renderer.copyFrom(lines));
+        lines = worker.build("Acme", "2 Main St", true, 12.5, 77.5, START_MILLIS + 60_000);
+        assertEquals((1 << WatermarkTemplate.FIELD_ADDRESS) | (1 << WatermarkTemplate.FIELD_TIME),
+                renderer.copyFrom(lines));
+        assertEquals("Lat: 12.5 Lon: 77.5", renderer.lines[WatermarkTemplate.FIELD_GPS].toString());
+    }
+
+    private static int capture(WatermarkLines worker, WatermarkLines renderer, int i, long timeMillis) {
+        double latitude = 12.9716 + (i % 1000) * 1e-6;
+        double longitude = 77.5946 - (i % 997) * 1e-6;
+        CharSequence[] lines = worker.build("Lunar Tag Field Services", "MG Road, Bengaluru, Karnataka 560001",
+                true, latitude, longitude, timeMillis);
+        return Integer.bitCount(renderer.copyFrom(lines));
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("Allocation counting needs a HotSpot JVM",
+                bean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        return (com.sun.management.ThreadMXBean) bean;
+    }
+}